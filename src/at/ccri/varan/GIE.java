@@ -48,6 +48,7 @@ import org.broad.igv.DirectoryManager;
 import org.broad.igv.feature.RegionOfInterest;
 import org.broad.igv.feature.genome.GenomeListItem;
 import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.session.Session;
 import org.broad.igv.track.Track;
 import org.broad.igv.ui.GlobalKeyDispatcher;
 import org.broad.igv.ui.IGV;
@@ -144,6 +145,11 @@ public class GIE {
      */
     transient private Track layerTrack = null;
 
+    /**
+     * If true, GIE runs without dialogs (e.g. for batch commands).
+     */
+    transient private boolean batchMode = false;
+
     /**
      * singleton instance.
      */
@@ -480,8 +486,18 @@ public class GIE {
 		// + IGV.getInstance().getAllTracks().size() + " > locus="
 		// + IGV.getInstance().getSession().getLocusString());
 		if (activeDataset.getCurrentVersion().getSessionFile() != null) {
-		    SaveSessionMenuAction.saveSession(IGV.getInstance(),
-			    activeDataset.getCurrentVersion().getSessionFile());
+		    // the regions were just saved to the layer file, so the session only references it. Only
+		    // for this save: sessions saved by the user must contain the regions, which may have changed
+		    // since.
+		    GIEDatasetVersionLayer layer = activeDataset.getCurrentVersion().getActiveLayer();
+		    Session session = IGV.getInstance().getSession();
+		    session.setRegionsOfInterestFile(layer == null ? null : layer.getDataFile().getAbsolutePath());
+		    try {
+			SaveSessionMenuAction.saveSession(IGV.getInstance(),
+				activeDataset.getCurrentVersion().getSessionFile());
+		    } finally {
+			session.setRegionsOfInterestFile(null);
+		    }
 		} else
 		    log.error("Could not save session");
 	    }
@@ -632,11 +648,13 @@ public class GIE {
 		ProgressBar.ProgressDialog progressDialog;
 
 		public void run() {
-		    UIUtilities.invokeAndWaitOnEventThread(() -> {
-			monitor = new ProgressMonitor();
-			progressDialog = ProgressBar.showProgressDialog(IGV.getMainFrame(),
-				"Loading Dataset " + ds.getName() + "...", monitor, false);
-		    });
+		    if (!batchMode) {
+			UIUtilities.invokeAndWaitOnEventThread(() -> {
+			    monitor = new ProgressMonitor();
+			    progressDialog = ProgressBar.showProgressDialog(IGV.getMainFrame(),
+				    "Loading Dataset " + ds.getName() + "...", monitor, false);
+			});
+		    }
 
 		    try {
 
@@ -661,9 +679,10 @@ public class GIE {
 				&& ds.getCurrentVersion().getSessionFile() != null
 				&& ds.getCurrentVersion().getSessionFile().exists()) {
 
-			    // restore session for new active track (will autosave current session)
+			    // restore session for new active track (will autosave current session). The regions are
+			    // loaded from the active layer below.
 			    IGV.getInstance().restoreSessionSynchronous(
-				    ds.getCurrentVersion().getSessionFile().getAbsolutePath(), null, false);
+				    ds.getCurrentVersion().getSessionFile().getAbsolutePath(), null, false, false);
 
 			} else {
 			    // new session (will autosave current session)
@@ -726,7 +745,8 @@ public class GIE {
 			if (GIEDataDialog.getInstance() != null) {
 			    GIEDataDialog.destroyInstance();
 			}
-			GIEDataDialog.getInstance(IGV.getMainFrame());
+			if (!batchMode)
+			    GIEDataDialog.getInstance(IGV.getMainFrame());
 
 			log.info("Loaded dataset" + ds.getName());
 
@@ -1590,6 +1610,14 @@ public class GIE {
 	this.showRefLines = showRefLines;
     }
 
+    public boolean isBatchMode() {
+	return batchMode;
+    }
+
+    public void setBatchMode(boolean batchMode) {
+	this.batchMode = batchMode;
+    }
+
     public GIERowFilter getRowFilter() {
 	return rowFilter;
     }
@@ -0,0 +1,453 @@
+package at.ccri.varan;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.batch.BatchSnapshotRenderer;
+import org.broad.igv.batch.CommandListener;
+import org.broad.igv.dev.api.batch.Command;
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.session.RegionsOfInterestChange;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.util.ParsingUtils;
+
+import at.ccri.varan.util.IntervalTools;
+
+/**
+ * GIE commands for the batch/port interface ("gie &lt;command&gt; [args]"). Commands run without dialogs. Interval
+ * payloads are passed as file paths, never on the command line.
+ * <p/>
+ * Commands are executed on the calling thread, which for the port interface is the thread that executes all
+ * commands that change IGV state. Long running commands can be started with "gie submit &lt;command&gt; [args]",
+ * which replies with a job id right away and queues the command behind the current one; "gie status &lt;id&gt;" and
+ * "gie wait &lt;id&gt;" return the job's result. Without a command queue (batch scripts) submitted commands run
+ * immediately.
+ * <p/>
+ * "gie list" and "gie stats" may be answered concurrently with other commands, so they report a snapshot taken
+ * after the last GIE command or region of interest change.
+ *
+ * <pre>
+ * gie list
+ * gie load &lt;dataset&gt; [version]
+ * gie layer &lt;layer&gt;
+ * gie import &lt;category&gt; &lt;dataset&gt; &lt;file.bed|file.vcf&gt; [description]
+ * gie addregions &lt;file.bed&gt;
+ * gie collapse
+ * gie intersect &lt;file.bed&gt;
+ * gie subtract &lt;file.bed&gt;
+ * gie export &lt;file.bed|file.tsv&gt;
+ * gie stats [file.tsv]
+ * gie snapshots &lt;directory&gt; [png|svg]
+ * gie save
+ * </pre>
+ */
+public class GIEBatchCommand implements Command {
+
+    private static Logger log = Logger.getLogger(GIEBatchCommand.class);
+
+    /**
+     * Finished jobs whose result was not collected are dropped, oldest first, beyond this number of jobs.
+     */
+    private static final int MAX_JOBS = 100;
+
+    /**
+     * Submitted jobs by id, in submission order. Guarded by itself.
+     */
+    private static final Map<Integer, Future<String>> jobs = new LinkedHashMap<>();
+
+    private static final AtomicInteger nextJobId = new AtomicInteger(1);
+
+    private static volatile Snapshot snapshot;
+
+    private static boolean observingRegions = false;
+
+    private final Executor jobQueue;
+
+    public GIEBatchCommand() {
+	this(null);
+    }
+
+    /**
+     * @param jobQueue
+     *            executes submitted commands after the current command, on the same thread. If null submitted
+     *            commands run immediately.
+     */
+    public GIEBatchCommand(Executor jobQueue) {
+	this.jobQueue = jobQueue;
+    }
+
+    @Override
+    public String run(List<String> args) {
+	if (args.isEmpty())
+	    return "ERROR: missing GIE command";
+
+	String cmd = args.get(0).toLowerCase();
+	if (cmd.equals("submit")) {
+	    if (args.size() < 2)
+		return "ERROR: missing GIE command";
+	    return submit(args.subList(1, args.size()));
+	} else if (cmd.equals("status") || cmd.equals("wait")) {
+	    Integer id = parseJobId(args);
+	    Future<String> job = id == null ? null : getJob(id);
+	    if (job == null)
+		return "ERROR: unknown job " + (args.size() > 1 ? args.get(1) : "");
+	    if (cmd.equals("status") && !job.isDone())
+		return "RUNNING";
+	    if (!job.isDone() && CommandListener.isCommandThread())
+		// the job is queued behind this command
+		return "ERROR: cannot wait for job " + id + " on the command thread, use gie status";
+	    String result = getResult(job);
+	    synchronized (jobs) {
+		jobs.remove(id);
+	    }
+	    return result;
+	} else if (cmd.equals("list") || cmd.equals("stats")) {
+	    return query(cmd, args.size() > 1 ? args.get(1) : null);
+	} else {
+	    try {
+		return createTask(args).call();
+	    } catch (Exception e) {
+		log.error("Error executing GIE command", e);
+		return "ERROR: " + e.getMessage();
+	    }
+	}
+    }
+
+    private String submit(List<String> args) {
+	int id = nextJobId.getAndIncrement();
+	FutureTask<String> job = new FutureTask<>(createTask(args));
+	synchronized (jobs) {
+	    jobs.put(id, job);
+	    if (jobs.size() > MAX_JOBS) {
+		Iterator<Future<String>> iter = jobs.values().iterator();
+		while (jobs.size() > MAX_JOBS && iter.hasNext()) {
+		    if (iter.next().isDone())
+			iter.remove();
+		}
+	    }
+	}
+	if (jobQueue == null) {
+	    job.run();
+	} else {
+	    try {
+		jobQueue.execute(job);
+	    } catch (RejectedExecutionException e) {
+		synchronized (jobs) {
+		    jobs.remove(id);
+		}
+		return "ERROR: command queue has been shut down";
+	    }
+	}
+	return "OK " + id;
+    }
+
+    private static Future<String> getJob(Integer id) {
+	synchronized (jobs) {
+	    return jobs.get(id);
+	}
+    }
+
+    /**
+     * Answer "gie list" and "gie stats" from the snapshot.
+     */
+    private static String query(String cmd, String param1) {
+	Snapshot s = snapshot;
+	if (s == null) {
+	    // No GIE command yet, take the first snapshot here
+	    updateSnapshot();
+	    s = snapshot;
+	    if (s == null)
+		return "ERROR: GIE state is being modified, try again";
+	}
+	if (cmd.equals("list"))
+	    return s.list;
+	if (!s.active)
+	    return "ERROR: no active GIE dataset";
+	try {
+	    return stats(s.regions, param1 == null ? null : new File(param1));
+	} catch (IOException e) {
+	    return "ERROR: " + e.getMessage();
+	}
+    }
+
+    /**
+     * Copy the state reported by "gie list" and "gie stats". Called after every GIE command and, on the event
+     * dispatch thread, after changes to the regions of interest.
+     */
+    static synchronized void updateSnapshot() {
+	if (!observingRegions) {
+	    IGV.getInstance().getSession().getRegionsOfInterestObservable().addObserver(new Observer() {
+		@Override
+		public void update(Observable o, Object arg) {
+		    if (arg instanceof RegionsOfInterestChange && ((RegionsOfInterestChange) arg).isEmpty())
+			return;
+		    updateSnapshot();
+		}
+	    });
+	    observingRegions = true;
+	}
+	try {
+	    GIE gie = GIE.getInstance();
+	    GIEDataset ds = gie.getActiveDataset();
+	    boolean active = ds != null && ds.getCurrentVersion() != null
+		    && ds.getCurrentVersion().getActiveLayer() != null;
+	    snapshot = new Snapshot(list(gie), active, getRegions());
+	} catch (ConcurrentModificationException e) {
+	    // Modified while copying; the command or region change in progress updates the snapshot again
+	}
+    }
+
+    private static class Snapshot {
+	final String list;
+	final boolean active;
+	final List<RegionOfInterest> regions;
+
+	Snapshot(String list, boolean active, List<RegionOfInterest> regions) {
+	    this.list = list;
+	    this.active = active;
+	    this.regions = regions;
+	}
+    }
+
+    private static Integer parseJobId(List<String> args) {
+	try {
+	    return args.size() > 1 ? Integer.valueOf(args.get(1)) : null;
+	} catch (NumberFormatException e) {
+	    return null;
+	}
+    }
+
+    private static String getResult(Future<String> job) {
+	try {
+	    return job.get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return "ERROR: interrupted";
+	} catch (ExecutionException e) {
+	    log.error("Error executing GIE command", e.getCause());
+	    return "ERROR: " + e.getCause().getMessage();
+	}
+    }
+
+    private static Callable<String> createTask(final List<String> args) {
+	final List<String> taskArgs = new ArrayList<>(args);
+	return new Callable<String>() {
+	    @Override
+	    public String call() throws Exception {
+		GIE gie = GIE.getInstance();
+		gie.setBatchMode(true);
+		try {
+		    return execute(gie, taskArgs);
+		} finally {
+		    gie.setBatchMode(false);
+		    updateSnapshot();
+		}
+	    }
+	};
+    }
+
+    private static String execute(GIE gie, List<String> args) throws IOException {
+	String cmd = args.get(0).toLowerCase();
+	String param1 = args.size() > 1 ? args.get(1) : null;
+	String param2 = args.size() > 2 ? args.get(2) : null;
+	String param3 = args.size() > 3 ? args.get(3) : null;
+	String param4 = args.size() > 4 ? args.get(4) : null;
+
+	if (cmd.equals("list")) {
+	    return list(gie);
+	} else if (cmd.equals("load") && param1 != null) {
+	    return gie.loadDataset(param1, param2) ? "OK" : "ERROR: could not load dataset " + param1;
+	} else if (cmd.equals("layer") && param1 != null) {
+	    GIEDatasetVersion version = getActiveLayer(gie).getVersion();
+	    if (!version.getLayers().containsKey(param1))
+		return "ERROR: layer " + param1 + " not found";
+	    version.setActiveLayer(param1);
+	    return "OK";
+	} else if (cmd.equals("import") && param3 != null) {
+	    return importDataset(gie, param1, param2, new File(param3), param4 != null ? param4 : "");
+	} else if (cmd.equals("addregions") && param1 != null) {
+	    GIEDatasetVersionLayer layer = getActiveLayer(gie);
+	    List<RegionOfInterest> regions = readRegions(new File(param1));
+	    layer.addRegions(regions);
+	    layer.updateAndSave();
+	    return "OK " + regions.size();
+	} else if (cmd.equals("collapse")) {
+	    GIEDatasetVersionLayer layer = getActiveLayer(gie);
+	    return replaceRegions(layer, IntervalTools.collapse(getRegions()));
+	} else if (cmd.equals("intersect") && param1 != null) {
+	    GIEDatasetVersionLayer layer = getActiveLayer(gie);
+	    return replaceRegions(layer, IntervalTools.intersect(getRegions(), readRegions(new File(param1))));
+	} else if (cmd.equals("subtract") && param1 != null) {
+	    GIEDatasetVersionLayer layer = getActiveLayer(gie);
+	    return replaceRegions(layer, IntervalTools.subtract(getRegions(), readRegions(new File(param1))));
+	} else if (cmd.equals("export") && param1 != null) {
+	    return export(gie, getActiveLayer(gie), new File(param1).getAbsoluteFile());
+	} else if (cmd.equals("stats")) {
+	    getActiveLayer(gie);
+	    return stats(getRegions(), param1 == null ? null : new File(param1));
+	} else if (cmd.equals("snapshots") && param1 != null) {
+	    getActiveLayer(gie);
+	    return snapshots(getRegions(), new File(param1).getAbsoluteFile(), param2 != null ? param2 : "png");
+	} else if (cmd.equals("save")) {
+	    getActiveLayer(gie);
+	    gie.save();
+	    return "OK";
+	} else {
+	    return "ERROR: unknown or incomplete GIE command: " + args;
+	}
+    }
+
+    private static GIEDatasetVersionLayer getActiveLayer(GIE gie) {
+	GIEDataset ds = gie.getActiveDataset();
+	if (ds == null || ds.getCurrentVersion() == null || ds.getCurrentVersion().getActiveLayer() == null)
+	    throw new IllegalStateException("no active GIE dataset");
+	return ds.getCurrentVersion().getActiveLayer();
+    }
+
+    private static List<RegionOfInterest> getRegions() {
+	return new ArrayList<>(IGV.getInstance().getSession().getAllRegionsOfInterest());
+    }
+
+    private static String replaceRegions(GIEDatasetVersionLayer layer, List<RegionOfInterest> regions) {
+	IGV.getInstance().getSession().replaceRegionsOfInterest(regions);
+	layer.updateAndSave();
+	return "OK " + regions.size();
+    }
+
+    private static String list(GIE gie) {
+	StringBuilder buf = new StringBuilder("OK");
+	for (GIEDataset ds : gie.getDatasets().values()) {
+	    buf.append(" ").append(ds.getName()).append(":").append(ds.getCategory()).append(":")
+		    .append(String.join(",", ds.getVersions().keySet()));
+	}
+	return buf.toString();
+    }
+
+    private static String importDataset(GIE gie, String category, String name, File file, String description)
+	    throws IOException {
+	if (!file.exists())
+	    return "ERROR: file not found " + file;
+	if (!gie.addDataset(category, name, description, new String[0], file))
+	    return "ERROR: could not import dataset " + name;
+	gie.save();
+	GIEDatasetVersionLayer layer = gie.getDatasetMainLayer(name);
+	if (layer == null)
+	    return "ERROR: dataset not found after import " + name;
+	return "OK " + (layer.getRegions() == null ? 0 : layer.getRegions().size());
+    }
+
+    private static String export(GIE gie, GIEDatasetVersionLayer layer, File outFile) {
+	// validate here, GIE reports these problems with dialogs
+	if (!outFile.getParentFile().exists())
+	    return "ERROR: directory not found " + outFile.getParentFile();
+	Collection<RegionOfInterest> regions = getRegions();
+	GIEDatasetVersion version = layer.getVersion();
+	String name = version.getDataset().getName() + "." + version.getVersionName() + "." + layer.getLayerName();
+	String fn = outFile.getName().toLowerCase();
+	boolean ok;
+	if (fn.endsWith(".bed"))
+	    ok = gie.export2bed(regions, outFile, name, "GIE data track", false, false, false, true,
+		    layer.getAnnotations());
+	else if (fn.endsWith(".tsv"))
+	    ok = gie.export2tsv(regions, outFile, name, "GIE data track", false, false, false,
+		    layer.getAnnotations());
+	else
+	    return "ERROR: file extension has to be .bed or .tsv";
+	return ok ? "OK " + regions.size() : "ERROR: could not export to " + outFile;
+    }
+
+    private static String snapshots(List<RegionOfInterest> regions, File dir, String format) {
+	if (!format.equalsIgnoreCase("png") && !format.equalsIgnoreCase("svg"))
+	    return "ERROR: snapshot format has to be png or svg";
+	if (!dir.isDirectory() && !dir.mkdirs())
+	    return "ERROR: could not create directory " + dir;
+	int count = new BatchSnapshotRenderer(dir, format, Runtime.getRuntime().availableProcessors()).render(regions);
+	return count == regions.size() ? "OK " + count
+		: "ERROR: " + (regions.size() - count) + " of " + regions.size() + " snapshots failed";
+    }
+
+    /**
+     * Summary statistics. Per chromosome counts are written to the passed file, if any.
+     */
+    private static String stats(List<RegionOfInterest> regions, File outFile) throws IOException {
+	Map<String, long[]> chrStats = new LinkedHashMap<>();
+	long bases = 0;
+	for (RegionOfInterest r : regions) {
+	    long[] s = chrStats.get(r.getChr());
+	    if (s == null) {
+		s = new long[2];
+		chrStats.put(r.getChr(), s);
+	    }
+	    s[0]++;
+	    s[1] += r.getLength();
+	    bases += r.getLength();
+	}
+	if (outFile != null) {
+	    PrintWriter out = new PrintWriter(outFile);
+	    try {
+		out.println("Chr\tIntervals\tBases");
+		for (Map.Entry<String, long[]> e : chrStats.entrySet())
+		    out.println(e.getKey() + "\t" + e.getValue()[0] + "\t" + e.getValue()[1]);
+		out.println("Sum\t" + regions.size() + "\t" + bases);
+	    } finally {
+		out.close();
+	    }
+	}
+	return "OK intervals=" + regions.size() + " bases=" + bases + " chromosomes=" + chrStats.size();
+    }
+
+    /**
+     * Read chr, start, end and optional name, score and strand columns of a BED file.
+     */
+    static List<RegionOfInterest> readRegions(File file) throws IOException {
+	if (!file.exists())
+	    throw new IOException("file not found " + file);
+	Genome g = GenomeManager.getInstance().getCurrentGenome();
+	List<RegionOfInterest> regions = new ArrayList<>();
+	BufferedReader reader = ParsingUtils.openBufferedReader(file.getAbsolutePath());
+	try {
+	    String nextLine;
+	    while ((nextLine = reader.readLine()) != null) {
+		if (nextLine.trim().length() == 0 || nextLine.startsWith("#") || nextLine.startsWith("track")
+			|| nextLine.startsWith("browser"))
+		    continue;
+		String[] t = Globals.tabPattern.split(nextLine, -1);
+		if (t.length < 3)
+		    throw new IOException("Wrong format. Not a BED file? " + nextLine);
+		String chr = g != null ? g.getCanonicalChrName(t[0]) : t[0];
+		RegionOfInterest roi = new RegionOfInterest(chr, Integer.parseInt(t[1]), Integer.parseInt(t[2]),
+			t.length > 3 ? t[3] : null);
+		if (t.length > 4)
+		    roi.setScore(t[4]);
+		if (t.length > 5)
+		    roi.setStrand(t[5]);
+		regions.add(roi);
+	    }
+	} finally {
+	    reader.close();
+	}
+	return regions;
+    }
+}
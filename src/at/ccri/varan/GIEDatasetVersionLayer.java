@@ -292,7 +292,7 @@ public class GIEDatasetVersionLayer {
 			out.println(chr + "\t" + start + "\t" + end + "\t" + id + "\t" + score + "\t" + strand + "\t"
 				+ start + "\t" + end + "\t" + col);
 
-			if (c == 10000) {
+			if (c == 10000 && !GIE.getInstance().isBatchMode()) {
 			    int reply = JOptionPane.showConfirmDialog(null,
 				    "File contains a large number of intervals (>10000). "
 					    + "It is not recommended to run GIE with such large interval sets. "
@@ -331,7 +331,7 @@ public class GIEDatasetVersionLayer {
 				+ (ref + ">" + alt + " " + id) + "\t" + score + "\t0\t" + pos + "\t"
 				+ (pos + getVCFVariantWidth(ref, alt)) + "\t" + col);
 
-			if (c == 10000) {
+			if (c == 10000 && !GIE.getInstance().isBatchMode()) {
 			    int reply = JOptionPane.showConfirmDialog(null,
 				    "File contains a large number of intervals (>10000). "
 					    + "It is not recommended to run GIE with such large interval sets. "
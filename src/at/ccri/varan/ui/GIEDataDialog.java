@@ -52,6 +52,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -60,6 +61,10 @@ import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -110,6 +115,7 @@ import org.broad.igv.feature.RegionOfInterest;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.lists.GeneList;
+import org.broad.igv.session.RegionsOfInterestChange;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.panel.IGVPopupMenu;
 import org.broad.igv.util.Interval;
@@ -212,8 +218,25 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
     /**
      * cytobands
      */
-    private RegionOfInterestTree cytobands;
-    private boolean firstCytobandLoad = false;
+    private volatile RegionOfInterestTree cytobands;
+    private volatile boolean firstCytobandLoad = false;
+
+    /**
+     * Builds table rows off the event dispatch thread.
+     */
+    private static final Executor tableLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	    Thread t = new Thread(r, "GIE table loader");
+	    t.setDaemon(true);
+	    return t;
+	}
+    });
+
+    /**
+     * Incremented for each reload, see {@link #reloadTable()}.
+     */
+    private final AtomicInteger reloadGeneration = new AtomicInteger();
 
     /**
      * Return the active GIEMainDialog. null if none
@@ -286,99 +309,129 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
     }
 
     /**
-     * populates the main table.
+     * populates the main table. The rows are built on {@link #tableLoader} from a snapshot of the regions taken on
+     * the event dispatch thread; only the final model swap happens on the event dispatch thread. Reloads that are
+     * superseded by a newer one before they get there are dropped.
      * 
      * @param model
      */
     private void reloadTable() {
 	if (blockReload)
 	    return;
+	final int generation = reloadGeneration.incrementAndGet();
 
 	java.awt.EventQueue.invokeLater(new Runnable() {
 	    public void run() {
+		if (generation != reloadGeneration.get())
+		    return;
 
-		// *******************
-		setUpComboColumn(table, table.getColumnModel().getColumn(COLIDX_Chr),
-			IGV.getInstance().getChromNamesArray(), null);
-
-		DefaultTableModel model = (DefaultTableModel) table.getModel();
-		for (int i = model.getRowCount() - 1; i >= 0; i--) {
-		    model.removeRow(i);
+		final List<RegionOfInterest> now = (List<RegionOfInterest>) IGV.getInstance().getSession()
+			.getAllRegionsOfInterest();
+		final GIEDatasetVersionLayer activeLayer = GIE.getInstance().getActiveDataset() == null ? null
+			: GIE.getInstance().getActiveDataset().getCurrentVersion().getActiveLayer();
+		if (activeLayer == null) {
+		    applyRows(Collections.<Vector<Object>> emptyList(), null);
+		    return;
 		}
-		if (GIE.getInstance().getActiveDataset() != null) {
-		    GIEDatasetVersionLayer activeLayer = GIE.getInstance().getActiveDataset().getCurrentVersion()
-			    .getActiveLayer();
+		UndoHandler.getInstance().addUndoStep(now);
 
-		    // // remove filter
-		    // javax.swing.RowFilter<? super TableModel, ? super Integer> filter = tableSorter.getRowFilter();
-		    // tableSorter.setRowFilter(null);
-
-		    List<RegionOfInterest> now = (List<RegionOfInterest>) IGV.getInstance().getSession()
-			    .getAllRegionsOfInterest();
-		    UndoHandler.getInstance().addUndoStep(now);
-
-		    // load from regions of interest
-		    for (RegionOfInterest r : now) {
-			List<Object> d = new ArrayList<>();
-			// NOTE: display a normalized version of the chr string for hg19
-			boolean defGenome = GenomeManager.getInstance().getCurrentGenome().getId()
-				.equals(Globals.DEFAULT_GENOME);
-			for (Object o : new Object[] {
-				defGenome ? CanonicalChromsomeComparator.getCanonicalMappingHuman(r.getChr())
-					: r.getChr(),
-				r.getStart(), r.getEnd(), getIntervalWidth(r.getEnd() - r.getStart()), getChromBand(r),
-				"View", "Delete", (r.getDescription() == null ? "-" : r.getDescription()),
-				(r.getScore() == null ? 0d : r.getScore()),
-				(r.getStrand() == null ? "0" : r.getStrand()),
-				(r.getColor() == null ? "-" : r.getColor()),
-				(activeLayer.getLinkedROIs().contains(r) ? "1" : "0") })
-			    d.add(o);
-
-			for (String s : activeLayer.getAnnotations()) {
-			    String v = r.getAnnotation(s);
-			    d.add(v == null ? "" : v);
+		// NOTE: display a normalized version of the chr string for hg19
+		final boolean defGenome = GenomeManager.getInstance().getCurrentGenome().getId()
+			.equals(Globals.DEFAULT_GENOME);
+		final Set<RegionOfInterest> linked = new HashSet<>(activeLayer.getLinkedROIs());
+		final String[] annotations = activeLayer.getAnnotations().clone();
+
+		tableLoader.execute(new Runnable() {
+		    public void run() {
+			final List<Vector<Object>> rows = new ArrayList<>(now.size());
+			for (RegionOfInterest r : now) {
+			    if (generation != reloadGeneration.get())
+				return;
+			    Vector<Object> d = new Vector<>(12 + annotations.length);
+			    for (Object o : new Object[] {
+				    defGenome ? CanonicalChromsomeComparator.getCanonicalMappingHuman(r.getChr())
+					    : r.getChr(),
+				    r.getStart(), r.getEnd(), getIntervalWidth(r.getEnd() - r.getStart()),
+				    getChromBand(r), "View", "Delete",
+				    (r.getDescription() == null ? "-" : r.getDescription()),
+				    (r.getScore() == null ? 0d : r.getScore()),
+				    (r.getStrand() == null ? "0" : r.getStrand()),
+				    (r.getColor() == null ? "-" : r.getColor()), (linked.contains(r) ? "1" : "0") })
+				d.add(o);
+
+			    for (String s : annotations) {
+				String v = r.getAnnotation(s);
+				d.add(v == null ? "" : v);
+			    }
+			    rows.add(d);
 			}
-			model.addRow(d.toArray());
-		    }
-		    // tableSorter.setRowFilter(filter);
-
-		    testActionListenerActive = false;
-		    layerCombo.removeAllItems();
-		    Iterator<String> lns = GIE.getInstance().getActiveDataset().getCurrentVersion().getLayers().keySet()
-			    .iterator();
-		    String al = activeLayer.getLayerName();
-		    String aln = null;
-		    int i = 1;
-		    while (lns.hasNext()) {
-			String ln = lns.next();
-			String visibleLn = i + ": " + ln;
-			layerCombo.addItem(visibleLn);
-			if (ln.equals(al))
-			    aln = visibleLn;
-			i++;
-		    }
-		    if (aln != null) {
-			layerCombo.setSelectedItem(aln);
-		    }
-		    if (al != null && al.equals(GIEDatasetVersion.defaultLayerName)) {
-			renLayerM.setEnabled(false);
-			delLayerM.setEnabled(false);
-		    } else {
-			renLayerM.setEnabled(true);
-			delLayerM.setEnabled(true);
+			java.awt.EventQueue.invokeLater(new Runnable() {
+			    public void run() {
+				if (generation == reloadGeneration.get())
+				    applyRows(rows, activeLayer);
+			    }
+			});
 		    }
-		    testActionListenerActive = true;
-		}
-
-		model.fireTableDataChanged();
-		resizeColumnWidth(table);
-		table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
-		// IGV.getInstance().revalidateTrackPanels();
+		});
 	    }
 	});
 
     }
 
+    /**
+     * Replaces the table content. Must be called on the event dispatch thread.
+     * 
+     * @param rows
+     * @param activeLayer
+     *            the layer the rows were built for, null if there is no active dataset
+     */
+    @SuppressWarnings("unchecked")
+    private void applyRows(List<Vector<Object>> rows, GIEDatasetVersionLayer activeLayer) {
+	setUpComboColumn(table, table.getColumnModel().getColumn(COLIDX_Chr), IGV.getInstance().getChromNamesArray(),
+		null);
+
+	// fill the data vector directly and fire a single event rather than one per row
+	DefaultTableModel model = (DefaultTableModel) table.getModel();
+	model.getDataVector().clear();
+	for (Vector<Object> d : rows) {
+	    d.setSize(model.getColumnCount());
+	    model.getDataVector().add(d);
+	}
+	if (activeLayer != null) {
+	    testActionListenerActive = false;
+	    layerCombo.removeAllItems();
+	    Iterator<String> lns = GIE.getInstance().getActiveDataset().getCurrentVersion().getLayers().keySet()
+		    .iterator();
+	    String al = activeLayer.getLayerName();
+	    String aln = null;
+	    int i = 1;
+	    while (lns.hasNext()) {
+		String ln = lns.next();
+		String visibleLn = i + ": " + ln;
+		layerCombo.addItem(visibleLn);
+		if (ln.equals(al))
+		    aln = visibleLn;
+		i++;
+	    }
+	    if (aln != null) {
+		layerCombo.setSelectedItem(aln);
+	    }
+	    if (al != null && al.equals(GIEDatasetVersion.defaultLayerName)) {
+		renLayerM.setEnabled(false);
+		delLayerM.setEnabled(false);
+	    } else {
+		renLayerM.setEnabled(true);
+		delLayerM.setEnabled(true);
+	    }
+	    testActionListenerActive = true;
+	}
+
+	model.fireTableDataChanged();
+	resizeColumnWidth(table);
+	table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+	// IGV.getInstance().revalidateTrackPanels();
+    }
+
     /**
      * 
      * @return the real index of the currently selected table rows.
@@ -430,6 +483,7 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
 	    loadCytobands();
 	    firstCytobandLoad = true;
 	}
+	RegionOfInterestTree cytobands = this.cytobands;
 	if (cytobands == null)
 	    return "-";
 	List<Interval<RegionOfInterest>> hits = cytobands.queryOverlapping(reg);
@@ -1293,7 +1347,7 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
     }
 
     private void loadCytobands() {
-	cytobands = new RegionOfInterestTree();
+	RegionOfInterestTree cytobands = new RegionOfInterestTree();
 	Genome g = GenomeManager.getInstance().getCurrentGenome();
 	if (g != null) {
 	    List<RegionOfInterest> rois = new ArrayList<>();
@@ -1310,6 +1364,7 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
 	    }
 	    cytobands = new RegionOfInterestTree(rois);
 	}
+	this.cytobands = cytobands;
     }
 
     @Override
@@ -1333,6 +1388,8 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
 
     @Override
     public void update(Observable o, Object arg) {
+	if (arg instanceof RegionsOfInterestChange && ((RegionsOfInterestChange) arg).isEmpty())
+	    return;
 	reloadTable();
     }
 
@@ -1340,7 +1397,6 @@ public class GIEDataDialog extends JDialog implements Observer, IGVEventObserver
 	if (selectedRegions == null || selectedRegions.size() == 0)
 	    return;
 	IGV.getInstance().getSession().removeROI(selectedRegions);
-	reloadTable();
     }
 
     /**
@@ -1,7 +1,9 @@
 package at.ccri.varan.ui;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 
 import org.broad.igv.feature.RegionOfInterest;
@@ -43,11 +45,13 @@ public class UndoHandler {
 	    toadd = now;
 	} else {
 	    // calculate diff
+	    Set<RegionOfInterest> previousSet = new HashSet<>(previous);
+	    Set<RegionOfInterest> nowSet = new HashSet<>(now);
 	    for (RegionOfInterest r : now)
-		if (!previous.contains(r))
+		if (!previousSet.contains(r))
 		    toadd.add(r);
 	    for (RegionOfInterest r : previous)
-		if (!now.contains(r))
+		if (!nowSet.contains(r))
 		    todel.add(r);
 	}
 	previous = now;
@@ -1,10 +1,13 @@
 package at.ccri.varan.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.broad.igv.feature.IGVFeature;
 import org.broad.igv.feature.Range;
@@ -117,7 +120,8 @@ public class IntervalTools {
 	    if (p != null && p.getRange().overlaps(r.getRange())) {
 		p = mergeROI(p, r);
 	    } else {
-		ret.add(p);
+		if (p != null)
+		    ret.add(p);
 		p = r;
 	    }
 	}
@@ -126,6 +130,111 @@ public class IntervalTools {
 	return ret;
     }
 
+    /**
+     * Intersect two interval lists. Returns the parts of the intervals in {@code reg} that are covered by
+     * {@code mask}, clipped copies keep all other properties of the original interval.
+     * 
+     * @param reg
+     * @param mask
+     * @return
+     */
+    public static List<RegionOfInterest> intersect(Collection<RegionOfInterest> reg,
+	    Collection<RegionOfInterest> mask) {
+	return clip(reg, mask, true);
+    }
+
+    /**
+     * Subtract two interval lists. Returns the parts of the intervals in {@code reg} that are not covered by
+     * {@code mask}, clipped copies keep all other properties of the original interval.
+     * 
+     * @param reg
+     * @param mask
+     * @return
+     */
+    public static List<RegionOfInterest> subtract(Collection<RegionOfInterest> reg,
+	    Collection<RegionOfInterest> mask) {
+	return clip(reg, mask, false);
+    }
+
+    private static List<RegionOfInterest> clip(Collection<RegionOfInterest> reg, Collection<RegionOfInterest> mask,
+	    boolean keepCovered) {
+	Map<String, int[]> union = union(mask);
+	List<RegionOfInterest> ret = new ArrayList<>();
+	for (RegionOfInterest r : reg) {
+	    int[] bounds = union.get(r.getChr());
+	    if (bounds == null) {
+		if (!keepCovered)
+		    ret.add(r.deepClone());
+		continue;
+	    }
+	    // bounds holds sorted, disjoint [start, end) pairs; find the first one ending after r starts
+	    int lo = 0, hi = bounds.length / 2;
+	    while (lo < hi) {
+		int mid = (lo + hi) >>> 1;
+		if (bounds[2 * mid + 1] <= r.getStart())
+		    lo = mid + 1;
+		else
+		    hi = mid;
+	    }
+	    int pos = r.getStart();
+	    for (int i = lo; i < bounds.length / 2 && bounds[2 * i] < r.getEnd(); i++) {
+		int start = Math.max(bounds[2 * i], r.getStart());
+		int end = Math.min(bounds[2 * i + 1], r.getEnd());
+		if (keepCovered)
+		    addClipped(ret, r, start, end);
+		else
+		    addClipped(ret, r, pos, start);
+		pos = end;
+	    }
+	    if (!keepCovered)
+		addClipped(ret, r, pos, r.getEnd());
+	}
+	return ret;
+    }
+
+    private static void addClipped(List<RegionOfInterest> ret, RegionOfInterest r, int start, int end) {
+	if (end <= start)
+	    return;
+	RegionOfInterest c = r.deepClone();
+	c.setStart(start);
+	c.setEnd(end);
+	ret.add(c);
+    }
+
+    /**
+     * @return chr -> sorted, disjoint [start, end) pairs covering the passed intervals
+     */
+    private static Map<String, int[]> union(Collection<RegionOfInterest> reg) {
+	Map<String, List<RegionOfInterest>> byChr = new HashMap<>();
+	for (RegionOfInterest r : reg) {
+	    List<RegionOfInterest> l = byChr.get(r.getChr());
+	    if (l == null) {
+		l = new ArrayList<>();
+		byChr.put(r.getChr(), l);
+	    }
+	    l.add(r);
+	}
+	Map<String, int[]> ret = new HashMap<>();
+	for (Map.Entry<String, List<RegionOfInterest>> e : byChr.entrySet()) {
+	    List<RegionOfInterest> l = e.getValue();
+	    Collections.sort(l);
+	    int[] bounds = new int[2 * l.size()];
+	    int n = 0;
+	    for (RegionOfInterest r : l) {
+		if (r.getEnd() <= r.getStart())
+		    continue;
+		if (n > 0 && r.getStart() <= bounds[n - 1]) {
+		    bounds[n - 1] = Math.max(bounds[n - 1], r.getEnd());
+		} else {
+		    bounds[n++] = r.getStart();
+		    bounds[n++] = r.getEnd();
+		}
+	    }
+	    ret.put(e.getKey(), Arrays.copyOf(bounds, n));
+	}
+	return ret;
+    }
+
     /**
      * Splits a list of overlapping intervals into individual (sorted) sets/layers.
      * 
@@ -0,0 +1,397 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.batch;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.apache.log4j.Logger;
+import org.broad.igv.event.IGVEventBus;
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.renderer.GraphicUtils;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.Track;
+import org.broad.igv.track.TrackGroup;
+import org.broad.igv.ui.FontManager;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.ui.panel.DataPanelPainter;
+import org.broad.igv.ui.panel.FrameManager;
+import org.broad.igv.ui.panel.MainPanel;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.ui.panel.RulerPanel;
+import org.broad.igv.ui.panel.TrackPanel;
+import org.broad.igv.ui.util.SnapshotUtilities;
+import org.w3c.dom.Document;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Renders snapshots of many regions without moving the current view.  Each region is loaded into,  and painted
+ * with,  a private copy of the default {@link ReferenceFrame}.  Data for upcoming regions is loaded while earlier
+ * ones are painted,  and images are encoded on a worker pool.
+ * <p/>
+ * Painting shares the render state of the tracks (e.g. the genotype strips of variant tracks),  which is not thread
+ * safe.  Regions are therefore painted one at a time on the event dispatch thread,  like the panels themselves.
+ * <p/>
+ * Snapshots show the locus,  a ruler,  and the name and data panels of each track panel.  The attribute panel is
+ * not included.
+ */
+public class BatchSnapshotRenderer {
+
+    private static Logger log = Logger.getLogger(BatchSnapshotRenderer.class);
+
+    private static final int HEADER_HEIGHT = 50;
+
+    private static final int DEFAULT_DATA_PANEL_WIDTH = 1000;
+
+    private final File directory;
+    private final boolean svg;
+    private final int nThreads;
+    private final int nameWidth;
+    private final int dataWidth;
+
+    /**
+     * @param directory directory for the snapshot files
+     * @param format    "png" or "svg"
+     * @param nThreads  number of regions loaded and encoded concurrently
+     */
+    public BatchSnapshotRenderer(File directory, String format, int nThreads) {
+        if (!format.equalsIgnoreCase("png") && !format.equalsIgnoreCase("svg")) {
+            throw new IllegalArgumentException("Unsupported snapshot format: " + format);
+        }
+        this.directory = directory;
+        this.svg = format.equalsIgnoreCase("svg");
+        this.nThreads = Math.max(1, nThreads);
+
+        MainPanel mainPanel = IGV.getInstance().getMainPanel();
+        this.nameWidth = mainPanel.getNamePanelWidth();
+        this.dataWidth = mainPanel.getDataPanelWidth() > 0 ? mainPanel.getDataPanelWidth() : DEFAULT_DATA_PANEL_WIDTH;
+    }
+
+    /**
+     * Write a snapshot of each region to the snapshot directory,  named after its locus.  Regions on chromosomes
+     * not in the current genome are skipped.
+     *
+     * @return the number of snapshots written
+     */
+    public int render(List<RegionOfInterest> regions) {
+
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        final List<RegionOfInterest> validRegions = new ArrayList<RegionOfInterest>(regions.size());
+        final List<File> files = new ArrayList<File>(regions.size());
+        Set<String> names = new HashSet<String>();
+        for (RegionOfInterest region : regions) {
+            if (genome == null || genome.getChromosome(region.getChr()) == null) {
+                log.info("Skipping snapshot of " + region.getLocusString() + ", unknown chromosome");
+                continue;
+            }
+            String name = region.getChr() + "_" + (region.getStart() + 1) + "_" + region.getEnd();
+            String uniqueName = name;
+            for (int n = 2; !names.add(uniqueName); n++) {
+                uniqueName = name + "_" + n;
+            }
+            validRegions.add(region);
+            files.add(new File(directory, uniqueName + (svg ? ".svg" : ".png")));
+        }
+
+        // Each slot is a frame in use by one region from loading until its image is written.  Twice as many slots
+        // as loading threads lets the next regions load while the current ones are painted and encoded.
+        int nSlots = 2 * nThreads;
+        final Slot[] slots = new Slot[nSlots];
+        ReferenceFrame defaultFrame = FrameManager.getDefaultFrame();
+        for (int s = 0; s < nSlots; s++) {
+            ReferenceFrame frame = new ReferenceFrame(defaultFrame, "snapshot " + s, new IGVEventBus());
+            frame.setBounds(0, dataWidth);
+            slots[s] = new Slot(frame);
+        }
+
+        ExecutorService loader = newExecutor("Snapshot loader", nThreads);
+        // If called on the event dispatch thread it is blocked until we are done,  so a single other thread can
+        // paint without racing it
+        final ExecutorService painterThread = SwingUtilities.isEventDispatchThread() ?
+                newExecutor("Snapshot painter", 1) : null;
+        Executor painter = painterThread != null ? painterThread : new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                SwingUtilities.invokeLater(command);
+            }
+        };
+        ExecutorService encoder = newExecutor("Snapshot encoder", nThreads);
+        try {
+            return run(validRegions.size(), nSlots, new Stages<Object>() {
+                @Override
+                public void load(int index, int slot) {
+                    BatchSnapshotRenderer.this.load(slots[slot], validRegions.get(index));
+                }
+
+                @Override
+                public Object paint(int index, int slot) {
+                    return BatchSnapshotRenderer.this.paint(slots[slot], validRegions.get(index));
+                }
+
+                @Override
+                public void write(int index, Object snapshot) throws IOException {
+                    BatchSnapshotRenderer.this.write(snapshot, files.get(index));
+                }
+            }, loader, painter, encoder);
+        } finally {
+            loader.shutdown();
+            if (painterThread != null) painterThread.shutdown();
+            encoder.shutdown();
+            // Let tracks drop data cached for the snapshot frames
+            IGVEventBus.getInstance().post(new FrameManager.ChangeEvent(FrameManager.getFrames()));
+        }
+    }
+
+    /**
+     * The stages of rendering one region.  Stages of different regions run concurrently.
+     */
+    interface Stages<S> {
+
+        void load(int index, int slot) throws Exception;
+
+        S paint(int index, int slot) throws Exception;
+
+        void write(int index, S snapshot) throws Exception;
+    }
+
+    /**
+     * Run the stages for regions 0 to n-1.  Region i uses slot i % nSlots,  and is not loaded before region
+     * i - nSlots has been written.  A region that fails is logged and skipped.
+     *
+     * @return the number of regions written
+     */
+    static <S> int run(int n, final int nSlots, final Stages<S> stages,
+                       Executor loader, final Executor painter, final Executor encoder) {
+
+        List<CompletableFuture<Boolean>> written = new ArrayList<CompletableFuture<Boolean>>(n);
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            final int slot = i % nSlots;
+            CompletableFuture<Boolean> previous = i >= nSlots ?
+                    written.get(i - nSlots) : CompletableFuture.completedFuture(true);
+
+            CompletableFuture<Boolean> result = previous
+                    .thenRunAsync(() -> call(() -> {
+                        stages.load(index, slot);
+                        return null;
+                    }), loader)
+                    .thenApplyAsync(v -> call(() -> stages.paint(index, slot)), painter)
+                    .thenAcceptAsync(snapshot -> call(() -> {
+                        stages.write(index, snapshot);
+                        return null;
+                    }), encoder)
+                    .handle((v, e) -> {
+                        if (e != null) {
+                            log.error("Error creating snapshot " + index, e.getCause() != null ? e.getCause() : e);
+                        }
+                        return e == null;
+                    });
+            written.add(result);
+        }
+
+        int count = 0;
+        for (CompletableFuture<Boolean> f : written) {
+            if (f.join()) count++;
+        }
+        return count;
+    }
+
+    private static <T> T call(Callable<T> callable) {
+        try {
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static ExecutorService newExecutor(final String name, int nThreads) {
+        return Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " " + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private void load(Slot slot, RegionOfInterest region) {
+        ReferenceFrame frame = slot.frame;
+        frame.jumpTo(region.getChr(), region.getStart(), region.getEnd());
+        for (TrackPanel tp : IGV.getInstance().getTrackPanels()) {
+            for (Track track : visibleTracks(tp)) {
+                if (!track.isReadyToPaint(frame)) {
+                    track.load(frame);
+                }
+            }
+        }
+    }
+
+    private Object paint(Slot slot, RegionOfInterest region) {
+
+        List<TrackPanel> panels = new ArrayList<TrackPanel>();
+        List<Integer> heights = new ArrayList<Integer>();
+        int height = HEADER_HEIGHT;
+        int maxPanelHeight = SnapshotUtilities.getMaxPanelHeight();
+        for (TrackPanel tp : IGV.getInstance().getTrackPanels()) {
+            if (!tp.hasTracks()) continue;
+            int h = tp.getPreferredPanelHeight();
+            if (maxPanelHeight > 0) h = Math.min(h, maxPanelHeight);
+            if (h <= 0) continue;
+            panels.add(tp);
+            heights.add(h);
+            height += h;
+        }
+        int width = nameWidth + dataWidth;
+
+        if (svg) {
+            Document document = GenericDOMImplementation.getDOMImplementation()
+                    .createDocument("http://www.w3.org/2000/svg", "svg", null);
+            SVGGraphics2D g = new SVGGraphics2D(document);
+            g.setSVGCanvasSize(new Dimension(width, height));
+            paint(g, slot, region, panels, heights, width, height);
+            return g;
+        } else {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            try {
+                paint(g, slot, region, panels, heights, width, height);
+            } finally {
+                g.dispose();
+            }
+            return image;
+        }
+    }
+
+    private void paint(Graphics2D g, Slot slot, RegionOfInterest region, List<TrackPanel> panels,
+                       List<Integer> heights, int width, int height) {
+
+        ReferenceFrame frame = slot.frame;
+
+        g.setColor(Color.white);
+        g.fillRect(0, 0, width, height);
+
+        // Header -- locus and description on the left,  ruler over the data panel
+        g.setColor(Color.black);
+        g.setFont(FontManager.getFont(Font.BOLD, 12));
+        Rectangle locusRect = new Rectangle(0, 0, nameWidth, HEADER_HEIGHT / 2);
+        GraphicUtils.drawCenteredText(region.getLocusString(), locusRect, g);
+        String description = region.getDescription();
+        if (description != null && description.length() > 0) {
+            g.setFont(FontManager.getFont(11));
+            GraphicUtils.drawCenteredText(description, new Rectangle(0, HEADER_HEIGHT / 2, nameWidth, HEADER_HEIGHT / 2), g);
+        }
+        Graphics2D rulerGraphics = (Graphics2D) g.create(nameWidth, 0, dataWidth, HEADER_HEIGHT);
+        try {
+            slot.ruler.setSize(dataWidth, HEADER_HEIGHT);
+            slot.ruler.paint(rulerGraphics);
+        } finally {
+            rulerGraphics.dispose();
+        }
+
+        int y = HEADER_HEIGHT;
+        for (int p = 0; p < panels.size(); p++) {
+            TrackPanel tp = panels.get(p);
+            int h = heights.get(p);
+
+            Graphics2D nameGraphics = (Graphics2D) g.create(0, y, nameWidth, h);
+            try {
+                // The name panel records the extents of groups as it paints
+                synchronized (tp.getNamePanel()) {
+                    tp.getNamePanel().paintOffscreen(nameGraphics, new Rectangle(0, 0, nameWidth, h));
+                }
+            } finally {
+                nameGraphics.dispose();
+            }
+
+            Graphics2D dataGraphics = (Graphics2D) g.create(nameWidth, y, dataWidth, h);
+            Rectangle dataRect = new Rectangle(0, 0, dataWidth, h);
+            RenderContext context = new RenderContext(null, dataGraphics, frame, dataRect);
+            try {
+                slot.painter.paint(new ArrayList<TrackGroup>(tp.getGroups()), context, dataWidth, Color.white, dataRect);
+                dataGraphics.setColor(Color.darkGray);
+                dataGraphics.drawRect(0, 0, dataWidth - 1, h - 1);
+            } finally {
+                context.dispose();
+                dataGraphics.dispose();
+            }
+
+            y += h;
+        }
+    }
+
+    private void write(Object snapshot, File file) throws IOException {
+        if (snapshot instanceof SVGGraphics2D) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                ((SVGGraphics2D) snapshot).stream(out, true);
+            } finally {
+                out.close();
+            }
+        } else {
+            ImageIO.write((BufferedImage) snapshot, "png", file);
+        }
+    }
+
+    private static List<Track> visibleTracks(TrackPanel tp) {
+        List<Track> tracks = new ArrayList<Track>();
+        for (TrackGroup group : tp.getGroups()) {
+            if (group.isVisible()) {
+                tracks.addAll(group.getVisibleTracks());
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * A frame with its own ruler and painter,  so that a region can be painted while its frame is not in use by
+     * the main panels.
+     */
+    private static class Slot {
+        final ReferenceFrame frame;
+        final RulerPanel ruler;
+        final DataPanelPainter painter;
+
+        Slot(ReferenceFrame frame) {
+            this.frame = frame;
+            this.ruler = new RulerPanel(frame);
+            this.painter = new DataPanelPainter();
+        }
+    }
+}
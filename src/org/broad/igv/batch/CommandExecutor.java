@@ -30,6 +30,7 @@
 
 package org.broad.igv.batch;
 
+import at.ccri.varan.GIEBatchCommand;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.dev.api.batch.Command;
@@ -62,6 +63,7 @@ import java.net.URISyntaxException;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 public class CommandExecutor {
@@ -71,13 +73,24 @@ public class CommandExecutor {
     private File snapshotDirectory;
     private IGV igv;
     private int sleepInterval = 2000;
+    private Executor commandQueue;
 
 
     public CommandExecutor() {
-        igv = IGV.getInstance();
+        this(null);
     }
 
-    private List<String> getArgs(String[] tokens) {
+    /**
+     * @param commandQueue executes commands queued by other commands ("gie submit") after the current command.  If
+     *                     null queued commands are executed immediately.
+     */
+    public CommandExecutor(Executor commandQueue) {
+        // Commands which need the IGV window fail without one,  others (e.g. "gie") can run headless
+        igv = IGV.hasInstance() ? IGV.getInstance() : null;
+        this.commandQueue = commandQueue;
+    }
+
+    private static List<String> getArgs(String[] tokens) {
         List<String> args = new ArrayList(tokens.length);
         for (String s : tokens) {
             if (s.trim().length() > 0) {
@@ -87,6 +100,97 @@ public class CommandExecutor {
         return args;
     }
 
+    /**
+     * GIE subcommands that do not change IGV state.
+     */
+    private static final Set<String> READ_ONLY_GIE_COMMANDS = new HashSet<String>(
+            Arrays.asList("list", "stats", "status", "wait"));
+
+    /**
+     * Return true if {@code command} only reads IGV state.  Such commands can be answered concurrently with other
+     * commands via {@link #executeReadOnly(String)}, without the refresh and sleep that follow other commands.
+     *
+     * @param command
+     * @return
+     */
+    static boolean isReadOnly(String command) {
+        List<String> args = getArgs(StringUtils.breakQuotedString(command, ' ').toArray(new String[]{}));
+        if (args.size() == 0) {
+            return false;
+        }
+        String cmd = args.get(0).toLowerCase();
+        return cmd.equals("echo") || cmd.equals("version") || cmd.equals("regions") ||
+                (cmd.equals("gie") && args.size() > 1 && READ_ONLY_GIE_COMMANDS.contains(args.get(1).toLowerCase()));
+    }
+
+    /**
+     * Return true if {@code command} is a read-only command that may block until other commands are done
+     * ("gie wait").
+     *
+     * @param command
+     * @return
+     */
+    static boolean isBlocking(String command) {
+        List<String> args = getArgs(StringUtils.breakQuotedString(command, ' ').toArray(new String[]{}));
+        return args.size() > 1 && args.get(0).equalsIgnoreCase("gie") && args.get(1).equalsIgnoreCase("wait");
+    }
+
+    /**
+     * Execute a command for which {@link #isReadOnly(String)} is true.
+     *
+     * @param command
+     * @return
+     */
+    static String executeReadOnly(String command) {
+        List<String> args = getArgs(StringUtils.breakQuotedString(command, ' ').toArray(new String[]{}));
+        String cmd = args.get(0).toLowerCase();
+        String param1 = args.size() > 1 ? args.get(1) : null;
+        if (cmd.equals("echo")) {
+            return cmd;
+        } else if (cmd.equals("version")) {
+            return Globals.VERSION;
+        } else if (cmd.equals("regions")) {
+            return regions(param1);
+        } else if (cmd.equals("gie")) {
+            return new GIEBatchCommand().run(args.subList(1, args.size()));
+        } else {
+            return "UNKOWN COMMAND: " + command;
+        }
+    }
+
+    /**
+     * With no argument, return the number of regions of interest.  Otherwise return the regions of interest
+     * overlapping the locus or chromosome {@code locusString} as a comma separated list of loci.
+     *
+     * @param locusString
+     * @return
+     */
+    static String regions(String locusString) {
+        if (locusString == null) {
+            return String.valueOf(IGV.getInstance().getSession().getAllRegionsOfInterest().size());
+        }
+        Locus locus = Locus.fromString(locusString);
+        String chr = locus != null ? locus.getChr() : locusString;
+        int start = locus != null ? Math.max(0, locus.getStart() - 1) : 0;
+        int end = locus != null ? locus.getEnd() : Integer.MAX_VALUE;
+        if (GenomeManager.getInstance().getCurrentGenome() != null) {
+            chr = GenomeManager.getInstance().getCurrentGenome().getCanonicalChrName(chr);
+        }
+
+        Collection<RegionOfInterest> rois = IGV.getInstance().getSession().getRegionsOfInterest(chr);
+        StringBuilder buf = new StringBuilder();
+        if (rois != null) {
+            // toArray does not fail if another thread modifies the list concurrently
+            for (RegionOfInterest roi : rois.toArray(new RegionOfInterest[0])) {
+                if (roi != null && roi.getStart() < end && roi.getEnd() > start) {
+                    if (buf.length() > 0) buf.append(",");
+                    buf.append(roi.getLocusString());
+                }
+            }
+        }
+        return buf.toString();
+    }
+
     private String executeCustomCommand(String cmd, List<String> args) {
 
         List<String> subArgs = Collections.emptyList();
@@ -142,6 +246,8 @@ public class CommandExecutor {
                 } else if (cmd.equalsIgnoreCase("snapshot")) {
                     String filename = param1;
                     result = createSnapshot(filename, param2);
+                } else if (cmd.equalsIgnoreCase("snapshotregions")) {
+                    result = createRegionSnapshots(param1, param2);
                 } else if ((cmd.equalsIgnoreCase("loadfile") || cmd.equalsIgnoreCase("load")) && param1 != null) {
                     result = load(param1, param2, param3, param4);
                 } else if (cmd.equalsIgnoreCase("genome") && args.size() > 1) {
@@ -188,6 +294,10 @@ public class CommandExecutor {
                     return this.clearCredentials();
                 } else if (cmd.equals("preference")) {
                     return this.overridePreference(param1, param2);
+                } else if (cmd.equalsIgnoreCase("regions")) {
+                    return regions(param1);
+                } else if (cmd.equalsIgnoreCase("gie")) {
+                    result = new GIEBatchCommand(commandQueue).run(args.subList(1, args.size()));
                 } else if (cmd.equalsIgnoreCase("version")) {
                     return Globals.VERSION;
                 } else if (cmd.equals("exit")) {
@@ -209,7 +319,9 @@ public class CommandExecutor {
                     return result;
                 }
             }
-            igv.doRefresh();
+            if (igv != null) {
+                igv.doRefresh();
+            }
 
             if (RuntimeUtils.getAvailableMemoryFraction() < 0.5) {
                 log.debug("Running garbage collection");
@@ -882,6 +994,37 @@ public class CommandExecutor {
     }
 
 
+    /**
+     * Snapshot every region of interest into the snapshot directory,  without changing the current view.
+     *
+     * @param format   "png" (default) or "svg"
+     * @param nThreads number of regions loaded and encoded concurrently,  defaults to the number of processors
+     */
+    private String createRegionSnapshots(String format, String nThreads) {
+
+        if (snapshotDirectory == null) {
+            return "ERROR: snapshot directory not set";
+        }
+        if (format == null) {
+            format = "png";
+        } else if (!format.equalsIgnoreCase("png") && !format.equalsIgnoreCase("svg")) {
+            return "ERROR: snapshot format has to be png or svg";
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (nThreads != null) {
+            try {
+                threads = Integer.parseInt(nThreads);
+            } catch (NumberFormatException e) {
+                return "ERROR: invalid number of threads " + nThreads;
+            }
+        }
+
+        List<RegionOfInterest> regions = new ArrayList<>(igv.getSession().getAllRegionsOfInterest());
+        int count = new BatchSnapshotRenderer(snapshotDirectory, format, threads).render(regions);
+        return count == regions.size() ? "OK " + count : "ERROR: " + (regions.size() - count) + " of " +
+                regions.size() + " snapshots failed, see igv.log";
+    }
+
     private static void createParents(File outputFile) {
         File parent = outputFile.getParentFile();
         if (!parent.exists()) {
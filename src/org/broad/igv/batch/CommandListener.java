@@ -41,6 +41,9 @@ import java.net.URLDecoder;
 import java.nio.channels.ClosedByInterruptException;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommandListener implements Runnable {
 
@@ -50,14 +53,70 @@ public class CommandListener implements Runnable {
 
     private static Logger log = Logger.getLogger(CommandListener.class);
 
-    private static CommandListener listener;
+    private static volatile CommandListener listener;
     private static final String CRLF = "\r\n";
 
     private int port = -1;
     private ServerSocket serverSocket = null;
-    private Socket clientSocket = null;
     private Thread listenerThread;
-    boolean halt = false;
+    volatile boolean halt = false;
+
+    /**
+     * Client sessions, one thread per connected client.
+     */
+    private final ExecutorService clientPool = Executors.newCachedThreadPool(new NamedThreadFactory("IGV port client"));
+
+    /**
+     * Serializes commands that change IGV state.
+     */
+    private final ExecutorService commandQueue = Executors.newSingleThreadExecutor(new NamedThreadFactory("IGV port command") {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            commandThread = t;
+            return t;
+        }
+    });
+
+    /**
+     * The thread of the command queue,  see {@link #isCommandThread()}
+     */
+    private volatile Thread commandThread;
+
+    /**
+     * Runs commands queued by other commands (e.g. "gie submit") on the command queue, after the current command.
+     */
+    private final Executor queuedCommands = new Executor() {
+        public void execute(final Runnable command) {
+            commandQueue.execute(new Runnable() {
+                public void run() {
+                    Globals.setBatch(true);
+                    Globals.setSuppressMessages(true);
+                    try {
+                        command.run();
+                    } finally {
+                        Globals.setSuppressMessages(false);
+                        Globals.setBatch(false);
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * Runs read-only commands sent with a request id.  Commands that may block ("gie wait") run on the client pool
+     * instead, so they cannot hold up the other queries.
+     */
+    private final ExecutorService queryPool = Executors.newFixedThreadPool(QUERY_THREADS, new NamedThreadFactory("IGV port query"));
+
+    private static final int QUERY_THREADS = 4;
+
+    private final Set<Socket> clientSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    /**
+     * Only accessed from the command queue thread
+     */
+    private CommandExecutor cmdExe;
 
 
     /**
@@ -85,38 +144,64 @@ public class CommandListener implements Runnable {
             listener.halt = true;
             listener.listenerThread.interrupt();
             listener.closeSockets();
+            listener.clientPool.shutdownNow();
+            listener.commandQueue.shutdownNow();
+            listener.queryPool.shutdownNow();
             listener = null;
+            currentListenerPort = -1;
         }
     }
 
+    /**
+     * Return true if called on the thread that executes the commands which change IGV state.  Commands running on
+     * it must not wait for commands queued behind them.
+     */
+    public static boolean isCommandThread() {
+        CommandListener l = listener;
+        return l != null && Thread.currentThread() == l.commandThread;
+    }
+
     private CommandListener(int port) {
         this.port = port;
         listenerThread = new Thread(this);
     }
 
     /**
-     * Loop forever, processing client requests synchronously.  The server is single threaded.
+     * Accept client connections until halted.  Each client session runs on its own thread.  Commands which change
+     * IGV state are executed one at a time on a single command thread; read-only commands (see
+     * {@link CommandExecutor#isReadOnly(String)}) are answered concurrently.
+     * <p/>
+     * A port command may be prefixed with a request id, e.g. "#12 goto chr1".  Such commands are executed
+     * asynchronously and the client may send further commands without waiting; the response is prefixed with the
+     * same id ("#12 OK") and responses may arrive out of order.  Commands without an id are answered in order.
      */
     public void run() {
 
-        CommandExecutor cmdExe = new CommandExecutor();
-
         try {
             serverSocket = new ServerSocket(port);
             log.info("Listening on port " + port);
             currentListenerPort = port;
 
             while (!halt) {
-                clientSocket = serverSocket.accept();
-                processClientSession(cmdExe);
-                if (clientSocket != null) {
-                    try {
-                        clientSocket.close();
-                        clientSocket = null;
-                    } catch (IOException e) {
-                        log.error("Error in client socket loop", e);
+                final Socket clientSocket = serverSocket.accept();
+                clientSockets.add(clientSocket);
+                clientPool.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            processClientSession(clientSocket);
+                        } catch (IOException | RuntimeException e) {
+                            // The pool would swallow runtime exceptions
+                            log.error("Error in client session", e);
+                        } finally {
+                            clientSockets.remove(clientSocket);
+                            try {
+                                clientSocket.close();
+                            } catch (IOException e) {
+                                log.error("Error in client socket loop", e);
+                            }
+                        }
                     }
-                }
+                });
             }
 
 
@@ -136,12 +221,13 @@ public class CommandListener implements Runnable {
     /**
      * Process a client session.  Loop continuously until client sends the "halt" message, or closes the connection.
      *
-     * @param cmdExe
+     * @param clientSocket
      * @throws IOException
      */
-    private void processClientSession(CommandExecutor cmdExe) throws IOException {
+    private void processClientSession(Socket clientSocket) throws IOException {
         PrintWriter out = null;
         BufferedReader in = null;
+        List<Future<?>> pending = new ArrayList<Future<?>>();
         try {
             out = new PrintWriter(clientSocket.getOutputStream(), true);
             in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
@@ -198,7 +284,22 @@ public class CommandListener implements Runnable {
                         // Process the request.
 
 
-                        String result = processGet(command, params, cmdExe);
+                        final String getCommand = command;
+                        final Map<String, String> getParams = params;
+                        String executeCommand = command.equals("/execute") && params.get("command") != null ?
+                                StringUtils.decodeURL(params.get("command")) : null;
+                        String result;
+                        if (executeCommand != null && CommandExecutor.isReadOnly(executeCommand)) {
+                            // As for port commands,  read-only commands are answered off the command queue.  A
+                            // "gie wait" on the queue would wait for a job queued behind it.
+                            result = CommandExecutor.executeReadOnly(executeCommand);
+                        } else {
+                            result = executeSerialized(new Callable<String>() {
+                                public String call() throws IOException {
+                                    return processGet(getCommand, getParams, getExecutor());
+                                }
+                            });
+                        }
 
                         // If no callback was specified write back response now
                         if (callback == null) {
@@ -212,35 +313,139 @@ public class CommandListener implements Runnable {
                     return;
                     // }
 
+                } else if (cmd.startsWith("#")) {
+                    // Pipelined port command with a request id
+                    String[] tokens = Globals.whitespacePattern.split(cmd, 2);
+                    String id = tokens[0];
+                    String command = tokens.length > 1 ? tokens[1] : "";
+                    // Forget commands which are done, to keep long sessions from accumulating futures
+                    Iterator<Future<?>> iter = pending.iterator();
+                    while (iter.hasNext()) {
+                        if (iter.next().isDone()) iter.remove();
+                    }
+                    pending.add(submitPortCommand(id, command, out));
                 } else {
                     // Port command
-                    Globals.setBatch(true);
-                    Globals.setSuppressMessages(true);
-                    final String response = cmdExe.execute(inputLine);
-                    out.println(response);
+                    final String response = executePortCommand(inputLine);
+                    synchronized (out) {
+                        out.println(response);
+                        out.flush();
+                    }
+                }
+            }
+        } finally {
+            // Wait for outstanding pipelined commands before closing the connection
+            for (Future<?> f : pending) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    log.error("Error executing command", e.getCause());
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+            if (out != null) out.close();
+            if (in != null) in.close();
+        }
+    }
+
+    /**
+     * Execute a port command and wait for the response.  Read-only commands run on the calling thread.
+     */
+    private String executePortCommand(final String command) throws IOException {
+        if (CommandExecutor.isReadOnly(command)) {
+            return CommandExecutor.executeReadOnly(command);
+        }
+        return executeSerialized(new Callable<String>() {
+            public String call() {
+                return executeBatchCommand(command);
+            }
+        });
+    }
+
+    /**
+     * Execute a port command asynchronously, writing "id response" when done.
+     */
+    private Future<?> submitPortCommand(final String id, final String command, final PrintWriter out) {
+        final boolean readOnly = CommandExecutor.isReadOnly(command);
+        Runnable task = new Runnable() {
+            public void run() {
+                String response;
+                try {
+                    response = readOnly ? CommandExecutor.executeReadOnly(command) : executeBatchCommand(command);
+                } catch (Exception e) {
+                    log.error("Error executing " + command, e);
+                    response = "ERROR " + e.getMessage();
+                }
+                synchronized (out) {
+                    out.println(id + " " + response);
                     out.flush();
                 }
             }
-        } catch (IOException e) {
-            log.error("Error processing client session", e);
+        };
+        if (!readOnly) {
+            return commandQueue.submit(task);
+        }
+        return CommandExecutor.isBlocking(command) ? clientPool.submit(task) : queryPool.submit(task);
+    }
+
+    /**
+     * Called on the command queue thread
+     */
+    private String executeBatchCommand(String command) {
+        Globals.setBatch(true);
+        Globals.setSuppressMessages(true);
+        try {
+            return getExecutor().execute(command);
         } finally {
             Globals.setSuppressMessages(false);
             Globals.setBatch(false);
-            if (out != null) out.close();
-            if (in != null) in.close();
+        }
+    }
+
+    /**
+     * Called on the command queue thread
+     */
+    private CommandExecutor getExecutor() {
+        if (cmdExe == null) {
+            cmdExe = new CommandExecutor(queuedCommands);
+        }
+        return cmdExe;
+    }
+
+    private String executeSerialized(Callable<String> task) throws IOException {
+        try {
+            return commandQueue.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for command");
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Command listener has been halted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
         }
     }
 
 
     private void closeSockets() {
-        if (clientSocket != null) {
+        for (Socket clientSocket : clientSockets) {
             try {
                 clientSocket.close();
-                clientSocket = null;
             } catch (IOException e) {
                 log.error("Error closing clientSocket", e);
             }
         }
+        clientSockets.clear();
 
         if (serverSocket != null) {
             try {
@@ -252,6 +457,22 @@ public class CommandListener implements Runnable {
         }
     }
 
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + " " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
 
     private static final String HTTP_RESPONSE = "HTTP/1.1 200 OK";
     private static final String HTTP_NO_RESPONSE = "HTTP/1.1 204 No Response";
@@ -297,12 +518,14 @@ public class CommandListener implements Runnable {
     private String processGet(String command, Map<String, String> params, CommandExecutor cmdExe) throws IOException {
 
         String result = OK;
-        final Frame mainFrame = IGV.getMainFrame();
+        final Frame mainFrame = IGV.hasInstance() ? IGV.getMainFrame() : null;
 
         // Trick to force window to front, the setAlwaysOnTop works on a Mac,  toFront() does nothing.
-        mainFrame.toFront();
-        mainFrame.setAlwaysOnTop(true);
-        mainFrame.setAlwaysOnTop(false);
+        if (mainFrame != null) {
+            mainFrame.toFront();
+            mainFrame.setAlwaysOnTop(true);
+            mainFrame.setAlwaysOnTop(false);
+        }
 
 
         if (command.equals("/load")) {
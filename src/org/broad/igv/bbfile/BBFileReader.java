@@ -29,8 +29,10 @@ import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
 import org.broad.igv.util.stream.IGVSeekableBufferedStream;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+import org.broad.igv.util.stream.SeekableFileChannelStream;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -94,6 +96,7 @@ public class BBFileReader {
     private static Logger log = Logger.getLogger(BBFileReader.class);
 
     private SeekableStream fis;      // BBFile input stream handle
+    private final boolean concurrentReads;  // true if fis supports concurrent seek/read from several threads
     private long fileOffset;           // file offset for next item to be read
 
     private BBFileHeader fileHeader; // Big Binary file header
@@ -126,7 +129,16 @@ public class BBFileReader {
 
         log.debug("Opening BBFile source  " + path);
 
-        fis = new IGVSeekableBufferedStream(IGVSeekableStreamFactory.getInstance().getStreamFor(path), 128000);
+        // Local files are read with positional reads through a per-thread buffer,  which allows iterators to be
+        // created and used concurrently.  Other streams keep a shared position and must be accessed one query at a
+        // time.
+        if (IGVSeekableStreamFactory.isLocalFile(path)) {
+            fis = new SeekableFileChannelStream(new File(path), 128000);
+            concurrentReads = true;
+        } else {
+            fis = new IGVSeekableBufferedStream(IGVSeekableStreamFactory.getInstance().getStreamFor(path), 128000);
+            concurrentReads = false;
+        }
 
         // read in file header
         fileOffset = BBFILE_HEADER_OFFSET;
@@ -314,8 +326,18 @@ public class BBFileReader {
      * 1) An empty iterator is returned if region has no data available
      * 2) A null object is returned if the file is not BigBed.(see isBigBedFile method)
      */
-    synchronized public BigBedIterator getBigBedIterator(String startChromosome, int startBase,
-                                                         String endChromosome, int endBase, boolean contained) {
+    public BigBedIterator getBigBedIterator(String startChromosome, int startBase,
+                                            String endChromosome, int endBase, boolean contained) {
+        if (concurrentReads) {
+            return createBigBedIterator(startChromosome, startBase, endChromosome, endBase, contained);
+        }
+        synchronized (this) {
+            return createBigBedIterator(startChromosome, startBase, endChromosome, endBase, contained);
+        }
+    }
+
+    private BigBedIterator createBigBedIterator(String startChromosome, int startBase,
+                                                String endChromosome, int endBase, boolean contained) {
 
         if (!isBigBedFile())
             return null;
@@ -356,8 +378,18 @@ public class BBFileReader {
      * 1) An empty iterator is returned if region has no data available
      * 2) A null object is returned if the file is not BigWig.(see isBigWigFile method)
      */
-    synchronized public BigWigIterator getBigWigIterator(String startChromosome, int startBase,
-                                                         String endChromosome, int endBase, boolean contained) {
+    public BigWigIterator getBigWigIterator(String startChromosome, int startBase,
+                                            String endChromosome, int endBase, boolean contained) {
+        if (concurrentReads) {
+            return createBigWigIterator(startChromosome, startBase, endChromosome, endBase, contained);
+        }
+        synchronized (this) {
+            return createBigWigIterator(startChromosome, startBase, endChromosome, endBase, contained);
+        }
+    }
+
+    private BigWigIterator createBigWigIterator(String startChromosome, int startBase,
+                                                String endChromosome, int endBase, boolean contained) {
 
 
         if (!isBigWigFile())
@@ -398,8 +430,18 @@ public class BBFileReader {
      * Error conditions:
      * 1) An empty iterator is returned if region has no data available
      */
-    synchronized public ZoomLevelIterator getZoomLevelIterator(int zoomLevel, String startChromosome, int startBase,
-                                                               String endChromosome, int endBase, boolean contained) {
+    public ZoomLevelIterator getZoomLevelIterator(int zoomLevel, String startChromosome, int startBase,
+                                                  String endChromosome, int endBase, boolean contained) {
+        if (concurrentReads) {
+            return createZoomLevelIterator(zoomLevel, startChromosome, startBase, endChromosome, endBase, contained);
+        }
+        synchronized (this) {
+            return createZoomLevelIterator(zoomLevel, startChromosome, startBase, endChromosome, endBase, contained);
+        }
+    }
+
+    private ZoomLevelIterator createZoomLevelIterator(int zoomLevel, String startChromosome, int startBase,
+                                                      String endChromosome, int endBase, boolean contained) {
         // check for valid zoom level
         if (zoomLevel < 1 || zoomLevel > zoomLevelCount)
             throw new RuntimeException("Error: ZoomLevelIterator zoom level is out of range\n");
@@ -436,7 +478,16 @@ public class BBFileReader {
      * Error conditions:
      * 1) An empty iterator is returned if region has no data available
      */
-    synchronized public ZoomLevelIterator getZoomLevelIterator(int zoomLevel) {
+    public ZoomLevelIterator getZoomLevelIterator(int zoomLevel) {
+        if (concurrentReads) {
+            return createZoomLevelIterator(zoomLevel);
+        }
+        synchronized (this) {
+            return createZoomLevelIterator(zoomLevel);
+        }
+    }
+
+    private ZoomLevelIterator createZoomLevelIterator(int zoomLevel) {
 
         // check for valid zoom level
         if (zoomLevel < 1 || zoomLevel > zoomLevelCount)
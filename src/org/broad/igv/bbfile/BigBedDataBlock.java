@@ -102,7 +102,7 @@ public class BigBedDataBlock {
             // decompress if necessary - the buffer size is 0 for uncompressed data
             // Note:  BBFile Table C specifies a decompression buffer size
             if (uncompressBufSize > 0)
-                bedBuffer = (new CompressionUtils()).decompress(buffer, uncompressBufSize);
+                bedBuffer = CompressionUtils.inflate(buffer, 0, buffer.length, uncompressBufSize);
             else
                 bedBuffer = buffer;    // use uncompressed read buffer directly
 
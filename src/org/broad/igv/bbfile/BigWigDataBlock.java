@@ -94,7 +94,7 @@ public class BigWigDataBlock {
             // decompress if necessary - the buffer size is 0 for uncompressed data
             // Note:  BBFile Table C specifies a decompression buffer size
             if(uncompressBufSize > 0)
-                wigBuffer = (new CompressionUtils()).decompress(buffer, uncompressBufSize);
+                wigBuffer = CompressionUtils.inflate(buffer, 0, buffer.length, uncompressBufSize);
             else
                 wigBuffer = buffer;    // use uncompressed read buffer directly
         }catch(IOException ex) {
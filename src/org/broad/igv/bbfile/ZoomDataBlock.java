@@ -103,7 +103,7 @@ public class ZoomDataBlock {
             // decompress if necessary - the buffer size is 0 for uncomressed data
             // Note:  BBFile Table C specifies a decompression buffer size
             if (uncompressBufSize > 0)
-                zoomBuffer = (new CompressionUtils()).decompress(buffer, uncompressBufSize);
+                zoomBuffer = CompressionUtils.inflate(buffer, 0, buffer.length, uncompressBufSize);
             else
                 zoomBuffer = buffer;    // use uncompressed read buffer directly
 
@@ -34,8 +34,6 @@ import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.tdf.Accumulator;
 import org.broad.igv.track.WindowFunction;
-import org.broad.igv.ui.panel.FrameManager;
-import org.broad.igv.util.collections.LRUCache;
 
 import java.util.*;
 
@@ -60,7 +58,7 @@ public abstract class AbstractDataSource implements DataSource {
     // DataManager dataManager;
     boolean cacheSummaryTiles = true;
     protected WindowFunction windowFunction = WindowFunction.mean;
-    LRUCache<String, SummaryTile> summaryTileCache = new LRUCache(10);
+    private final String cacheKey = SummaryTileCache.newSourceKey();
     protected Genome genome;
 
     public AbstractDataSource(Genome genome) {
@@ -172,7 +170,7 @@ public abstract class AbstractDataSource implements DataSource {
         int adjustedEnd = Math.min(chrLength, endLocation);
 
 
-        if (cacheSummaryTiles && !FrameManager.isGeneListMode()) {
+        if (cacheSummaryTiles) {
 
             // By definition there are 2^z tiles per chromosome, and 700 bins per tile, where z is the zoom level.
             //int maxZoom = (int) (Math.log(chrLength/700) / Globals.log2) + 1;
@@ -190,17 +188,11 @@ public abstract class AbstractDataSource implements DataSource {
                 int tileStart = (int) (t * tileWidth);
                 int tileEnd = Math.min(chrLength, (int) ((t + 1) * tileWidth));
 
-                String key = chr + "_" + z + "_" + t + getWindowFunction();
-                SummaryTile summaryTile = summaryTileCache.get(key);
+                String key = cacheKey + chr + "_" + z + "_" + t + "_" + getWindowFunction();
+                SummaryTile summaryTile = SummaryTileCache.get(key);
                 if (summaryTile == null) {
-
                     summaryTile = computeSummaryTile(chr, tileStart, tileEnd, 700);
-
-                    if (cacheSummaryTiles && !FrameManager.isGeneListMode()) {
-                        synchronized (summaryTileCache) {
-                            summaryTileCache.put(key, summaryTile);
-                        }
-                    }
+                    SummaryTileCache.put(key, summaryTile);
                 }
 
 
@@ -353,8 +345,8 @@ public abstract class AbstractDataSource implements DataSource {
 
 
     public void setWindowFunction(WindowFunction statType) {
+        // Tiles are keyed by window function,  so there is no need to clear the cache
         this.windowFunction = statType;
-        this.summaryTileCache.clear();
     }
 
 
@@ -371,9 +363,17 @@ public abstract class AbstractDataSource implements DataSource {
         return ORDERED_WINDOW_FUNCTIONS;
     }
 
+    /**
+     * Remove this source's summary tiles from the shared cache.  Subclasses should call this if the
+     * underlying data changes.
+     */
+    protected void clearSummaryTileCache() {
+        SummaryTileCache.evictSource(cacheKey);
+    }
+
     @Override
     public void dispose() {
-        // default is to do nothing
+        clearSummaryTileCache();
     }
 
 }
@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.data;
+
+import org.broad.igv.util.collections.MemoryBoundedCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Summary tiles for all data sources,  held in a single cache bounded by approximate memory use.  Each data
+ * source obtains a unique key prefix from {@link #newSourceKey()} and includes in its tile keys anything that
+ * affects the computed scores (chromosome, zoom, tile number, window function).  Changing the window function
+ * therefore leaves tiles for the previous function in place,  to be reused if it is selected again.
+ */
+public class SummaryTileCache {
+
+    /**
+     * Rough per-score footprint (object header, start, end, score, list slot) used to size tiles.
+     */
+    private static final int BYTES_PER_SCORE = 48;
+
+    private static final MemoryBoundedCache<String, SummaryTile> cache =
+            new MemoryBoundedCache<String, SummaryTile>(Math.min(128L << 20, Runtime.getRuntime().maxMemory() / 32));
+
+    private static final AtomicInteger sourceCount = new AtomicInteger();
+
+    private SummaryTileCache() {
+    }
+
+    public static String newSourceKey() {
+        return "source" + sourceCount.incrementAndGet() + "/";
+    }
+
+    public static SummaryTile get(String key) {
+        return cache.get(key);
+    }
+
+    public static void put(String key, SummaryTile tile) {
+        if (tile != null) {
+            cache.put(key, tile, 64 + (long) tile.getSize() * BYTES_PER_SCORE);
+        }
+    }
+
+    /**
+     * Remove all tiles belonging to the source with the given key prefix.
+     */
+    public static void evictSource(final String sourceKey) {
+        cache.removeIf(key -> key.startsWith(sourceKey));
+    }
+
+    public static void setMaxBytes(long maxBytes) {
+        cache.setMaxBytes(maxBytes);
+    }
+
+    public static long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public static long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public static long getSizeInBytes() {
+        return cache.getSizeInBytes();
+    }
+}
@@ -25,24 +25,50 @@
 
 package org.broad.igv.data.seg;
 
+import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.ResourceLocator;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
+ * Amplification and deletion frequencies of a segmented data set,  per bin of each chromosome and of the whole
+ * genome view.
+ * <p/>
+ * The segments of each chromosome,  with their scores converted to log2(cn/2),  are cached on first use.  A
+ * computation is a single pass over these segments per chromosome,  run in parallel:  a segment adds its partial
+ * overlap to its first and last bins,  and the bins it covers completely are added to difference arrays that are
+ * summed at the end.  Changing thresholds repeats only this pass.
+ * <p/>
+ * For data sets of at least {@link #MIN_CACHED_SAMPLES} samples,  frequencies for the default parameters are saved
+ * next to local files (extension ".freq") and read back when the file is opened again,  if it has not changed.
+ *
  * @author jrobinso
  * @date Oct 13, 2010
  */
 public class FreqData {
 
+    private static Logger log = Logger.getLogger(FreqData.class);
+
     public static float DEFAULT_AMP_THRESHOLD = 0.1f;
     public static float DEFAULT_DEL_THRESHOLD = -0.1f;
     public static int DEFAULT_BIN_SIZE = 200000;
 
+    static final String CACHE_EXTENSION = ".freq";
+    static final int MIN_CACHED_SAMPLES = 100;
+    private static final int CACHE_MAGIC = 0x49465251;   // "IFRQ"
+    private static final int CACHE_VERSION = 1;
+
     private float ampThreshold = DEFAULT_AMP_THRESHOLD;
     private float delThreshold = DEFAULT_DEL_THRESHOLD;
     private int binSize = DEFAULT_BIN_SIZE;    // 200 kb bin size;
@@ -55,7 +81,21 @@ public class FreqData {
     private List<String> sampleNames;
     Genome genome;
 
+    /**
+     * Segments per chromosome,  with converted scores
+     */
+    private Map<String, ChrSegments> segmentCache = new ConcurrentHashMap<String, ChrSegments>();
+
     public FreqData(SegmentedDataSet ds, Genome genome) {
+        this(ds, genome, null);
+    }
+
+    /**
+     * @param ds
+     * @param genome
+     * @param locator the source of the data set,  used to save and restore computed frequencies.  May be null.
+     */
+    public FreqData(SegmentedDataSet ds, Genome genome, ResourceLocator locator) {
 
         this.dataset = ds;
         this.sampleNames = ds.getSampleNames();
@@ -63,8 +103,15 @@ public class FreqData {
         amp = new HashMap();
         del = new HashMap();
         this.genome = genome;
-        compute();
 
+        File sourceFile = numberOfSamples < MIN_CACHED_SAMPLES ? null : getSourceFile(locator);
+        File cacheFile = sourceFile == null ? null : new File(sourceFile.getPath() + CACHE_EXTENSION);
+        if (cacheFile == null || !readCache(cacheFile, sourceFile)) {
+            compute();
+            if (cacheFile != null) {
+                writeCache(cacheFile, sourceFile);
+            }
+        }
     }
 
 
@@ -77,110 +124,250 @@ public class FreqData {
 
     void compute() {
 
-        amp.clear();
-        del.clear();
-
-        int sizeInKB = (int) (genome.getNominalLength() / 1000);
-        int wgBinSize = sizeInKB / 700;
-        int wgBinCount = sizeInKB / wgBinSize + 1;
-
-        //Chromosome bins
-        for (String chr : genome.getAllChromosomeNames()) {
-            Chromosome c = genome.getChromosome(chr);
-            int len = c.getLength();
-            int nBins = len / binSize + 1;
-            List<LocusScore> ampBins = new ArrayList(nBins);
-            List<LocusScore> delBins = new ArrayList(nBins);
-            for (int i = 0; i < nBins; i++) {
-                int start = i * binSize;
-                int end = start + binSize;
-                ampBins.add(new Bin(chr, start, end));
-                delBins.add(new Bin(chr, start, end));
-            }
-            amp.put(chr, ampBins);
-            del.put(chr, delBins);
+        final int sizeInKB = (int) (genome.getNominalLength() / 1000);
+        final int wgBinSize = Math.max(1, sizeInKB / 700);
+        final int wgBinCount = sizeInKB / wgBinSize + 1;
+
+        // Chromsomes visible in whole genome view
+        final Set<String> wgChromosomes = new HashSet<String>(genome.getLongChromosomeNames());
+
+        final int binSize = this.binSize;
+        final float ampThreshold = this.ampThreshold;
+        final float delThreshold = this.delThreshold;
+
+        final List<String> chrNames = genome.getAllChromosomeNames();
+        List<Callable<BinCounts[]>> tasks = new ArrayList<Callable<BinCounts[]>>(chrNames.size());
+        for (final String chr : chrNames) {
+            tasks.add(new Callable<BinCounts[]>() {
+                public BinCounts[] call() {
+                    Chromosome c = genome.getChromosome(chr);
+                    BinCounts counts = new BinCounts(c.getLength() / binSize + 1, binSize);
+                    BinCounts wgCounts = null;
+                    if (wgChromosomes.contains(chr)) {
+                        wgCounts = new BinCounts(wgBinCount, wgBinSize);
+                        ChrSegments segments = getChrSegments(chr);
+                        long offset = genome.getCumulativeOffset(chr);
+                        for (int i = 0; i < segments.size; i++) {
+                            float segScore = segments.scores[i];
+                            boolean isAmp = segScore > ampThreshold;
+                            boolean isDel = segScore < delThreshold;
+                            if (isAmp || isDel) {
+                                int start = segments.starts[i];
+                                int end = segments.ends[i];
+                                counts.add(start, end, segScore, isAmp, isDel);
+                                wgCounts.add((int) ((offset + start) / 1000), (int) ((offset + end) / 1000),
+                                        segScore, isAmp, isDel);
+                            }
+                        }
+                    }
+                    return new BinCounts[]{counts, wgCounts};
+                }
+            });
         }
 
-        // Whole genome bins
-        List<LocusScore> ampBins = new ArrayList(wgBinCount);
-        List<LocusScore> delBins = new ArrayList(wgBinCount);
-        for (int i = 0; i < wgBinCount; i++) {
-            int start = i * wgBinSize;
-            int end = start + wgBinSize;
-            ampBins.add(new Bin(Globals.CHR_ALL, start, end));
-            delBins.add(new Bin(Globals.CHR_ALL, start, end));
+        Map<String, List<LocusScore>> amp = new HashMap<String, List<LocusScore>>();
+        Map<String, List<LocusScore>> del = new HashMap<String, List<LocusScore>>();
+        BinCounts wgCounts = new BinCounts(wgBinCount, wgBinSize);
+        List<BinCounts[]> results = invokeAll(tasks);
+        for (int i = 0; i < chrNames.size(); i++) {
+            BinCounts[] result = results.get(i);
+            String chr = chrNames.get(i);
+            result[0].finish();
+            amp.put(chr, result[0].getAmpBins(chr));
+            del.put(chr, result[0].getDelBins(chr));
+            if (result[1] != null) {
+                wgCounts.addAll(result[1]);
+            }
         }
-        amp.put(Globals.CHR_ALL, ampBins);
-        del.put(Globals.CHR_ALL, delBins);
+        wgCounts.finish();
+        amp.put(Globals.CHR_ALL, wgCounts.getAmpBins(Globals.CHR_ALL));
+        del.put(Globals.CHR_ALL, wgCounts.getDelBins(Globals.CHR_ALL));
 
-        // Chromsomes visible in whole genome view
-        Set<String> wgChromosomes = new HashSet<String>(genome.getLongChromosomeNames());
+        this.amp = amp;
+        this.del = del;
+    }
 
-        final boolean logNormalized = dataset.isLogNormalized();
-        for (String sample : sampleNames) {
-            for (String chr : genome.getLongChromosomeNames()) {
-                List<LocusScore> segments = dataset.getSegments(sample, chr);
-                if (segments != null) {
-
-                    for (LocusScore seg : segments) {
-                        final float segScore = logNormalized ? seg.getScore() :
-                                (float) (Math.log(seg.getScore() / 2) / Globals.log2);
-
-                        if (segScore > ampThreshold || segScore < delThreshold) {
-
-                            int startBin = seg.getStart() / binSize;
-                            int endBin = seg.getEnd() / binSize;
-                            for (int b = startBin; b <= endBin; b++) {
-                                if (b >= amp.get(chr).size()) {
-                                    break;
-                                }
-                                binCounts(chr, seg.getStart(), seg.getEnd(), segScore, b, binSize);
-                            }
+    /**
+     * Return the segments of all samples on the chromosome,  with scores converted to log2(cn/2) if the data is not
+     * log normalized.
+     */
+    private ChrSegments getChrSegments(String chr) {
 
-                            if (wgChromosomes.contains(chr)) {
-                                int gStart = genome.getGenomeCoordinate(chr, seg.getStart());
-                                int gEnd = genome.getGenomeCoordinate(chr, seg.getEnd());
-                                int wgStartBin = gStart / wgBinSize;
-                                int wgEndBin = gEnd / wgBinSize;
-                                for (int b = wgStartBin; b <= wgEndBin; b++) {
-                                    if (b >= amp.get(Globals.CHR_ALL).size()) {
-                                        break;
-                                    }
-                                    binCounts(Globals.CHR_ALL, gStart, gEnd, segScore, b, wgBinSize);
-                                }
-                            }
-                        }
-                    }
+        ChrSegments segments = segmentCache.get(chr);
+        if (segments != null) {
+            return segments;
+        }
+
+        final boolean logNormalized = dataset.isLogNormalized();
+        segments = new ChrSegments();
+        SegmentStore.Columns columns = dataset instanceof SegmentedAsciiDataSet ?
+                ((SegmentedAsciiDataSet) dataset).getSegmentStore().getColumns(chr) : null;
+
+        if (columns != null) {
+            // Share the columns of the data set
+            segments.size = columns.size;
+            segments.starts = columns.starts;
+            segments.ends = columns.ends;
+            segments.scores = logNormalized ? columns.values : new float[columns.size];
+        } else if (!(dataset instanceof SegmentedAsciiDataSet)) {
+            List<List<LocusScore>> sampleSegments = new ArrayList<List<LocusScore>>();
+            for (String sample : sampleNames) {
+                List<LocusScore> tmp = dataset.getSegments(sample, chr);
+                if (tmp != null) {
+                    sampleSegments.add(tmp);
+                    segments.size += tmp.size();
+                }
+            }
+            segments.starts = new int[segments.size];
+            segments.ends = new int[segments.size];
+            segments.scores = new float[segments.size];
+            int i = 0;
+            for (List<LocusScore> tmp : sampleSegments) {
+                for (LocusScore seg : tmp) {
+                    segments.starts[i] = seg.getStart();
+                    segments.ends[i] = seg.getEnd();
+                    segments.scores[i] = seg.getScore();
+                    i++;
                 }
             }
         }
+
+        if (!logNormalized && segments.size > 0) {
+            float[] values = columns != null ? columns.values : segments.scores;
+            for (int i = 0; i < segments.size; i++) {
+                segments.scores[i] = (float) (Math.log(values[i] / 2) / Globals.log2);
+            }
+        }
+
+        segmentCache.put(chr, segments);
+        return segments;
     }
 
-    private void binCounts(String chr, int segStart, int segEnd, float segScore, int b, int binSize) {
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted computing copy number frequencies", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException("Error computing copy number frequencies", cause);
+            }
+        }
+        return results;
+    }
 
-        int binStart = b * binSize;
-        int binEnd = binStart + binSize;
+    private static File getSourceFile(ResourceLocator locator) {
+        if (locator == null || !locator.isLocal() || locator.getPath() == null) {
+            return null;
+        }
+        File file = new File(locator.getPath());
+        return file.isFile() ? file : null;
+    }
 
-        // Weight by % overlap with bin
-        float weight = 1.0f;
-        if (segEnd < binEnd) {
-            int s = Math.max(segStart, binStart);
-            weight = ((float) (segEnd - s)) / binSize;
+    /**
+     * Read frequencies saved for the current parameters.  Returns false if there are none,  or the source file
+     * changed since they were saved.
+     */
+    private boolean readCache(File cacheFile, File sourceFile) {
 
-        } else if (segStart > binStart) {
-            int e = Math.min(segEnd, binEnd);
-            weight = ((float) (e - segStart)) / binSize;
+        if (!cacheFile.isFile() || cacheFile.lastModified() < sourceFile.lastModified()) {
+            return false;
         }
 
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION ||
+                    in.readLong() != sourceFile.length() || in.readLong() != sourceFile.lastModified() ||
+                    !in.readUTF().equals(String.valueOf(genome.getId())) ||
+                    in.readInt() != numberOfSamples ||
+                    in.readInt() != binSize ||
+                    in.readFloat() != ampThreshold ||
+                    in.readFloat() != delThreshold) {
+                return false;
+            }
 
-        if (segScore > ampThreshold) {
-            Bin bin = (Bin) amp.get(chr).get(b);
-            bin.increment(weight, weight * segScore);
+            Map<String, List<LocusScore>> amp = new HashMap<String, List<LocusScore>>();
+            Map<String, List<LocusScore>> del = new HashMap<String, List<LocusScore>>();
+            int nEntries = in.readInt();
+            for (int e = 0; e < nEntries; e++) {
+                String chr = in.readUTF();
+                BinCounts counts = new BinCounts(in.readInt(), in.readInt());
+                counts.read(in);
+                amp.put(chr, counts.getAmpBins(chr));
+                del.put(chr, counts.getDelBins(chr));
+            }
+            this.amp = amp;
+            this.del = del;
+            return true;
+
+        } catch (IOException e) {
+            log.info("Could not read " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
         }
+    }
 
-        if (segScore < delThreshold) {
-            Bin bin = (Bin) del.get(chr).get(b);
-            bin.increment(-weight, weight * segScore);
+    private void writeCache(File cacheFile, File sourceFile) {
+
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(sourceFile.length());
+            out.writeLong(sourceFile.lastModified());
+            out.writeUTF(String.valueOf(genome.getId()));
+            out.writeInt(numberOfSamples);
+            out.writeInt(binSize);
+            out.writeFloat(ampThreshold);
+            out.writeFloat(delThreshold);
+            out.writeInt(amp.size());
+            for (Map.Entry<String, List<LocusScore>> entry : amp.entrySet()) {
+                List<LocusScore> ampBins = entry.getValue();
+                List<LocusScore> delBins = del.get(entry.getKey());
+                out.writeUTF(entry.getKey());
+                out.writeInt(ampBins.size());
+                out.writeInt(ampBins.isEmpty() ? 1 : ampBins.get(0).getEnd() - ampBins.get(0).getStart());
+                for (int i = 0; i < ampBins.size(); i++) {
+                    Bin ampBin = (Bin) ampBins.get(i);
+                    Bin delBin = (Bin) delBins.get(i);
+                    out.writeFloat(ampBin.count);
+                    out.writeFloat(ampBin.totalCN);
+                    out.writeFloat(delBin.count);
+                    out.writeFloat(delBin.totalCN);
+                }
+            }
+            out.close();
+            out = null;
+            cacheFile.delete();
+            if (!tmpFile.renameTo(cacheFile)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            log.info("Could not save copy number frequencies to " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+            tmpFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                tmpFile.delete();
+            }
         }
     }
 
@@ -225,6 +412,157 @@ public class FreqData {
         return delThreshold;
     }
 
+    public int getBinSize() {
+        return binSize;
+    }
+
+
+    private static class ChrSegments {
+        int size;
+        int[] starts = new int[0];
+        int[] ends = new int[0];
+        float[] scores = new float[0];
+    }
+
+    /**
+     * Accumulates weighted counts and copy number totals per bin.  Bins covered completely by a segment are
+     * recorded in difference arrays and added by {@link #finish()}.
+     */
+    private class BinCounts {
+
+        final int nBins;
+        final int binSize;
+        final double[] ampCount;
+        final double[] ampCN;
+        final double[] delCount;
+        final double[] delCN;
+        final double[] ampCountDiff;
+        final double[] ampCNDiff;
+        final double[] delCountDiff;
+        final double[] delCNDiff;
+
+        BinCounts(int nBins, int binSize) {
+            this.nBins = nBins;
+            this.binSize = binSize;
+            ampCount = new double[nBins];
+            ampCN = new double[nBins];
+            delCount = new double[nBins];
+            delCN = new double[nBins];
+            ampCountDiff = new double[nBins + 1];
+            ampCNDiff = new double[nBins + 1];
+            delCountDiff = new double[nBins + 1];
+            delCNDiff = new double[nBins + 1];
+        }
+
+        /**
+         * Add a segment.  Each bin is weighted by its overlap with the segment,  as a fraction of the bin size.
+         */
+        void add(int segStart, int segEnd, float segScore, boolean isAmp, boolean isDel) {
+
+            segStart = Math.max(0, segStart);
+            int startBin = segStart / binSize;
+            int endBin = segEnd / binSize;
+            if (startBin >= nBins || segEnd < segStart) {
+                return;
+            }
+
+            if (startBin == endBin) {
+                addPartial(startBin, (double) (segEnd - segStart) / binSize, segScore, isAmp, isDel);
+                return;
+            }
+
+            addPartial(startBin, (double) ((startBin + 1) * binSize - segStart) / binSize, segScore, isAmp, isDel);
+            int to = Math.min(endBin, nBins);
+            if (startBin + 1 < to) {
+                if (isAmp) {
+                    ampCountDiff[startBin + 1] += 1;
+                    ampCountDiff[to] -= 1;
+                    ampCNDiff[startBin + 1] += segScore;
+                    ampCNDiff[to] -= segScore;
+                }
+                if (isDel) {
+                    delCountDiff[startBin + 1] -= 1;
+                    delCountDiff[to] += 1;
+                    delCNDiff[startBin + 1] += segScore;
+                    delCNDiff[to] -= segScore;
+                }
+            }
+            if (endBin < nBins) {
+                addPartial(endBin, (double) (segEnd - endBin * binSize) / binSize, segScore, isAmp, isDel);
+            }
+        }
+
+        private void addPartial(int b, double weight, float segScore, boolean isAmp, boolean isDel) {
+            if (isAmp) {
+                ampCount[b] += weight;
+                ampCN[b] += weight * segScore;
+            }
+            if (isDel) {
+                delCount[b] -= weight;
+                delCN[b] += weight * segScore;
+            }
+        }
+
+        void addAll(BinCounts other) {
+            for (int b = 0; b < nBins; b++) {
+                ampCount[b] += other.ampCount[b];
+                ampCN[b] += other.ampCN[b];
+                delCount[b] += other.delCount[b];
+                delCN[b] += other.delCN[b];
+                ampCountDiff[b] += other.ampCountDiff[b];
+                ampCNDiff[b] += other.ampCNDiff[b];
+                delCountDiff[b] += other.delCountDiff[b];
+                delCNDiff[b] += other.delCNDiff[b];
+            }
+        }
+
+        /**
+         * Add the prefix sums of the difference arrays to the bins.
+         */
+        void finish() {
+            double ampCountSum = 0, ampCNSum = 0, delCountSum = 0, delCNSum = 0;
+            for (int b = 0; b < nBins; b++) {
+                ampCountSum += ampCountDiff[b];
+                ampCNSum += ampCNDiff[b];
+                delCountSum += delCountDiff[b];
+                delCNSum += delCNDiff[b];
+                ampCount[b] += ampCountSum;
+                ampCN[b] += ampCNSum;
+                delCount[b] += delCountSum;
+                delCN[b] += delCNSum;
+            }
+            Arrays.fill(ampCountDiff, 0);
+            Arrays.fill(ampCNDiff, 0);
+            Arrays.fill(delCountDiff, 0);
+            Arrays.fill(delCNDiff, 0);
+        }
+
+        void read(DataInputStream in) throws IOException {
+            for (int b = 0; b < nBins; b++) {
+                ampCount[b] = in.readFloat();
+                ampCN[b] = in.readFloat();
+                delCount[b] = in.readFloat();
+                delCN[b] = in.readFloat();
+            }
+        }
+
+        List<LocusScore> getAmpBins(String chr) {
+            return getBins(chr, ampCount, ampCN);
+        }
+
+        List<LocusScore> getDelBins(String chr) {
+            return getBins(chr, delCount, delCN);
+        }
+
+        private List<LocusScore> getBins(String chr, double[] count, double[] totalCN) {
+            List<LocusScore> bins = new ArrayList<LocusScore>(nBins);
+            for (int b = 0; b < nBins; b++) {
+                int start = b * binSize;
+                bins.add(new Bin(chr, start, start + binSize, (float) count[b], (float) totalCN[b]));
+            }
+            return bins;
+        }
+    }
 
     public class Bin implements LocusScore {
         String chr;
@@ -233,15 +571,12 @@ public class FreqData {
         float count;
         private float totalCN;
 
-        Bin(String chr, int start, int end) {
+        Bin(String chr, int start, int end, float count, float totalCN) {
             this.chr = chr;
             this.start = start;
             this.end = end;
-        }
-
-        void increment(float count, float score) {
-            this.count += count;
-            totalCN = getTotalCN() + score;
+            this.count = count;
+            this.totalCN = totalCN;
         }
 
 
@@ -0,0 +1,471 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.broad.igv.data.seg;
+
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Columnar storage for the segments of a segmented data set.  The segments of each chromosome are kept in
+ * primitive arrays sorted by sample and start,  with the offset of each sample's block,  so a sample's segments
+ * in a range are found with a binary search.  Segment objects are only created for the segments callers read.
+ * <p/>
+ * Segments are added in any order and indexed once loading is done.  Indexing also computes the whole genome
+ * view of every sample,  where runs of segments too small to be seen at the whole genome resolution are merged.
+ */
+class SegmentStore {
+
+    /**
+     * Width in pixels of the widest conceivable whole genome view.  Segments smaller than a pixel at this width
+     * are merged in the whole genome view.
+     */
+    static final int WHOLE_GENOME_PIXELS = 10000;
+
+    private final Map<String, Columns> chrColumns = new LinkedHashMap<String, Columns>();
+    private Columns wholeGenome = new Columns();
+    private volatile boolean indexed = true;
+
+    synchronized void add(int sample, String chr, int start, int end, float value, String description) {
+        Columns columns = chrColumns.get(chr);
+        if (columns == null) {
+            columns = new Columns();
+            chrColumns.put(chr, columns);
+        }
+        columns.add(sample, start, end, value, description);
+        indexed = false;
+    }
+
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Sort and index all chromosomes,  and compute the whole genome view if a genome is given.  Chromosomes, and
+     * then samples, are processed in parallel.
+     */
+    synchronized void index(final int sampleCount, final Genome genome) {
+
+        if (indexed) return;
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Columns columns : chrColumns.values()) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    columns.index(sampleCount);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        wholeGenome = genome == null ? new Columns() : computeWholeGenome(sampleCount, genome);
+        wholeGenome.index(sampleCount);
+        indexed = true;
+    }
+
+    private Columns computeWholeGenome(int sampleCount, final Genome genome) {
+
+        final int resolution = (int) Math.max(1, genome.getNominalLength() / 1000 / WHOLE_GENOME_PIXELS);
+        final List<String> chrNames = genome.getLongChromosomeNames();
+
+        List<Callable<Columns>> tasks = new ArrayList<Callable<Columns>>();
+        int chunkSize = Math.max(1, sampleCount / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        for (int first = 0; first < sampleCount; first += chunkSize) {
+            final int from = first;
+            final int to = Math.min(sampleCount, first + chunkSize);
+            tasks.add(new Callable<Columns>() {
+                public Columns call() {
+                    Columns wg = new Columns();
+                    for (int sample = from; sample < to; sample++) {
+                        for (String chr : chrNames) {
+                            Columns columns = chrColumns.get(chr);
+                            if (columns != null) {
+                                addWholeGenomeSegments(wg, columns, sample, chr, genome, resolution);
+                            }
+                        }
+                    }
+                    return wg;
+                }
+            });
+        }
+
+        Columns wholeGenome = new Columns();
+        for (Columns wg : invokeAll(tasks)) {
+            wholeGenome.addAll(wg);
+        }
+        return wholeGenome;
+    }
+
+    /**
+     * Add the segments of one sample and chromosome in whole genome coordinates (kb).  Consecutive segments smaller
+     * than the resolution that start in the same resolution bin are merged into one segment whose value is their
+     * length weighted mean.
+     */
+    private static void addWholeGenomeSegments(Columns wg, Columns columns, int sample, String chr, Genome genome,
+                                               int resolution) {
+
+        int pendingBin = -1;
+        int pendingIdx = -1;
+        int pendingCount = 0;
+        int pendingStart = 0;
+        int pendingEnd = 0;
+        double weightedSum = 0;
+        double weightSum = 0;
+
+        for (int i = columns.getStartIndex(sample); i < columns.getEndIndex(sample); i++) {
+            int start = columns.starts[i];
+            int end = columns.ends[i];
+            float value = columns.values[i];
+            int gStart = genome.getGenomeCoordinate(chr, start);
+            int gEnd = genome.getGenomeCoordinate(chr, end);
+
+            int bin = gStart / resolution;
+            boolean small = gEnd - gStart < resolution;
+            if (pendingCount > 0 && (!small || bin != pendingBin)) {
+                flush(wg, columns, sample, pendingIdx, pendingCount, pendingStart, pendingEnd, weightedSum, weightSum);
+                pendingCount = 0;
+            }
+
+            if (!small) {
+                wg.add(sample, gStart, gEnd, value, columns.descriptions[i]);
+            } else {
+                if (pendingCount == 0) {
+                    pendingBin = bin;
+                    pendingIdx = i;
+                    pendingStart = gStart;
+                    pendingEnd = gEnd;
+                    weightedSum = 0;
+                    weightSum = 0;
+                }
+                pendingCount++;
+                pendingEnd = Math.max(pendingEnd, gEnd);
+                if (!Float.isNaN(value)) {
+                    double weight = Math.max(1, end - start);
+                    weightedSum += weight * value;
+                    weightSum += weight;
+                }
+            }
+        }
+        if (pendingCount > 0) {
+            flush(wg, columns, sample, pendingIdx, pendingCount, pendingStart, pendingEnd, weightedSum, weightSum);
+        }
+    }
+
+    private static void flush(Columns wg, Columns columns, int sample, int idx, int count, int start, int end,
+                              double weightedSum, double weightSum) {
+        if (count == 1) {
+            wg.add(sample, start, end, columns.values[idx], columns.descriptions[idx]);
+        } else {
+            float value = weightSum > 0 ? (float) (weightedSum / weightSum) : Float.NaN;
+            wg.add(sample, start, end, value, null);
+        }
+    }
+
+    /**
+     * Return all segments of the sample on the chromosome, or null if there are none.
+     */
+    List<LocusScore> getSegments(int sample, String chr) {
+        Columns columns = chrColumns.get(chr);
+        if (columns == null || sample < 0) return null;
+        int start = columns.getStartIndex(sample);
+        int end = columns.getEndIndex(sample);
+        return start == end ? null : new SegmentList(columns, start, end);
+    }
+
+    /**
+     * Return the segments of the sample overlapping [start, end),  plus the nearest segment on either side so
+     * features within a few pixels of the range are found.  Returns null if the sample has no segments on the
+     * chromosome.
+     */
+    List<LocusScore> getSegments(int sample, String chr, int start, int end) {
+        Columns columns = chrColumns.get(chr);
+        if (columns == null || sample < 0) return null;
+        int blockStart = columns.getStartIndex(sample);
+        int blockEnd = columns.getEndIndex(sample);
+        if (blockStart == blockEnd) return null;
+
+        int from = Math.max(blockStart, columns.firstEndingAfter(sample, start) - 1);
+        int to = Math.min(blockEnd, columns.firstStartingAt(sample, end) + 1);
+        return new SegmentList(columns, from, Math.max(from, to));
+    }
+
+    List<LocusScore> getWholeGenomeSegments(int sample) {
+        Columns wg = wholeGenome;
+        if (sample < 0 || !wg.isIndexed()) return Collections.emptyList();
+        return new SegmentList(wg, wg.getStartIndex(sample), wg.getEndIndex(sample));
+    }
+
+    Columns getColumns(String chr) {
+        return chrColumns.get(chr);
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted indexing segments", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException("Error indexing segments", cause);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The segments of one chromosome.  Once indexed,  segments are sorted by sample and start,  and the segments of
+     * sample s are at indices [sampleOffsets[s], sampleOffsets[s + 1]).
+     */
+    static final class Columns {
+
+        int size;
+        int[] samples = new int[16];
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        float[] values = new float[16];
+        String[] descriptions = new String[16];
+
+        /**
+         * Running maximum of segment ends within each sample block,  for range queries on overlapping segments
+         */
+        int[] maxEnds;
+        int[] sampleOffsets;
+
+        void add(int sample, int start, int end, float value, String description) {
+            if (size == starts.length) {
+                grow(Math.max(16, size + (size >> 1)));
+            }
+            samples[size] = sample;
+            starts[size] = start;
+            ends[size] = end;
+            values[size] = value;
+            descriptions[size] = description;
+            size++;
+            sampleOffsets = null;
+        }
+
+        void addAll(Columns other) {
+            if (size + other.size > starts.length) {
+                grow(size + other.size);
+            }
+            System.arraycopy(other.samples, 0, samples, size, other.size);
+            System.arraycopy(other.starts, 0, starts, size, other.size);
+            System.arraycopy(other.ends, 0, ends, size, other.size);
+            System.arraycopy(other.values, 0, values, size, other.size);
+            System.arraycopy(other.descriptions, 0, descriptions, size, other.size);
+            size += other.size;
+            sampleOffsets = null;
+        }
+
+        private void grow(int capacity) {
+            samples = Arrays.copyOf(samples, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            values = Arrays.copyOf(values, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+        }
+
+        boolean isIndexed() {
+            return sampleOffsets != null;
+        }
+
+        int getStartIndex(int sample) {
+            return sample + 1 < sampleOffsets.length ? sampleOffsets[sample] : size;
+        }
+
+        int getEndIndex(int sample) {
+            return sample + 1 < sampleOffsets.length ? sampleOffsets[sample + 1] : size;
+        }
+
+        /**
+         * Sort by sample and start (stable),  trim the arrays,  and compute sample offsets and running maximum ends.
+         */
+        void index(int sampleCount) {
+
+            sampleCount = Math.max(sampleCount, size == 0 ? 0 : max(samples, size) + 1);
+            if (!isSorted()) {
+                int[] order = sortOrder(sampleCount);
+                samples = permute(samples, order);
+                starts = permute(starts, order);
+                ends = permute(ends, order);
+                float[] v = new float[size];
+                String[] d = new String[size];
+                for (int i = 0; i < size; i++) {
+                    v[i] = values[order[i]];
+                    d[i] = descriptions[order[i]];
+                }
+                values = v;
+                descriptions = d;
+            } else if (starts.length != size) {
+                grow(size);
+            }
+
+            int[] offsets = new int[sampleCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[samples[i] + 1]++;
+            }
+            for (int s = 0; s < sampleCount; s++) {
+                offsets[s + 1] += offsets[s];
+            }
+
+            maxEnds = new int[size];
+            for (int i = 0; i < size; i++) {
+                boolean blockStart = i == 0 || samples[i] != samples[i - 1];
+                maxEnds[i] = blockStart ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+            }
+            sampleOffsets = offsets;
+        }
+
+        private boolean isSorted() {
+            for (int i = 1; i < size; i++) {
+                if (samples[i] < samples[i - 1] || (samples[i] == samples[i - 1] && starts[i] < starts[i - 1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Counting sort by sample,  then sort each sample block by start.
+         */
+        private int[] sortOrder(int sampleCount) {
+            int[] offsets = new int[sampleCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[samples[i] + 1]++;
+            }
+            for (int s = 0; s < sampleCount; s++) {
+                offsets[s + 1] += offsets[s];
+            }
+            int[] order = new int[size];
+            int[] next = Arrays.copyOf(offsets, sampleCount);
+            for (int i = 0; i < size; i++) {
+                order[next[samples[i]]++] = i;
+            }
+
+            // Within a block, sort (start, original index) pairs packed in a long
+            for (int s = 0; s < sampleCount; s++) {
+                int from = offsets[s];
+                int to = offsets[s + 1];
+                if (to - from < 2) continue;
+                long[] keys = new long[to - from];
+                for (int i = from; i < to; i++) {
+                    keys[i - from] = ((long) starts[order[i]] << 32) | (order[i] & 0xffffffffL);
+                }
+                Arrays.sort(keys);
+                for (int i = from; i < to; i++) {
+                    order[i] = (int) keys[i - from];
+                }
+            }
+            return order;
+        }
+
+        private int[] permute(int[] array, int[] order) {
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = array[order[i]];
+            }
+            return result;
+        }
+
+        private static int max(int[] array, int size) {
+            int max = array[0];
+            for (int i = 1; i < size; i++) {
+                max = Math.max(max, array[i]);
+            }
+            return max;
+        }
+
+        /**
+         * Index of the first segment of the sample whose running maximum end is > position.
+         */
+        int firstEndingAfter(int sample, int position) {
+            int low = getStartIndex(sample);
+            int high = getEndIndex(sample);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (maxEnds[mid] <= position) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * Index of the first segment of the sample starting at or after position.
+         */
+        int firstStartingAt(int sample, int position) {
+            int low = getStartIndex(sample);
+            int high = getEndIndex(sample);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] < position) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        Segment getSegment(int idx) {
+            return new Segment(starts[idx], starts[idx], ends[idx], ends[idx], values[idx], descriptions[idx]);
+        }
+    }
+
+    /**
+     * Read only list of segments backed by the columns.
+     */
+    private static final class SegmentList extends AbstractList<LocusScore> implements RandomAccess {
+
+        private final Columns columns;
+        private final int from;
+        private final int to;
+
+        SegmentList(Columns columns, int from, int to) {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public LocusScore get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return columns.getSegment(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
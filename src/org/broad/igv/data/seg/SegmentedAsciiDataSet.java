@@ -32,7 +32,6 @@ package org.broad.igv.data.seg;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.track.TrackProperties;
@@ -58,15 +57,15 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
      */
     private boolean logNormalized = false;
     /**
-     * Map of [heading ->  [chr -> [list of chrSegments]]]
+     * Segments of all samples,  stored by chromosome
      */
-    private Map<String, Map<String, List<LocusScore>>> segments = new HashMap();
+    private SegmentStore segments = new SegmentStore();
     /**
      * Set of chromosomes represented in this dataset
      */
     private Set<String> chromosomes = new HashSet();
     private List<String> headings = new ArrayList();
-    private Map<String, List<LocusScore>> wholeGenomeScoresCache = new HashMap();
+    private Map<String, Integer> headingIndices = new HashMap<String, Integer>();
     private long lastRefreshTime = 0;
     private TrackProperties trackProperties;
     Genome genome;
@@ -86,13 +85,23 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
     }
 
 
+    /**
+     * Sort and index the segments.  Called once all segments are added,  otherwise done on first access.
+     */
     public void sortLists() {
-        for (Map.Entry<String, Map<String, List<LocusScore>>> sampleEntry : segments.entrySet()) {
-            for (Map.Entry<String, List<LocusScore>> chrEntry : sampleEntry.getValue().entrySet()) {
-                List<LocusScore> tmp = chrEntry.getValue();
-                FeatureUtils.sortFeatureList(tmp);
-            }
+        segments.index(headings.size(), genome);
+    }
+
+    SegmentStore getSegmentStore() {
+        if (!segments.isIndexed()) {
+            sortLists();
         }
+        return segments;
+    }
+
+    private int getHeadingIndex(String heading) {
+        Integer idx = headingIndices.get(heading);
+        return idx == null ? -1 : idx;
     }
 
 
@@ -103,19 +112,14 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
 
         String chr = genome == null ? c : genome.getCanonicalChrName(c);
 
-        Map<String, List<LocusScore>> chrSegments = segments.get(heading);
-        if (chrSegments == null) {
+        Integer headingIndex = headingIndices.get(heading);
+        if (headingIndex == null) {
+            headingIndex = headings.size();
             headings.add(heading);
-            chrSegments = new HashMap();
-            segments.put(heading, chrSegments);
+            headingIndices.put(heading, headingIndex);
         }
 
-        List<LocusScore> segmentList = chrSegments.get(chr);
-        if (segmentList == null) {
-            segmentList = new ArrayList<LocusScore>();
-            chrSegments.put(chr, segmentList);
-        }
-        segmentList.add(new Segment(start, start, end, end, value, desc));
+        segments.add(headingIndex, chr, start, end, value, desc);
         dataMax = Math.max(dataMax, value);
         dataMin = Math.min(dataMin, value);
         if (value < 0) {
@@ -144,8 +148,11 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
      * @return
      */
     public List<LocusScore> getSegments(String heading, String chr) {
-        Map<String, List<LocusScore>> chrSegments = segments.get(heading);
-        return (chrSegments == null) ? null : chrSegments.get(chr);
+        return getSegmentStore().getSegments(getHeadingIndex(heading), chr);
+    }
+
+    public List<LocusScore> getSegments(String heading, String chr, int start, int end) {
+        return getSegmentStore().getSegments(getHeadingIndex(heading), chr, start, end);
     }
 
     public List<String> getSampleNames() {
@@ -197,39 +204,7 @@ public class SegmentedAsciiDataSet implements SegmentedDataSet {
      * @return
      */
     public List<LocusScore> getWholeGenomeScores(String heading) {
-
-
-        List<LocusScore> wholeGenomeScores = wholeGenomeScoresCache.get(heading);
-        if ((wholeGenomeScores == null) || wholeGenomeScores.isEmpty()) {
-
-            // Compute the smallest concievable feature that could be viewed on the
-            // largest screen.  Be conservative.   The smallest feature is one at
-            // the screen resolution scale in <chr units> / <pixel>
-            double minFeatureSize = 0; // ((double) genome.getLength()) / (maxScreenSize * locationUnit);
-
-            long offset = 0;
-            wholeGenomeScores = new ArrayList(1000);
-            for (String chr : genome.getLongChromosomeNames()) {
-                List<LocusScore> chrSegments = getSegments(heading, chr);
-                if (chrSegments != null) {
-                    int lastgEnd = -1;
-                    for (LocusScore score : chrSegments) {
-                        Segment seg = (Segment) score;
-                        int gStart = genome.getGenomeCoordinate(chr, seg.getStart());
-                        int gEnd = genome.getGenomeCoordinate(chr, seg.getEnd());
-                         if ((gEnd - gStart) > minFeatureSize) {
-                            wholeGenomeScores.add(new Segment(gStart, gStart, gEnd,
-                                    gEnd, seg.getScore(), seg.getDescription()));
-                        }
-                    }
-
-                }
-                offset += genome.getChromosome(chr).getLength();
-            }
-            wholeGenomeScoresCache.put(heading, wholeGenomeScores);
-        }
-        return wholeGenomeScores;
-
+        return getSegmentStore().getWholeGenomeSegments(getHeadingIndex(heading));
     }
 
     /**
@@ -166,6 +166,10 @@ public class SegmentedBinaryDataSet implements SegmentedDataSet {
         return -3;
     }
 
+    public List<LocusScore> getSegments(String heading, String chr, int start, int end) {
+        return getSegments(heading, chr);
+    }
+
     public synchronized List<LocusScore> getWholeGenomeScores(String heading) {
         return getSegments(heading, Globals.CHR_ALL);
 
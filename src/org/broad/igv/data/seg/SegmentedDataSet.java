@@ -48,6 +48,11 @@ public interface SegmentedDataSet {
 
     List<LocusScore> getSegments(String heading, String chr);
 
+    /**
+     * Return segments of the sample overlapping the range.  The list may include segments outside the range.
+     */
+    List<LocusScore> getSegments(String heading, String chr, int start, int end);
+
     TrackType getType();
 
     List<LocusScore> getWholeGenomeScores(String heading);
@@ -98,9 +98,9 @@ public class SegmentedDataSource implements DataSource {
         return 1.0;
     }
 
-    private List<LocusScore> getSegments(String chr) {
+    private List<LocusScore> getSegments(String chr, int startLocation, int endLocation) {
 
-        return dataset.getSegments(trackIdentifier, chr);
+        return dataset.getSegments(trackIdentifier, chr, startLocation, endLocation);
 
     }
 
@@ -110,7 +110,7 @@ public class SegmentedDataSource implements DataSource {
         if (chr.equals(Globals.CHR_ALL)) {
             return getWholeGenomeScores();
         }
-        return getSegments(chr);
+        return getSegments(chr, startLocation, endLocation);
     }
 
 
@@ -27,7 +27,6 @@ package org.broad.igv.feature;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import com.jidesoft.utils.SortedList;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.feature.genome.Genome;
@@ -37,6 +36,9 @@ import org.broad.igv.util.collections.MultiMap;
 import htsjdk.tribble.Feature;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a placeholder class for a true "feature database" wrapper.  Its purpose
@@ -51,9 +53,24 @@ public class FeatureDB {
      * Map for all features other than genes.
      */
     //private static Map<String, NamedFeature> featureMap = new HashMap(10000);
-    private static Map<String, List<NamedFeature>> featureMap = Collections.synchronizedSortedMap(new TreeMap<String, List<NamedFeature>>());
+    //
+    // Values are immutable lists, replaced (not modified) on insert.  Readers can therefore iterate without
+    // locking,  and concurrent loaders only contend when adding the same name.
+    private static ConcurrentSkipListMap<String, List<NamedFeature>> featureMap = new ConcurrentSkipListMap<String, List<NamedFeature>>();
     private static final int MAX_DUPLICATE_COUNT = 20;
 
+    /**
+     * Upper bound on the number of distinct names,  to limit memory for annotation-heavy genomes.  Names beyond
+     * the bound are not searchable.
+     */
+    private static volatile int maxNames = 5000000;
+    private static final AtomicBoolean maxNamesWarned = new AtomicBoolean(false);
+
+    /**
+     * Number of distinct names.  ConcurrentSkipListMap.size() traverses the map,  so it is counted separately.
+     */
+    private static final AtomicInteger nameCount = new AtomicInteger();
+
     public static void addFeature(NamedFeature feature, Genome genome) {
 
         final String name = feature.getName();
@@ -107,26 +124,52 @@ public class FeatureDB {
             }
         }
 
-        synchronized (featureMap) {
+        while (true) {
             List<NamedFeature> currentList = featureMap.get(key);
             if (currentList == null) {
-                List<NamedFeature> newList = new SortedList<NamedFeature>(
-                        new ArrayList<NamedFeature>(), FeatureComparator.get(true));
-                boolean added = newList.add(feature);
-                if (added) {
-                    featureMap.put(key, newList);
+                if (nameCount.get() >= maxNames) {
+                    if (maxNamesWarned.compareAndSet(false, true)) {
+                        log.warn("Feature name limit (" + maxNames + ") reached.  Further names will not be searchable.");
+                    }
+                    return false;
+                }
+                if (featureMap.putIfAbsent(key, Collections.singletonList(feature)) == null) {
+                    nameCount.incrementAndGet();
+                    return true;
                 }
-                return added;
             } else {
                 // Don't let list grow without bounds
                 if (currentList.size() > MAX_DUPLICATE_COUNT) {
                     return false;
                 }
+                if (featureMap.replace(key, currentList, insert(currentList, feature))) {
+                    return true;
+                }
+            }
+            // Lost a race with another thread adding the same name,  retry
+        }
+    }
 
-                return currentList.add(feature);
-
+    /**
+     * Return a new immutable list with feature inserted in comparator order.
+     */
+    private static List<NamedFeature> insert(List<NamedFeature> list, NamedFeature feature) {
+        FeatureComparator comparator = FeatureComparator.get(true);
+        NamedFeature[] features = new NamedFeature[list.size() + 1];
+        int idx = 0;
+        for (NamedFeature f : list) {
+            if (comparator.compare(f, feature) <= 0) {
+                features[idx++] = f;
+            } else {
+                break;
             }
         }
+        int insertAt = idx;
+        features[insertAt] = feature;
+        for (int i = insertAt; i < list.size(); i++) {
+            features[i + 1] = list.get(i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(features));
     }
 
     /*
@@ -173,20 +216,29 @@ public class FeatureDB {
     }
 
 
+    /**
+     * Add a batch of features.  Safe to call from several loading threads at once.
+     */
     public static void addFeatures(List<htsjdk.tribble.Feature> features, Genome genome) {
         for (htsjdk.tribble.Feature feature : features) {
-            if (feature instanceof IGVFeature)
-                addFeature((IGVFeature) feature, genome);
+            if (feature instanceof NamedFeature)
+                addFeature((NamedFeature) feature, genome);
         }
     }
 
 
     public static void clearFeatures() {
         featureMap.clear();
+        nameCount.set(0);
+        maxNamesWarned.set(false);
+    }
+
+    public static void setMaxNames(int max) {
+        maxNames = max;
     }
 
     static int size() {
-        return featureMap.size();
+        return nameCount.get();
     }
 
     /**
@@ -209,11 +261,7 @@ public class FeatureDB {
      * for which name is at the beginning, including but not limited to
      * exact matches.
      * <p/>
-     * NOTE: "It is imperative that the user manually synchronize
-     * on [this sorted map] when iterating over any of its
-     * collection views, or the collections views of any of its
-     * subMap, headMap or tailMap views". See
-     * <a href="http://docs.oracle.com/javase/6/docs/api/java/util/Collections.html#synchronizedSortedMap%28java.util.SortedMap%29> here</a>
+     * The returned map is a live, weakly consistent view and can be iterated without locking.
      *
      * @param name : Search string. Features which begin with this
      *             string will be found.
@@ -221,9 +269,8 @@ public class FeatureDB {
      */
     static Map<String, List<NamedFeature>> getFeaturesMap(String name) {
         String nm = name.trim().toUpperCase();
-        SortedMap<String, List<NamedFeature>> treeMap = (SortedMap) featureMap;
         //Search is inclusive to first argument, exclusive to second
-        return treeMap.subMap(nm, nm + Character.MAX_VALUE);
+        return featureMap.subMap(nm, nm + Character.MAX_VALUE);
     }
 
     /**
@@ -249,25 +296,21 @@ public class FeatureDB {
      */
     public static List<NamedFeature> getFeaturesList(String name, int limit, boolean longestOnly) {
 
-        //Note: We are iterating over submap, this needs
-        //to be synchronized over the main map.
-        synchronized (featureMap) {
-            Map<String, List<NamedFeature>> resultMap = getFeaturesMap(name);
-            Set<String> names = resultMap.keySet();
-            Iterator<String> nameIter = names.iterator();
-            ArrayList<NamedFeature> features = new ArrayList<NamedFeature>((Math.min(limit, names.size())));
-            int ii = 0;
-            while (nameIter.hasNext() && ii < limit) {
-                List<NamedFeature> subFeats = resultMap.get(nameIter.next());
-                if (longestOnly) {
-                    features.add(subFeats.get(0));
-                } else {
-                    features.addAll(subFeats);
-                }
-                ii++;
+        // The skip list supports lock-free iteration,  so prefix scans don't block loaders
+        Map<String, List<NamedFeature>> resultMap = getFeaturesMap(name);
+        Iterator<List<NamedFeature>> iter = resultMap.values().iterator();
+        ArrayList<NamedFeature> features = new ArrayList<NamedFeature>(Math.min(limit, 100));
+        int ii = 0;
+        while (iter.hasNext() && ii < limit) {
+            List<NamedFeature> subFeats = iter.next();
+            if (longestOnly) {
+                features.add(subFeats.get(0));
+            } else {
+                features.addAll(subFeats);
             }
-            return features;
+            ii++;
         }
+        return features;
     }
 
 
@@ -295,26 +338,23 @@ public class FeatureDB {
         List<NamedFeature> possibles = featureMap.get(nm);
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    BasicFeature bf = (BasicFeature) f;
-                    Codon c = bf.getCodon(currentGenome, proteinPosition);
-                    if (c == null) {
-                        continue;
-                    }
-                    if (c.getAminoAcid().equalsByName(refAA)) {
-                        Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
-                                AminoAcidManager.getAminoAcidByName(mutAA));
-                        if (snps.size() >= 1) {
-                            results.put(c.getGenomePositions()[0], bf);
-                        }
+                BasicFeature bf = (BasicFeature) f;
+                Codon c = bf.getCodon(currentGenome, proteinPosition);
+                if (c == null) {
+                    continue;
+                }
+                if (c.getAminoAcid().equalsByName(refAA)) {
+                    Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
+                            AminoAcidManager.getAminoAcidByName(mutAA));
+                    if (snps.size() >= 1) {
+                        results.put(c.getGenomePositions()[0], bf);
                     }
                 }
-
             }
         }
 
@@ -346,32 +386,29 @@ public class FeatureDB {
         String brefNT = refNT.toUpperCase();
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
-
-                    BasicFeature bf = (BasicFeature) f;
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
-                    if (genomePosition < 0) {
-                        continue;
-                    }
-                    final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
-                    if (nuclSequence == null) {
-                        continue;
-                    }
-                    tempNT = new String(nuclSequence);
-                    if (bf.getStrand() == Strand.NEGATIVE) {
-                        tempNT = SequenceTrack.getReverseComplement(tempNT);
-                    }
+                BasicFeature bf = (BasicFeature) f;
 
-                    if (tempNT.toUpperCase().equals(brefNT)) {
-                        results.put(genomePosition, bf);
-                    }
+                int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
+                if (genomePosition < 0) {
+                    continue;
+                }
+                final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
+                if (nuclSequence == null) {
+                    continue;
+                }
+                tempNT = new String(nuclSequence);
+                if (bf.getStrand() == Strand.NEGATIVE) {
+                    tempNT = SequenceTrack.getReverseComplement(tempNT);
                 }
 
+                if (tempNT.toUpperCase().equals(brefNT)) {
+                    results.put(genomePosition, bf);
+                }
             }
         }
 
@@ -0,0 +1,240 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import htsjdk.tribble.Feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, start-sorted collection of features on a single chromosome supporting overlap queries in
+ * O(log n + k).  Starts and ends are held in primitive arrays along with a running maximum of end positions,
+ * so a query locates its first candidate by binary search on the running maximum and its last by binary search
+ * on the starts,  and touches only the features in between.
+ * <p/>
+ * Unnamed BED features (chr, start, end and optionally score and strand) are not retained as objects at all.
+ * They are stored as columns and recreated on demand,  which reduces memory for large interval files by
+ * roughly an order of magnitude.
+ */
+public class FeatureRangeIndex {
+
+    private static final int IDENTIFIER_EMPTY = 0x4;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+
+    // Either features,  or the compact columns,  is non-null
+    private final Feature[] features;
+    private final String chr;
+    private final float[] scores;
+    private final byte[] flags;
+
+    /**
+     * Build an index over the features,  which need not be sorted.  The list is not modified.
+     */
+    public FeatureRangeIndex(List<? extends Feature> featureList) {
+        this(featureList, true);
+    }
+
+    /**
+     * @param allowCompact false if the caller retains the feature objects,  in which case compacting them would
+     *                     only create duplicates on each query.
+     */
+    public FeatureRangeIndex(List<? extends Feature> featureList, boolean allowCompact) {
+
+        Feature[] sorted = featureList.toArray(new Feature[featureList.size()]);
+        Arrays.sort(sorted, FeatureUtils.FEATURE_START_COMPARATOR);
+
+        int n = sorted.length;
+        starts = new int[n];
+        ends = new int[n];
+        maxEnds = new int[n];
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            starts[i] = sorted[i].getStart();
+            ends[i] = sorted[i].getEnd();
+            maxEnd = Math.max(maxEnd, ends[i]);
+            maxEnds[i] = maxEnd;
+        }
+
+        if (allowCompact && n > 0 && isCompactable(sorted)) {
+            features = null;
+            chr = sorted[0].getContig();
+            flags = new byte[n];
+            float[] s = null;
+            for (int i = 0; i < n; i++) {
+                BasicFeature bf = (BasicFeature) sorted[i];
+                flags[i] = (byte) (bf.strand.ordinal() | (bf.identifier == null ? 0 : IDENTIFIER_EMPTY));
+                if (!Float.isNaN(bf.score)) {
+                    if (s == null) {
+                        s = new float[n];
+                        Arrays.fill(s, Float.NaN);
+                    }
+                    s[i] = bf.score;
+                }
+            }
+            scores = s;
+        } else {
+            features = sorted;
+            chr = null;
+            scores = null;
+            flags = null;
+        }
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public boolean isCompact() {
+        return features == null;
+    }
+
+    public int getStart(int idx) {
+        return starts[idx];
+    }
+
+    public int getEnd(int idx) {
+        return ends[idx];
+    }
+
+    /**
+     * Return the feature at the given (start-sorted) index.  Compact features are recreated on each call.
+     */
+    public Feature getFeature(int idx) {
+        if (features != null) {
+            return features[idx];
+        }
+        int flag = flags[idx];
+        BasicFeature f = new BasicFeature(chr, starts[idx], ends[idx], Strand.values()[flag & 0x3]);
+        if ((flag & IDENTIFIER_EMPTY) != 0) {
+            f.setIdentifier("");
+        }
+        if (scores != null) {
+            f.setScore(scores[idx]);
+        }
+        return f;
+    }
+
+    public List<Feature> getAllFeatures() {
+        if (features != null) {
+            return Arrays.asList(features);
+        }
+        List<Feature> all = new ArrayList<Feature>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            all.add(getFeature(i));
+        }
+        return all;
+    }
+
+    /**
+     * Return features overlapping [start, end],  i.e. with featureStart <= end and featureEnd > start,  in
+     * start order.
+     */
+    public List<Feature> getFeatures(int start, int end) {
+
+        int first = firstIndexEndingAfter(start);
+        int last = firstIndexStartingAfter(end);
+        if (first >= last) {
+            return Collections.emptyList();
+        }
+
+        List<Feature> result = new ArrayList<Feature>(last - first);
+        for (int i = first; i < last; i++) {
+            if (ends[i] > start) {
+                result.add(getFeature(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index of the first feature that could end after position,  based on the running maximum end.
+     */
+    private int firstIndexEndingAfter(int position) {
+        int lo = 0;
+        int hi = maxEnds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] > position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private int firstIndexStartingAfter(int position) {
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] > position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private static boolean isCompactable(Feature[] features) {
+        String chr = features[0].getContig();
+        for (Feature f : features) {
+            if (f.getClass() != BasicFeature.class || !isPlainBed((BasicFeature) f) || !chr.equals(f.getContig())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True if the feature carries nothing beyond what an unnamed BED record (chr, start, end, score, strand)
+     * would produce,  so it can be recreated exactly from those values.
+     */
+    static boolean isPlainBed(BasicFeature f) {
+        return "".equals(f.name) &&
+                (f.identifier == null || "".equals(f.identifier)) &&
+                (f.exons == null || f.exons.isEmpty()) &&
+                f.attributes == null &&
+                f.color == null &&
+                f.description == null &&
+                "".equals(f.type) &&
+                f.readingFrame == -1 &&
+                f.representation == null &&
+                f.parentIds == null &&
+                f.link == null &&
+                f.level == 1 &&
+                f.confidence == 0 &&
+                f.getThickStart() == f.start &&
+                f.getThickEnd() == f.end;
+    }
+}
@@ -43,6 +43,7 @@ import org.broad.igv.ui.panel.ReferenceFrame;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple model of a genome.  Keeps an ordered list of Chromosomes, an alias table, and genome position offsets
@@ -77,7 +78,7 @@ public class Genome {
     public Genome(String id, String displayName, Sequence sequence, boolean chromosOrdered) {
         this.id = id;
         this.displayName = displayName;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = sequence;
         chromosomeNames = sequence.getChromosomeNames();
         this.ucscID = ucsdIDMap.containsKey(id) ? ucsdIDMap.get(id) : id;
@@ -117,7 +118,7 @@ public class Genome {
     public Genome(String id, List<Chromosome> chromosomes) {
         this.id = id;
         this.displayName = id;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = null;
 
         chromosomeNames = new ArrayList<String>(chromosomes.size());
@@ -136,11 +137,9 @@ public class Genome {
             return str;
         } else {
             //We intern strings used as chromosomes
-            //to prevent storing multiple times
-            if (!chrAliasTable.containsKey(str)) {
-                chrAliasTable.put(str, str);
-            }
-            return chrAliasTable.get(str);
+            //to prevent storing multiple times.  The table is concurrent,  features may be parsed in parallel
+            String chr = chrAliasTable.putIfAbsent(str, str);
+            return chr == null ? str : chr;
         }
     }
 
@@ -157,7 +156,7 @@ public class Genome {
      */
     public void addChrAliases(Collection<Collection<String>> synonymsList) {
 
-        if (chrAliasTable == null) chrAliasTable = new HashMap<String, String>();
+        if (chrAliasTable == null) chrAliasTable = new ConcurrentHashMap<String, String>();
 
         // Convert names to a set for fast "contains" testing.
         Set<String> chrNameSet = new HashSet<String>(chromosomeNames);
@@ -417,6 +416,17 @@ public class Genome {
      * @api
      */
     public byte[] getSequence(String chr, int start, int end) {
+        return getSequence(chr, start, end, true);
+    }
+
+    /**
+     * Return the reference dna sequence for the exact interval specified.
+     *
+     * @param useCache if false the sequence tile cache is bypassed,  for bulk reads (possibly from several threads)
+     *                 that should not evict the sequence of the current view
+     * @return sequence, or null if not available
+     */
+    public byte[] getSequence(String chr, int start, int end, boolean useCache) {
 
         if (sequence == null) {
             return null;
@@ -430,6 +440,9 @@ public class Genome {
         if (end <= start) {
             return null;
         }
+        if (!useCache && sequence instanceof SequenceWrapper) {
+            return ((SequenceWrapper) sequence).getSequenceUncached(chr, start, end);
+        }
         return sequence.getSequence(chr, start, end);
     }
 
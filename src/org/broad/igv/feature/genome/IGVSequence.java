@@ -32,6 +32,7 @@ import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a sequence database composed of plain text files with no white space, one per chromosome, in a directory.
@@ -46,7 +47,7 @@ public class IGVSequence implements Sequence {
     private static Logger log = Logger.getLogger(IGVSequence.class);
 
     private String dirPath;
-    private Map<String, String> chrFileNameCache = new HashMap();
+    private Map<String, String> chrFileNameCache = new ConcurrentHashMap<String, String>();
     private HashMap<String, Integer> chromosomeLengths;
     private List<String> chromosomeNames;
 
@@ -103,6 +103,15 @@ public class SequenceWrapper implements Sequence {
        return true;
     }
 
+    /**
+     * Return the reference dna sequence for the exact interval specified,  reading it from the wrapped sequence
+     * without using the tile cache.  Unlike {@link #getSequence(String, int, int)} this is safe to call from
+     * several threads.
+     */
+    public byte[] getSequenceUncached(String chr, int start, int end) {
+        return sequence.getSequence(chr, start, end);
+    }
+
     /**
      * Return the reference dna sequence for the exact interval specified.
      *
@@ -0,0 +1,261 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import com.google.common.io.ByteStreams;
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.tribble.readers.LineIterator;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.FeatureDB;
+import org.broad.igv.feature.NamedFeature;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads all features from a local, uncompressed, line-oriented feature file using multiple threads.  The file is
+ * split into byte ranges that begin and end on line boundaries,  and each range is decoded by its own codec
+ * instance.  Only codecs whose records are independent of one another (BED-like formats and GFF, whose lines
+ * are combined later by GFFFeatureSource) are eligible.
+ * <p/>
+ * Results are equivalent to reading the file with a single tribble iterator:  features are returned per
+ * chromosome in file order,  and named features are registered with FeatureDB.
+ */
+public class ParallelFeatureLoader {
+
+    private static Logger log = Logger.getLogger(ParallelFeatureLoader.class);
+
+    /**
+     * Files smaller than this are not worth splitting.
+     */
+    static final long MIN_PARALLEL_FILE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Target size of each byte range.  More ranges than threads evens out the load.
+     */
+    static final long CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final ResourceLocator locator;
+    private final Genome genome;
+    private final File file;
+
+    public ParallelFeatureLoader(ResourceLocator locator, Genome genome) {
+        this.locator = locator;
+        this.genome = genome;
+        this.file = new File(locator.getPath());
+    }
+
+    /**
+     * Return true if the file described by locator, to be decoded by codec, can be loaded in parallel and is large
+     * enough to benefit.
+     */
+    public static boolean isParallelizable(ResourceLocator locator, FeatureCodec<?, ?> codec) {
+        if (!locator.isLocal() || FileUtils.isRemote(locator.getPath()) || locator.getPath().endsWith(".gz")) {
+            return false;
+        }
+        if (!(codec instanceof UCSCCodec || codec instanceof GFFCodec)) {
+            return false;
+        }
+        if (ForkJoinPool.getCommonPoolParallelism() < 2) {
+            return false;
+        }
+        File f = new File(locator.getPath());
+        return f.isFile() && f.length() >= MIN_PARALLEL_FILE_SIZE;
+    }
+
+    /**
+     * Decode the whole file.
+     *
+     * @return map of canonical chromosome name -> features in file order
+     */
+    public Map<String, List<Feature>> load() throws IOException {
+        return load(CHUNK_SIZE);
+    }
+
+    Map<String, List<Feature>> load(long chunkSize) throws IOException {
+
+        long[] boundaries = computeBoundaries(file, chunkSize);
+        int nChunks = boundaries.length - 1;
+        log.debug("Loading " + file.getName() + " in " + nChunks + " chunks");
+
+        List<Callable<Map<String, List<Feature>>>> tasks = new ArrayList<>(nChunks);
+        for (int i = 0; i < nChunks; i++) {
+            final long start = boundaries[i];
+            final long end = boundaries[i + 1];
+            tasks.add(new Callable<Map<String, List<Feature>>>() {
+                public Map<String, List<Feature>> call() throws IOException {
+                    return loadChunk(start, end);
+                }
+            });
+        }
+
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
+        List<Future<Map<String, List<Feature>>>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (Future<Map<String, List<Feature>>> result : results) {
+            Map<String, List<Feature>> chunkMap;
+            try {
+                chunkMap = result.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted loading " + file.getAbsolutePath());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException("Error loading " + file.getAbsolutePath(), cause);
+            }
+            for (Map.Entry<String, List<Feature>> entry : chunkMap.entrySet()) {
+                List<Feature> features = featureMap.get(entry.getKey());
+                if (features == null) {
+                    featureMap.put(entry.getKey(), entry.getValue());
+                } else {
+                    features.addAll(entry.getValue());
+                }
+            }
+        }
+        return featureMap;
+    }
+
+    private Map<String, List<Feature>> loadChunk(long start, long end) throws IOException {
+
+        AsciiFeatureCodec<?> codec = (AsciiFeatureCodec<?>) CodecFactory.getCodec(locator, genome);
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
+        List<Feature> namedFeatures = new ArrayList<>();
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            if (start == 0) {
+                // The header is consumed from the first chunk,  as it would be by a tribble reader
+                LineIterator lines = new AsciiLineReaderIterator(new AsciiLineReader(ByteStreams.limit(fis, end)));
+                codec.readHeader(lines);
+                decode(codec, lines, featureMap, namedFeatures);
+            } else {
+                readHeader(codec);
+                ByteStreams.skipFully(fis, start);
+                LineIterator lines = new AsciiLineReaderIterator(new AsciiLineReader(ByteStreams.limit(fis, end - start)));
+                decode(codec, lines, featureMap, namedFeatures);
+            }
+        } finally {
+            fis.close();
+        }
+
+        // One batch per chunk,  rather than one FeatureDB call per feature
+        FeatureDB.addFeatures(namedFeatures, genome);
+
+        return featureMap;
+    }
+
+    /**
+     * Initialize the codec's header state (e.g. gffTags, track properties) by reading the file header.
+     */
+    private void readHeader(AsciiFeatureCodec<?> codec) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            codec.readHeader(new AsciiLineReaderIterator(new AsciiLineReader(is)));
+        } finally {
+            is.close();
+        }
+    }
+
+    private void decode(AsciiFeatureCodec<?> codec, LineIterator lines,
+                        Map<String, List<Feature>> featureMap, List<Feature> namedFeatures) {
+
+        while (lines.hasNext()) {
+            Feature f = codec.decode(lines.next());
+            if (f == null) continue;
+
+            String seqName = f.getContig();
+            String igvChr = genome == null ? seqName : genome.getCanonicalChrName(seqName);
+
+            List<Feature> featureList = featureMap.get(igvChr);
+            if (featureList == null) {
+                featureList = new ArrayList<>();
+                featureMap.put(igvChr, featureList);
+            }
+            featureList.add(f);
+            if (f instanceof NamedFeature) namedFeatures.add(f);
+        }
+    }
+
+    /**
+     * Split the file into ranges of roughly chunkSize bytes.  Each interior boundary is moved forward to the
+     * start of the next line.
+     *
+     * @return boundaries b[0] = 0 < b[1] < ... < b[n] = file length;  range i is [b[i], b[i+1])
+     */
+    static long[] computeBoundaries(File file, long chunkSize) throws IOException {
+
+        long length = file.length();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] buffer = new byte[8192];
+            long position = chunkSize;
+            while (position < length) {
+                // Scan forward from position - 1 so a boundary that already follows a newline is kept
+                raf.seek(position - 1);
+                long lineStart = -1;
+                long scanned = position - 1;
+                int n;
+                while (lineStart < 0 && (n = raf.read(buffer)) > 0) {
+                    for (int i = 0; i < n; i++) {
+                        if (buffer[i] == '\n') {
+                            lineStart = scanned + i + 1;
+                            break;
+                        }
+                    }
+                    scanned += n;
+                }
+                if (lineStart < 0 || lineStart >= length) {
+                    break;
+                }
+                boundaries.add(lineStart);
+                position = Math.max(lineStart, position) + chunkSize;
+            }
+        } finally {
+            raf.close();
+        }
+        boundaries.add(length);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+}
@@ -27,14 +27,23 @@ package org.broad.igv.feature.tribble;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.variant.Variant;
+import org.broad.igv.variant.vcf.VCFGenotypeColumns;
 import org.broad.igv.variant.vcf.VCFVariant;
 import htsjdk.tribble.AsciiFeatureCodec;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.readers.LineIterator;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.AbstractVCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
 
 import java.io.IOException;
+import java.util.*;
+
+import static org.broad.igv.prefs.Constants.VARIANT_LAZY_GENOTYPE_THRESHOLD;
 
 /**
  * @author Jim Robinson
@@ -47,14 +56,36 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
     AsciiFeatureCodec wrappedCodec;
     Genome genome;
 
+    /**
+     * Minimum sample count for decoding genotypes on demand, null to use the preference.  Values <= 0 disable it.
+     */
+    private Integer lazyGenotypeThreshold;
+
+    /**
+     * Non-null when genotypes are decoded on demand.  Records are then parsed by the wrapped codec as sites-only
+     * lines, and the sample columns are handed to each variant undecoded.
+     */
+    private List<String> sampleNames;
+    private Map<String, Integer> sampleIndex;
+
     public VCFWrapperCodec(AsciiFeatureCodec wrappedCodec, Genome genome) {
         super(VCFVariant.class);
         this.wrappedCodec = wrappedCodec;
         this.genome = genome;
     }
 
+    public void setLazyGenotypeThreshold(int lazyGenotypeThreshold) {
+        this.lazyGenotypeThreshold = lazyGenotypeThreshold;
+    }
+
     @Override
     public Feature decodeLoc(LineIterator iterator) throws IOException{
+        if (sampleNames != null) {
+            int idx = genotypeColumnsStart(iterator.peek());
+            if (idx > 0) {
+                return wrappedCodec.decode(iterator.next().substring(0, idx - 1));
+            }
+        }
         return wrappedCodec.decodeLoc(iterator);
     }
 
@@ -64,6 +95,15 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
         // but does not currently support missing only certain elements of a field.
         // IGV is much more permissive.
 
+        VCFGenotypeColumns genotypeColumns = null;
+        if (sampleNames != null) {
+            int idx = genotypeColumnsStart(line);
+            if (idx > 0) {
+                genotypeColumns = new VCFGenotypeColumns(line.substring(idx), sampleNames, sampleIndex);
+                line = line.substring(0, idx - 1);
+            }
+        }
+
         VariantContext vc = null;
         try {
             vc = (VariantContext) wrappedCodec.decode(line);
@@ -83,13 +123,62 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
             return null;
         }
         String chr = genome == null ? vc.getChr() : genome.getCanonicalChrName(vc.getChr());
-        return new VCFVariant(vc, chr);
+        return new VCFVariant(vc, chr, genotypeColumns);
 
     }
 
+    /**
+     * @return the index of the FORMAT column, or -1 if the line has no genotype columns
+     */
+    private static int genotypeColumnsStart(String line) {
+        int idx = 0;
+        for (int tabs = 0; tabs < 8; tabs++) {
+            idx = line.indexOf('\t', idx) + 1;
+            if (idx == 0) return -1;
+        }
+        return idx;
+    }
+
     @Override
     public Object readActualHeader(LineIterator reader) {
-        return wrappedCodec.readActualHeader(reader);
+        Object header = wrappedCodec.readActualHeader(reader);
+        if (header instanceof VCFHeader && wrappedCodec instanceof AbstractVCFCodec) {
+            initLazyGenotypes((VCFHeader) header);
+        }
+        return header;
+    }
+
+    /**
+     * Switch to on-demand genotype decoding for files with many samples.  The wrapped codec is given a copy of the
+     * header without samples so it parses sites only; the full header is still returned to callers.
+     */
+    private void initLazyGenotypes(VCFHeader header) {
+
+        int threshold = lazyGenotypeThreshold != null ? lazyGenotypeThreshold :
+                PreferencesManager.getPreferences().getAsInt(VARIANT_LAZY_GENOTYPE_THRESHOLD);
+        if (threshold <= 0 || header.getNGenotypeSamples() < threshold) {
+            return;
+        }
+
+        VCFHeaderVersion version = null;
+        for (VCFHeaderLine line : header.getMetaDataInInputOrder()) {
+            if (VCFHeaderVersion.isFormatString(line.getKey())) {
+                version = VCFHeaderVersion.toHeaderVersion(line.getValue());
+            }
+        }
+        if (version == null) {
+            return;
+        }
+
+        List<String> samples = Collections.unmodifiableList(new ArrayList<String>(header.getGenotypeSamples()));
+        Map<String, Integer> index = new HashMap<String, Integer>(samples.size() * 2);
+        for (int i = 0; i < samples.size(); i++) {
+            index.put(samples.get(i), i);
+        }
+
+        ((AbstractVCFCodec) wrappedCodec).setVCFHeader(new VCFHeader(header.getMetaDataInInputOrder()), version);
+        sampleNames = samples;
+        sampleIndex = index;
     }
 
     /**
@@ -53,6 +53,8 @@ public class GWASData {
     private DescriptionCache descriptionCache = new DescriptionCache();
     private IntArrayList fileIndex = new IntArrayList(100);
     private double maxValue = 0;
+    // Summary for zoomed out views
+    private volatile GWASSummary summary;
 
     public DescriptionCache getDescriptionCache() {
         return descriptionCache;
@@ -109,35 +111,38 @@ public class GWASData {
 
         // Check if the location chr exists in data set
         if (this.locations.containsKey(chr)) {
-            int[] locList = this.locations.get(chr).toArray();
-            double[] valueList = this.values.get(chr).toArray();
-            int indexCounter = 0;
+            IntArrayList locList = this.locations.get(chr);
+            DoubleArrayList valueList = this.values.get(chr);
+            int size = Math.min(locList.size(), valueList.size());
+
+            // Locations are sorted, start from the first location not before the given one
+            int start = lowerBound(locList, location);
 
             // Find index of the closest value before the location
-            while ((indexCounter < locList.length) && locList[indexCounter] < location) {
-                if (valueList[indexCounter] > minValue && valueList[indexCounter] < maxValue)
-                    iBefore = indexCounter;
-                indexCounter++;
+            for (int i = start - 1; i >= 0 && location - locList.get(i) <= maxDistance; i--) {
+                double value = valueList.get(i);
+                if (value > minValue && value < maxValue) {
+                    iBefore = i;
+                    break;
+                }
             }
 
             // Find index of the closest value after the location
-            while (indexCounter < valueList.length) {
-                if (valueList[indexCounter] > minValue && valueList[indexCounter] < maxValue) {
-                    iAfter = indexCounter;
+            for (int i = start; i < size && locList.get(i) - location <= maxDistance; i++) {
+                double value = valueList.get(i);
+                if (value > minValue && value < maxValue) {
+                    iAfter = i;
                     break;
-
                 }
-                indexCounter++;
-
             }
 
             // Choose index of closer location
             if (iBefore >= 0 && iAfter >= 0) {
 
                 // Location of nearest data point before the location
-                int before = locList[iBefore];
+                int before = locList.get(iBefore);
                 // Location of nearest data point after the location
-                int after = locList[iAfter];
+                int after = locList.get(iAfter);
 
                 // Compare which one is closer and use it as index
                 if (Math.abs(location - before) < Math.abs(location - after))
@@ -151,14 +156,62 @@ public class GWASData {
                 if (iAfter >= 0)
                     index = iAfter;
             }
+        }
+        return index;
+    }
+
+    /**
+     * Return the index of the first location >= the given location in a sorted list, or the list size if
+     * there is none.
+     *
+     * @param locList
+     * @param location
+     * @return
+     */
+    static int lowerBound(IntArrayList locList, int location) {
+        int low = 0;
+        int high = locList.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (locList.get(mid) < location)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
 
-            if (index >= 0) {
-                int distance = Math.abs(location - locList[index]);
-                if (distance > maxDistance)
-                    index = -1;
+    /**
+     * Return the position of the chromosome in the data set, or -1 if it has no data points.
+     *
+     * @param chr
+     * @return
+     */
+    public int getChromosomeIndex(String chr) {
+        int chrCounter = 0;
+        for (String key : this.locations.keySet()) {
+            if (key.equals(chr))
+                return chrCounter;
+            chrCounter++;
+        }
+        return -1;
+    }
+
+    /**
+     * Summarize the data for zoomed out views. Called once all data points are added.
+     */
+    void computeSummary() {
+        this.summary = GWASSummary.compute(this);
+    }
+
+    GWASSummary getSummary() {
+        if (this.summary == null) {
+            synchronized (this) {
+                if (this.summary == null)
+                    computeSummary();
             }
         }
-        return index;
+        return summary;
     }
 
 
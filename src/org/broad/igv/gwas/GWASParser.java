@@ -197,6 +197,7 @@ public class GWASParser {
 
                 lastEntry = entry;
             }
+            gData.computeSummary();
             return gData;
 
         } catch (Exception e) {
@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.broad.igv.gwas;
+
+import org.broad.igv.util.collections.DoubleArrayList;
+import org.broad.igv.util.collections.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Multi-resolution summary of a GWAS data set,  used to draw zoomed out views without visiting every data point.
+ * <p/>
+ * Each chromosome is divided into bins of {@link #BASE_BIN_SIZE} bp,  and each coarser level doubles the bin size.
+ * A bin records the maximum value of its points,  and which of {@link #VALUE_LEVELS} equal slices of the value
+ * range [0, max value] are occupied,  so the vertical spread of the points is kept as well as the peak.
+ */
+class GWASSummary {
+
+    /**
+     * Size in bp of the finest bins.  Views with fewer bp per pixel are drawn from the data points.
+     */
+    static final int BASE_BIN_SIZE = 10000;
+
+    /**
+     * Number of slices of the value range recorded per bin.
+     */
+    static final int VALUE_LEVELS = 128;
+
+    private static final int WORDS = VALUE_LEVELS / 64;
+
+    private final double maxValue;
+    private final Map<String, Level[]> levels;
+
+    private GWASSummary(double maxValue, Map<String, Level[]> levels) {
+        this.maxValue = maxValue;
+        this.levels = levels;
+    }
+
+    /**
+     * Summarize all chromosomes of the data set,  one task per chromosome.
+     */
+    static GWASSummary compute(GWASData data) {
+
+        final double maxValue = data.getMaxValue() > 0 ? data.getMaxValue() : 1;
+
+        final List<String> chrs = new ArrayList<String>(data.getLocations().keySet());
+        List<Callable<Level[]>> tasks = new ArrayList<Callable<Level[]>>(chrs.size());
+        for (String chr : chrs) {
+            final IntArrayList locations = data.getLocations().get(chr);
+            final DoubleArrayList values = data.getValues().get(chr);
+            tasks.add(new Callable<Level[]>() {
+                public Level[] call() {
+                    return computeLevels(locations, values, maxValue);
+                }
+            });
+        }
+
+        Map<String, Level[]> levels = new HashMap<String, Level[]>();
+        List<Future<Level[]>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (int i = 0; i < chrs.size(); i++) {
+            try {
+                levels.put(chrs.get(i), results.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted summarizing GWAS data", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException("Error summarizing GWAS data", cause);
+            }
+        }
+        return new GWASSummary(maxValue, levels);
+    }
+
+    static Level[] computeLevels(IntArrayList locations, DoubleArrayList values, double maxValue) {
+
+        int size = locations == null || values == null ? 0 : Math.min(locations.size(), values.size());
+        if (size == 0) {
+            return new Level[0];
+        }
+
+        // Locations are sorted,  the last one determines the number of bins
+        Level level = new Level(BASE_BIN_SIZE, locations.get(size - 1) / BASE_BIN_SIZE + 1);
+        for (int i = 0; i < size; i++) {
+            double value = values.get(i);
+            if (Double.isNaN(value)) continue;
+            int bin = Math.max(0, locations.get(i)) / BASE_BIN_SIZE;
+            if (value > level.max[bin]) {
+                level.max[bin] = (float) value;
+            }
+            int slice = getValueLevel(value, maxValue);
+            level.mask[bin * WORDS + (slice >> 6)] |= 1L << (slice & 63);
+        }
+
+        List<Level> levels = new ArrayList<Level>();
+        levels.add(level);
+        while (level.max.length > 1) {
+            Level prev = level;
+            level = new Level(prev.binSize * 2, (prev.max.length + 1) / 2);
+            for (int bin = 0; bin < prev.max.length; bin++) {
+                int parent = bin / 2;
+                level.max[parent] = Math.max(level.max[parent], prev.max[bin]);
+                for (int w = 0; w < WORDS; w++) {
+                    level.mask[parent * WORDS + w] |= prev.mask[bin * WORDS + w];
+                }
+            }
+            levels.add(level);
+        }
+        return levels.toArray(new Level[levels.size()]);
+    }
+
+    static int getValueLevel(double value, double maxValue) {
+        if (!(value > 0)) return 0;
+        return (int) Math.min(VALUE_LEVELS - 1, value / maxValue * VALUE_LEVELS);
+    }
+
+    int getValueLevel(double value) {
+        return getValueLevel(value, maxValue);
+    }
+
+    /**
+     * Return the value at the middle of the given slice of the value range.
+     */
+    double getLevelValue(int valueLevel) {
+        return (valueLevel + 0.5) * maxValue / VALUE_LEVELS;
+    }
+
+    /**
+     * Return the coarsest level whose bins are no larger than a pixel,  or null if the view is zoomed in too far
+     * to be drawn from the summary.
+     *
+     * @param chr
+     * @param bpPerPixel
+     */
+    Level getLevel(String chr, double bpPerPixel) {
+        Level[] chrLevels = levels.get(chr);
+        if (chrLevels == null || chrLevels.length == 0 || bpPerPixel < BASE_BIN_SIZE) {
+            return null;
+        }
+        int idx = 0;
+        while (idx + 1 < chrLevels.length && chrLevels[idx + 1].binSize <= bpPerPixel) {
+            idx++;
+        }
+        return chrLevels[idx];
+    }
+
+    static class Level {
+
+        final int binSize;
+
+        /**
+         * Maximum value per bin,  negative infinity for empty bins
+         */
+        final float[] max;
+
+        /**
+         * Occupied value slices,  {@code VALUE_LEVELS / 64} words per bin
+         */
+        final long[] mask;
+
+        Level(int binSize, int nBins) {
+            this.binSize = binSize;
+            this.max = new float[nBins];
+            this.mask = new long[nBins * WORDS];
+            Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        }
+
+        int getBinCount() {
+            return max.length;
+        }
+
+        boolean isEmpty(int bin) {
+            return max[bin] == Float.NEGATIVE_INFINITY;
+        }
+
+        /**
+         * Return the occupied value slice following {@code fromLevel} (inclusive) in the bin, or -1.
+         */
+        int nextValueLevel(int bin, int fromLevel) {
+            for (int w = fromLevel >> 6; w < WORDS; w++) {
+                long bits = mask[bin * WORDS + w];
+                if (w == fromLevel >> 6) {
+                    bits &= -1L << (fromLevel & 63);
+                }
+                if (bits != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package org.broad.igv.gwas;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
 import org.broad.igv.feature.genome.ChromosomeCoordinate;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
@@ -56,9 +57,12 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
@@ -89,6 +93,7 @@ public class GWASTrack extends AbstractTrack {
     private Color secondaryColor;
 
     private GWASData gData;
+    private PointRaster pointRaster;
     private static final Logger log = Logger.getLogger(GWASTrack.class);
 
     private static final int AXIS_AREA_WIDTH = 60;
@@ -178,7 +183,6 @@ public class GWASTrack extends AbstractTrack {
         this.scale = context.getScale();
         int bufferX = (int) adjustedRectMaxX;
         int bufferY = (int) adjustedRectMaxY;
-        Color[][] drawBuffer = new Color[bufferX + 1][bufferY + 1];
         double origin = context.getOrigin();
         double locScale = context.getScale();
 
@@ -192,142 +196,214 @@ public class GWASTrack extends AbstractTrack {
         // Calculate the Y scale factor.
         double yScaleFactor = adjustedRect.getHeight() / (maxValue - minValue);
 
-        //int lastPx = 0;
         String chrName = context.getChr();
+        boolean wholeGenome = chrName.equals(Globals.CHR_ALL);
         ArrayList<String> chrList = new ArrayList();
-        if (chrName.equals("All")) {
-            for (String key : gData.getLocations().keySet()) {
-                chrList.add(key);
-            }
-
+        if (wholeGenome) {
+            chrList.addAll(gData.getLocations().keySet());
         } else {
             chrList.add(chrName);
-
         }
-        double dx = Math.ceil(1 / locScale) + 1;
-        double rangeMaxValue = Math.ceil(gData.getMaxValue());
 
+        double rangeMaxValue = Math.ceil(gData.getMaxValue());
         double pointSizeScale = rangeMaxValue / maxPointSize;
 
-        Color drawColor = this.primaryColor;
-        Object[] chrs = this.gData.getLocations().keySet().toArray();
-
-        int xMinPointSize = (int) (1 / locScale);
+        // If x minimum size is smaller than point minimum size, use minimum point size
+        int xMinPointSize = Math.max((int) (1 / locScale), minPointSize);
 
-        // Loop through data points, chromosome by chromosome
+        // Points are drawn to a raster covering the track, reused between paints
+        int bufferMinY = Math.max(0, arect.y);
+        if (bufferX <= 0 || bufferY <= bufferMinY) {
+            return;
+        }
 
-        for (String chr : chrList) {
-            if (this.gData.getLocations().containsKey(chr) && this.gData.getValues().containsKey(chr)) {
+        synchronized (this) {
+            if (pointRaster == null || pointRaster.width != bufferX || pointRaster.minY != bufferMinY ||
+                    pointRaster.height != bufferY - bufferMinY) {
+                pointRaster = new PointRaster(bufferX, bufferMinY, bufferY - bufferMinY);
+            }
+            PointRaster raster = pointRaster;
+            raster.clear();
+            raster.setScale(adjustedRectY, maxValue, yScaleFactor, pointSizeScale, minPointSize, xMinPointSize);
 
+            GWASSummary summary = gData.getSummary();
+            int chrCounter = wholeGenome ? 0 : gData.getChromosomeIndex(chrName);
 
-                // Choose a color for the chromosome
+            // Loop through data points, chromosome by chromosome
+            for (String chr : chrList) {
+                IntArrayList locations = this.gData.getLocations().get(chr);
+                DoubleArrayList values = this.gData.getValues().get(chr);
+                int chrIndex = chrCounter++;
+                if (locations == null || values == null || locations.isEmpty()) continue;
+
+                int drawColor = getChrColor(chr, chrIndex).getRGB();
+
+                // Chromosome coordinates, in bp, of the view origin and pixel width.  Whole genome coordinates
+                // are in kb.
+                double chrOrigin;
+                double bpPerPixel;
+                if (wholeGenome) {
+                    chrOrigin = (origin - genome.getCumulativeOffset(chr) / 1000.0) * 1000;
+                    bpPerPixel = locScale * 1000;
+                } else {
+                    chrOrigin = origin;
+                    bpPerPixel = locScale;
+                }
 
-                // Use specific color for each chromosome
-                if (this.useChrColors)
-                    drawColor = ChromosomeColors.getColor(chr);
+                // Points are centered on their location and may extend into the view from either side
+                double minLocation = chrOrigin - maxPointSize * bpPerPixel;
+                double maxLocation = chrOrigin + (adjustedRectMaxX + maxPointSize) * bpPerPixel;
+                if (locations.get(locations.size() - 1) < minLocation || locations.get(0) > maxLocation) {
+                    continue;
+                }
 
-                    // Use two alternating colors for chromosomes
-                else if (this.alternatingColors) {
-                    int chrCounter = 0;
-                    while (chrCounter < chrs.length && !chrs[chrCounter].toString().equals(chr))
-                        chrCounter++;
+                GWASSummary.Level level = summary.getLevel(chr, bpPerPixel);
+                if (level != null) {
+                    renderBins(raster, summary, level, chrOrigin, bpPerPixel, minLocation, maxLocation, drawColor);
+                } else {
+                    renderPoints(raster, locations, values, chrOrigin, bpPerPixel, minLocation, adjustedRectMaxX, drawColor);
+                }
+            }
 
-                    if (chrCounter % 2 == 0)
-                        drawColor = this.secondaryColor;
-                    else
-                        drawColor = this.primaryColor;
+            // Draw the raster to the canvas
+            context.getGraphics().drawImage(raster.image, 0, raster.minY, null);
+        }
 
-                }
+        // Draw the legend axis
+        if (showAxis) {
+            this.renderAxis(context, arect);
+        }
 
-                IntArrayList locations = this.gData.getLocations().get(chr);
-                DoubleArrayList values = this.gData.getValues().get(chr);
+    }
 
-                int size = locations.size();
+    private Color getChrColor(String chr, int chrIndex) {
 
-                // Loop through data points in a chromosome
-                for (int j = 0; j < size; j++) {
+        // Use specific color for each chromosome
+        if (this.useChrColors)
+            return ChromosomeColors.getColor(chr);
 
-                    // Get location, e.g. start for the data point
-                    int start;
-                    if (chrName.equals("All"))
-                        start = genome.getGenomeCoordinate(chr, locations.get(j));
-                    else
-                        start = locations.get(j);
+            // Use two alternating colors for chromosomes
+        else if (this.alternatingColors)
+            return chrIndex % 2 == 0 ? this.secondaryColor : this.primaryColor;
 
-                    // Based on location, calculate X-coordinate, or break if outside of the view
-                    double pX = ((start - origin) / locScale);
-                    if ((pX + dx < 0))
-                        continue;
-                    else if (pX > adjustedRectMaxX)
-                        break;
+        return this.primaryColor;
+    }
 
-                    // Based on value of the data point, calculate Y-coordinate
-                    double dataY = values.get(j);
+    /**
+     * Draw every data point of a chromosome within the view.  Locations are sorted, the first point is found
+     * with a binary search.
+     */
+    private void renderPoints(PointRaster raster, IntArrayList locations, DoubleArrayList values, double chrOrigin,
+                              double bpPerPixel, double minLocation, double maxX, int drawColor) {
 
-                    if (!Double.isNaN(dataY)) {
+        int size = Math.min(locations.size(), values.size());
+        int first = GWASData.lowerBound(locations, (int) Math.ceil(minLocation));
 
-                        int xPointSize = (int) Math.ceil(dataY / pointSizeScale);
+        for (int j = first; j < size; j++) {
 
-                        // Scale y size based on the used range, data value and max point size
-                        int yPointSize = xPointSize;
-                        if (yPointSize < minPointSize)
-                            yPointSize = minPointSize;
+            // Based on location, calculate X-coordinate, or break if outside of the view
+            double pX = (locations.get(j) - chrOrigin) / bpPerPixel;
+            if (pX > maxX)
+                break;
 
-                        // If x minimum size is smaller than point minimum size, use minimum point size
-                        if (xMinPointSize < minPointSize)
-                            xMinPointSize = minPointSize;
+            double dataY = values.get(j);
+            if (!Double.isNaN(dataY)) {
+                raster.drawPoint(pX, dataY, drawColor);
+            }
+        }
+    }
 
-                        if (xPointSize < xMinPointSize)
-                            xPointSize = xMinPointSize;
+    /**
+     * Draw a chromosome from summary bins no wider than a pixel.  Each occupied value slice of a bin is drawn as a
+     * point at the middle of the slice, and the bin maximum at its exact value.
+     */
+    private void renderBins(PointRaster raster, GWASSummary summary, GWASSummary.Level level, double chrOrigin,
+                            double bpPerPixel, double minLocation, double maxLocation, int drawColor) {
 
-                        // Point sizes divided by two to center locations of large points
-                        int x = (int) pX - (xPointSize / 2);
-                        int y = ((int) Math.min(adjustedRectMaxY, adjustedRectY + (maxValue - dataY) * yScaleFactor)) - (yPointSize / 2);
+        int binSize = level.binSize;
+        int firstBin = (int) Math.max(0, Math.floor(minLocation / binSize));
+        int lastBin = (int) Math.min(level.getBinCount() - 1, Math.floor(maxLocation / binSize));
 
-                        int maxDrawX = x + xPointSize;
-                        int maxDrawY = y + yPointSize;
-                        if (x < 0)
-                            x = 0;
-                        if (y < 0)
-                            y = 0;
+        for (int bin = firstBin; bin <= lastBin; bin++) {
+            if (level.isEmpty(bin)) continue;
 
-                        if (maxDrawX > adjustedRectMaxX)
-                            maxDrawX = (int) adjustedRectMaxX;
-                        if (maxDrawY > adjustedRectMaxY)
-                            maxDrawY = (int) adjustedRectMaxY;
+            double pX = ((double) bin * binSize + binSize / 2.0 - chrOrigin) / bpPerPixel;
+            double max = level.max[bin];
+            int maxLevel = summary.getValueLevel(max);
 
-                        // Loop through all the pixels of the data point and fill in drawing buffer
-                        for (int drawX = x; drawX < maxDrawX; drawX++)
-                            for (int drawY = y; drawY < maxDrawY; drawY++)
-                                drawBuffer[drawX][drawY] = drawColor;
-                    }
-                }
+            for (int v = level.nextValueLevel(bin, 0); v >= 0 && v < maxLevel; v = level.nextValueLevel(bin, v + 1)) {
+                raster.drawPoint(pX, summary.getLevelValue(v), drawColor);
             }
+            raster.drawPoint(pX, max, drawColor);
         }
+    }
 
-        // Draw the pixels from the drawing buffer to the canvas
-
-        Graphics2D g = context.getGraphics();
-        Color color;
-        Color prevColor = null;
+    /**
+     * ARGB raster the points of a track are drawn to.
+     */
+    private static class PointRaster {
+
+        final BufferedImage image;
+        final int width;
+        final int minY;
+        final int height;
+        private final int[] pixels;
+
+        private double rectY;
+        private double axisMax;
+        private double yScaleFactor;
+        private double pointSizeScale;
+        private int minPointSize;
+        private int xMinPointSize;
+
+        PointRaster(int width, int minY, int height) {
+            this.width = width;
+            this.minY = minY;
+            this.height = height;
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
 
-        for (int x = 0; x < bufferX; x++)
-            for (int y = 0; y < bufferY; y++) {
-                color = drawBuffer[x][y];
-                if (color != null) {
-                    if (!color.equals(prevColor)) {
-                        g.setColor(color);
-                        prevColor = color;
-                    }
-                    g.fillRect(x, y, 1, 1);
-                }
-            }
+        void clear() {
+            Arrays.fill(pixels, 0);
+        }
 
-        // Draw the legend axis
-        if (showAxis) {
-            this.renderAxis(context, arect);
+        void setScale(double rectY, double axisMax, double yScaleFactor, double pointSizeScale,
+                      int minPointSize, int xMinPointSize) {
+            this.rectY = rectY;
+            this.axisMax = axisMax;
+            this.yScaleFactor = yScaleFactor;
+            this.pointSizeScale = pointSizeScale;
+            this.minPointSize = minPointSize;
+            this.xMinPointSize = xMinPointSize;
         }
 
+        void drawPoint(double pX, double dataY, int argb) {
+
+            // Scale y size based on the used range, data value and max point size
+            int xPointSize = (int) Math.ceil(dataY / pointSizeScale);
+            int yPointSize = Math.max(xPointSize, minPointSize);
+            if (xPointSize < xMinPointSize)
+                xPointSize = xMinPointSize;
+
+            // Point sizes divided by two to center locations of large points
+            int maxY = minY + height;
+            int x = (int) pX - (xPointSize / 2);
+            int y = ((int) Math.min(maxY, rectY + (axisMax - dataY) * yScaleFactor)) - (yPointSize / 2);
+
+            int maxDrawX = Math.min(x + xPointSize, width);
+            int maxDrawY = Math.min(y + yPointSize, maxY);
+            if (x < 0)
+                x = 0;
+            if (y < minY)
+                y = minY;
+
+            if (x >= maxDrawX) return;
+            for (int drawY = y; drawY < maxDrawY; drawY++) {
+                int row = (drawY - minY) * width;
+                Arrays.fill(pixels, row + x, row + maxDrawX, argb);
+            }
+        }
     }
 
 
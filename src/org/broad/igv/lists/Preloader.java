@@ -55,7 +55,8 @@ public class Preloader {
 
     private static Logger log = Logger.getLogger(Preloader.class);
 
-    private static final ExecutorService threadExecutor = Executors.newFixedThreadPool(5);
+    private static final ExecutorService threadExecutor =
+            Executors.newFixedThreadPool(Math.max(5, Runtime.getRuntime().availableProcessors()));
 
     public static synchronized CompletableFuture preload() {
 
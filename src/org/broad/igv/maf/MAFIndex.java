@@ -25,29 +25,58 @@
 
 package org.broad.igv.maf;
 
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.ResourceLocator;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
-import htsjdk.tribble.readers.AsciiLineReader;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
+ * Index of a MAF file.  For each chromosome the index holds intervals of {@link #blockSize} consecutive alignment
+ * blocks,  sorted by start,  with the file offset of the first block of each.
+ * <p/>
+ * Local MAF files are indexed in a compact binary file (extension ".index.bin") which is memory mapped when opened.
+ * Indexes are built in parallel,  splitting the file at block boundaries.  The legacy text format (".index") is
+ * still read,  and is written for remote files.
+ *
  * @author jrobinso
  *         Date: 2/8/13
  *         Time: 7:23 AM
  */
 public class MAFIndex {
 
+    private static Logger log = Logger.getLogger(MAFIndex.class);
+
+    static final String BINARY_INDEX_EXTENSION = ".index.bin";
+
+    private static final int BINARY_INDEX_MAGIC = 0x4D414649;   // "MAFI"
+    private static final int BINARY_INDEX_VERSION = 1;
+
+    /**
+     * Approximate number of bytes of the MAF file scanned by one indexing task.
+     */
+    static long chunkSize = 64L << 20;
+
     private List<String> species;
 
     /**
-     * Map of chromosome name -> interval tree
+     * Map of chromosome name -> index
      */
-    private Map<String, IntervalTree> intervalTrees;
+    private Map<String, ChrIndex> chrIndeces;
 
     /**
      * The # of alignments represented by an interval in the tree.
@@ -56,7 +85,7 @@ public class MAFIndex {
     public static int blockSize = 50;
 
     public MAFIndex() {
-        intervalTrees = new HashMap<String, IntervalTree>();
+        chrIndeces = new LinkedHashMap<String, ChrIndex>();
     }
 
     /**
@@ -78,31 +107,56 @@ public class MAFIndex {
     }
 
     public Collection<String> getChromosomes() {
-        return intervalTrees.keySet();
+        return chrIndeces.keySet();
     }
 
-    public IntervalTree getIntervalTree(String chr) {
+    public boolean containsChromosome(String chr) {
+        return getChrIndex(chr) != null;
+    }
 
-        IntervalTree iv = intervalTrees.get(chr);
-        if(iv == null) {
-            iv = intervalTrees.get("*"); // To support legacy MAF indeces, files are split by chromosome
+    /**
+     * Return the smallest file offset of the intervals overlapping [start, end],  or -1 if there are none.
+     * Alignment blocks do not overlap,  so all blocks in the range can be read starting from this offset.
+     */
+    public long getStartOffset(String chr, int start, int end) {
+        ChrIndex chrIndex = getChrIndex(chr);
+        return chrIndex == null ? -1 : chrIndex.getStartOffset(start, end);
+    }
+
+    ChrIndex getChrIndex(String chr) {
+        ChrIndex chrIndex = chrIndeces.get(chr);
+        if (chrIndex == null) {
+            chrIndex = chrIndeces.get("*"); // To support legacy MAF indeces, files are split by chromosome
         }
-        return iv;
+        return chrIndex;
     }
 
+    /**
+     * Open the index for a MAF file,  creating it if needed.  For local files the binary index is used if it is
+     * up to date;  otherwise an existing text index is converted,  or a new index built,  and saved in binary form.
+     */
+    public static MAFIndex open(String path) throws IOException {
 
-    public void putIntervalTree(String s, IntervalTree iv) {
+        String indexPath = path + ".index";
 
-        intervalTrees.put(s, iv);
-    }
+        File file = FileUtils.isRemote(path) ? null : new File(path);
+        if (file == null || !file.isFile()) {
+            if (ParsingUtils.pathExists(indexPath)) {
+                return loadIndex(indexPath);
+            } else {
+                MAFIndex index = createIndex(path);
+                writeIndex(index, indexPath);
+                return index;
+            }
+        }
 
-    public void insertInterval(String lastChr, int intervalStart, int intervalEnd, long value) {
-        IntervalTree iv = intervalTrees.get(lastChr);
-        if (iv == null) {
-            iv = new IntervalTree();
-            intervalTrees.put(lastChr, iv);
+        File binaryIndexFile = new File(path + BINARY_INDEX_EXTENSION);
+        MAFIndex index = loadBinaryIndex(binaryIndexFile, file);
+        if (index == null) {
+            index = ParsingUtils.pathExists(indexPath) ? loadIndex(indexPath) : createIndex(path);
+            writeBinaryIndex(index, binaryIndexFile, file);
         }
-        iv.insert(new Interval(intervalStart, intervalEnd, value));
+        return index;
     }
 
 
@@ -115,7 +169,6 @@ public class MAFIndex {
         MAFIndex index = new MAFIndex();
         index.species = new ArrayList<String>();
 
-        //index = new IntervalTree<Long>();
         BufferedReader br = null;
         try {
             br = ParsingUtils.openBufferedReader(idxFile);
@@ -131,28 +184,32 @@ public class MAFIndex {
                     index.species.add(line.trim());
                 }
 
-                IntervalTree iv = null;
+                Map<String, List<Entry>> entries = new LinkedHashMap<String, List<Entry>>();
+                List<Entry> chrEntries = null;
                 while ((line = br.readLine()) != null) {
                     if (line.trim().length() == 0) continue;
                     if (line.startsWith("#chr=")) {
                         String chr = ParsingUtils.EQ_PATTERN.split(line)[1];
-                        iv = new IntervalTree();
-                        index.putIntervalTree(chr, iv);
-                    } else if (iv != null) {
+                        chrEntries = new ArrayList<Entry>();
+                        entries.put(chr, chrEntries);
+                    } else if (chrEntries != null) {
                         String[] info = Globals.tabPattern.split(line);
                         int start = Integer.parseInt(info[0]);
                         int end = Integer.parseInt(info[1]) + start;
                         long offset = Long.parseLong(info[2]);
-                        iv.insert(new Interval(start, end, offset));
+                        chrEntries.add(new Entry(null, start, end, offset));
                     } else {
                         // log.info("Skipping line " + line);
                     }
                 }
+                for (Map.Entry<String, List<Entry>> e : entries.entrySet()) {
+                    index.chrIndeces.put(e.getKey(), ChrIndex.create(e.getValue()));
+                }
 
             } else {
                 // A "legacy" index, created for Broad hosted files that are separated by chromosome.
                 // Every alignment is indexed, which is overkill.  Below we lump them into blocks of 50.
-                IntervalTree iv = new IntervalTree();
+                List<Entry> chrEntries = new ArrayList<Entry>();
                 int l = 0;
                 int intervalStart = 0;
                 int intervalEnd = 0;
@@ -162,18 +219,18 @@ public class MAFIndex {
                     int start = Integer.parseInt(info[0]);
                     intervalEnd = Integer.parseInt(info[1]) + start;
                     if (l % 50 == 0) {
-                        iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                        chrEntries.add(new Entry(null, intervalStart, intervalEnd, lastOffset));
                         intervalStart = intervalEnd;
                         lastOffset = Long.parseLong(info[2]);
                     }
                     l++;
                 }
 
-                if(intervalEnd > intervalStart) {
-                    iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                if (intervalEnd > intervalStart) {
+                    chrEntries.add(new Entry(null, intervalStart, intervalEnd, lastOffset));
                 }
 
-                index.putIntervalTree("*", iv);
+                index.chrIndeces.put("*", ChrIndex.create(chrEntries));
             }
         } finally {
             if (br != null) br.close();
@@ -183,7 +240,8 @@ public class MAFIndex {
 
 
     /**
-     * Create an index for the MAF file.
+     * Create an index for the MAF file.  Local files are split into chunks of about {@link #chunkSize} bytes which
+     * are scanned in parallel,  each chunk indexing the blocks whose "a" line starts in it.
      * <p/>
      * Example MAF lines:
      * a score=34237.000000
@@ -193,135 +251,214 @@ public class MAFIndex {
      * @param alignmentFile
      * @throws IOException
      */
-    public static MAFIndex createIndex(String alignmentFile) throws IOException {
+    public static MAFIndex createIndex(final String alignmentFile) throws IOException {
+
+        File file = FileUtils.isRemote(alignmentFile) ? null : new File(alignmentFile);
+        long length = file != null && file.isFile() ? file.length() : -1;
+
+        List<ChunkIndex> chunks = new ArrayList<ChunkIndex>();
+        if (length < 0) {
+            chunks.add(indexChunk(alignmentFile, 0, Long.MAX_VALUE));
+        } else {
+            int nChunks = (int) Math.max(1, Math.min(length / chunkSize + 1, Integer.MAX_VALUE));
+            List<Callable<ChunkIndex>> tasks = new ArrayList<Callable<ChunkIndex>>(nChunks);
+            for (int i = 0; i < nChunks; i++) {
+                final long from = i * length / nChunks;
+                final long to = i == nChunks - 1 ? Long.MAX_VALUE : (i + 1) * length / nChunks;
+                tasks.add(new Callable<ChunkIndex>() {
+                    @Override
+                    public ChunkIndex call() throws IOException {
+                        return indexChunk(alignmentFile, from, to);
+                    }
+                });
+            }
+            try {
+                for (Future<ChunkIndex> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    chunks.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+
+        Map<String, List<Entry>> entries = new LinkedHashMap<String, List<Entry>>();
+        Map<String, SpeciesRank> speciesRanks = new LinkedHashMap<String, SpeciesRank>();
+        for (ChunkIndex chunk : chunks) {
+            for (Entry e : chunk.entries) {
+                List<Entry> chrEntries = entries.get(e.chr);
+                if (chrEntries == null) {
+                    chrEntries = new ArrayList<Entry>();
+                    entries.put(e.chr, chrEntries);
+                }
+                chrEntries.add(e);
+            }
+            for (Map.Entry<String, SpeciesRank> e : chunk.speciesRanks.entrySet()) {
+                SpeciesRank rank = speciesRanks.get(e.getKey());
+                if (rank == null) {
+                    rank = new SpeciesRank();
+                    speciesRanks.put(e.getKey(), rank);
+                }
+                rank.sum += e.getValue().sum;
+                rank.count += e.getValue().count;
+            }
+        }
 
         MAFIndex index = new MAFIndex();
-        AsciiLineReader reader = ParsingUtils.openAsciiReader(new ResourceLocator(alignmentFile));
+        for (Map.Entry<String, List<Entry>> e : entries.entrySet()) {
+            index.chrIndeces.put(e.getKey(), ChrIndex.create(e.getValue()));
+        }
+        index.setSpecies(sortSpecies(speciesRanks));
+        return index;
+    }
+
+    /**
+     * Index the alignment blocks whose "a" line starts at an offset in [from, to).
+     */
+    private static ChunkIndex indexChunk(String alignmentFile, long from, long to) throws IOException {
 
+        ChunkIndex chunk = new ChunkIndex();
 
+        SeekableStream is = IGVSeekableStreamFactory.getInstance().getStreamFor(alignmentFile);
         try {
+            // Start at the byte preceding the chunk and skip the line it ends,  so the first line read starts
+            // at or after "from"
+            long position = Math.max(0, from - 1);
+            is.seek(position);
+            LineScanner lines = new LineScanner(is, position);
+            if (from > 0 && !lines.nextLine()) {
+                return chunk;
+            }
 
-            String lastChr = null;
+            String intervalChr = null;
             int intervalStart = 0;
             int intervalEnd = 0;
+            long intervalOffset = 0;
             int blockCount = 0;
-            String line;
-            long lastOffset = 0;
-            boolean newBlock = false;
-
-            Set<String> allSpecies = new HashSet<String>();
-            List<String> blockSpecies = new ArrayList<String>();
-            Map<String, RunningAverage> speciesRanks = new HashMap<String, RunningAverage>();
-
-            while ((line = reader.readLine()) != null) {
-                //Ignore all comment lines
-                if (line.startsWith("#") || line.trim().length() == 0) {
-                    continue;
-                }
 
-                if (line.startsWith("a ")) {
-                    newBlock = true;
-                    blockCount++;
+            boolean inBlock = false;     // True once the first block of the chunk is found
+            boolean newBlock = false;    // True until the reference line of the current block is read
+            long blockOffset = 0;
+            int speciesIndex = 0;
 
-                    // Merge species list, if any, from previous block and start new one
-                    mergeSpecies(blockSpecies, allSpecies, speciesRanks);
-                    blockSpecies.clear();
+            while (lines.nextLine()) {
+                byte[] bytes = lines.buffer;
+                int lineStart = lines.lineStart;
+                int lineEnd = lines.lineEnd;
+                if (lineEnd == lineStart) continue;
 
-                } else if (line.startsWith("s ")) {
+                if (bytes[lineStart] == 'a' && (lineEnd == lineStart + 1 || Character.isWhitespace(bytes[lineStart + 1]))) {
+                    blockOffset = lines.getLineOffset();
+                    if (blockOffset >= to) {
+                        break;
+                    }
+                    inBlock = true;
+                    newBlock = true;
+                    speciesIndex = 0;
 
-                    String[] tokens = Globals.whitespacePattern.split(line);
+                } else if (inBlock && bytes[lineStart] == 's' && lineEnd > lineStart + 1 && bytes[lineStart + 1] == ' ') {
 
-                    String src = tokens[1];
-                    String species = src;
-                    String chr = src;
-                    if (src.contains(".")) {
-                        String[] srcTokens = ParsingUtils.PERIOD_PATTERN.split(src);
-                        species = srcTokens[0];
-                        chr = srcTokens[1];
+                    // s src start size ...
+                    int[] tokens = tokenize(bytes, lineStart, lineEnd, 4);
+                    if (tokens == null) {
+                        throw new IOException("Invalid MAF sequence line at offset " + lines.getLineOffset());
                     }
-                    if (lastChr == null) lastChr = chr;
-
-                    blockSpecies.add(species);
+                    int srcStart = tokens[2];
+                    int srcEnd = tokens[3];
+                    int dot = srcStart;
+                    while (dot < srcEnd && bytes[dot] != '.') dot++;
+                    String species = new String(bytes, srcStart, dot - srcStart, StandardCharsets.ISO_8859_1);
+
+                    SpeciesRank rank = chunk.speciesRanks.get(species);
+                    if (rank == null) {
+                        rank = new SpeciesRank();
+                        chunk.speciesRanks.put(species, rank);
+                    }
+                    rank.sum += speciesIndex++;
+                    rank.count++;
 
                     if (newBlock) {
                         // This will be the reference sequence line (its always first after the "a")
-                        int start = Integer.parseInt(tokens[2]);
-                        int end = Integer.parseInt(tokens[3]) + start;
-
-                        if ((!chr.equals(lastChr) && blockCount > 0) ||
-                                blockCount > blockSize) {
+                        String chr = species;
+                        if (dot < srcEnd) {
+                            int dot2 = dot + 1;
+                            while (dot2 < srcEnd && bytes[dot2] != '.') dot2++;
+                            chr = new String(bytes, dot + 1, dot2 - dot - 1, StandardCharsets.ISO_8859_1);
+                        }
+                        int start = parseInt(bytes, tokens[4], tokens[5]);
+                        int end = parseInt(bytes, tokens[6], tokens[7]) + start;
 
+                        if (blockCount > 0 && (!chr.equals(intervalChr) || blockCount >= blockSize)) {
                             // Record previous interval and start a new one.
-                            index.insertInterval(lastChr, intervalStart, intervalEnd, lastOffset);
-
-                            blockCount = 1;
-                            lastOffset = reader.getPosition();
+                            chunk.entries.add(new Entry(intervalChr, intervalStart, intervalEnd, intervalOffset));
+                            blockCount = 0;
+                        }
+                        if (blockCount == 0) {
+                            intervalChr = chr;
                             intervalStart = start;
+                            intervalEnd = end;
+                            intervalOffset = blockOffset;
                         }
-
-                        lastChr = chr;
-                        intervalEnd = end;
+                        intervalEnd = Math.max(intervalEnd, end);
+                        blockCount++;
                         newBlock = false;
                     }
-
-                } else if (line.startsWith("i ")) {
-                    //We do not handle information lines yet.
-                    continue;
-                } else if (line.startsWith("q ")) {
-                    //We do not handle quality lines yet.
-                    continue;
                 }
             }
 
-
             if (blockCount > 0) {
-                index.insertInterval(lastChr, intervalStart, intervalEnd, lastOffset);
+                chunk.entries.add(new Entry(intervalChr, intervalStart, intervalEnd, intervalOffset));
             }
-
-            // Merge species list, if any, from previous block and start new one
-            mergeSpecies(blockSpecies, allSpecies, speciesRanks);
-            index.setSpecies(sortSpecies(allSpecies, speciesRanks));
-
-            return index;
-
+            return chunk;
 
         } finally {
-            reader.close();
-
+            is.close();
         }
-
     }
 
-    private static class RunningAverage {
-        int nPts = 1;
-        double average = 0;
-
-        void addValue(double value) {
-            average = (nPts * average + value) / nPts++;
+    /**
+     * Return the [start, end) bounds of the first nTokens whitespace delimited tokens of the line,  or null if
+     * there are fewer.
+     */
+    private static int[] tokenize(byte[] bytes, int from, int to, int nTokens) {
+        int[] bounds = new int[2 * nTokens];
+        int i = from;
+        for (int t = 0; t < nTokens; t++) {
+            while (i < to && Character.isWhitespace(bytes[i])) i++;
+            if (i == to) return null;
+            bounds[2 * t] = i;
+            while (i < to && !Character.isWhitespace(bytes[i])) i++;
+            bounds[2 * t + 1] = i;
         }
+        return bounds;
     }
 
-    private static void mergeSpecies(List<String> blockSpecies, Set<String> allSpecies, Map<String, RunningAverage> speciesRank) {
-        allSpecies.addAll(blockSpecies);
-        for (int i = 0; i < blockSpecies.size(); i++) {
-            String sp = blockSpecies.get(i);
-            RunningAverage rank = speciesRank.get(sp);
-            if (rank == null) {
-                rank = new RunningAverage();
-                speciesRank.put(sp, rank);
+    private static int parseInt(byte[] bytes, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new NumberFormatException(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
             }
-            rank.addValue(i);
-            speciesRank.put(sp, rank);
+            value = value * 10 + d;
         }
+        return value;
     }
 
-    private static List<String> sortSpecies(final Collection<String> allSpecies, final Map<String, RunningAverage> speciesRank) {
-        List<String> speciesList = new ArrayList<String>(allSpecies);
+    /**
+     * Sort species by their mean position within alignment blocks,  the reference species first.
+     */
+    private static List<String> sortSpecies(final Map<String, SpeciesRank> speciesRanks) {
+        List<String> speciesList = new ArrayList<String>(speciesRanks.keySet());
         Collections.sort(speciesList, new Comparator<String>() {
             @Override
             public int compare(String o1, String o2) {
-                double v = speciesRank.get(o1).average - speciesRank.get(o2).average;
-                return v > 0 ? 1 : (v < 0 ? -1 : 0);
+                return Double.compare(speciesRanks.get(o1).getAverage(), speciesRanks.get(o2).getAverage());
             }
         });
         return speciesList;
@@ -342,17 +479,15 @@ public class MAFIndex {
             }
             pw.println("#endSpecies");
 
-            Collection<String> chrList = index.getChromosomes();
-            for (String chr : chrList) {
-                pw.println("#chr=" + chr);
-                IntervalTree tree = index.getIntervalTree(chr);
-                Collection<Interval> intervals = tree.getIntervals();
-                for (Interval node : intervals) {
-                    pw.print(String.valueOf(node.getLow()));
+            for (Map.Entry<String, ChrIndex> e : index.chrIndeces.entrySet()) {
+                pw.println("#chr=" + e.getKey());
+                ChrIndex chrIndex = e.getValue();
+                for (int i = 0; i < chrIndex.size; i++) {
+                    pw.print(String.valueOf(chrIndex.starts.get(i)));
                     pw.print("\t");
-                    pw.print(String.valueOf(node.getHigh() - node.getLow()));
+                    pw.print(String.valueOf(chrIndex.ends.get(i) - chrIndex.starts.get(i)));
                     pw.print("\t");
-                    pw.println(String.valueOf(node.getValue()));
+                    pw.println(String.valueOf(chrIndex.offsets.get(i)));
                 }
             }
 
@@ -361,4 +496,317 @@ public class MAFIndex {
         }
     }
 
+    /**
+     * Write the index in binary form.  The length and modification time of the MAF file are recorded so that a
+     * stale index is not used.  Failure to write (e.g. a read-only directory) is logged and otherwise ignored.
+     */
+    static void writeBinaryIndex(MAFIndex index, File indexFile, File mafFile) {
+
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(BINARY_INDEX_MAGIC);
+            out.writeInt(BINARY_INDEX_VERSION);
+            out.writeLong(mafFile.length());
+            out.writeLong(mafFile.lastModified());
+            List<String> species = index.species == null ? Collections.<String>emptyList() : index.species;
+            out.writeInt(species.size());
+            for (String sp : species) {
+                writeString(out, sp);
+            }
+            out.writeInt(index.chrIndeces.size());
+            for (Map.Entry<String, ChrIndex> e : index.chrIndeces.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeInt(e.getValue().size);
+            }
+            // Arrays follow the header in chromosome order
+            for (ChrIndex chrIndex : index.chrIndeces.values()) {
+                for (int i = 0; i < chrIndex.size; i++) out.writeInt(chrIndex.starts.get(i));
+                for (int i = 0; i < chrIndex.size; i++) out.writeInt(chrIndex.ends.get(i));
+                for (int i = 0; i < chrIndex.size; i++) out.writeInt(chrIndex.maxEnds.get(i));
+                for (int i = 0; i < chrIndex.size; i++) out.writeLong(chrIndex.offsets.get(i));
+            }
+            out.close();
+            out = null;
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            log.info("Could not save MAF index " + indexFile.getAbsolutePath() + ": " + e.getMessage());
+            tmpFile.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Memory map a binary index.  Returns null if there is none,  or it is out of date or unreadable.
+     */
+    static MAFIndex loadBinaryIndex(File indexFile, File mafFile) {
+
+        if (!indexFile.isFile() || indexFile.lastModified() < mafFile.lastModified()) {
+            return null;
+        }
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != BINARY_INDEX_MAGIC || buffer.getInt() != BINARY_INDEX_VERSION ||
+                    buffer.getLong() != mafFile.length() || buffer.getLong() != mafFile.lastModified()) {
+                return null;
+            }
+
+            MAFIndex index = new MAFIndex();
+            int nSpecies = buffer.getInt();
+            List<String> species = new ArrayList<String>(nSpecies);
+            for (int i = 0; i < nSpecies; i++) {
+                species.add(readString(buffer));
+            }
+            index.setSpecies(species);
+
+            int nChrs = buffer.getInt();
+            String[] chrs = new String[nChrs];
+            int[] sizes = new int[nChrs];
+            for (int i = 0; i < nChrs; i++) {
+                chrs[i] = readString(buffer);
+                sizes[i] = buffer.getInt();
+            }
+            int position = buffer.position();
+            for (int i = 0; i < nChrs; i++) {
+                int n = sizes[i];
+                IntBuffer starts = slice(buffer, position, 4 * n).asIntBuffer();
+                IntBuffer ends = slice(buffer, position + 4 * n, 4 * n).asIntBuffer();
+                IntBuffer maxEnds = slice(buffer, position + 8 * n, 4 * n).asIntBuffer();
+                LongBuffer offsets = slice(buffer, position + 12 * n, 8 * n).asLongBuffer();
+                index.chrIndeces.put(chrs[i], new ChrIndex(n, starts, ends, maxEnds, offsets));
+                position += 20 * n;
+            }
+            return index;
+
+        } catch (Exception e) {
+            log.info("Could not read MAF index " + indexFile.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignore -- the mapping remains valid
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(position);
+        b.limit(position + length);
+        return b.slice();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Intervals of one chromosome,  sorted by start.  The arrays are either on the heap or views of a memory
+     * mapped index file.
+     */
+    static class ChrIndex {
+
+        final int size;
+        final IntBuffer starts;
+        final IntBuffer ends;
+        /**
+         * Running maximum of ends,  to find the first interval that can overlap a position.
+         */
+        final IntBuffer maxEnds;
+        final LongBuffer offsets;
+
+        ChrIndex(int size, IntBuffer starts, IntBuffer ends, IntBuffer maxEnds, LongBuffer offsets) {
+            this.size = size;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = maxEnds;
+            this.offsets = offsets;
+        }
+
+        static ChrIndex create(List<Entry> entries) {
+            List<Entry> sorted = new ArrayList<Entry>(entries);
+            Collections.sort(sorted, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry o1, Entry o2) {
+                    return Integer.compare(o1.start, o2.start);
+                }
+            });
+            int n = sorted.size();
+            int[] starts = new int[n];
+            int[] ends = new int[n];
+            int[] maxEnds = new int[n];
+            long[] offsets = new long[n];
+            int maxEnd = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                Entry e = sorted.get(i);
+                starts[i] = e.start;
+                ends[i] = e.end;
+                maxEnd = Math.max(maxEnd, e.end);
+                maxEnds[i] = maxEnd;
+                offsets[i] = e.offset;
+            }
+            return new ChrIndex(n, IntBuffer.wrap(starts), IntBuffer.wrap(ends), IntBuffer.wrap(maxEnds),
+                    LongBuffer.wrap(offsets));
+        }
+
+        /**
+         * Return the smallest offset of the intervals overlapping [start, end] (both inclusive),  or -1.
+         */
+        long getStartOffset(int start, int end) {
+
+            // First interval starting after end
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts.get(mid) <= end) lo = mid + 1;
+                else hi = mid;
+            }
+            int last = lo;
+
+            // First interval that could reach start
+            lo = 0;
+            hi = last;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (maxEnds.get(mid) < start) lo = mid + 1;
+                else hi = mid;
+            }
+
+            long offset = -1;
+            for (int i = lo; i < last; i++) {
+                if (ends.get(i) >= start && (offset < 0 || offsets.get(i) < offset)) {
+                    offset = offsets.get(i);
+                }
+            }
+            return offset;
+        }
+    }
+
+    private static class Entry {
+        final String chr;
+        final int start;
+        final int end;
+        final long offset;
+
+        Entry(String chr, int start, int end, long offset) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+    }
+
+    private static class SpeciesRank {
+        long sum;
+        long count;
+
+        double getAverage() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+
+    private static class ChunkIndex {
+        final List<Entry> entries = new ArrayList<Entry>();
+        final Map<String, SpeciesRank> speciesRanks = new LinkedHashMap<String, SpeciesRank>();
+    }
+
+    /**
+     * Reads lines as byte ranges of a reusable buffer,  keeping track of their file offsets.
+     */
+    private static class LineScanner {
+
+        private final InputStream is;
+        byte[] buffer = new byte[1 << 20];
+        int lineStart;
+        int lineEnd;
+        private int position;
+        private int length;
+        private long bufferOffset;
+        private boolean eof;
+
+        LineScanner(InputStream is, long offset) {
+            this.is = is;
+            this.bufferOffset = offset;
+        }
+
+        long getLineOffset() {
+            return bufferOffset + lineStart;
+        }
+
+        /**
+         * Advance to the next line,  excluding its terminator.  Returns false if there is none.
+         */
+        boolean nextLine() throws IOException {
+            int i = position;
+            while (true) {
+                while (i < length) {
+                    if (buffer[i] == '\n') {
+                        setLine(position, i);
+                        position = i + 1;
+                        return true;
+                    }
+                    i++;
+                }
+                if (eof) {
+                    if (position < length) {
+                        setLine(position, length);
+                        position = length;
+                        return true;
+                    }
+                    return false;
+                }
+                if (position > 0) {
+                    // Move the partial line to the front of the buffer
+                    System.arraycopy(buffer, position, buffer, 0, length - position);
+                    bufferOffset += position;
+                    length -= position;
+                    i -= position;
+                    position = 0;
+                } else if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int n = is.read(buffer, length, buffer.length - length);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    length += n;
+                }
+            }
+        }
+
+        private void setLine(int start, int end) {
+            lineStart = start;
+            lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+        }
+    }
+
 }
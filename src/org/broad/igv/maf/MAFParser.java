@@ -26,20 +26,31 @@
 package org.broad.igv.maf;
 
 import htsjdk.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
-import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
+import org.broad.igv.util.collections.MemoryBoundedCache;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,10 +61,41 @@ import java.util.regex.Pattern;
  */
 public class MAFParser implements MAFReader {
 
+    private static Logger log = Logger.getLogger(MAFParser.class);
+
+    /**
+     * Width of a tile of decoded alignment blocks,  in reference bases.
+     */
+    static final int TILE_SIZE = 10000;
+
+    /**
+     * Decoded tiles of all MAF files,  keyed by path/chr/tile number.
+     */
+    private static final MemoryBoundedCache<String, List<MultipleAlignmentBlock>> tileCache =
+            new MemoryBoundedCache<String, List<MultipleAlignmentBlock>>(
+                    Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 16));
+
+    /**
+     * Tiles being read,  so that a request for a tile that is being read ahead waits for it rather than reading it
+     * again.
+     */
+    private static final ConcurrentMap<String, FutureTask<List<MultipleAlignmentBlock>>> pendingTiles =
+            new ConcurrentHashMap<String, FutureTask<List<MultipleAlignmentBlock>>>();
+
+    private static final Executor readAheadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "MAF read ahead");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     String path;
     MAFIndex index;
     List<String> species;
     String trackName;
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
 
     public MAFParser(String path) {
         this.path = path;
@@ -62,14 +104,8 @@ public class MAFParser implements MAFReader {
         } catch (IOException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
         }
-        String indexPath = path + ".index";
         try {
-            if (ParsingUtils.pathExists(indexPath)) {
-                index = MAFIndex.loadIndex(indexPath);
-            } else {
-                index = MAFIndex.createIndex(path);
-                MAFIndex.writeIndex(index, indexPath);
-            }
+            index = MAFIndex.open(path);
         } catch (IOException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
         }
@@ -80,52 +116,153 @@ public class MAFParser implements MAFReader {
         return trackName;
     }
 
+    /**
+     * Return the alignment blocks overlapping [start, end],  in file order.  Blocks are assembled from cached tiles
+     * of {@link #TILE_SIZE} bases;  tiles adjacent to the requested range are read ahead in the background.
+     */
     @Override
     public List<MultipleAlignmentBlock> loadAlignments(String chr, int start, int end) throws IOException {
 
-        IntervalTree ivTree = index.getIntervalTree(chr);
-        if (ivTree == null) return null;
+        if (!index.containsChromosome(chr)) return null;
+
+        int firstTile = Math.max(0, start) / TILE_SIZE;
+        int lastTile = Math.max(0, end) / TILE_SIZE;
 
-        List<Interval> intervals = ivTree.findOverlapping(start, end);
-        if (intervals.isEmpty()) {
-            return null;
+        List<MultipleAlignmentBlock> alignments = new ArrayList<MultipleAlignmentBlock>();
+        for (int t = firstTile; t <= lastTile; t++) {
+            for (MultipleAlignmentBlock block : getTile(chr, t)) {
+                // Blocks spanning a tile boundary are in both tiles,  take them from the tile containing their start
+                if (t > firstTile && block.getStart() / TILE_SIZE != t) continue;
+                if (block.getEnd() < start || block.getStart() > end) continue;
+                alignments.add(block);
+            }
         }
 
+        readAhead(chr, lastTile + 1);
+        if (firstTile > 0) readAhead(chr, firstTile - 1);
 
-        // Find the starting (left most) interval.  Alignment blocks do not overlap, so we can start at the
-        // minimum file offset and just proceed until the end of the interval.
-        long startPosition = Long.MAX_VALUE;
-        for (Interval iv : intervals) {
-            startPosition = Math.min(startPosition, iv.getValue());
-        }
+        return alignments;
+    }
+
+    private List<MultipleAlignmentBlock> getTile(final String chr, final int tileNumber) throws IOException {
+
+        final String key = path + "/" + chr + "/" + tileNumber;
+        List<MultipleAlignmentBlock> tile = tileCache.get(key);
+        if (tile != null) return tile;
+
+        FutureTask<List<MultipleAlignmentBlock>> task = new FutureTask<List<MultipleAlignmentBlock>>(
+                new Callable<List<MultipleAlignmentBlock>>() {
+                    @Override
+                    public List<MultipleAlignmentBlock> call() throws IOException {
+                        try {
+                            // readBlocks bounds are inclusive,  a block starting on the next tile belongs there
+                            List<MultipleAlignmentBlock> blocks = readBlocks(chr, tileNumber * TILE_SIZE,
+                                    (tileNumber + 1) * TILE_SIZE - 1);
+                            long size = 64;
+                            for (MultipleAlignmentBlock block : blocks) {
+                                size += block.getSizeInBytes();
+                            }
+                            tileCache.put(key, blocks, size);
+                            return blocks;
+                        } finally {
+                            pendingTiles.remove(key);
+                        }
+                    }
+                });
 
+        FutureTask<List<MultipleAlignmentBlock>> pending = pendingTiles.putIfAbsent(key, task);
+        if (pending == null) {
+            pending = task;
+            task.run();
+        }
 
-        SeekableStream is = null;
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
 
+    private void readAhead(final String chr, final int tileNumber) {
+        String key = path + "/" + chr + "/" + tileNumber;
+        if (tileCache.containsKey(key) || pendingTiles.containsKey(key)) return;
+        readAheadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getTile(chr, tileNumber);
+                } catch (Exception e) {
+                    log.error("Error reading ahead " + path, e);
+                }
+            }
+        });
+    }
 
-        is = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
-        is.seek(startPosition);
+    /**
+     * Read and decode the alignment blocks overlapping [start, end].  Block boundaries are found serially,  the
+     * species rows of the blocks are then decoded in parallel.
+     */
+    private List<MultipleAlignmentBlock> readBlocks(String chr, int start, int end) throws IOException {
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is), 256000);
+        long startPosition = index.getStartOffset(chr, start, end);
+        if (startPosition < 0) {
+            return Collections.emptyList();
+        }
 
-        List<MultipleAlignmentBlock> alignments = new ArrayList<MultipleAlignmentBlock>();
+        final BlockBuffer buffer = new BlockBuffer();
+        List<int[]> blockBounds = new ArrayList<int[]>();
 
-        String line;
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith("a ")) {
-                // TODO -- parse score (optional)
-                MultipleAlignmentBlock block = parseBlock(reader);
-                if(block.getEnd() < start) {
+        SeekableStream is = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+        try {
+            is.seek(startPosition);
+            int[] bounds;
+            while ((bounds = buffer.nextBlock(is)) != null) {
+                MultipleAlignmentBlock.Sequence ref = parseReference(buffer.bytes, bounds[0], bounds[1]);
+                if (ref == null || ref.getStart() + ref.getSize() < start) {
                     continue;
                 }
-                if (block.getStart() > end || !block.getChr().equals(chr)) {
+                if (ref.getStart() > end || !ref.getChr().equals(chr)) {
                     break;
-                } else {
-                    alignments.add(block);
                 }
+                blockBounds.add(bounds);
             }
+        } finally {
+            is.close();
         }
-        return alignments;
+
+        List<Callable<MultipleAlignmentBlock>> tasks = new ArrayList<Callable<MultipleAlignmentBlock>>(blockBounds.size());
+        for (final int[] bounds : blockBounds) {
+            tasks.add(new Callable<MultipleAlignmentBlock>() {
+                @Override
+                public MultipleAlignmentBlock call() {
+                    return parseBlock(buffer.bytes, bounds[0], bounds[1]);
+                }
+            });
+        }
+
+        List<MultipleAlignmentBlock> blocks = new ArrayList<MultipleAlignmentBlock>(tasks.size());
+        if (tasks.size() == 1) {
+            blocks.add(parseBlock(buffer.bytes, blockBounds.get(0)[0], blockBounds.get(0)[1]));
+        } else if (tasks.size() > 1) {
+            try {
+                for (Future<MultipleAlignmentBlock> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    blocks.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return blocks;
     }
 
 
@@ -218,45 +355,180 @@ public class MAFParser implements MAFReader {
 
 
     /**
-     * Parse an alignment block.
-     *
-     * @param reader
+     * Parse an alignment block from bytes [from, to).  The "a" line is skipped,  the score is not parsed.
      */
-    private MultipleAlignmentBlock parseBlock(BufferedReader reader) throws IOException {
+    private MultipleAlignmentBlock parseBlock(byte[] bytes, int from, int to) {
 
-        String line;
         MultipleAlignmentBlock ma = new MultipleAlignmentBlock();
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineEnd(bytes, lineStart, to);
+            if (bytes[lineStart] == 's' && lineStart + 1 < lineEnd && bytes[lineStart + 1] == ' ') {
+                ma.addSequence(parseSequence(bytes, lineStart, lineEnd));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return ma;
+    }
 
-        while ((line = reader.readLine()) != null) {
-            if (line.trim().length() == 0) {
-                return ma;
+    /**
+     * Parse the first "s" line (the reference row) of the block [from, to),  or return null if there is none.
+     */
+    private MultipleAlignmentBlock.Sequence parseReference(byte[] bytes, int from, int to) {
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineEnd(bytes, lineStart, to);
+            if (bytes[lineStart] == 's' && lineStart + 1 < lineEnd && bytes[lineStart + 1] == ' ') {
+                return parseSequence(bytes, lineStart, lineEnd);
             }
-            if (line.startsWith("s ")) {
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
 
-                String[] tokens = Globals.whitespacePattern.split(line);
+    private static int lineEnd(byte[] bytes, int from, int to) {
+        int i = from;
+        while (i < to && bytes[i] != '\n') i++;
+        return i;
+    }
 
-                String src = tokens[1];
-                String species = src;
-                String chr = src;
-                if (src.contains(".")) {
-                    String[] srcTokens = ParsingUtils.PERIOD_PATTERN.split(src);
-                    species = srcTokens[0];
-                    chr = srcTokens[1];
-                }
-                int start = Integer.parseInt(tokens[2]);
-                int size = Integer.parseInt(tokens[3]);
-                char strand = tokens[4].charAt(0);
-                int srcSize = Integer.parseInt(tokens[5]);
-                String text = tokens[6];
+    /**
+     * Parse an "s" line:  s src start size strand srcSize text
+     */
+    private MultipleAlignmentBlock.Sequence parseSequence(byte[] bytes, int from, int to) {
+
+        while (to > from && (bytes[to - 1] == '\r' || bytes[to - 1] == ' ' || bytes[to - 1] == '\t')) to--;
+
+        int[] tokenStart = new int[7];
+        int[] tokenEnd = new int[7];
+        int nTokens = 0;
+        int i = from;
+        while (i < to && nTokens < 7) {
+            while (i < to && (bytes[i] == ' ' || bytes[i] == '\t')) i++;
+            if (i == to) break;
+            tokenStart[nTokens] = i;
+            while (i < to && bytes[i] != ' ' && bytes[i] != '\t') i++;
+            tokenEnd[nTokens++] = i;
+        }
+        if (nTokens < 7) {
+            throw new RuntimeException("Invalid MAF sequence line: " +
+                    new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        }
 
-                ma.addSequence(new MultipleAlignmentBlock.Sequence(species, chr, start, size, strand, srcSize, text));
+        // Species and chromosome are the first two period separated fields of src,  e.g. hg18.chr1
+        String species;
+        String chr;
+        int srcStart = tokenStart[1];
+        int srcEnd = tokenEnd[1];
+        int dot = srcStart;
+        while (dot < srcEnd && bytes[dot] != '.') dot++;
+        if (dot < srcEnd) {
+            int dot2 = dot + 1;
+            while (dot2 < srcEnd && bytes[dot2] != '.') dot2++;
+            species = getName(bytes, srcStart, dot);
+            chr = getName(bytes, dot + 1, dot2);
+        } else {
+            species = getName(bytes, srcStart, srcEnd);
+            chr = species;
+        }
+
+        int start = parseInt(bytes, tokenStart[2], tokenEnd[2]);
+        int size = parseInt(bytes, tokenStart[3], tokenEnd[3]);
+        char strand = (char) bytes[tokenStart[4]];
+        int srcSize = parseInt(bytes, tokenStart[5], tokenEnd[5]);
+        byte[] text = Arrays.copyOfRange(bytes, tokenStart[6], tokenEnd[6]);
 
+        return new MultipleAlignmentBlock.Sequence(species, chr, start, size, strand, srcSize, text);
+    }
 
+    /**
+     * Species and chromosome names repeat in every block,  share a single instance of each.
+     */
+    private String getName(byte[] bytes, int from, int to) {
+        String name = new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+        String existing = names.putIfAbsent(name, name);
+        return existing == null ? name : existing;
+    }
+
+    private static int parseInt(byte[] bytes, int from, int to) {
+        if (from == to) throw new NumberFormatException("Empty integer field");
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new NumberFormatException(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
             }
+            value = value * 10 + d;
+        }
+        return value;
+    }
 
+    /**
+     * Growable buffer holding the raw bytes of the blocks read for one tile.  Blocks start with an "a" line and
+     * end at a blank line or the end of the file.
+     */
+    private static class BlockBuffer {
+
+        byte[] bytes = new byte[256000];
+        int length;
+        int position;
+        boolean eof;
+
+        /**
+         * Return the [start, end) bounds of the next block,  or null at end of file.
+         */
+        int[] nextBlock(InputStream is) throws IOException {
+            int blockStart = -1;
+            while (true) {
+                int lineEnd = findLineEnd(is);
+                if (lineEnd < 0) {
+                    return blockStart < 0 ? null : new int[]{blockStart, length};
+                }
+                int lineStart = position;
+                position = lineEnd + 1;
+                if (blockStart < 0) {
+                    if (lineEnd > lineStart && bytes[lineStart] == 'a' &&
+                            (lineEnd == lineStart + 1 || bytes[lineStart + 1] == ' ' || bytes[lineStart + 1] == '\r')) {
+                        blockStart = lineStart;
+                    }
+                } else if (isBlank(lineStart, lineEnd)) {
+                    return new int[]{blockStart, lineStart};
+                }
+            }
+        }
 
+        private boolean isBlank(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (!Character.isWhitespace(bytes[i])) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Return the index of the newline ending the line at the current position,  reading more input as needed.
+         * At end of file the last line is terminated at the end of the buffer.  Returns -1 if no input is left.
+         */
+        private int findLineEnd(InputStream is) throws IOException {
+            int i = position;
+            while (true) {
+                while (i < length) {
+                    if (bytes[i] == '\n') return i;
+                    i++;
+                }
+                if (eof) {
+                    return position < length ? length : -1;
+                }
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                int n = is.read(bytes, length, bytes.length - length);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    length += n;
+                }
+            }
         }
-        return ma;
     }
 
 }
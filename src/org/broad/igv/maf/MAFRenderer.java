@@ -142,8 +142,8 @@ public class MAFRenderer {
             int start = Math.max(windowStart, multipleAlignment.getStart());
             int end = Math.min(windowEnd, multipleAlignment.getEnd());
 
-            byte[] alignmentBytes = alignedSequence.getText().getBytes();
-            byte[] refBytes = reference.getText().getBytes();
+            byte[] alignmentBytes = alignedSequence.getTextBytes();
+            byte[] refBytes = reference.getTextBytes();
 
             for (int loc = start; loc < end; loc++) {
 
@@ -25,8 +25,11 @@
 
 package org.broad.igv.maf;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author jrobinso
@@ -41,11 +44,13 @@ public class MultipleAlignmentBlock {
     private int[] gapAdjustedIndex;
     private double score;
     private List<Sequence> sequences;
+    private Map<String, Sequence> sequenceMap;
     private List<Gap> gaps;
     private String key;
 
     public MultipleAlignmentBlock() {
         sequences = new ArrayList<Sequence>();
+        sequenceMap = new HashMap<String, Sequence>();
         gaps = new ArrayList<Gap>();
     }
 
@@ -114,11 +119,23 @@ public class MultipleAlignmentBlock {
             findGaps(sequence.text);
         }
         sequences.add(sequence);
+        if (!sequenceMap.containsKey(sequence.species)) {
+            sequenceMap.put(sequence.species, sequence);
+        }
     }
 
-    private void findGaps(String referenceText) {
+    /**
+     * Approximate memory footprint of this block,  used to bound caches of decoded blocks.
+     */
+    public long getSizeInBytes() {
+        long size = 128 + 4L * gapAdjustedIndex.length + 32L * gaps.size();
+        for (Sequence seq : sequences) {
+            size += 96 + seq.text.length;
+        }
+        return size;
+    }
 
-        byte[] bytes = referenceText.getBytes();
+    private void findGaps(byte[] bytes) {
 
         // Maps genomic position -> text position.
         gapAdjustedIndex = new int[end - start];
@@ -158,11 +175,7 @@ public class MultipleAlignmentBlock {
     }
 
     public Sequence getSequence(String sp) {
-        // TODO -- use a map
-        for(Sequence seq : sequences) {
-            if(seq.getSpecies().equals(sp)) return seq;
-        }
-        return null;
+        return sequenceMap.get(sp);
     }
 
 
@@ -193,9 +206,16 @@ public class MultipleAlignmentBlock {
         private int size;
         private char strand;
         private int srcSize;
-        private String text;
+        private byte[] text;
 
         public Sequence(String species, String chr, int start, int size, char strand, int srcSize, String text) {
+            this(species, chr, start, size, strand, srcSize, text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        /**
+         * @param text alignment text, one byte per column.  The array is not copied.
+         */
+        public Sequence(String species, String chr, int start, int size, char strand, int srcSize, byte[] text) {
             this.species = species;
             this.chr = chr;
             this.start = start;
@@ -254,11 +274,18 @@ public class MultipleAlignmentBlock {
         }
 
         public String getText() {
-            return text;
+            return new String(text, StandardCharsets.ISO_8859_1);
         }
 
         public void setText(String text) {
-            this.text = text;
+            this.text = text.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Return the alignment text,  one byte per column.  The returned array is shared and must not be modified.
+         */
+        public byte[] getTextBytes() {
+            return text;
         }
     }
 
@@ -178,6 +178,7 @@ final public class Constants {
     public static final String NOCALL_COLOR = "NOCALL.COLOR";
     public static final String AF_REF_COLOR = "AF_REF.COLOR";
     public static final String AF_VAR_COLOR = "AF_VAR.COLOR";
+    public static final String VARIANT_LAZY_GENOTYPE_THRESHOLD = "VARIANT_LAZY_GENOTYPE_THRESHOLD";
 
     // "Mut" and "MAF" mutation track settings
     public static final String MUTATION_COLOR_TABLE = "MUTATION_COLOR_TABLE";
@@ -284,7 +284,8 @@ public class AlignmentDataManager implements IGVEventObserver {
             AlignmentInterval loadedInterval = loadInterval(chr, adjustedStart, adjustedEnd, renderOptions);
             intervalCache.put(referenceFrame, loadedInterval);
 
-            packAlignments(renderOptions);
+            // Only the new interval needs packing,  intervals for other frames are unchanged
+            loadedInterval.packAlignments(renderOptions);
             isLoading.remove(range);
 
           //  IGVEventBus.getInstance().post(new DataLoadedEvent(referenceFrame));
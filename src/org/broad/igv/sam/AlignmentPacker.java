@@ -34,6 +34,10 @@ import org.broad.igv.feature.Range;
 import org.broad.igv.feature.Strand;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Packs alignments such that there is no overlap
@@ -48,23 +52,22 @@ public class AlignmentPacker {
      * Minimum gap between the end of one alignment and start of another.
      */
     public static final int MIN_ALIGNMENT_SPACING = 2;
-    private static final Comparator<Alignment> lengthComparator = new Comparator<Alignment>() {
-        public int compare(Alignment row1, Alignment row2) {
-            return (row2.getEnd() - row2.getStart()) -
-                    (row1.getEnd() - row2.getStart());
+    private static final String NULL_GROUP_VALUE = "";
 
-        }
-    };
+    /**
+     * Groups are packed concurrently on the common fork-join pool when the interval holds at least this many
+     * alignments.  Below this the task overhead outweighs the gain.
+     */
+    static final int PARALLEL_PACK_THRESHOLD = 50000;
 
-    private static final String NULL_GROUP_VALUE = "";
-    public static final int tenMB = 10000000;
+    static final int PARALLEL_SORT_THRESHOLD = 100000;
 
     /**
      * Allocates each alignment to row such that there is no overlap.
      */
     public PackedAlignments packAlignments(
             AlignmentInterval interval,
-            AlignmentTrack.RenderOptions renderOptions) {
+            final AlignmentTrack.RenderOptions renderOptions) {
 
        // if (renderOptions == null) renderOptions = new AlignmentTrack.RenderOptions();
 
@@ -78,7 +81,7 @@ public class AlignmentPacker {
         }
 
         if (renderOptions.groupByOption == null) {
-            List<Row> alignmentRows = new ArrayList<>(10000);
+            List<Row> alignmentRows = new ArrayList<>(1000);
             pack(alList, renderOptions, alignmentRows);
             packedAlignments.put("", alignmentRows);
         } else {
@@ -106,11 +109,33 @@ public class AlignmentPacker {
             Comparator<String> groupComparator = getGroupComparator(renderOptions.groupByOption);
             Collections.sort(keys, groupComparator);
 
-            for (String key : keys) {
-                List<Row> alignmentRows = new ArrayList<>(10000);
-                List<Alignment> group = groupedAlignments.get(key);
-                pack(group, renderOptions, alignmentRows);
-                packedAlignments.put(key, alignmentRows);
+            if (keys.size() > 1 && alList.size() >= PARALLEL_PACK_THRESHOLD) {
+                List<Callable<List<Row>>> tasks = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    final List<Alignment> group = groupedAlignments.get(key);
+                    tasks.add(new Callable<List<Row>>() {
+                        public List<Row> call() {
+                            List<Row> alignmentRows = new ArrayList<>(1000);
+                            pack(group, renderOptions, alignmentRows);
+                            return alignmentRows;
+                        }
+                    });
+                }
+                List<Future<List<Row>>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+                for (int i = 0; i < keys.size(); i++) {
+                    try {
+                        packedAlignments.put(keys.get(i), results.get(i).get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new RuntimeException("Error packing alignments", e);
+                    }
+                }
+            } else {
+                for (String key : keys) {
+                    List<Row> alignmentRows = new ArrayList<>(1000);
+                    List<Alignment> group = groupedAlignments.get(key);
+                    pack(group, renderOptions, alignmentRows);
+                    packedAlignments.put(key, alignmentRows);
+                }
             }
         }
 
@@ -122,136 +147,176 @@ public class AlignmentPacker {
 
     private void pack(List<Alignment> alList, AlignmentTrack.RenderOptions renderOptions, List<Row> alignmentRows) {
 
-        Map<String, PairedAlignment> pairs = null;
-
-        boolean isPairedAlignments = renderOptions.isViewPairs();
-        String linkByTag = renderOptions.getLinkByTag();
-
-        if (isPairedAlignments) {
-            pairs = new HashMap<>(1000);
-        }
-
-
-        // Allocate alignemnts to buckets for each range.
-        // We use priority queues to keep the buckets sorted by alignment length.  However this  is probably a needless
-        // complication,  any collection type would do.
-
-        int totalCount = 0;
-
-
         if (alList == null || alList.size() == 0) return;
 
-        Range curRange = getAlignmentListRange(alList);
-
-        BucketCollection bucketCollection;
-
-        // Use dense buckets for < 10,000,000 bp windows sparse otherwise
-        int bpLength = curRange.getLength();
-
-        if (bpLength < tenMB) {
-            bucketCollection = new DenseBucketCollection(bpLength, curRange);
-        } else {
-            bucketCollection = new SparseBucketCollection(curRange);
-        }
-
-        int curRangeStart = curRange.getStart();
-        for (Alignment al : alList) {
-
-            if (al.isMapped()) {
-                Alignment alignment = al;
+        long t0 = System.currentTimeMillis();
 
-                // Pair alignments -- do not pair secondaryalignments
-                if (isPairedAlignments && isPairable(al)) {
+        // Pair alignments (if requested) and drop unmapped reads.  The resulting list is what gets packed.
+        List<Alignment> packList = new ArrayList<>(alList.size());
+        if (renderOptions.isViewPairs()) {
+            Map<String, PairedAlignment> pairs = new HashMap<>(1000);
+            for (Alignment al : alList) {
+                if (!al.isMapped()) continue;
+                // Pair alignments -- do not pair secondary alignments
+                if (isPairable(al)) {
                     String readName = al.getReadName();
                     PairedAlignment pair = pairs.get(readName);
                     if (pair == null) {
                         pair = new PairedAlignment(al);
                         pairs.put(readName, pair);
-                        alignment = pair;
+                        packList.add(pair);
                     } else {
                         // Add second alignment to pair.
                         pair.setSecondAlignment(al);
                         pairs.remove(readName);
-                        continue;
-
                     }
-                }
-
-                // Allocate to bucket.
-                // Negative "bucketNumbers" can arise with soft clips at the left edge of the chromosome. Allocate
-                // these alignments to the first bucket.
-                int bucketNumber = Math.max(0, al.getStart() - curRangeStart);
-                if (bucketNumber < bucketCollection.getBucketCount()) {
-                    PriorityQueue<Alignment> bucket = bucketCollection.get(bucketNumber);
-                    if (bucket == null) {
-                        bucket = new PriorityQueue<Alignment>(5, lengthComparator);
-                        bucketCollection.set(bucketNumber, bucket);
-                    }
-                    bucket.add(alignment);
-                    totalCount++;
                 } else {
-                    log.debug("Alignment out of bounds. name: " + alignment.getReadName() + " startPos:" + alignment.getStart());
+                    packList.add(al);
                 }
             }
+        } else {
+            for (Alignment al : alList) {
+                if (al.isMapped()) packList.add(al);
+            }
         }
-        bucketCollection.finishedAdding();
 
+        int[] order = sortByStartThenLength(packList);
 
-        // Now allocate alignments to rows.
-        long t0 = System.currentTimeMillis();
-        int allocatedCount = 0;
-        Row currentRow = new Row();
-
-        while (allocatedCount < totalCount) {
+        // Allocate alignments to rows.  Alignments are visited in start order and each goes to the lowest row
+        // it fits in,  which yields the same layout as sweeping rows left to right.
+        RowAllocator allocator = new RowAllocator();
+        for (int idx : order) {
+            Alignment alignment = packList.get(idx);
+            // Negative starts can arise with soft clips at the left edge of the chromosome,  treat as 0.
+            int start = Math.max(0, alignment.getStart());
+            int rowNumber = allocator.allocate(start, alignment.getEnd() + MIN_ALIGNMENT_SPACING);
+            if (rowNumber == alignmentRows.size()) {
+                alignmentRows.add(new Row());
+            }
+            alignmentRows.get(rowNumber).addAlignment(alignment);
+        }
 
-            curRange = bucketCollection.getRange();
+        if (log.isDebugEnabled()) {
+            long dt = System.currentTimeMillis() - t0;
+            log.debug("Packed " + packList.size() + " alignments into " + alignmentRows.size() + " rows in " + dt + " ms");
+        }
+    }
 
-            curRangeStart = curRange.getStart();
-            int nextStart = curRangeStart;
-            List<Integer> emptyBuckets = new ArrayList<Integer>(100);
+    /**
+     * Return the indeces of {@code alignments} ordered by start position,  longest alignment first for
+     * equal starts.  Sorting is done on a primitive array of (start, index) keys.
+     *
+     * @param alignments
+     * @return
+     */
+    static int[] sortByStartThenLength(List<Alignment> alignments) {
 
-            while (true) {
-                int bucketNumber = nextStart - curRangeStart;
-                PriorityQueue<Alignment> bucket = bucketCollection.getNextBucket(bucketNumber, emptyBuckets);
+        final int n = alignments.size();
+        final long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int start = Math.max(0, alignments.get(i).getStart());
+            keys[i] = ((long) start << 32) | i;
+        }
+        if (n > PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+
+        final int[] order = new int[n];
+        final int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+            Alignment al = alignments.get(order[i]);
+            lengths[i] = al.getEnd() - al.getStart();
+        }
+
+        // Runs of equal start positions are short,  an insertion sort by descending length is sufficient
+        int runStart = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || (keys[i] >>> 32) != (keys[runStart] >>> 32)) {
+                for (int j = runStart + 1; j < i; j++) {
+                    int o = order[j];
+                    int len = lengths[j];
+                    int k = j - 1;
+                    while (k >= runStart && lengths[k] < len) {
+                        order[k + 1] = order[k];
+                        lengths[k + 1] = lengths[k];
+                        k--;
+                    }
+                    order[k + 1] = o;
+                    lengths[k + 1] = len;
+                }
+                runStart = i;
+            }
+        }
+        return order;
+    }
 
-                // Pull the next alignment out of the bucket and add to the current row
-                if (bucket != null) {
-                    Alignment alignment = bucket.remove();
-                    currentRow.addAlignment(alignment);
-                    allocatedCount++;
+    /**
+     * Interval-scheduling row allocator.  Tracks the first free position of each row in an array-backed min
+     * segment tree,  so the lowest row that can accept an alignment is found in O(log rows).
+     */
+    static class RowAllocator {
 
-                    nextStart = alignment.getEnd() + MIN_ALIGNMENT_SPACING;
+        private int capacity = 64;
+        private int rowCount = 0;
+        // tree[1] is the root,  leaves start at index capacity.  Unused leaves are Integer.MAX_VALUE.
+        private int[] tree = newTree(capacity);
 
-                }
+        private static int[] newTree(int capacity) {
+            int[] tree = new int[2 * capacity];
+            Arrays.fill(tree, Integer.MAX_VALUE);
+            return tree;
+        }
 
-                //Reached the end of this range, move to the next
-                if (bucket == null || nextStart > curRange.getEnd()) {
-                    //Remove empty buckets.  This has no affect on the dense implementation,
-                    //they are removed on the fly, but is needed for the sparse implementation
-                    bucketCollection.removeBuckets(emptyBuckets);
-                    emptyBuckets.clear();
-                    break;
+        /**
+         * Allocate the interval [start, nextFree) to the lowest row whose first free position is <= start,
+         * creating a new row if none fits.
+         *
+         * @return the row number
+         */
+        int allocate(int start, int nextFree) {
+            int row;
+            if (rowCount > 0 && tree[1] <= start) {
+                // Descend to the leftmost leaf <= start
+                int node = 1;
+                while (node < capacity) {
+                    node = tree[2 * node] <= start ? 2 * node : 2 * node + 1;
                 }
+                row = node - capacity;
+            } else {
+                row = rowCount++;
+                if (row == capacity) grow();
             }
+            update(row, nextFree);
+            return row;
+        }
 
+        int getRowCount() {
+            return rowCount;
+        }
 
-            // We've reached the end of the interval,  start a new row
-            if (currentRow.alignments.size() > 0) {
-                alignmentRows.add(currentRow);
+        private void update(int row, int value) {
+            int node = row + capacity;
+            tree[node] = value;
+            node >>= 1;
+            while (node > 0) {
+                tree[node] = Math.min(tree[2 * node], tree[2 * node + 1]);
+                node >>= 1;
             }
-            currentRow = new Row();
-        }
-        if (log.isDebugEnabled()) {
-            long dt = System.currentTimeMillis() - t0;
-            log.debug("Packed alignments in " + dt);
         }
 
-        // Add the last row
-        if (currentRow != null && currentRow.alignments.size() > 0) {
-            alignmentRows.add(currentRow);
+        private void grow() {
+            int oldCapacity = capacity;
+            int[] oldTree = tree;
+            capacity *= 2;
+            tree = newTree(capacity);
+            System.arraycopy(oldTree, oldCapacity, tree, capacity, oldCapacity);
+            for (int node = capacity - 1; node > 0; node--) {
+                tree[node] = Math.min(tree[2 * node], tree[2 * node + 1]);
+            }
         }
-
-
     }
 
     private boolean isPairable(Alignment al) {
@@ -320,25 +385,6 @@ public class AlignmentPacker {
     }
 
 
-    /**
-     * Gets the range over which alignmentsList spans. Asssumes all on same chr, and sorted
-     *
-     * @param alignmentsList
-     * @return
-     */
-    private Range getAlignmentListRange(List<Alignment> alignmentsList) {
-        if (alignmentsList == null || alignmentsList.size() == 0) return null;
-        Alignment firstAlignment = alignmentsList.get(0);
-
-        int minStart = firstAlignment.getStart();
-        int maxEnd = firstAlignment.getEnd();
-        for (Alignment alignment : alignmentsList) {
-            maxEnd = Math.max(maxEnd, alignment.getEnd());
-        }
-        return new Range(firstAlignment.getChr(), minStart,
-                maxEnd);
-    }
-
     private Comparator<String> getGroupComparator(AlignmentTrack.GroupOption groupByOption) {
         switch (groupByOption) {
             case PAIR_ORIENTATION:
@@ -438,192 +484,6 @@ public class AlignmentPacker {
         return null;
     }
 
-    interface BucketCollection {
-
-        Range getRange();
-
-        void set(int idx, PriorityQueue<Alignment> bucket);
-
-        PriorityQueue<Alignment> get(int idx);
-
-        PriorityQueue<Alignment> getNextBucket(int bucketNumber, Collection<Integer> emptyBuckets);
-
-        void removeBuckets(Collection<Integer> emptyBuckets);
-
-        void finishedAdding();
-
-        int getBucketCount();
-    }
-
-    /**
-     * Dense array implementation of BucketCollection.  Assumption is all or nearly all the genome region is covered
-     * with reads.
-     */
-    static class DenseBucketCollection implements BucketCollection {
-
-        Range range;
-        int lastBucketNumber = -1;
-        final PriorityQueue[] bucketArray;
-
-        DenseBucketCollection(int bucketCount, Range range) {
-            this.bucketArray = new PriorityQueue[bucketCount];
-            this.range = range;
-        }
-
-        public void set(int idx, PriorityQueue<Alignment> bucket) {
-            bucketArray[idx] = bucket;
-        }
-
-        public PriorityQueue<Alignment> get(int idx) {
-            return bucketArray[idx];
-        }
-
-        public int getBucketCount() {
-            return this.bucketArray.length;
-        }
-
-        public Range getRange() {
-            return range;
-        }
-
-        /**
-         * Return the next occupied bucket after bucketNumber
-         *
-         * @param bucketNumber
-         * @param emptyBuckets ignored
-         * @return
-         */
-        public PriorityQueue<Alignment> getNextBucket(int bucketNumber, Collection<Integer> emptyBuckets) {
-
-            if (bucketNumber == lastBucketNumber) {
-                // TODO -- detect inf loop here
-            }
-
-            PriorityQueue<Alignment> bucket = null;
-            while (bucketNumber < bucketArray.length) {
-
-                if (bucketNumber < 0) {
-                    log.info("Negative bucket number: " + bucketNumber);
-                }
-
-                bucket = bucketArray[bucketNumber];
-                if (bucket != null) {
-                    if (bucket.isEmpty()) {
-                        bucketArray[bucketNumber] = null;
-                    } else {
-                        return bucket;
-                    }
-                }
-                bucketNumber++;
-            }
-            return null;
-        }
-
-        public void removeBuckets(Collection<Integer> emptyBuckets) {
-            // Nothing to do, empty buckets are removed "on the fly"
-        }
-
-        public void finishedAdding() {
-            // nothing to do
-        }
-    }
-
-
-    /**
-     * "Sparse" implementation of an alignment BucketCollection.  Assumption is there are small clusters of alignments
-     * along the genome, with mostly "white space".
-     */
-    static class SparseBucketCollection implements BucketCollection {
-
-        Range range;
-        boolean finished = false;
-        List<Integer> keys;
-        final HashMap<Integer, PriorityQueue<Alignment>> buckets;
-
-        SparseBucketCollection(Range range) {
-            this.range = range;
-            this.buckets = new HashMap(1000);
-        }
-
-        public void set(int idx, PriorityQueue<Alignment> bucket) {
-            if (finished) {
-                log.error("Error: bucket added after finishAdding() called");
-            }
-            buckets.put(idx, bucket);
-        }
-
-        public PriorityQueue<Alignment> get(int idx) {
-            return buckets.get(idx);
-        }
-
-        public Range getRange() {
-            return range;
-        }
-
-        /**
-         * Return the next occupied bucket at or after after bucketNumber.
-         *
-         * @param bucketNumber -- the hash bucket index for the alignments, essential the position relative to the start
-         *                     of this packing interval
-         * @return the next occupied bucket at or after bucketNumber, or null if there are none.
-         */
-        public PriorityQueue<Alignment> getNextBucket(int bucketNumber, Collection<Integer> emptyBuckets) {
-
-            PriorityQueue<Alignment> bucket = null;
-            int min = 0;
-            int max = keys.size() - 1;
-
-            // Get close to the right index, rather than scan from the beginning
-            while ((max - min) > 5) {
-                int mid = (max + min) / 2;
-                Integer key = keys.get(mid);
-                if (key > bucketNumber) {
-                    max = mid;
-                } else {
-                    min = mid;
-                }
-            }
-
-            // Now march from min to max until we cross bucketNumber
-            for (int i = min; i < keys.size(); i++) {
-                Integer key = keys.get(i);
-                if (key >= bucketNumber) {
-                    bucket = buckets.get(key);
-                    if (bucket.isEmpty()) {
-                        emptyBuckets.add(key);
-                        bucket = null;
-                    } else {
-                        return bucket;
-                    }
-                }
-            }
-            return null;     // No bucket found
-        }
-
-        public void removeBuckets(Collection<Integer> emptyBuckets) {
-
-            if (emptyBuckets.isEmpty()) {
-                return;
-            }
-
-            for (Integer i : emptyBuckets) {
-                buckets.remove(i);
-            }
-            keys = new ArrayList<Integer>(buckets.keySet());
-            Collections.sort(keys);
-        }
-
-        public void finishedAdding() {
-            finished = true;
-            keys = new ArrayList<Integer>(buckets.keySet());
-            Collections.sort(keys);
-        }
-
-        public int getBucketCount() {
-            return Integer.MAX_VALUE;
-        }
-    }
-
     private class PairOrientationComparator implements Comparator<String> {
         private final List<AlignmentTrack.OrientationType> orientationTypes;
         //private final Set<String> orientationNames = new HashSet<String>(AlignmentTrack.OrientationType.values().length);
@@ -395,13 +395,11 @@ public class AlignmentTileLoader {
             //System.out.println("seed: " + seed);
             RAND.setSeed(seed);
 
-            // Use a sparse array for large regions  (> 10 mb)
+            // Compact counts only allocate storage for covered blocks,  so they serve both small and large regions
             if (reducedMemory) {
                 this.counts = new ReducedMemoryAlignment.ReducedMemoryAlignmentCounts(start, end, 25);
-            } else if ((end - start) > 10000000) {
-                this.counts = new SparseAlignmentCounts(start, end, bisulfiteContext);
             } else {
-                this.counts = new DenseAlignmentCounts(start, end, bisulfiteContext);
+                this.counts = new CompactAlignmentCounts(start, end, bisulfiteContext);
             }
 
 
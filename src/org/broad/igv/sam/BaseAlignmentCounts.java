@@ -215,9 +215,7 @@ abstract public class BaseAlignmentCounts implements AlignmentCounts {
 
         boolean qualityWeight = PreferencesManager.getPreferences().getAsBoolean(SAM_ALLELE_USE_QUALITY);
 
-        Set<Integer> filteredSnps = knownSnps == null ? null : knownSnps.get(chr);
-
-        if (filteredSnps == null || !filteredSnps.contains(pos + 1)) {
+        if (!isKnownSnp(chr, pos)) {
             float threshold = snpThreshold * (qualityWeight ? getTotalQuality(pos) : getTotalCount(pos));
             float mismatchQualitySum = 0;
 
@@ -234,6 +232,18 @@ abstract public class BaseAlignmentCounts implements AlignmentCounts {
         return false;
     }
 
+    /**
+     * Return true if the position is in the set of known snps,  which are excluded from mismatch calls.
+     *
+     * @param chr
+     * @param pos genomic position (0 based)
+     * @return
+     */
+    protected static boolean isKnownSnp(String chr, int pos) {
+        Set<Integer> filteredSnps = knownSnps == null ? null : knownSnps.get(chr);
+        return filteredSnps != null && filteredSnps.contains(pos + 1);
+    }
+
     public boolean isConsensusDeletion(int start, int width, float snpThreshold) {
 
         // We require deletion counts > threshold for at least 1/2 the width
@@ -0,0 +1,403 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.prefs.PreferencesManager;
+
+import static org.broad.igv.prefs.Constants.SAM_ALLELE_USE_QUALITY;
+
+/**
+ * Memory efficient alignment counts.  The window is divided into fixed size blocks of positions.  Within a block
+ * all counts for a position are stored next to each other (interleaved),  so reading the counts for a position
+ * touches a single cache line.  Blocks are stored as char (unsigned 16 bit) arrays and promoted to int arrays
+ * the first time a value overflows.  Blocks with no coverage are never allocated,  so large windows with sparse
+ * coverage cost little more than the block table.
+ * <p/>
+ * Replaces both {@link DenseAlignmentCounts} and {@link SparseAlignmentCounts} for alignment tiles.
+ */
+public class CompactAlignmentCounts extends BaseAlignmentCounts {
+
+    private static Logger log = Logger.getLogger(CompactAlignmentCounts.class);
+
+    static final int BLOCK_SHIFT = 10;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    // Field offsets within the interleaved record for a position
+    static final int POS_A = 0;
+    static final int POS_C = 1;
+    static final int POS_G = 2;
+    static final int POS_T = 3;
+    static final int POS_N = 4;
+    static final int NEG_A = 5;
+    static final int NEG_C = 6;
+    static final int NEG_G = 7;
+    static final int NEG_T = 8;
+    static final int NEG_N = 9;
+    static final int Q_A = 10;
+    static final int Q_C = 11;
+    static final int Q_G = 12;
+    static final int Q_T = 13;
+    static final int Q_N = 14;
+    static final int POS_TOTAL = 15;
+    static final int NEG_TOTAL = 16;
+    static final int DEL = 17;
+    static final int INS = 18;
+    static final int TOTAL_Q = 19;
+    static final int STRIDE = 20;
+
+    /**
+     * Maximum counts are tracked over intervals of this size for autoscaling.
+     */
+    static final int MAX_COUNT_INTERVAL = 100;
+
+    private final int nPts;
+
+    // A block is either a char block,  an int block (after overflow),  or neither (no coverage)
+    private final char[][] charBlocks;
+    private final int[][] intBlocks;
+
+    private final int[] maxCounts;
+
+    /**
+     * Sparse table over maxCounts,  sparseTable[k][i] = max(maxCounts[i .. i + 2^k - 1]).  Built lazily after
+     * counting has finished,  answers range max queries in constant time.
+     */
+    private int[][] sparseTable;
+
+    public CompactAlignmentCounts(int start, int end, AlignmentTrack.BisulfiteContext bisulfiteContext) {
+        super(start, end, bisulfiteContext);
+        nPts = Math.max(0, end - start);
+        int nBlocks = (nPts + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        charBlocks = new char[nBlocks][];
+        intBlocks = new int[nBlocks][];
+        maxCounts = new int[(nPts / MAX_COUNT_INTERVAL) + 1];
+    }
+
+    public int getNumberOfPoints() {
+        return nPts;
+    }
+
+    /**
+     * Return the first position >= pos in a block with coverage,  or getEnd() if there is none.  Used by
+     * renderers to skip regions without coverage.
+     *
+     * @param pos genomic position
+     * @return
+     */
+    public int nextCoveredPosition(int pos) {
+        int offset = Math.max(0, pos - start);
+        if (offset >= nPts) return end;
+        int b = offset >> BLOCK_SHIFT;
+        if (charBlocks[b] != null || intBlocks[b] != null) return start + offset;
+        for (b++; b < charBlocks.length; b++) {
+            if (charBlocks[b] != null || intBlocks[b] != null) {
+                return start + (b << BLOCK_SHIFT);
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public int getMaxCount(int strt, int end) {
+
+        if (maxCounts.length == 0) return 1;
+
+        int startMCI = Math.max(0, (strt - this.start) / MAX_COUNT_INTERVAL);
+        int endMCI = Math.max(0, (Math.min(getEnd(), end) - this.start) / MAX_COUNT_INTERVAL);
+        endMCI = Math.min(endMCI, maxCounts.length - 1);
+        if (startMCI > endMCI) return 1;
+
+        int[][] table = sparseTable;
+        if (table == null) {
+            table = buildSparseTable();
+        }
+        int k = 31 - Integer.numberOfLeadingZeros(endMCI - startMCI + 1);
+        int max = Math.max(table[k][startMCI], table[k][endMCI - (1 << k) + 1]);
+        return Math.max(1, max);
+    }
+
+    private synchronized int[][] buildSparseTable() {
+        if (sparseTable != null) return sparseTable;
+        int n = maxCounts.length;
+        int levels = 32 - Integer.numberOfLeadingZeros(n);
+        int[][] table = new int[levels][];
+        table[0] = maxCounts.clone();
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            int len = n - (1 << k) + 1;
+            int[] prev = table[k - 1];
+            int[] level = new int[len];
+            for (int i = 0; i < len; i++) {
+                level[i] = Math.max(prev[i], prev[i + half]);
+            }
+            table[k] = level;
+        }
+        sparseTable = table;
+        return table;
+    }
+
+    public void finish() {
+        buildSparseTable();
+    }
+
+    /**
+     * Return the value of a field for the position at the given offset from the window start.  No bounds checking.
+     */
+    private int get(int offset, int field) {
+        int b = offset >> BLOCK_SHIFT;
+        int idx = (offset & BLOCK_MASK) * STRIDE + field;
+        char[] cb = charBlocks[b];
+        if (cb != null) return cb[idx];
+        int[] ib = intBlocks[b];
+        return ib == null ? 0 : ib[idx];
+    }
+
+    /**
+     * Add delta to a field and return the new value.  Allocates the block if needed,  and promotes it to an int
+     * block if the new value does not fit in a char (including negative quality sums).
+     */
+    private int add(int offset, int field, int delta) {
+        int b = offset >> BLOCK_SHIFT;
+        int idx = (offset & BLOCK_MASK) * STRIDE + field;
+        int[] ib = intBlocks[b];
+        if (ib != null) {
+            return ib[idx] += delta;
+        }
+        char[] cb = charBlocks[b];
+        if (cb == null) {
+            cb = new char[BLOCK_SIZE * STRIDE];
+            charBlocks[b] = cb;
+        }
+        int value = cb[idx] + delta;
+        if (value < 0 || value > Character.MAX_VALUE) {
+            ib = new int[cb.length];
+            for (int i = 0; i < cb.length; i++) {
+                ib[i] = cb[i];
+            }
+            ib[idx] = value;
+            intBlocks[b] = ib;
+            charBlocks[b] = null;
+        } else {
+            cb[idx] = (char) value;
+        }
+        return value;
+    }
+
+    private boolean inRange(int offset, int pos) {
+        if (offset < 0 || offset >= nPts) {
+            if (log.isDebugEnabled()) {
+                log.debug("Position out of range: " + pos + " (valid range - " + start + "-" + end);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Field offset for a base,  relative to the A field of the group.  Anything other than ACGT is counted as N.
+     */
+    private static int baseIndex(byte b) {
+        switch (b) {
+            case 'a':
+            case 'A':
+                return 0;
+            case 'c':
+            case 'C':
+                return 1;
+            case 'g':
+            case 'G':
+                return 2;
+            case 't':
+            case 'T':
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private static boolean isNucleotide(byte b) {
+        switch (b) {
+            case 'a':
+            case 'A':
+            case 'c':
+            case 'C':
+            case 'g':
+            case 'G':
+            case 't':
+            case 'T':
+            case 'n':
+            case 'N':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public int getTotalCount(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? get(offset, POS_TOTAL) + get(offset, NEG_TOTAL) : 0;
+    }
+
+    public int getTotalQuality(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? get(offset, TOTAL_Q) : 0;
+    }
+
+    public int getCount(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) return 0;
+        if (!isNucleotide(b)) {
+            log.debug("Unknown nucleotide: " + b);
+            return 0;
+        }
+        int bi = baseIndex(b);
+        return get(offset, POS_A + bi) + get(offset, NEG_A + bi);
+    }
+
+    public int getNegCount(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) return 0;
+        if (!isNucleotide(b)) {
+            log.error("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return get(offset, NEG_A + baseIndex(b));
+    }
+
+    public int getPosCount(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) return 0;
+        if (!isNucleotide(b)) {
+            log.error("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return get(offset, POS_A + baseIndex(b));
+    }
+
+    public int getDelCount(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? get(offset, DEL) : 0;
+    }
+
+    public int getInsCount(int pos) {
+        int offset = pos - start;
+        return inRange(offset, pos) ? get(offset, INS) : 0;
+    }
+
+    public int getQuality(int pos, byte b) {
+        int offset = pos - start;
+        if (!inRange(offset, pos)) return 0;
+        if (!isNucleotide(b)) {
+            log.error("Unknown nucleotide: " + b);
+            return 0;
+        }
+        return get(offset, Q_A + baseIndex(b));
+    }
+
+    /**
+     * Same semantics as {@link BaseAlignmentCounts#isConsensusMismatch(int, byte, String, float)},  but reads the
+     * interleaved record for the position directly rather than through the per-base accessors.
+     */
+    @Override
+    public boolean isConsensusMismatch(int pos, byte ref, String chr, float snpThreshold) {
+
+        int offset = pos - start;
+        if (offset < 0 || offset >= nPts || ref <= 0) return false;
+
+        int b = offset >> BLOCK_SHIFT;
+        if (charBlocks[b] == null && intBlocks[b] == null) return false;   // No coverage
+
+        if (isKnownSnp(chr, pos)) return false;
+
+        boolean qualityWeight = PreferencesManager.getPreferences().getAsBoolean(SAM_ALLELE_USE_QUALITY);
+        float threshold = snpThreshold * (qualityWeight ?
+                get(offset, TOTAL_Q) :
+                get(offset, POS_TOTAL) + get(offset, NEG_TOTAL));
+
+        if (ref < 96) ref += 32;  // a fast "toLowercase"
+        int refIndex = baseIndex(ref);
+        float mismatchQualitySum = 0;
+        for (int bi = 0; bi < 4; bi++) {
+            if (bi != refIndex) {
+                mismatchQualitySum += qualityWeight ?
+                        get(offset, Q_A + bi) :
+                        get(offset, POS_A + bi) + get(offset, NEG_A + bi);
+            }
+        }
+        return (mismatchQualitySum >= threshold) && (threshold > 0); // (threshold > 0) avoids mismatch call in columns with all 0 quality
+    }
+
+    protected void incrementDeletion(int pos, boolean negativeStrand) {
+        int offset = pos - start;
+        if (offset >= 0 && offset < nPts) {
+            add(offset, DEL, 1);
+            if (countDeletedBasesCovered) {
+                add(offset, negativeStrand ? NEG_TOTAL : POS_TOTAL, 1);
+            }
+        }
+    }
+
+    protected void incrementInsertion(AlignmentBlock insBlock) {
+        int offset = insBlock.getStart() - start;
+        // Insertions are between bases.  increment count at position just before insertion
+        if (offset >= 0 && offset < nPts) {
+            add(offset, INS, 1);
+        }
+    }
+
+    protected void incBlockCounts(AlignmentBlock block, boolean isNegativeStrand) {
+        int start = block.getStart();
+        byte[] bases = block.getBases();
+        if (bases != null) {
+            // NOTE:  the direct access block.qualities is intentional,  profiling reveals this to be a critical bottleneck
+            byte[] qualities = ((AlignmentBlockImpl) block).qualities;
+            for (int i = 0; i < bases.length; i++) {
+                incPositionCount(start + i, bases[i], qualities[i], isNegativeStrand);
+            }
+        }
+    }
+
+    protected void incPositionCount(int pos, byte b, byte q, boolean isNegativeStrand) {
+
+        int offset = pos - start;
+        if (offset >= 0 && offset < nPts) {
+            int bi = baseIndex(b);
+            add(offset, (isNegativeStrand ? NEG_A : POS_A) + bi, 1);
+            add(offset, Q_A + bi, q);
+            add(offset, TOTAL_Q, q);
+            int strandTotal = add(offset, isNegativeStrand ? NEG_TOTAL : POS_TOTAL, 1);
+            int total = strandTotal + get(offset, isNegativeStrand ? POS_TOTAL : NEG_TOTAL);
+
+            int maxCountInt = offset / MAX_COUNT_INTERVAL;
+            if (total > maxCounts[maxCountInt]) {
+                maxCounts[maxCountInt] = total;
+                sparseTable = null;
+            }
+        }
+    }
+}
@@ -482,8 +482,16 @@ public class CoverageTrack extends AbstractTrack implements ScalableTrack {
             int step = alignmentCounts.getBucketSize();
             int nPoints = alignmentCounts.getNumberOfPoints();
             boolean isSparse = alignmentCounts instanceof SparseAlignmentCounts;
+            CompactAlignmentCounts compactCounts = alignmentCounts instanceof CompactAlignmentCounts ?
+                    (CompactAlignmentCounts) alignmentCounts : null;
 
-            for (int idx = 0; idx < nPoints; idx++) {
+            for (int idx = firstVisibleIndex(alignmentCounts, origin, step); idx < nPoints; idx++) {
+
+                if (compactCounts != null && (idx & CompactAlignmentCounts.BLOCK_MASK) == 0) {
+                    // Skip blocks without coverage
+                    idx = compactCounts.nextCoveredPosition(start + idx) - start;
+                    if (idx >= nPoints) break;
+                }
 
                 int pos = isSparse ? ((SparseAlignmentCounts) alignmentCounts).getPosition(idx) : start + idx * step;
                 int pX = (int) (rectX + (pos - origin) / scale);
@@ -533,7 +541,13 @@ public class CoverageTrack extends AbstractTrack implements ScalableTrack {
                 nPoints = alignmentCounts.getNumberOfPoints();
                 isSparse = alignmentCounts instanceof SparseAlignmentCounts;
 
-                for (int idx = 0; idx < nPoints; idx++) {
+                for (int idx = firstVisibleIndex(alignmentCounts, origin, 1); idx < nPoints; idx++) {
+
+                    if (compactCounts != null && (idx & CompactAlignmentCounts.BLOCK_MASK) == 0) {
+                        idx = compactCounts.nextCoveredPosition(start + idx) - start;
+                        if (idx >= nPoints) break;
+                    }
+
                     int pos = isSparse ? ((SparseAlignmentCounts) alignmentCounts).getPosition(idx) : start + idx;
 
                     BisulfiteCounts.Count bc = null;
@@ -601,6 +615,17 @@ public class CoverageTrack extends AbstractTrack implements ScalableTrack {
                 }
             }
         }
+
+        /**
+         * Index of the first point at or left of the view origin.  Points before it are off screen and need not
+         * be visited.  Sparse counts are not indexed by position,  so they are always visited from the start.
+         */
+        private int firstVisibleIndex(AlignmentCounts alignmentCounts, double origin, int step) {
+            if (alignmentCounts instanceof SparseAlignmentCounts) {
+                return 0;
+            }
+            return Math.max(0, (int) ((origin - alignmentCounts.getStart()) / step) - 1);
+        }
     }
 
     /**
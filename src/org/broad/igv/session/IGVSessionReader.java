@@ -52,7 +52,6 @@ import org.broad.igv.util.FilterElement.BooleanOperator;
 import org.broad.igv.util.FilterElement.Operator;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
-import org.broad.igv.util.Utilities;
 import org.broad.igv.util.collections.CollUtils;
 import org.w3c.dom.*;
 
@@ -61,6 +60,7 @@ import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import java.awt.*;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -120,6 +120,7 @@ public class IGVSessionReader implements SessionReader {
     private Track geneTrack = null;
     private Track seqTrack = null;
     private boolean hasTrackElments;
+    private boolean restoreRegions = true;
 
     //Temporary holder for generating tracks
     protected static AbstractTrack nextTrack;
@@ -297,6 +298,16 @@ public class IGVSessionReader implements SessionReader {
      * @throws RuntimeException
      */
 
+    /**
+     * If false the regions of interest of the session are not restored,  e.g. because the caller loads them from the
+     * file that owns them.  Default true.
+     *
+     * @param restoreRegions
+     */
+    public void setRestoreRegions(boolean restoreRegions) {
+        this.restoreRegions = restoreRegions;
+    }
+
     public void loadSession(InputStream inputStream, Session session, String sessionPath) {
 
 
@@ -305,7 +316,7 @@ public class IGVSessionReader implements SessionReader {
 
         Document document = null;
         try {
-            document = Utilities.createDOMDocumentFromXmlStream(inputStream);
+            document = SessionDocumentReader.parse(inputStream);
         } catch (Exception e) {
             log.error("Load session error", e);
             throw new RuntimeException(e);
@@ -812,13 +823,74 @@ public class IGVSessionReader implements SessionReader {
         return absolutePath;
     }
 
+    /**
+     * Regions are either inlined as {@code Region} elements, which {@link SessionDocumentReader} collects while
+     * streaming, or referenced by the {@code path} of a BED file that owns them (e.g. a GIE layer).  Either way they
+     * are added in a single bulk operation.
+     */
     private void processRegions(Session session, Element element, HashMap additionalInformation, String rootPath, String alternateRootPath) {
 
         session.clearRegionsOfInterest();
+        if (!restoreRegions) {
+            return;
+        }
+
+        List<RegionOfInterest> regions = new ArrayList<RegionOfInterest>();
+        String path = getAttribute(element, SessionAttribute.PATH.getText());
+        if (path != null) {
+            String absolutePath = getAbsolutePath(path, rootPath);
+            try {
+                regions.addAll(readRegionsFile(absolutePath));
+            } catch (IOException e) {
+                log.error("Error loading regions of interest from " + absolutePath, e);
+            }
+        }
+        regions.addAll(SessionDocumentReader.getRegions(element));
+        if (regions.size() > 0) {
+            IGV.getInstance().addROI(regions);
+        }
+
         NodeList elements = element.getChildNodes();
         process(session, elements, additionalInformation, rootPath, alternateRootPath);
     }
 
+    /**
+     * Read the chr, start, end and name columns of a BED file.
+     */
+    private static List<RegionOfInterest> readRegionsFile(String path) throws IOException {
+        List<RegionOfInterest> regions = new ArrayList<RegionOfInterest>();
+        BufferedReader reader = null;
+        try {
+            reader = ParsingUtils.openBufferedReader(path);
+            String nextLine;
+            int lineNumber = 0;
+            while ((nextLine = reader.readLine()) != null) {
+                lineNumber++;
+                if (nextLine.trim().length() == 0 || nextLine.startsWith("#") || nextLine.startsWith("track") ||
+                        nextLine.startsWith("browser")) {
+                    continue;
+                }
+                String[] tokens = Globals.tabPattern.split(nextLine, -1);
+                if (tokens.length < 3) {
+                    continue;
+                }
+                String description = tokens.length > 3 && !tokens[3].equals("null") ? tokens[3] : null;
+                try {
+                    regions.add(new RegionOfInterest(tokens[0], Integer.parseInt(tokens[1].trim()),
+                            Integer.parseInt(tokens[2].trim()), description));
+                } catch (NumberFormatException e) {
+                    // One bad line should not abort the session restore
+                    log.warn("Skipping malformed region at line " + lineNumber + " of " + path + ": " + nextLine);
+                }
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        return regions;
+    }
+
     private void processRegion(Session session, Element element, HashMap additionalInformation, String rootPath, String alternateRootPath) {
 
         String chromosome = getAttribute(element, SessionAttribute.CHROMOSOME.getText());
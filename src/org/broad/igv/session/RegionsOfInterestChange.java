@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.session;
+
+import org.broad.igv.feature.RegionOfInterest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The net change of the session regions of interest between two notifications of
+ * {@link RegionsOfInterestObservable}.  This is passed as the argument of
+ * {@link java.util.Observer#update(java.util.Observable, Object)}.
+ * <p/>
+ * A change is either a delta (regions added, removed or modified in place) or a reset, which means the regions
+ * were changed in a way that was not recorded and observers have to re-read all of them.
+ */
+public class RegionsOfInterestChange {
+
+    private final List<RegionOfInterest> added;
+    private final List<RegionOfInterest> removed;
+    private final List<RegionOfInterest> updated;
+    private final boolean reset;
+
+    private RegionsOfInterestChange(Builder builder) {
+        this.added = Collections.unmodifiableList(new ArrayList<>(builder.added));
+        this.removed = Collections.unmodifiableList(new ArrayList<>(builder.removed));
+        this.updated = Collections.unmodifiableList(new ArrayList<>(builder.updated));
+        this.reset = builder.reset;
+    }
+
+    public List<RegionOfInterest> getAdded() {
+        return added;
+    }
+
+    public List<RegionOfInterest> getRemoved() {
+        return removed;
+    }
+
+    public List<RegionOfInterest> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return true if the regions changed in an unknown way and observers must re-read all of them
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return !reset && added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return reset ? "RegionsOfInterestChange[reset]" :
+                "RegionsOfInterestChange[added=" + added.size() + ", removed=" + removed.size() +
+                        ", updated=" + updated.size() + "]";
+    }
+
+    /**
+     * Accumulates changes.  A region that is added and then removed again cancels out, a region that is
+     * removed and added again is reported as updated.  Regions are compared by locus, see
+     * {@link RegionOfInterest#equals(Object)}.
+     */
+    static class Builder {
+
+        private final Set<RegionOfInterest> added = new LinkedHashSet<>();
+        private final Set<RegionOfInterest> removed = new LinkedHashSet<>();
+        private final Set<RegionOfInterest> updated = new LinkedHashSet<>();
+        private boolean reset;
+
+        Builder added(Collection<RegionOfInterest> rois) {
+            if (!reset) {
+                for (RegionOfInterest roi : rois) {
+                    if (removed.remove(roi)) {
+                        updated.add(roi);
+                    } else {
+                        added.add(roi);
+                    }
+                }
+            }
+            return this;
+        }
+
+        Builder removed(Collection<RegionOfInterest> rois) {
+            if (!reset) {
+                for (RegionOfInterest roi : rois) {
+                    if (!added.remove(roi)) {
+                        updated.remove(roi);
+                        removed.add(roi);
+                    }
+                }
+            }
+            return this;
+        }
+
+        Builder updated(Collection<RegionOfInterest> rois) {
+            if (!reset) {
+                for (RegionOfInterest roi : rois) {
+                    if (!added.contains(roi)) {
+                        updated.add(roi);
+                    }
+                }
+            }
+            return this;
+        }
+
+        Builder reset() {
+            reset = true;
+            added.clear();
+            removed.clear();
+            updated.clear();
+            return this;
+        }
+
+        RegionsOfInterestChange build() {
+            return new RegionsOfInterestChange(this);
+        }
+    }
+}
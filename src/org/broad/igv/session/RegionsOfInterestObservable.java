@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.session;
+
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.util.ObservableForObject;
+
+import javax.swing.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Observable for the session regions of interest.
+ * <p/>
+ * Changes are recorded as they happen ({@link #regionsAdded(Collection)} etc.) and observers are notified once,
+ * on the event dispatch thread, after the event that caused them has been processed.  All notifications requested
+ * while handling a single UI event are therefore coalesced into one {@link RegionsOfInterestChange}, which is
+ * passed as the argument to the observers.
+ * <p/>
+ * {@link #setChangedAndNotify()} is for callers that modify regions directly; it notifies a reset.
+ */
+public class RegionsOfInterestObservable extends ObservableForObject<Map<String, List<RegionOfInterest>>> {
+
+    private final Object lock = new Object();
+
+    private RegionsOfInterestChange.Builder pending = new RegionsOfInterestChange.Builder();
+    private boolean notifyPending = false;
+    private boolean dispatchScheduled = false;
+
+    private final Runnable dispatcher = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    public RegionsOfInterestObservable(Map<String, List<RegionOfInterest>> regionsOfInterest) {
+        super(regionsOfInterest);
+    }
+
+    public void regionsAdded(Collection<RegionOfInterest> rois) {
+        synchronized (lock) {
+            pending.added(rois);
+        }
+    }
+
+    public void regionsRemoved(Collection<RegionOfInterest> rois) {
+        synchronized (lock) {
+            pending.removed(rois);
+        }
+    }
+
+    /**
+     * Record regions whose attributes (description, score, annotations...) were modified in place.
+     */
+    public void regionsUpdated(Collection<RegionOfInterest> rois) {
+        synchronized (lock) {
+            pending.updated(rois);
+        }
+    }
+
+    /**
+     * Notify observers of the changes recorded so far.
+     */
+    public void notifyChange() {
+        synchronized (lock) {
+            notifyPending = true;
+        }
+        scheduleDispatch();
+    }
+
+    /**
+     * Indicate that the regions changed in an unrecorded way and notify observers of a reset.
+     */
+    @Override
+    public void setChangedAndNotify() {
+        synchronized (lock) {
+            pending.reset();
+            notifyPending = true;
+        }
+        scheduleDispatch();
+    }
+
+    /**
+     * Notify observers of pending changes now, on the calling thread.  Called on the event dispatch thread for
+     * queued notifications; batch code can call it to make changes visible before continuing.
+     */
+    public void flush() {
+        RegionsOfInterestChange change;
+        synchronized (lock) {
+            dispatchScheduled = false;
+            if (!notifyPending) {
+                return;
+            }
+            change = pending.build();
+            pending = new RegionsOfInterestChange.Builder();
+            notifyPending = false;
+        }
+        setChanged();
+        notifyObservers(change);
+    }
+
+    private void scheduleDispatch() {
+        synchronized (lock) {
+            if (dispatchScheduled) {
+                return;
+            }
+            dispatchScheduled = true;
+        }
+        SwingUtilities.invokeLater(dispatcher);
+    }
+}
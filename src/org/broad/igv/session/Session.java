@@ -62,7 +62,6 @@ import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.TrackFilter;
 import org.broad.igv.ui.panel.FrameManager;
 import org.broad.igv.ui.panel.ReferenceFrame;
-import org.broad.igv.util.ObservableForObject;
 
 import at.ccri.varan.ui.GIEDataDialog;
 import at.ccri.varan.util.CanonicalChromsomeComparator;
@@ -98,11 +97,17 @@ public class Session implements IGVEventObserver {
      */
     private Map<String, List<RegionOfInterest>> regionsOfInterest = new LinkedHashMap<>();
 
-    // An Observable that notifies observers of changes to the regions of interest. Its
-    // setChangedAndNotify() method should be called after any regions change.
-    private ObservableForObject<Map<String, List<RegionOfInterest>>> regionsOfInterestObservable = new ObservableForObject<>(
+    // An Observable that notifies observers of changes to the regions of interest. The methods below record
+    // typed changes; setChangedAndNotify() should be called after any other modification of the regions.
+    private RegionsOfInterestObservable regionsOfInterestObservable = new RegionsOfInterestObservable(
 	    regionsOfInterest);
 
+    /**
+     * File that owns the regions of interest (e.g. a GIE layer BED file). If set, sessions reference this file
+     * instead of inlining every region.
+     */
+    private String regionsOfInterestFile;
+
     private GeneList currentGeneList;
     private GeneListMode geneListMode = GeneListMode.NORMAL;
     private Set<String> hiddenAttributes;
@@ -117,6 +122,7 @@ public class Session implements IGVEventObserver {
 
 	this.path = path;
 	this.nextAutoscaleGroup = 1;
+	this.regionsOfInterestFile = null;
 	// regionsOfInterest = new LinkedHashMap<>();
 	// regionsOfInterestObservable = new ObservableForObject<>(regionsOfInterest);
 
@@ -360,8 +366,10 @@ public class Session implements IGVEventObserver {
 	if (roiList != null) {
 	    result = result && roiList.remove(oldr);
 	}
+	if (result)
+	    regionsOfInterestObservable.regionsRemoved(Collections.singletonList(oldr));
 	// notify all observers that regions have changed.
-	regionsOfInterestObservable.setChangedAndNotify();
+	regionsOfInterestObservable.notifyChange();
 	return result;
     }
 
@@ -384,8 +392,10 @@ public class Session implements IGVEventObserver {
 	if (roiList != null) {
 	    result = result && roiList.remove(roi);
 	}
+	if (result)
+	    regionsOfInterestObservable.regionsRemoved(Collections.singletonList(roi));
 	// notify all observers that regions have changed.
-	if ( informListeners) regionsOfInterestObservable.setChangedAndNotify();
+	if ( informListeners) regionsOfInterestObservable.notifyChange();
 	return result;
     }
 
@@ -399,16 +409,21 @@ public class Session implements IGVEventObserver {
      */
     public boolean removeROI(Collection<RegionOfInterest> rois) {
 	boolean result = true;
+	List<RegionOfInterest> removed = new ArrayList<RegionOfInterest>();
 
 	for (RegionOfInterest roi : rois) {
 	    Collection<RegionOfInterest> roiList = regionsOfInterest.get(roi.getChr());
 	    if (roiList != null) {
-		result = result && roiList.remove(roi);
+		if (roiList.remove(roi))
+		    removed.add(roi);
+		else
+		    result = false;
 	    }
 	}
+	regionsOfInterestObservable.regionsRemoved(removed);
 
 	// notify all observers that regions have changed.
-	regionsOfInterestObservable.setChangedAndNotify();
+	regionsOfInterestObservable.notifyChange();
 	return result;
     }
 
@@ -522,9 +537,68 @@ public class Session implements IGVEventObserver {
 
 	// }
 
+	regionsOfInterestObservable.regionsRemoved(todel);
+	regionsOfInterestObservable.regionsAdded(toadd);
+	if (!clipRegion)
+	    regionsOfInterestObservable.regionsAdded(Collections.singletonList(newRoi));
+
+	// notify all observers that regions have changed.
+	if (informListeners)
+	    regionsOfInterestObservable.notifyChange();
+    }
+
+    /**
+     * Add a collection of rois. If the new regions of a chromosome overlap neither each other nor the existing ones
+     * they are merged in one step; otherwise this falls back to {@link #addROI(RegionOfInterest, boolean, boolean)}
+     * so that the split semantics are preserved.
+     * 
+     * @param rois
+     * @param informListeners
+     */
+    public void addROI(Collection<RegionOfInterest> rois, boolean informListeners) {
+	Map<String, List<RegionOfInterest>> byChr = new LinkedHashMap<>();
+	for (RegionOfInterest roi : rois) {
+	    List<RegionOfInterest> chrRois = byChr.get(roi.getChr());
+	    if (chrRois == null) {
+		chrRois = new ArrayList<RegionOfInterest>();
+		byChr.put(roi.getChr(), chrRois);
+	    }
+	    chrRois.add(roi);
+	}
+
+	for (Map.Entry<String, List<RegionOfInterest>> entry : byChr.entrySet()) {
+	    List<RegionOfInterest> roiList = regionsOfInterest.get(entry.getKey());
+	    List<RegionOfInterest> merged = new ArrayList<RegionOfInterest>(entry.getValue());
+	    if (roiList != null)
+		merged.addAll(roiList);
+	    Collections.sort(merged);
+	    if (isDisjoint(merged)) {
+		regionsOfInterest.put(entry.getKey(), merged);
+		regionsOfInterestObservable.regionsAdded(entry.getValue());
+	    } else {
+		for (RegionOfInterest roi : entry.getValue())
+		    addROI(roi, false, false);
+	    }
+	}
+
 	// notify all observers that regions have changed.
 	if (informListeners)
-	    regionsOfInterestObservable.setChangedAndNotify();
+	    regionsOfInterestObservable.notifyChange();
+    }
+
+    /**
+     * @param sorted
+     *            non-empty regions sorted by start position
+     * @return true if no two regions overlap
+     */
+    private static boolean isDisjoint(List<RegionOfInterest> sorted) {
+	int maxEnd = Integer.MIN_VALUE;
+	for (RegionOfInterest roi : sorted) {
+	    if (roi.getLength() <= 0 || roi.getStart() < maxEnd)
+		return false;
+	    maxEnd = Math.max(maxEnd, roi.getEnd());
+	}
+	return true;
     }
 
     public void replaceRegionsOfInterest(Collection<RegionOfInterest> rois) {
@@ -536,11 +610,13 @@ public class Session implements IGVEventObserver {
 	    List<RegionOfInterest> roiList = regionsOfInterest.get(r.getChr());
 	    if (roiList == null) {
 		roiList = new ArrayList<RegionOfInterest>();
+		regionsOfInterest.put(r.getChr(), roiList);
 	    }
 	    roiList.add(r);
-	    Collections.sort(roiList);
-	    regionsOfInterest.put(r.getChr(), roiList);
 	}
+	for (List<RegionOfInterest> roiList : regionsOfInterest.values())
+	    Collections.sort(roiList);
+	regionsOfInterestObservable.setThing(regionsOfInterest);
 
 	// notify all observers that regions have changed.
 	regionsOfInterestObservable.setChangedAndNotify();
@@ -561,6 +637,14 @@ public class Session implements IGVEventObserver {
 	this.path = path;
     }
 
+    public String getRegionsOfInterestFile() {
+	return regionsOfInterestFile;
+    }
+
+    public void setRegionsOfInterestFile(String regionsOfInterestFile) {
+	this.regionsOfInterestFile = regionsOfInterestFile;
+    }
+
     public History getHistory() {
 	return history;
     }
@@ -708,7 +792,7 @@ public class Session implements IGVEventObserver {
      *
      * @return
      */
-    public ObservableForObject<Map<String, List<RegionOfInterest>>> getRegionsOfInterestObservable() {
+    public RegionsOfInterestObservable getRegionsOfInterestObservable() {
 	return regionsOfInterestObservable;
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.session;
+
+import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.session.IGVSessionReader.SessionAttribute;
+import org.broad.igv.session.IGVSessionReader.SessionElement;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the DOM of a session file from a StAX stream. {@code Region} elements inside a {@code Regions} element are
+ * parsed straight into {@link RegionOfInterest} objects and attached to the {@code Regions} element as user data
+ * (see {@link #getRegions(Element)}) rather than being added to the DOM, so large region sets do not inflate the
+ * document.
+ * <p/>
+ * The resulting document mirrors the one produced by a non namespace aware {@code DocumentBuilder}: nodes carry
+ * qualified names and namespace declarations are kept as {@code xmlns} attributes.
+ */
+class SessionDocumentReader {
+
+    private static final String REGIONS_KEY = "regions";
+
+    static Document parse(InputStream inputStream) throws ParserConfigurationException, XMLStreamException {
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+
+        try {
+            Node current = document;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+                        if (isRegions(current) && name.equalsIgnoreCase(SessionElement.REGION.getText())) {
+                            getRegions((Element) current).add(parseRegion(reader));
+                            skipElement(reader);
+                        } else {
+                            Element element = document.createElement(name);
+                            copyAttributes(reader, element);
+                            if (name.equalsIgnoreCase(SessionElement.REGIONS.getText())) {
+                                element.setUserData(REGIONS_KEY, new ArrayList<RegionOfInterest>(), null);
+                            }
+                            current.appendChild(element);
+                            current = element;
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        current = current.getParentNode();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (current != document) {
+                            current.appendChild(document.createTextNode(reader.getText()));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return document;
+    }
+
+    /**
+     * @param regionsElement a {@code Regions} element of a document created by {@link #parse(InputStream)}
+     * @return the regions streamed out of {@code regionsElement}, in document order
+     */
+    @SuppressWarnings("unchecked")
+    static List<RegionOfInterest> getRegions(Element regionsElement) {
+        List<RegionOfInterest> regions = (List<RegionOfInterest>) regionsElement.getUserData(REGIONS_KEY);
+        return regions == null ? new ArrayList<RegionOfInterest>() : regions;
+    }
+
+    private static boolean isRegions(Node node) {
+        return node.getNodeType() == Node.ELEMENT_NODE && node.getUserData(REGIONS_KEY) != null;
+    }
+
+    private static RegionOfInterest parseRegion(XMLStreamReader reader) {
+        String chromosome = getAttribute(reader, SessionAttribute.CHROMOSOME.getText());
+        String start = getAttribute(reader, SessionAttribute.START_INDEX.getText());
+        String end = getAttribute(reader, SessionAttribute.END_INDEX.getText());
+        String description = getAttribute(reader, SessionAttribute.DESCRIPTION.getText());
+        return new RegionOfInterest(chromosome, Integer.parseInt(start), Integer.parseInt(end), description);
+    }
+
+    private static String getAttribute(XMLStreamReader reader, String key) {
+        String value = reader.getAttributeValue(null, key);
+        if (value != null && value.trim().equals("")) {
+            value = null;
+        }
+        return value;
+    }
+
+    private static void copyAttributes(XMLStreamReader reader, Element element) {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttribute(qualifiedName("xmlns", prefix), reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        if (prefix == null || prefix.isEmpty()) {
+            return localName;
+        } else if (localName == null || localName.isEmpty()) {
+            return prefix;
+        } else {
+            return prefix + ":" + localName;
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -42,8 +43,10 @@ import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.RegionOfInterest;
@@ -64,13 +67,19 @@ import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.ui.panel.TrackPanel;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ResourceLocator;
-import org.broad.igv.util.Utilities;
-import org.w3c.dom.DOMException;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 /**
+ * Writes a session as a StAX stream. Only track elements, which are marshalled with JAXB, are built as DOM
+ * fragments; everything else, in particular the regions of interest, is streamed directly to the output. If the
+ * session's regions are owned by a file (see {@link Session#getRegionsOfInterestFile()}) only a reference to that
+ * file is written.
+ *
  * @author jrobinso
  */
 public class SessionWriter {
@@ -82,6 +91,12 @@ public class SessionWriter {
 
     private static final String TRACK_TAG = SessionElement.TRACK.getText();
 
+    private static final String INDENT = "    ";
+
+    private XMLStreamWriter xmlWriter;
+
+    private int depth;
+
     /**
      * Method description
      *
@@ -96,20 +111,15 @@ public class SessionWriter {
 	    log.error("Session Management Error", e);
 	}
 
-	this.session = session;
-
 	if (outputFile == null) {
 	    RuntimeException e = new RuntimeException("Can't save session file: " + outputFile);
 	    log.error("Session Management Error", e);
 	}
 
-	String xmlString = createXmlFromSession(session, outputFile);
-
 	Writer fileWriter = null;
 	try {
 	    fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
-	    ;
-	    fileWriter.write(xmlString);
+	    writeSession(session, outputFile, fileWriter);
 	} finally {
 	    if (fileWriter != null) {
 		fileWriter.close();
@@ -118,171 +128,226 @@ public class SessionWriter {
     }
 
     public String createXmlFromSession(Session session, File outputFile) throws RuntimeException {
+	StringWriter stringWriter = new StringWriter();
+	writeSession(session, outputFile, stringWriter);
+	return stringWriter.toString();
+    }
+
+    private void writeSession(Session session, File outputFile, Writer writer) throws RuntimeException {
 
-	String xmlString = null;
+	this.session = session;
 
 	try {
 
-	    // Create a DOM document
-	    DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-	    Document document = documentBuilder.newDocument();
-	    document.setStrictErrorChecking(true);
+	    xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+	    depth = 0;
+
+	    // Scratch document for JAXB marshalled track elements
+	    Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+	    xmlWriter.writeStartDocument("UTF-8", "1.0");
 
 	    // Global root element
-	    Element globalElement = document.createElement(SessionElement.SESSION.getText());
+	    startElement(SessionElement.SESSION.getText());
 
-	    globalElement.setAttribute(SessionAttribute.VERSION.getText(), String.valueOf(CURRENT_VERSION));
+	    xmlWriter.writeAttribute(SessionAttribute.VERSION.getText(), String.valueOf(CURRENT_VERSION));
 
 	    String genomeId = GenomeManager.getInstance().getGenomeId();
 	    if (genomeId != null) {
-		globalElement.setAttribute(SessionAttribute.GENOME.getText(), genomeId);
+		xmlWriter.writeAttribute(SessionAttribute.GENOME.getText(), genomeId);
 	    }
 
 	    String locus = session.getLocusString();
 	    if (locus != null && !FrameManager.isGeneListMode()) {
-		globalElement.setAttribute(SessionAttribute.LOCUS.getText(), locus);
+		xmlWriter.writeAttribute(SessionAttribute.LOCUS.getText(), locus);
 	    }
 
 	    String groupBy = IGV.getInstance().getGroupByAttribute();
 	    if (groupBy != null) {
-		globalElement.setAttribute(SessionAttribute.GROUP_TRACKS_BY.getText(), groupBy);
+		xmlWriter.writeAttribute(SessionAttribute.GROUP_TRACKS_BY.getText(), groupBy);
 	    }
 
 	    int nextAutoscaleGroup = session.getNextAutoscaleGroup();
 	    if (nextAutoscaleGroup > 1) {
-		globalElement.setAttribute(SessionAttribute.NEXT_AUTOSCALE_GROUP.getText(),
+		xmlWriter.writeAttribute(SessionAttribute.NEXT_AUTOSCALE_GROUP.getText(),
 			String.valueOf(nextAutoscaleGroup));
 	    }
 
 	    if (session.isRemoveEmptyPanels()) {
-		globalElement.setAttribute("removeEmptyTracks", "true");
+		xmlWriter.writeAttribute("removeEmptyTracks", "true");
 	    }
 
-	    globalElement.setAttribute(SessionAttribute.HAS_GENE_TRACK.getText(),
-		    "" + IGV.getInstance().hasGeneTrack());
-	    globalElement.setAttribute(SessionAttribute.HAS_SEQ_TRACK.getText(),
+	    xmlWriter.writeAttribute(SessionAttribute.HAS_GENE_TRACK.getText(), "" + IGV.getInstance().hasGeneTrack());
+	    xmlWriter.writeAttribute(SessionAttribute.HAS_SEQ_TRACK.getText(),
 		    "" + IGV.getInstance().hasSequenceTrack());
 
-	    globalElement.setAttribute("path", outputFile.getCanonicalPath());
+	    xmlWriter.writeAttribute("path", outputFile.getCanonicalPath());
 
 	    // Resource Files
-	    writeResources(outputFile, globalElement, document);
+	    writeResources(outputFile);
 
 	    // Panels
-	    writePanels(globalElement, document);
+	    writePanels(document);
 
 	    // Panel layout
-	    writePanelLayout(globalElement, document);
+	    writePanelLayout();
 
 	    // Regions of Interest
-	    writeRegionsOfInterest(globalElement, document);
+	    writeRegionsOfInterest();
 
 	    // Filter
-	    writeFilters(session, globalElement, document);
+	    writeFilters(session);
 
 	    if (FrameManager.isGeneListMode()) {
-		writeGeneList(globalElement, document);
+		writeGeneList();
 	    }
 
 	    // Hidden attributes
 	    if (session.getHiddenAttributes() != null && session.getHiddenAttributes().size() > 0) {
-		writeHiddenAttributes(session, globalElement, document);
+		writeHiddenAttributes(session);
 	    }
 
-	    document.appendChild(globalElement);
-
-	    // Transform document into XML
-	    xmlString = Utilities.getString(document);
+	    endElement(true);
+	    xmlWriter.writeCharacters("\n");
+	    xmlWriter.writeEndDocument();
+	    xmlWriter.flush();
 	} catch (Exception e) {
 	    String message = "An error has occurred while trying to create the session!";
 	    log.error(message, e);
 	    JOptionPane.showMessageDialog(IGV.getMainFrame(), message);
 	    throw new RuntimeException(e);
+	} finally {
+	    if (xmlWriter != null) {
+		try {
+		    xmlWriter.close();
+		} catch (XMLStreamException e) {
+		    log.error("Error closing session writer", e);
+		}
+		xmlWriter = null;
+	    }
+	}
+    }
+
+    private void startElement(String name) throws XMLStreamException {
+	newLine();
+	xmlWriter.writeStartElement(name);
+	depth++;
+    }
+
+    private void emptyElement(String name) throws XMLStreamException {
+	newLine();
+	xmlWriter.writeEmptyElement(name);
+    }
+
+    /**
+     * @param hasChildElements
+     *            if true the end tag is written on its own line
+     */
+    private void endElement(boolean hasChildElements) throws XMLStreamException {
+	depth--;
+	if (hasChildElements) {
+	    newLine();
 	}
+	xmlWriter.writeEndElement();
+    }
 
-	return xmlString;
+    private void newLine() throws XMLStreamException {
+	StringBuilder buf = new StringBuilder("\n");
+	for (int i = 0; i < depth; i++) {
+	    buf.append(INDENT);
+	}
+	xmlWriter.writeCharacters(buf.toString());
     }
 
-    private void writeFilters(Session session, Element globalElement, Document document) {
+    private void writeFilters(Session session) throws XMLStreamException {
 	TrackFilter trackFilter = session.getFilter();
 	if (trackFilter != null) {
 
-	    Element filter = document.createElement(SessionElement.FILTER.getText());
+	    startElement(SessionElement.FILTER.getText());
 
-	    filter.setAttribute(SessionAttribute.NAME.getText(), trackFilter.getName());
+	    xmlWriter.writeAttribute(SessionAttribute.NAME.getText(), trackFilter.getName());
 
 	    if (IGV.getInstance().isFilterMatchAll()) {
-		filter.setAttribute(SessionAttribute.FILTER_MATCH.getText(), "all");
+		xmlWriter.writeAttribute(SessionAttribute.FILTER_MATCH.getText(), "all");
 	    } else if (!IGV.getInstance().isFilterMatchAll()) {
-		filter.setAttribute(SessionAttribute.FILTER_MATCH.getText(), "any");
+		xmlWriter.writeAttribute(SessionAttribute.FILTER_MATCH.getText(), "any");
 	    } else { // Defaults to match all
-		filter.setAttribute(SessionAttribute.FILTER_MATCH.getText(), "all");
+		xmlWriter.writeAttribute(SessionAttribute.FILTER_MATCH.getText(), "all");
 	    }
 
 	    if (IGV.getInstance().isFilterShowAllTracks()) {
-		filter.setAttribute(SessionAttribute.FILTER_SHOW_ALL_TRACKS.getText(), "true");
+		xmlWriter.writeAttribute(SessionAttribute.FILTER_SHOW_ALL_TRACKS.getText(), "true");
 	    } else { // Defaults
-		filter.setAttribute(SessionAttribute.FILTER_SHOW_ALL_TRACKS.getText(), "false");
+		xmlWriter.writeAttribute(SessionAttribute.FILTER_SHOW_ALL_TRACKS.getText(), "false");
 	    }
-	    globalElement.appendChild(filter);
 
 	    // Process FilterElement elements
+	    boolean hasElements = false;
 	    Iterator iterator = session.getFilter().getFilterElements();
 	    while (iterator.hasNext()) {
 
 		TrackFilterElement trackFilterElement = (TrackFilterElement) iterator.next();
 
-		Element filterElementElement = document.createElement(SessionElement.FILTER_ELEMENT.getText());
-		filterElementElement.setAttribute(SessionAttribute.ITEM.getText(),
-			trackFilterElement.getSelectedItem());
-		filterElementElement.setAttribute(SessionAttribute.OPERATOR.getText(),
+		emptyElement(SessionElement.FILTER_ELEMENT.getText());
+		xmlWriter.writeAttribute(SessionAttribute.ITEM.getText(), trackFilterElement.getSelectedItem());
+		xmlWriter.writeAttribute(SessionAttribute.OPERATOR.getText(),
 			trackFilterElement.getComparisonOperator().getValue());
-		filterElementElement.setAttribute(SessionAttribute.VALUE.getText(), trackFilterElement.getValue());
-		filterElementElement.setAttribute(SessionAttribute.BOOLEAN_OPERATOR.getText(),
+		xmlWriter.writeAttribute(SessionAttribute.VALUE.getText(), trackFilterElement.getValue());
+		xmlWriter.writeAttribute(SessionAttribute.BOOLEAN_OPERATOR.getText(),
 			trackFilterElement.getBooleanOperator().getValue());
-		filter.appendChild(filterElementElement);
+		hasElements = true;
 	    }
+	    endElement(hasElements);
 	}
     }
 
-    private void writeRegionsOfInterest(Element globalElement, Document document) {
+    /**
+     * Regions owned by a file are written as a reference to that file, all others are streamed one element per
+     * region.
+     */
+    private void writeRegionsOfInterest() throws XMLStreamException {
+	String regionsFile = session.getRegionsOfInterestFile();
+	if (regionsFile != null) {
+	    emptyElement(SessionElement.REGIONS.getText());
+	    xmlWriter.writeAttribute(SessionAttribute.PATH.getText(), regionsFile);
+	    return;
+	}
+
 	Collection<RegionOfInterest> regions = session.getAllRegionsOfInterest();
 	if ((regions != null) && !regions.isEmpty()) {
 
-	    Element regionsElement = document.createElement(SessionElement.REGIONS.getText());
+	    startElement(SessionElement.REGIONS.getText());
 	    for (RegionOfInterest region : regions) {
-		Element regionElement = document.createElement(SessionElement.REGION.getText());
-		regionElement.setAttribute(SessionAttribute.CHROMOSOME.getText(), region.getChr());
-		regionElement.setAttribute(SessionAttribute.START_INDEX.getText(), String.valueOf(region.getStart()));
-		regionElement.setAttribute(SessionAttribute.END_INDEX.getText(), String.valueOf(region.getEnd()));
+		emptyElement(SessionElement.REGION.getText());
+		xmlWriter.writeAttribute(SessionAttribute.CHROMOSOME.getText(), region.getChr());
+		xmlWriter.writeAttribute(SessionAttribute.START_INDEX.getText(), String.valueOf(region.getStart()));
+		xmlWriter.writeAttribute(SessionAttribute.END_INDEX.getText(), String.valueOf(region.getEnd()));
 		if (region.getDescription() != null) {
-		    regionElement.setAttribute(SessionAttribute.DESCRIPTION.getText(), region.getDescription());
+		    xmlWriter.writeAttribute(SessionAttribute.DESCRIPTION.getText(), region.getDescription());
 		}
-		regionsElement.appendChild(regionElement);
 	    }
-	    globalElement.appendChild(regionsElement);
+	    endElement(true);
 	}
     }
 
-    private void writeHiddenAttributes(Session session, Element globalElement, Document document) {
-	Element hiddenAttributes = document.createElement(SessionElement.HIDDEN_ATTRIBUTES.getText());
+    private void writeHiddenAttributes(Session session) throws XMLStreamException {
+	startElement(SessionElement.HIDDEN_ATTRIBUTES.getText());
 	for (String attribute : session.getHiddenAttributes()) {
-	    Element regionElement = document.createElement(SessionElement.ATTRIBUTE.getText());
-	    regionElement.setAttribute(IGVSessionReader.SessionAttribute.NAME.getText(), attribute);
-	    hiddenAttributes.appendChild(regionElement);
+	    emptyElement(SessionElement.ATTRIBUTE.getText());
+	    xmlWriter.writeAttribute(IGVSessionReader.SessionAttribute.NAME.getText(), attribute);
 	}
-	globalElement.appendChild(hiddenAttributes);
+	endElement(true);
 
     }
 
-    private void writeGeneList(Element globalElement, Document document) {
+    private void writeGeneList() throws XMLStreamException {
 
 	GeneList geneList = session.getCurrentGeneList();
 
 	if (geneList != null) {
 
-	    Element geneListElement = document.createElement(SessionElement.GENE_LIST.getText());
-	    geneListElement.setAttribute(IGVSessionReader.SessionAttribute.NAME.getText(), geneList.getName());
+	    startElement(SessionElement.GENE_LIST.getText());
+	    xmlWriter.writeAttribute(IGVSessionReader.SessionAttribute.NAME.getText(), geneList.getName());
 
 	    StringBuffer genes = new StringBuffer();
 	    for (String gene : geneList.getLoci()) {
@@ -290,40 +355,37 @@ public class SessionWriter {
 		genes.append("\n");
 	    }
 
-	    geneListElement.setTextContent(genes.toString());
-
-	    globalElement.appendChild(geneListElement);
+	    xmlWriter.writeCharacters(genes.toString());
 
 	    // Now store the list of frames visible
 	    for (ReferenceFrame frame : FrameManager.getFrames()) {
 
-		Element frameElement = document.createElement(SessionElement.FRAME.getText());
-		frameElement.setAttribute(IGVSessionReader.SessionAttribute.NAME.getText(), frame.getName());
-		frameElement.setAttribute(IGVSessionReader.SessionAttribute.CHR.getText(), frame.getChrName());
-		frameElement.setAttribute(IGVSessionReader.SessionAttribute.START.getText(),
+		emptyElement(SessionElement.FRAME.getText());
+		xmlWriter.writeAttribute(IGVSessionReader.SessionAttribute.NAME.getText(), frame.getName());
+		xmlWriter.writeAttribute(IGVSessionReader.SessionAttribute.CHR.getText(), frame.getChrName());
+		xmlWriter.writeAttribute(IGVSessionReader.SessionAttribute.START.getText(),
 			String.valueOf(frame.getOrigin()));
-		frameElement.setAttribute(IGVSessionReader.SessionAttribute.END.getText(),
+		xmlWriter.writeAttribute(IGVSessionReader.SessionAttribute.END.getText(),
 			String.valueOf(frame.getEnd()));
 
-		geneListElement.appendChild(frameElement);
-
 	    }
+	    endElement(true);
 	}
     }
 
-    private void writeResources(File outputFile, Element globalElement, Document document) throws IOException {
+    private void writeResources(File outputFile) throws IOException, XMLStreamException {
 
 	Collection<ResourceLocator> resourceLocators = getResourceLocatorSet();
 
 	if ((resourceLocators != null) && !resourceLocators.isEmpty()) {
 
-	    Element filesElement = document.createElement(SessionElement.RESOURCES.getText());
+	    startElement(SessionElement.RESOURCES.getText());
 
 	    for (ResourceLocator resourceLocator : resourceLocators) {
 		if (resourceLocator.exists() || !(resourceLocator.getPath() == null)) {
 
 		    // RESOURCE ELEMENT
-		    Element dataFileElement = document.createElement(SessionElement.RESOURCE.getText());
+		    emptyElement(SessionElement.RESOURCE.getText());
 
 		    // REQUIRED ATTRIBUTES - Cannot be null
 
@@ -336,54 +398,49 @@ public class SessionWriter {
 			    ? FileUtils.getRelativePath(outputFile.getAbsolutePath(), resourceLocator.getPath())
 			    : resourceLocator.getPath();
 
-		    dataFileElement.setAttribute(SessionAttribute.PATH.getText(), relativePath);
+		    xmlWriter.writeAttribute(SessionAttribute.PATH.getText(), relativePath);
 
 		    // OPTIONAL ATTRIBUTES
 
 		    if (resourceLocator.getName() != null) {
-			dataFileElement.setAttribute(SessionAttribute.NAME.getText(), resourceLocator.getName());
+			xmlWriter.writeAttribute(SessionAttribute.NAME.getText(), resourceLocator.getName());
 		    }
 		    if (resourceLocator.getDBUrl() != null) {
-			dataFileElement.setAttribute(SessionAttribute.SERVER_URL.getText(), resourceLocator.getDBUrl());
+			xmlWriter.writeAttribute(SessionAttribute.SERVER_URL.getText(), resourceLocator.getDBUrl());
 		    }
 		    if (resourceLocator.getTrackInfoURL() != null) {
-			dataFileElement.setAttribute(SessionAttribute.HYPERLINK.getText(),
-				resourceLocator.getTrackInfoURL());
+			xmlWriter.writeAttribute(SessionAttribute.HYPERLINK.getText(), resourceLocator.getTrackInfoURL());
 		    }
 		    if (resourceLocator.getFeatureInfoURL() != null) {
-			dataFileElement.setAttribute(SessionAttribute.FEATURE_URL.getText(),
+			xmlWriter.writeAttribute(SessionAttribute.FEATURE_URL.getText(),
 				resourceLocator.getFeatureInfoURL());
 		    }
 		    if (resourceLocator.getDescription() != null) {
-			dataFileElement.setAttribute(SessionAttribute.DESCRIPTION.getText(),
+			xmlWriter.writeAttribute(SessionAttribute.DESCRIPTION.getText(),
 				resourceLocator.getDescription());
 		    }
 		    if (resourceLocator.getType() != null) {
-			dataFileElement.setAttribute(SessionAttribute.TYPE.getText(), resourceLocator.getType());
+			xmlWriter.writeAttribute(SessionAttribute.TYPE.getText(), resourceLocator.getType());
 		    }
 		    if (resourceLocator.getIndexPath() != null) {
-			dataFileElement.setAttribute(SessionAttribute.INDEX.getText(), resourceLocator.getIndexPath());
+			xmlWriter.writeAttribute(SessionAttribute.INDEX.getText(), resourceLocator.getIndexPath());
 		    }
 		    if (resourceLocator.getCoverage() != null) {
-			dataFileElement.setAttribute(SessionAttribute.COVERAGE.getText(),
-				resourceLocator.getCoverage());
+			xmlWriter.writeAttribute(SessionAttribute.COVERAGE.getText(), resourceLocator.getCoverage());
 		    }
 		    if (resourceLocator.getMappingPath() != null) {
-			dataFileElement.setAttribute(SessionAttribute.MAPPING.getText(),
-				resourceLocator.getMappingPath());
+			xmlWriter.writeAttribute(SessionAttribute.MAPPING.getText(), resourceLocator.getMappingPath());
 		    }
 		    if (resourceLocator.getTrackLine() != null) {
-			dataFileElement.setAttribute(SessionAttribute.TRACK_LINE.getText(),
-				resourceLocator.getTrackLine());
+			xmlWriter.writeAttribute(SessionAttribute.TRACK_LINE.getText(), resourceLocator.getTrackLine());
 		    }
-		    filesElement.appendChild(dataFileElement);
 		}
 	    }
-	    globalElement.appendChild(filesElement);
+	    endElement(true);
 	}
     }
 
-    private void writePanels(Element globalElement, Document document) throws DOMException {
+    private void writePanels(Document document) throws XMLStreamException {
 
 	for (TrackPanel trackPanel : IGV.getInstance().getTrackPanels()) {
 
@@ -392,20 +449,20 @@ public class SessionWriter {
 	    List<Track> tracks = trackPanel.getTracks();
 	    if ((tracks != null) && !tracks.isEmpty()) {
 
-		Element panelElement = document.createElement(SessionElement.PANEL.getText());
-		panelElement.setAttribute("name", trackPanel.getName());
-		panelElement.setAttribute("height", String.valueOf(trackPanel.getHeight()));
-		panelElement.setAttribute("width", String.valueOf(trackPanel.getWidth()));
-
-		// We create a temporary element into which to marshall, so we
-		// can add custom attributes
-		Element tmpTrackParent = document.createElement("dummy");
+		startElement(SessionElement.PANEL.getText());
+		xmlWriter.writeAttribute("name", trackPanel.getName());
+		xmlWriter.writeAttribute("height", String.valueOf(trackPanel.getHeight()));
+		xmlWriter.writeAttribute("width", String.valueOf(trackPanel.getWidth()));
 
 		try {
 		    Marshaller m = IGVSessionReader.getJAXBContext().createMarshaller();
 		    m.setProperty(Marshaller.JAXB_FRAGMENT, true);
 		    for (Track track : tracks) {
 
+			// We create a temporary element into which to marshall, so we
+			// can add custom attributes
+			Element tmpTrackParent = document.createElement("dummy");
+
 			marshalTrack(m, track, tmpTrackParent, track.getClass());
 
 			Element trackElement = (Element) tmpTrackParent.getChildNodes().item(0);
@@ -416,12 +473,68 @@ public class SessionWriter {
 
 			marshalTrackChildren(m, track, trackElement);
 
-			panelElement.appendChild(trackElement);
+			writeElement(trackElement);
 		    }
 		} catch (JAXBException e) {
 		    throw new RuntimeException(e);
 		}
-		globalElement.appendChild(panelElement);
+		endElement(true);
+	    }
+	}
+    }
+
+    /**
+     * Stream a DOM element and its descendants.
+     *
+     * @param element
+     * @throws XMLStreamException
+     */
+    private void writeElement(Element element) throws XMLStreamException {
+
+	NodeList children = element.getChildNodes();
+	boolean hasChildElements = false;
+	for (int i = 0; i < children.getLength(); i++) {
+	    if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
+		hasChildElements = true;
+		break;
+	    }
+	}
+	String text = hasChildElements ? null : element.getTextContent();
+
+	if (!hasChildElements && (text == null || text.isEmpty())) {
+	    emptyElement(element.getNodeName());
+	    writeAttributes(element);
+	    return;
+	}
+
+	startElement(element.getNodeName());
+	writeAttributes(element);
+	if (hasChildElements) {
+	    for (int i = 0; i < children.getLength(); i++) {
+		Node child = children.item(i);
+		if (child.getNodeType() == Node.ELEMENT_NODE) {
+		    writeElement((Element) child);
+		}
+	    }
+	} else {
+	    xmlWriter.writeCharacters(text);
+	}
+	endElement(hasChildElements);
+    }
+
+    private void writeAttributes(Element element) throws XMLStreamException {
+	NamedNodeMap attributes = element.getAttributes();
+	for (int i = 0; i < attributes.getLength(); i++) {
+	    Attr attr = (Attr) attributes.item(i);
+	    String name = attr.getName();
+	    if (name.equals("xmlns")) {
+		xmlWriter.writeDefaultNamespace(attr.getValue());
+	    } else if (name.startsWith("xmlns:")) {
+		xmlWriter.writeNamespace(name.substring(6), attr.getValue());
+	    } else if (attr.getPrefix() != null && attr.getNamespaceURI() != null) {
+		xmlWriter.writeAttribute(attr.getPrefix(), attr.getNamespaceURI(), attr.getLocalName(), attr.getValue());
+	    } else {
+		xmlWriter.writeAttribute(name, attr.getValue());
 	    }
 	}
     }
@@ -475,20 +588,19 @@ public class SessionWriter {
 	}
     }
 
-    private void writePanelLayout(Element globalElement, Document document) {
+    private void writePanelLayout() throws XMLStreamException {
 
 	double[] dividerFractions = IGV.getInstance().getMainPanel().getDividerFractions();
 	if (dividerFractions.length > 0) {
 
-	    Element panelLayout = document.createElement(SessionElement.PANEL_LAYOUT.getText());
-	    globalElement.appendChild(panelLayout);
+	    emptyElement(SessionElement.PANEL_LAYOUT.getText());
 
 	    StringBuffer locString = new StringBuffer();
 	    locString.append(String.valueOf(dividerFractions[0]));
 	    for (int i = 1; i < dividerFractions.length; i++) {
 		locString.append("," + dividerFractions[i]);
 	    }
-	    panelLayout.setAttribute("dividerFractions", locString.toString());
+	    xmlWriter.writeAttribute("dividerFractions", locString.toString());
 
 	}
 
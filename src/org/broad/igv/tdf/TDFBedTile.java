@@ -128,24 +128,15 @@ public class TDFBedTile implements TDFTile {
     private void fill(ByteBuffer byteBuffer, int nSamples, TDFTile.Type type) throws IOException {
 
         int nPositions = byteBuffer.getInt();
-        start = new int[nPositions];
-        for (int i = 0; i < nPositions; i++) {
-            start[i] = byteBuffer.getInt();
-        }
-        end = new int[nPositions];
-        for (int i = 0; i < nPositions; i++) {
-            end[i] = byteBuffer.getInt();
-        }
+        start = TileFactory.readInts(byteBuffer, nPositions);
+        end = TileFactory.readInts(byteBuffer, nPositions);
 
         int nS = byteBuffer.getInt();
         //assert (nS == nSamples);
 
-        data = new float[nS][nPositions];
+        data = new float[nS][];
         for (int row = 0; row < nS; row++) {
-            data[row] = new float[nPositions];
-            for (int i = 0; i < nPositions; i++) {
-                data[row][i] = byteBuffer.getFloat();
-            }
+            data[row] = TileFactory.readFloats(byteBuffer, nPositions);
         }
 
         // Optionally read feature names
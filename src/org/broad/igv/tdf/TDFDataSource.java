@@ -35,6 +35,8 @@ import org.broad.igv.data.BasicScore;
 import org.broad.igv.data.CompositeScore;
 import org.broad.igv.data.CoverageDataSource;
 import org.broad.igv.data.NamedScore;
+import org.broad.igv.data.SummaryTile;
+import org.broad.igv.data.SummaryTileCache;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
@@ -56,7 +58,7 @@ public class TDFDataSource implements CoverageDataSource {
     int maxPrecomputedZoom = 6;
     private int trackNumber = 0;
     String trackName;
-    Map<String, List<LocusScore>> summaryScoreCache = Collections.synchronizedMap(new HashMap<>());
+    private final String cacheKey = SummaryTileCache.newSourceKey();
     Genome genome;
     WindowFunction windowFunction = WindowFunction.mean;
     List<WindowFunction> availableFunctions;
@@ -163,20 +165,20 @@ public class TDFDataSource implements CoverageDataSource {
 
     private List<LocusScore> getCachedSummaryScores(String querySeq, int zoom, int tileNumber, double tileWidth) {
 
-	String key = querySeq + "_" + zoom + "_" + tileNumber + "_" + windowFunction;
+	String key = cacheKey + querySeq + "_" + zoom + "_" + tileNumber + "_" + windowFunction + "_" + normalizationFactor;
 
-	List<LocusScore> scores = summaryScoreCache.get(key);
-	if (scores == null) {
+	SummaryTile tile = SummaryTileCache.get(key);
+	if (tile == null) {
 
 	    int startLocation = (int) (tileNumber * tileWidth);
 	    int endLocation = (int) ((tileNumber + 1) * tileWidth);
 
-	    scores = getSummaryScores(querySeq, startLocation, endLocation, zoom);
+	    tile = new SummaryTile(getSummaryScores(querySeq, startLocation, endLocation, zoom));
 
-	    summaryScoreCache.put(key, scores);
+	    SummaryTileCache.put(key, tile);
 	}
 
-	return scores;
+	return tile.getScores();
 
     }
 
@@ -481,7 +483,7 @@ public class TDFDataSource implements CoverageDataSource {
 
     @Override
     public void dispose() {
-
+	SummaryTileCache.evictSource(cacheKey);
     }
 
     /**
@@ -104,12 +104,9 @@ public class TDFFixedTile implements TDFTile {
         start = byteBuffer.getInt();
         span = byteBuffer.getFloat();
 
-        data = new float[nSamples][nPositions];
+        data = new float[nSamples][];
         for (int sample = 0; sample < nSamples; sample++) {
-            data[sample] = new float[nPositions];
-            for (int i = 0; i < nPositions; i++) {
-                data[sample][i] = byteBuffer.getFloat();
-            }
+            data[sample] = TileFactory.readFloats(byteBuffer, nPositions);
         }
 
     }
@@ -40,12 +40,17 @@ import org.broad.igv.util.CompressionUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.StringUtils;
 import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.MemoryBoundedCache;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+import org.broad.igv.util.stream.SeekableFileChannelStream;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -56,6 +61,18 @@ public class TDFReader {
     static final Logger log = Logger.getLogger(TDFReader.class);
     public static final int GZIP_FLAG = 0x1;
 
+    /**
+     * Local files are mapped in segments of this size,  a single MappedByteBuffer being limited to 2GB.
+     */
+    static final long MAP_SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Decoded tiles,  shared by all readers so the memory devoted to TDF data is bounded as a whole rather
+     * than per dataset.  Keys are prefixed with a file signature (see cacheKeyPrefix).
+     */
+    private static final MemoryBoundedCache<String, TDFTile> tileCache =
+            new MemoryBoundedCache<String, TDFTile>(Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 16));
+
     private SeekableStream seekableStream = null;
     private int version;
     private Map<String, IndexEntry> datasetIndex;
@@ -75,7 +92,18 @@ public class TDFReader {
     boolean compressed = false;
 
     Set<String> chrNames;
-    private final CompressionUtils compressionUtils;
+
+    /**
+     * Non-null for local files.  Reads through the channel are positional,  so tiles can be read concurrently.
+     */
+    private SeekableFileChannelStream channelStream = null;
+
+    /**
+     * Read-only mappings of a local file,  or null if the file is remote or could not be mapped.
+     */
+    private MappedByteBuffer[] mappedSegments = null;
+
+    private String cacheKeyPrefix;
 
     //private String path;
 
@@ -92,7 +120,15 @@ public class TDFReader {
         this.locator = locator;
         try {
             log.debug("Getting stream");
-            seekableStream = IGVSeekableStreamFactory.getInstance().getStreamFor(locator.getPath());
+            if (IGVSeekableStreamFactory.isLocalFile(locator.getPath())) {
+                File file = new File(locator.getPath());
+                channelStream = new SeekableFileChannelStream(file);
+                seekableStream = channelStream;
+                mapFile();
+            } else {
+                seekableStream = IGVSeekableStreamFactory.getInstance().getStreamFor(locator.getPath());
+            }
+            cacheKeyPrefix = createCacheKeyPrefix();
             log.debug("Reading header");
             readHeader();
             log.debug("Done reading header");
@@ -101,10 +137,10 @@ public class TDFReader {
             log.error("Error loading file: " + locator.getPath(), ex);
             throw new DataLoadException("Error loading file: " + ex.toString(), locator.getPath());
         }
-        compressionUtils = new CompressionUtils();
     }
 
     public void close() {
+        mappedSegments = null;
         try {
             seekableStream.close();
         } catch (IOException e) {
@@ -116,6 +152,36 @@ public class TDFReader {
         return locator.getPath();
     }
 
+    private void mapFile() {
+        try {
+            FileChannel channel = channelStream.getChannel();
+            long size = channel.size();
+            int nSegments = (int) ((size + MAP_SEGMENT_SIZE - 1) / MAP_SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                long start = i * MAP_SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_SEGMENT_SIZE, size - start));
+            }
+            mappedSegments = segments;
+        } catch (IOException e) {
+            // Typically address space exhaustion on a 32-bit VM.  Positional reads still work.
+            log.info("Could not memory map " + getPath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The tile cache is shared between readers,  so keys must distinguish files at the same path that have been
+     * rewritten (e.g. by igvtools) since a previous reader was opened.
+     */
+    private String createCacheKeyPrefix() {
+        String path = locator.getPath();
+        if (channelStream != null) {
+            File file = new File(path);
+            return path + "@" + file.lastModified() + ":" + file.length() + "/";
+        }
+        return path + "/";
+    }
+
     private void readHeader() throws IOException {
 
         // Buffer for the magic number, version, index position, and index
@@ -315,6 +381,33 @@ public class TDFReader {
         }
     }
 
+    /**
+     * Return the tile,  decoding it on a cache miss.
+     */
+    TDFTile getTile(TDFDataset ds, int tileNumber) {
+        String key = cacheKeyPrefix + ds.getName() + "/" + tileNumber;
+        TDFTile tile = tileCache.get(key);
+        if (tile == null) {
+            tile = readTile(ds, tileNumber);
+            if (tile != null) {
+                tileCache.put(key, tile, estimateSize(tile));
+            }
+        }
+        return tile;
+    }
+
+    void evictTiles(TDFDataset ds) {
+        String prefix = cacheKeyPrefix + ds.getName() + "/";
+        for (int t = 0; t < ds.nTiles; t++) {
+            tileCache.remove(prefix + t);
+        }
+    }
+
+    private long estimateSize(TDFTile tile) {
+        // Start and end arrays plus one float per track per position
+        return 64 + (long) tile.getSize() * (8 + 4 * trackNames.length);
+    }
+
     // TODO -- move to dataset class
 
     public TDFTile readTile(TDFDataset ds, int tileNumber) {
@@ -334,16 +427,13 @@ public class TDFReader {
             }
 
             int nBytes = ds.tileSizes[tileNumber];
-            //fis.seek(position);
-            //byte[] buffer = new byte[nBytes];
-            //readFully(buffer);
-            byte[] buffer = readBytes(position, nBytes);
             if (compressed) {
-                buffer = compressionUtils.decompress(buffer);
-
+                byte[] buffer = readBytes(position, nBytes);
+                buffer = CompressionUtils.inflate(buffer, 0, buffer.length, buffer.length * 4);
+                return TileFactory.createTile(buffer, trackNames.length);
+            } else {
+                return TileFactory.createTile(getBuffer(position, nBytes), trackNames.length);
             }
-
-            return TileFactory.createTile(buffer, trackNames.length);
         } catch (IOException ex) {
             String tileName = ds.getName() + "[" + tileNumber + "]";
             log.error("Error reading data tile: " + tileName, ex);
@@ -434,11 +524,54 @@ public class TDFReader {
     }
 
 
-    public synchronized byte[] readBytes(long position, int nBytes) throws IOException {
-        seekableStream.seek(position);
-        byte[] buffer = new byte[nBytes];
-        int read = seekableStream.read(buffer, 0, nBytes);
-        return buffer;
+    public byte[] readBytes(long position, int nBytes) throws IOException {
+        ByteBuffer mapped = getMappedBuffer(position, nBytes);
+        if (mapped != null) {
+            byte[] buffer = new byte[nBytes];
+            mapped.get(buffer);
+            return buffer;
+        }
+        if (channelStream != null) {
+            return channelStream.readBytes(position, nBytes);
+        }
+        synchronized (this) {
+            seekableStream.seek(position);
+            byte[] buffer = new byte[nBytes];
+            seekableStream.read(buffer, 0, nBytes);
+            return buffer;
+        }
+    }
+
+    /**
+     * Return a little-endian buffer over the given file range.  For mapped files this is a view of the mapping,
+     * not a copy.
+     */
+    ByteBuffer getBuffer(long position, int nBytes) throws IOException {
+        ByteBuffer buffer = getMappedBuffer(position, nBytes);
+        if (buffer == null) {
+            buffer = ByteBuffer.wrap(readBytes(position, nBytes));
+        }
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Return a view of the mapping for the given range,  or null if the file is not mapped or the range
+     * straddles a segment boundary or the end of file.
+     */
+    private ByteBuffer getMappedBuffer(long position, int nBytes) {
+        MappedByteBuffer[] segments = mappedSegments;
+        if (segments == null) {
+            return null;
+        }
+        int segment = (int) (position / MAP_SEGMENT_SIZE);
+        int offset = (int) (position % MAP_SEGMENT_SIZE);
+        if (segment >= segments.length || offset + nBytes > segments[segment].capacity()) {
+            return null;
+        }
+        ByteBuffer view = segments[segment].duplicate();
+        view.position(offset);
+        view.limit(offset + nBytes);
+        return view.slice();
     }
 
     /**
@@ -517,9 +650,10 @@ public class TDFReader {
                 TDFDataset chrDataset = getDataset(chrName, 0, wf);       
                 if(chrDataset == null) continue;
 
-                List<TDFTile> chrTiles = chrDataset.getTiles();
-                chrDataset.clearCache(); // Don't cache these
-                for (TDFTile t : chrTiles) {
+                // Read directly,  rather than through the tile cache,  as these won't be needed again
+                for (int tileNumber = 0; tileNumber < chrDataset.nTiles; tileNumber++) {
+                    TDFTile t = readTile(chrDataset, tileNumber);
+                    if (t == null) continue;
                     int[] chrStart = t.getStart();
                     int[] chrEnd = t.getEnd();
 
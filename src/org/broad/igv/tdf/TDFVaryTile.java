@@ -109,20 +109,14 @@ public class TDFVaryTile implements TDFTile {
         span = byteBuffer.getFloat();
 
         int nPositions = byteBuffer.getInt();
-        start = new int[nPositions];
-        for (int i = 0; i < nPositions; i++) {
-            start[i] = byteBuffer.getInt();
-        }
+        start = TileFactory.readInts(byteBuffer, nPositions);
 
         int nS = byteBuffer.getInt();
         assert (nS == nSamples);
 
-        data = new float[nS][nPositions];
+        data = new float[nS][];
         for (int row = 0; row < nS; row++) {
-            data[row] = new float[nPositions];
-            for (int i = 0; i < nPositions; i++) {
-                data[row][i] = byteBuffer.getFloat();
-            }
+            data[row] = TileFactory.readFloats(byteBuffer, nPositions);
         }
 
     }
@@ -36,10 +36,12 @@ import org.broad.igv.track.WindowFunction;
 import org.broad.igv.util.CompressionUtils;
 
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * Assumptions
@@ -66,7 +68,29 @@ public class TDFWriter {
     Map<String, IndexEntry> groupIndex = new LinkedHashMap();
     long indexPositionPosition;
     boolean compressed;
-    private final CompressionUtils compressionUtils;
+
+    /**
+     * Deflaters are not thread safe,  so each thread encoding tiles has its own
+     */
+    private static final ThreadLocal<CompressionUtils> compressionUtils = new ThreadLocal<CompressionUtils>() {
+        @Override
+        protected CompressionUtils initialValue() {
+            return new CompressionUtils();
+        }
+    };
+
+    /**
+     * Optional pool for encoding (serializing and compressing) tiles.  If null tiles are encoded on the calling
+     * thread.
+     */
+    private ForkJoinPool encoderPool;
+
+    /**
+     * Tiles submitted for encoding,  in submission order.  They are written to the file in this order by whichever
+     * thread next calls writeTile or closeFile.
+     */
+    private ArrayDeque<PendingTile> pendingTiles = new ArrayDeque<PendingTile>();
+    private int maxPendingTiles;
 
     public TDFWriter(File f,
                      String genomeId,
@@ -101,8 +125,22 @@ public class TDFWriter {
             log.error("Error opening output stream to file: " + file, ex);
             throw new DataLoadException("Error creating file", "" + file);
         }
+    }
 
-        compressionUtils = new CompressionUtils();
+    /**
+     * Encode tiles on a pool of {@code threads} threads.  Tiles are still written to the file one at a time,  in
+     * the order they are passed to {@link #writeTile(String, int, TDFTile)}.  The default,  1,  encodes tiles on the
+     * calling thread.
+     */
+    public synchronized void setThreads(int threads) {
+        if (encoderPool != null) {
+            encoderPool.shutdown();
+            encoderPool = null;
+        }
+        if (threads > 1) {
+            encoderPool = new ForkJoinPool(threads);
+            maxPendingTiles = 4 * threads;
+        }
     }
 
     private void writeHeader(String genomeId,
@@ -167,9 +205,15 @@ public class TDFWriter {
     /**
      * Write out the group and dataset index and close the underlying file.
      */
-    public void closeFile() {
+    public synchronized void closeFile() {
 
         try {
+            writePendingTiles(true);
+            if (encoderPool != null) {
+                encoderPool.shutdown();
+                encoderPool = null;
+            }
+
             writeDatasets();
             writeGroups();
 
@@ -202,18 +246,18 @@ public class TDFWriter {
         }
     }
 
-    public TDFGroup getGroup(String name) {
+    public synchronized TDFGroup getGroup(String name) {
         return groupCache.get(name);
     }
 
-    public TDFGroup getRootGroup() {
+    public synchronized TDFGroup getRootGroup() {
         if (!groupCache.containsKey("/")) {
             groupCache.put("/", new TDFGroup("/"));
         }
         return groupCache.get("/");
     }
 
-    public TDFGroup createGroup(String name) {
+    public synchronized TDFGroup createGroup(String name) {
         if (groupCache.containsKey(name)) {
             throw new RuntimeException("Group: " + name + " already exists");
         }
@@ -222,7 +266,7 @@ public class TDFWriter {
         return group;
     }
 
-    public TDFDataset createDataset(String name, TDFDataset.DataType dataType,
+    public synchronized TDFDataset createDataset(String name, TDFDataset.DataType dataType,
                                     int tileWidth, int nTiles) {
 
         if (datasetCache.containsKey(name)) {
@@ -237,33 +281,33 @@ public class TDFWriter {
     // Note this will only work for "fixed step" format.  Others need location arrays
     // Tile layout
 
-    public void writeTile(String dsId, int tileNumber, TDFTile tile) throws IOException {
+    /**
+     * Write a tile.  Thread safe.  If an encoder pool is set (see {@link #setThreads(int)}) the tile is encoded
+     * asynchronously and written after all previously submitted tiles.
+     */
+    public synchronized void writeTile(String dsId, int tileNumber, final TDFTile tile) throws IOException {
 
         TDFDataset dataset = datasetCache.get(dsId);
         if (dataset == null) {
             throw new java.lang.NoSuchFieldError("Dataset: " + dsId + " doese not exist.  " +
                     "Call createDataset first");
         }
-        long pos = bytesWritten;
 
         if (tileNumber < dataset.tilePositions.length) {
-            dataset.tilePositions[tileNumber] = pos;
-
-            // Write the tile contents to a byte buffer first,  so we can optionally gzip it
-
 
-            BufferedByteWriter buffer = new BufferedByteWriter();
-            tile.writeTo(buffer);
-
-            byte[] bytes = buffer.getBytes();
-            if (compressed) {
-                bytes = compressionUtils.compress(bytes);
+            if (encoderPool == null) {
+                writeTileBytes(dataset, tileNumber, encodeTile(tile));
+            } else {
+                Future<byte[]> bytes = encoderPool.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return encodeTile(tile);
+                    }
+                });
+                pendingTiles.add(new PendingTile(dataset, tileNumber, bytes));
+                writePendingTiles(false);
             }
 
-            write(bytes);
-            int nBytes = bytes.length;
-
-            dataset.tileSizes[tileNumber] = nBytes;
         } else {
             // The occasional tile number == tile array size is expected, but tile
             // numbers larger than that are not
@@ -275,6 +319,54 @@ public class TDFWriter {
 
     }
 
+    /**
+     * Write the tile contents to a byte buffer first,  so we can optionally gzip it
+     */
+    private byte[] encodeTile(TDFTile tile) throws IOException {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        tile.writeTo(buffer);
+
+        byte[] bytes = buffer.getBytes();
+        if (compressed) {
+            bytes = compressionUtils.get().compress(bytes);
+        }
+        return bytes;
+    }
+
+    private void writeTileBytes(TDFDataset dataset, int tileNumber, byte[] bytes) throws IOException {
+        dataset.tilePositions[tileNumber] = bytesWritten;
+        write(bytes);
+        dataset.tileSizes[tileNumber] = bytes.length;
+    }
+
+    /**
+     * Write encoded tiles from the head of the queue.
+     *
+     * @param all if true write all pending tiles,  waiting for them as needed.  Otherwise write those that are ready,
+     *            waiting only if the queue is full.
+     */
+    private void writePendingTiles(boolean all) throws IOException {
+        while (!pendingTiles.isEmpty()) {
+            PendingTile head = pendingTiles.peek();
+            if (!all && !head.bytes.isDone() && pendingTiles.size() <= maxPendingTiles) {
+                break;
+            }
+            pendingTiles.remove();
+            byte[] bytes;
+            try {
+                bytes = head.bytes.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted writing " + file);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException("Error encoding tile", cause);
+            }
+            writeTileBytes(head.dataset, head.tileNumber, bytes);
+        }
+    }
+
     private void writeGroups() throws IOException {
         for (TDFGroup group : groupCache.values()) {
             long position = bytesWritten;
@@ -355,6 +447,19 @@ public class TDFWriter {
         bytesWritten += bytes.length;
     }
 
+    static class PendingTile {
+
+        final TDFDataset dataset;
+        final int tileNumber;
+        final Future<byte[]> bytes;
+
+        PendingTile(TDFDataset dataset, int tileNumber, Future<byte[]> bytes) {
+            this.dataset = dataset;
+            this.tileNumber = tileNumber;
+            this.bytes = bytes;
+        }
+    }
+
     class IndexEntry {
 
         long position;
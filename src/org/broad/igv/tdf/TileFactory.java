@@ -32,7 +32,6 @@ package org.broad.igv.tdf;
 
 import org.broad.igv.util.StringUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -43,8 +42,15 @@ import java.nio.ByteOrder;
 public class TileFactory {
 
     public static TDFTile createTile(byte[] buffer, int nSamples) throws IOException {
+        return createTile(ByteBuffer.wrap(buffer), nSamples);
+    }
+
+    /**
+     * Decode a tile from the buffer's current position.  The buffer may be a view of a memory-mapped file,
+     * in which case values are decoded directly from the mapping without an intermediate copy.
+     */
+    public static TDFTile createTile(ByteBuffer byteBuffer, int nSamples) throws IOException {
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
         byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
 
         String typeString = StringUtils.readString(byteBuffer);
@@ -63,5 +69,23 @@ public class TileFactory {
         }
     }
 
+    /**
+     * Bulk read n little-endian floats,  advancing the buffer position.
+     */
+    static float[] readFloats(ByteBuffer byteBuffer, int n) {
+        float[] values = new float[n];
+        byteBuffer.asFloatBuffer().get(values);
+        byteBuffer.position(byteBuffer.position() + 4 * n);
+        return values;
+    }
 
+    /**
+     * Bulk read n little-endian ints,  advancing the buffer position.
+     */
+    static int[] readInts(ByteBuffer byteBuffer, int n) {
+        int[] values = new int[n];
+        byteBuffer.asIntBuffer().get(values);
+        byteBuffer.position(byteBuffer.position() + 4 * n);
+        return values;
+    }
 }
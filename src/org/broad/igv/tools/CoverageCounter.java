@@ -25,6 +25,7 @@
 
 package org.broad.igv.tools;
 
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.CloseableIterator;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.Chromosome;
@@ -38,10 +39,15 @@ import org.broad.igv.tools.parsers.DataConsumer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class to compute coverage on an alignment or feature file.  This class is designed to be instantiated and executed
- * from a single thread.
+ * from a single thread,  which may in turn count an indexed file with several threads (see {@link #setThreads(int)}).
  */
 public class CoverageCounter {
 
@@ -152,19 +158,41 @@ public class CoverageCounter {
      */
     private float[] buffer;
 
-    private final static Set<Byte> nucleotidesKeep = new HashSet<Byte>();
     public static final byte DEL = 126;
     public static final byte INS = 127;
     private final static byte[] nucleotides = new byte[]{'A', 'C', 'G', 'T', 'N', DEL, INS};
 
+    /**
+     * Slot in the per-window base counts for each byte value.  Anything other than the nucleotides above is
+     * counted in the last slot,  which is not output.
+     */
+    private final static byte[] baseSlots = new byte[256];
+    private final static int NUM_BASE_SLOTS = nucleotides.length + 1;
+
+    /**
+     * Number of windows per block of counts
+     */
+    static final int PAGE_WINDOWS = 4096;
+
+    /**
+     * Size in bp of the regions counted independently in parallel mode
+     */
+    static final int SHARD_SIZE = 4000000;
+
+    /**
+     * Number of threads to count with.  Parallel counting requires an indexed file.
+     */
+    private int threads = 1;
+
     /**
      * Whether to write wig data to standard out (stdout)
      */
     private boolean writeStdOut;
 
     static {
-        for (byte b : nucleotides) {
-            nucleotidesKeep.add(b);
+        Arrays.fill(baseSlots, (byte) nucleotides.length);
+        for (int i = 0; i < nucleotides.length; i++) {
+            baseSlots[nucleotides[i] & 0xff] = (byte) i;
         }
     }
 
@@ -213,6 +241,15 @@ public class CoverageCounter {
         this.postExtFactor = postExtFactor;
     }
 
+    /**
+     * @param threads number of threads to count with.  If greater than 1, and the alignment file is indexed, the
+     *                file is split by chromosome and position and counted in parallel.  Output is identical to
+     *                single threaded counting.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     /**
      * Take additional optional command line arguments and parse them
      *
@@ -272,210 +309,448 @@ public class CoverageCounter {
     /**
      * Parse and "count" the alignment file.  The main method.
      * <p/>
-     * This method is not thread safe due to the use of the member variable "buffer".
+     * This method is not thread safe due to the use of the member variable "buffer".  If more than one thread is
+     * requested, and the file is indexed, the file is counted in parallel; see {@link #setThreads(int)}.
      *
      * @throws IOException
      */
     public synchronized void parse() throws IOException {
+        parse(null);
+    }
+
+    /**
+     * Count the alignments supplied by {@code alignments} instead of reading the alignment file, which need not
+     * exist.  Alignments must be sorted by chromosome and start.  Used to count records as they are produced,
+     * see {@link PreparePipeline}.
+     *
+     * @param alignments the alignments to count, or null to read the alignment file
+     * @throws IOException
+     */
+    public synchronized void parse(Iterator<Alignment> alignments) throws IOException {
 
         int maxExtFactor = Math.max(extFactor, Math.max(preExtFactor, postExtFactor));
 
         int tolerance = (int) (windowSize * (Math.floor(maxExtFactor / windowSize) + 2));
         consumer.setSortTolerance(tolerance);
 
-        AlignmentReader reader = null;
-        CloseableIterator<Alignment> iter = null;
-
-        String lastChr = "";
-        ReadCounter counter = null;
-
         WigWriter wigWriter = null;
         if (wigFile != null || writeStdOut) {
             wigWriter = new WigWriter(wigFile, windowSize);
         }
 
+        try {
+
+            if (alignments != null) {
+                countAlignments(alignments, tolerance, wigWriter);
+            } else if (threads > 1 && isIndexed()) {
+                parseParallel(tolerance, wigWriter);
+            } else {
+                if (threads > 1) {
+                    log.info("Alignment file is not indexed, counting with a single thread");
+                }
+                parseSequential(tolerance, wigWriter);
+            }
+
+            consumer.setAttribute("totalCount", String.valueOf(totalCount));
+            consumer.parsingComplete();
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (wigWriter != null) {
+                wigWriter.close();
+            }
+        }
+    }
+
+    private boolean isIndexed() {
+        AlignmentReader<?> reader = null;
+        try {
+            reader = AlignmentReaderFactory.getReader(alignmentFile, true);
+            return reader.hasIndex();
+        } catch (Exception e) {
+            return false;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void parseSequential(int tolerance, WigWriter wigWriter) throws IOException {
+
+        // An index is only needed for a query
+        @SuppressWarnings("unchecked")
+        AlignmentReader<Alignment> reader =
+                (AlignmentReader<Alignment>) AlignmentReaderFactory.getReader(alignmentFile, queryInterval != null);
+        CloseableIterator<Alignment> iter = null;
+
         try {
 
             if (queryInterval == null) {
-                reader = AlignmentReaderFactory.getReader(alignmentFile, false);
                 iter = reader.iterator();
             } else {
-                reader = AlignmentReaderFactory.getReader(alignmentFile, true);
                 iter = reader.query(queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd(), false);
             }
 
-            while (iter != null && iter.hasNext()) {
-                Alignment alignment = iter.next();
-                if (passFilter(alignment)) {
-                    //Sort into the read strand or first-in-pair strand,
-                    //depending on input flag. Note that this can
-                    //be very unreliable depending on data
-                    Strand strand;
-                    if (firstInPair) {
-                        strand = alignment.getFirstOfPairStrand();
-                    } else if (secondInPair) {
-                        strand = alignment.getSecondOfPairStrand();
+            if (iter != null) {
+                countAlignments(iter, tolerance, wigWriter);
+            }
+
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
+            closeQuietly(reader);
+        }
+    }
+
+    private void countAlignments(Iterator<Alignment> iter, int tolerance, WigWriter wigWriter) {
+
+        String lastChr = "";
+        ReadCounter counter = null;
+
+        while (iter.hasNext()) {
+            Alignment alignment = iter.next();
+            if (passFilter(alignment)) {
+
+                Strand strand = getCountStrand(alignment);
+                if (strand.equals(Strand.NONE)) {
+                    //TODO move this into passFilter, or move passFilter here
+                    continue;
+                }
+
+                totalCount++;
+
+                String alignmentChr = alignment.getChr();
+
+                // Close all counters with position < alignment.getStart()
+                if (alignmentChr.equals(lastChr)) {
+                    if (counter != null) {
+                        counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance, wigWriter);
+                    }
+                } else {  // New chromosome
+                    if (counter != null) {
+                        counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+                    }
+                    counter = new ReadCounter(alignmentChr);
+                    lastChr = alignmentChr;
+                }
+
+                count(alignment, strand, counter);
+            }
+
+        }
+
+        if (counter != null) {
+            counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+        }
+    }
+
+    /**
+     * Count an indexed file in parallel.  The file is split into shards of {@link #SHARD_SIZE} bp, by chromosome
+     * and position.  Each shard is queried with its own reader and counts the alignments starting within it.
+     * Shard counts are merged, in file order, by the calling thread, which is the only thread to write to the
+     * consumer.  Alignments extend at most {@code tolerance} bp upstream of their start, so once a shard is merged
+     * all windows ending before its end minus {@code tolerance} are complete.
+     */
+    private void parseParallel(final int tolerance, WigWriter wigWriter) throws IOException {
+
+        List<CountShard> shards = new ArrayList<CountShard>();
+        AlignmentReader<?> reader = null;
+        try {
+            reader = AlignmentReaderFactory.getReader(alignmentFile, true);
+            if (queryInterval != null) {
+                addShards(shards, queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd());
+            } else {
+                for (SAMSequenceRecord record : reader.getFileHeader().getSequenceDictionary().getSequences()) {
+                    addShards(shards, record.getSequenceName(), 0, record.getSequenceLength());
+                }
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+
+        // Each worker thread opens its own reader, reused for all the shards it counts
+        final List<AlignmentReader<?>> readers = Collections.synchronizedList(new ArrayList<AlignmentReader<?>>());
+        ThreadLocal<AlignmentReader<Alignment>> threadReader = new ThreadLocal<AlignmentReader<Alignment>>() {
+            @Override
+            protected AlignmentReader<Alignment> initialValue() {
+                try {
+                    @SuppressWarnings("unchecked")
+                    AlignmentReader<Alignment> reader =
+                            (AlignmentReader<Alignment>) AlignmentReaderFactory.getReader(alignmentFile, true);
+                    readers.add(reader);
+                    return reader;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Bound the number of shards in flight, as completed shards wait in memory until merged
+            int maxPending = 2 * threads;
+            Deque<Future<ReadCounter>> pending = new ArrayDeque<Future<ReadCounter>>();
+            Iterator<CountShard> shardIter = shards.iterator();
+
+            String lastChr = null;
+            ReadCounter merged = null;
+
+            for (CountShard shard : shards) {
+                while (pending.size() < maxPending && shardIter.hasNext()) {
+                    CountShard next = shardIter.next();
+                    next.threadReader = threadReader;
+                    pending.add(pool.submit(next));
+                }
+
+                ReadCounter counter;
+                try {
+                    counter = pending.remove().get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted counting " + alignmentFile);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    throw new IOException("Error counting " + alignmentFile, cause);
+                }
+
+                if (!shard.chr.equals(lastChr)) {
+                    if (merged != null) {
+                        merged.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+                    }
+                    merged = null;
+                    lastChr = shard.chr;
+                }
+                if (counter != null) {
+                    totalCount += counter.alignmentCount;
+                    if (merged == null) {
+                        merged = counter;
                     } else {
-                        strand = alignment.getReadStrand();
+                        merged.add(counter);
+                    }
+                }
+                if (merged != null) {
+                    merged.closeBucketsBefore(shard.end - tolerance, wigWriter);
+                }
+            }
+
+            if (merged != null) {
+                merged.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+            }
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // Close the readers anyway
+            }
+            for (AlignmentReader<?> r : readers) {
+                closeQuietly(r);
+            }
+        }
+    }
+
+    private void addShards(List<CountShard> shards, String chr, int start, int end) {
+        for (int shardStart = start; shardStart < end; shardStart += SHARD_SIZE) {
+            shards.add(new CountShard(chr, shardStart, Math.min(end, shardStart + SHARD_SIZE), shardStart == start));
+        }
+    }
+
+    /**
+     * Counts the alignments starting in [start, end) of one chromosome.  The first shard of a chromosome, or of
+     * the query interval, also counts alignments starting before it.
+     */
+    class CountShard implements Callable<ReadCounter> {
+
+        final String chr;
+        final int start;
+        final int end;
+        final boolean first;
+        ThreadLocal<AlignmentReader<Alignment>> threadReader;
+
+        CountShard(String chr, int start, int end, boolean first) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+
+        /**
+         * @return the counts, or null if no alignments were counted
+         */
+        @Override
+        public ReadCounter call() throws IOException {
+            CloseableIterator<Alignment> iter = null;
+            ReadCounter counter = null;
+            try {
+                iter = threadReader.get().query(chr, start, end, false);
+                while (iter != null && iter.hasNext()) {
+                    Alignment alignment = iter.next();
+                    int alignmentStart = alignment.getAlignmentStart();
+                    if (alignmentStart >= end || (!first && alignmentStart < start) || !passFilter(alignment)) {
+                        continue;
                     }
+                    Strand strand = getCountStrand(alignment);
                     if (strand.equals(Strand.NONE)) {
-                        //TODO move this into passFilter, or move passFilter here
                         continue;
                     }
-                    boolean readNegStrand = alignment.isNegativeStrand();
+                    if (counter == null) {
+                        counter = new ReadCounter(alignment.getChr());
+                    }
+                    counter.alignmentCount++;
+                    count(alignment, strand, counter);
+                }
+            } finally {
+                if (iter != null) {
+                    iter.close();
+                }
+            }
+            return counter;
+        }
+    }
 
-                    totalCount++;
+    private static void closeQuietly(AlignmentReader<?> reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.error("Error closing alignment reader", e);
+            }
+        }
+    }
 
-                    String alignmentChr = alignment.getChr();
+    /**
+     * Sort into the read strand or first-in-pair strand, depending on input flag. Note that this can be very
+     * unreliable depending on data
+     */
+    private Strand getCountStrand(Alignment alignment) {
+        if (firstInPair) {
+            return alignment.getFirstOfPairStrand();
+        } else if (secondInPair) {
+            return alignment.getSecondOfPairStrand();
+        } else {
+            return alignment.getReadStrand();
+        }
+    }
 
-                    // Close all counters with position < alignment.getStart()
-                    if (alignmentChr.equals(lastChr)) {
-                        if (counter != null) {
-                            counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance, wigWriter);
-                        }
-                    } else {  // New chromosome
-                        if (counter != null) {
-                            counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
-                        }
-                        counter = new ReadCounter(alignmentChr);
-                        lastChr = alignmentChr;
-                    }
+    /**
+     * Add the coverage of a single alignment to the counter.  Thread safe provided each thread uses its own counter.
+     */
+    private void count(Alignment alignment, Strand strand, ReadCounter counter) {
 
-                    AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
-
-                    if (blocks != null && !pairedCoverage) {
-                        for (AlignmentBlock block : blocks) {
-
-                            if (!block.isSoftClipped()) {
-
-                                int blockStart = block.getStart();
-                                int blockEnd = block.getEnd();
-
-
-                                int adjustedStart = block.getStart();
-                                int adjustedEnd = block.getEnd();
-
-
-                                if (preExtFactor > 0) {
-                                    if (readNegStrand) {
-                                        adjustedEnd = blockEnd + preExtFactor;
-                                    } else {
-                                        adjustedStart = Math.max(0, blockStart - preExtFactor);
-                                    }
-                                }
-
-                                // If both postExtFactor and extFactor are specified, postExtFactor takes precedence
-                                if (postExtFactor > 0) {
-                                    if (readNegStrand) {
-                                        adjustedStart = Math.max(0, blockEnd - postExtFactor);
-                                    } else {
-                                        adjustedEnd = blockStart + postExtFactor;
-                                    }
-
-                                } else if (extFactor > 0) {
-                                    // Standard extension option -- extend read on 3' end
-                                    if (readNegStrand) {
-                                        adjustedStart = Math.max(0, adjustedStart - extFactor);
-                                    } else {
-                                        adjustedEnd += extFactor;
-                                    }
-                                }
-
-
-                                if (queryInterval != null) {
-                                    adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
-                                    adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
-                                }
-
-                                byte[] bases = block.getBases();
-                                for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                                    byte base = 0;
-                                    int baseIdx = pos - blockStart;
-                                    if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
-                                        base = bases[baseIdx];
-                                    }
-                                    //int idx = pos - blockStart;
-                                    //byte quality = (idx >= 0 && idx < block.qualities.length) ?
-                                    //block.qualities[pos - blockStart] : (byte) 0;
-                                    counter.incrementCount(pos, base, strand);
-                                }
-                            }
-                        }
+        boolean readNegStrand = alignment.isNegativeStrand();
 
-                        final AlignmentBlock[] insertions = alignment.getInsertions();
-                        if (insertions != null) {
-                            for (AlignmentBlock insBlock : insertions) {
-                                int pos = insBlock.getStart();
-                                if (queryInterval == null || (pos >= queryInterval.getStart() && pos <= queryInterval.getEnd()))
-                                    counter.incrementInsertion(pos, strand);
-                            }
-                        }
+        AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
 
-                        // Count deletions
-                        List<Gap> gaps = alignment.getGaps();
-                        if (gaps != null) {
-                            for (Gap gap : gaps) {
-                                if (gap.getType() == SAMAlignment.DELETION) {
-                                    int adjustedStart = gap.getStart();
-                                    int adjustedEnd = gap.getStart() + gap.getnBases();
-                                    if (queryInterval != null) {
-                                        adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
-                                        adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
-                                    }
-                                    for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                                        counter.incrementDeletion(pos, strand);
-                                    }
-                                }
-                            }
-                        }
+        if (blocks != null && !pairedCoverage) {
+            for (AlignmentBlock block : blocks) {
 
+                if (!block.isSoftClipped()) {
 
-                    } else {
-                        int adjustedStart = alignment.getAlignmentStart();
-                        int adjustedEnd = pairedCoverage ?
-                                adjustedStart + Math.abs(alignment.getInferredInsertSize()) :
-                                alignment.getAlignmentEnd();
+                    int blockStart = block.getStart();
+                    int blockEnd = block.getEnd();
+
+
+                    int adjustedStart = block.getStart();
+                    int adjustedEnd = block.getEnd();
+
+
+                    if (preExtFactor > 0) {
+                        if (readNegStrand) {
+                            adjustedEnd = blockEnd + preExtFactor;
+                        } else {
+                            adjustedStart = Math.max(0, blockStart - preExtFactor);
+                        }
+                    }
+
+                    // If both postExtFactor and extFactor are specified, postExtFactor takes precedence
+                    if (postExtFactor > 0) {
+                        if (readNegStrand) {
+                            adjustedStart = Math.max(0, blockEnd - postExtFactor);
+                        } else {
+                            adjustedEnd = blockStart + postExtFactor;
+                        }
 
+                    } else if (extFactor > 0) {
+                        // Standard extension option -- extend read on 3' end
                         if (readNegStrand) {
                             adjustedStart = Math.max(0, adjustedStart - extFactor);
                         } else {
                             adjustedEnd += extFactor;
                         }
+                    }
+
+
+                    if (queryInterval != null) {
+                        adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
+                        adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
+                    }
+
+                    byte[] bases = block.getBases();
+                    for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                        byte base = 0;
+                        int baseIdx = pos - blockStart;
+                        if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
+                            base = bases[baseIdx];
+                        }
+                        //int idx = pos - blockStart;
+                        //byte quality = (idx >= 0 && idx < block.qualities.length) ?
+                        //block.qualities[pos - blockStart] : (byte) 0;
+                        counter.incrementCount(pos, base, strand);
+                    }
+                }
+            }
 
+            final AlignmentBlock[] insertions = alignment.getInsertions();
+            if (insertions != null) {
+                for (AlignmentBlock insBlock : insertions) {
+                    int pos = insBlock.getStart();
+                    if (queryInterval == null || (pos >= queryInterval.getStart() && pos <= queryInterval.getEnd()))
+                        counter.incrementInsertion(pos, strand);
+                }
+            }
+
+            // Count deletions
+            List<Gap> gaps = alignment.getGaps();
+            if (gaps != null) {
+                for (Gap gap : gaps) {
+                    if (gap.getType() == SAMAlignment.DELETION) {
+                        int adjustedStart = gap.getStart();
+                        int adjustedEnd = gap.getStart() + gap.getnBases();
                         if (queryInterval != null) {
                             adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
                             adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
                         }
-
-
                         for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                            counter.incrementCount(pos, (byte) 'N', strand);
+                            counter.incrementDeletion(pos, strand);
                         }
                     }
-
                 }
-
             }
-            consumer.setAttribute("totalCount", String.valueOf(totalCount));
-            consumer.parsingComplete();
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
 
-            if (counter != null) {
-                counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
-            }
-            if (iter != null) {
-                iter.close();
-            }
-            if (reader != null) {
-                reader.close();
+        } else {
+            int adjustedStart = alignment.getAlignmentStart();
+            int adjustedEnd = pairedCoverage ?
+                    adjustedStart + Math.abs(alignment.getInferredInsertSize()) :
+                    alignment.getAlignmentEnd();
+
+            if (readNegStrand) {
+                adjustedStart = Math.max(0, adjustedStart - extFactor);
+            } else {
+                adjustedEnd += extFactor;
             }
-            if (wigWriter != null) {
-                wigWriter.close();
+
+            if (queryInterval != null) {
+                adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
+                adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
             }
 
+
+            for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                counter.incrementCount(pos, (byte) 'N', strand);
+            }
         }
     }
 
@@ -520,13 +795,25 @@ public class CoverageCounter {
         this.writeStdOut = writeStdOut;
     }
 
+    /**
+     * Counts for one chromosome.  Counts are kept in pages of consecutive windows, so memory is proportional to
+     * the span of windows not yet closed rather than the chromosome length.
+     */
     class ReadCounter {
 
         String chr;
+
         /**
-         * Map of window index -> counter
+         * Number of alignments counted, used when merging parallel counts
          */
-        TreeMap<Integer, Counter> counts = new TreeMap<Integer, Counter>();
+        int alignmentCount = 0;
+
+        /**
+         * Map of page index -> page
+         */
+        TreeMap<Integer, CountPage> pages = new TreeMap<Integer, CountPage>();
+
+        private CountPage lastPage;
 
         ReadCounter(String chr) {
             this.chr = chr;
@@ -538,40 +825,66 @@ public class CoverageCounter {
          * @param strand   - which strand to increment count. Should be POSITIVE or NEGATIVE
          */
         void incrementCount(int position, byte base, Strand strand) {
-            final Counter counter = getCounterForPosition(position);
+            int window = position / windowSize;
+            CountPage page = getPage(window);
+            int w = page.touch(window);
             int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
-            counter.increment(base, strandNum);
+            page.totals[w]++;
+            if (outputSeparate) {
+                page.strandCounts[w * NUM_STRANDS + strandNum]++;
+            }
+            if (outputBases) {
+                page.baseCounts[(w * NUM_STRANDS + strandNum) * NUM_BASE_SLOTS + baseSlots[base & 0xff]]++;
+            }
         }
 
         void incrementDeletion(int position, Strand strand) {
-            final Counter counter = getCounterForPosition(position);
-            int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
-            if (outputBases) {
-                counter.incrementNucleotide(DEL, strandNum);
-            }
+            incrementNucleotide(position, DEL, strand);
         }
 
         void incrementInsertion(int position, Strand strand) {
             // Insertions are between 2 bases, we increment the counter for the position preceding the insertion
-            final Counter counter = getCounterForPosition(position-1);
+            incrementNucleotide(position - 1, INS, strand);
+        }
+
+        private void incrementNucleotide(int position, byte base, Strand strand) {
+            int window = position / windowSize;
+            CountPage page = getPage(window);
+            int w = page.touch(window);
             int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
             if (outputBases) {
-                counter.incrementNucleotide(INS, strandNum);
+                page.baseCounts[(w * NUM_STRANDS + strandNum) * NUM_BASE_SLOTS + baseSlots[base & 0xff]]++;
             }
-
         }
 
-
-        private Counter getCounterForPosition(int position) {
-            int idx = position / windowSize;
-            return getCounter(idx);
+        private CountPage getPage(int window) {
+            int pageIndex = Math.floorDiv(window, PAGE_WINDOWS);
+            if (lastPage != null && lastPage.index == pageIndex) {
+                return lastPage;
+            }
+            CountPage page = pages.get(pageIndex);
+            if (page == null) {
+                page = new CountPage(pageIndex);
+                pages.put(pageIndex, page);
+            }
+            lastPage = page;
+            return page;
         }
 
-        private Counter getCounter(int idx) {
-            if (!counts.containsKey(idx)) {
-                counts.put(idx, new Counter());
+        /**
+         * Add the counts of another counter for the same chromosome to this one.  The other counter should
+         * not be used afterwards, as its pages may be adopted.
+         */
+        void add(ReadCounter other) {
+            for (CountPage otherPage : other.pages.values()) {
+                CountPage page = pages.get(otherPage.index);
+                if (page == null) {
+                    pages.put(otherPage.index, otherPage);
+                } else {
+                    page.add(otherPage);
+                }
             }
-            return counts.get(idx);
+            alignmentCount += other.alignmentCount;
         }
 
 
@@ -582,175 +895,171 @@ public class CoverageCounter {
          * @param position - genomic position
          */
         void closeBucketsBefore(int position, WigWriter wigWriter) {
-            List<Integer> bucketsToClose = new ArrayList<Integer>();
 
             int bucket = position / windowSize;
-            for (Map.Entry<Integer, Counter> entry : counts.entrySet()) {
-                if (entry.getKey() < bucket) {
-
-                    // Divide total count by window size.  This is the average count per
-                    // base over the window,  so for example 30x coverage remains 30x irrespective of window size.
-                    int bucketStartPosition = entry.getKey() * windowSize;
-                    int bucketEndPosition = bucketStartPosition + windowSize;
-                    if (genome != null) {
-                        Chromosome chromosome = genome.getChromosome(chr);
-                        if (chromosome != null) {
-                            bucketEndPosition = Math.min(bucketEndPosition, chromosome.getLength());
-                        }
+            Iterator<CountPage> iter = pages.values().iterator();
+            while (iter.hasNext()) {
+                CountPage page = iter.next();
+                int firstWindow = page.index * PAGE_WINDOWS;
+                if (firstWindow >= bucket) {
+                    break;
+                }
+                int end = (int) Math.min(PAGE_WINDOWS, (long) bucket - firstWindow);
+                for (int w = page.closed; w < end; w++) {
+                    if (page.touched[w]) {
+                        outputWindow(page, w, wigWriter);
+                        page.clear(w);
                     }
-                    int bucketSize = bucketEndPosition - bucketStartPosition;
-
-                    final Counter counter = entry.getValue();
+                }
+                page.closed = Math.max(page.closed, end);
+                if (page.closed == PAGE_WINDOWS) {
+                    iter.remove();
+                    if (page == lastPage) {
+                        lastPage = null;
+                    }
+                }
+            }
+        }
 
-                    int col = 0;
+        private void outputWindow(CountPage page, int w, WigWriter wigWriter) {
 
-                    //Not outputting base info, just totals
-                    if (!outputBases) {
-                        if (outputSeparate) {
-                            //Output strand specific information, if applicable
-                            for (int strandNum : output_strands) {
-                                buffer[col] = ((float) counter.getCount(strandNum)) / bucketSize;
-                                col++;
-                            }
+            // Divide total count by window size.  This is the average count per
+            // base over the window,  so for example 30x coverage remains 30x irrespective of window size.
+            int bucketStartPosition = (page.index * PAGE_WINDOWS + w) * windowSize;
+            int bucketEndPosition = bucketStartPosition + windowSize;
+            if (genome != null) {
+                Chromosome chromosome = genome.getChromosome(chr);
+                if (chromosome != null) {
+                    bucketEndPosition = Math.min(bucketEndPosition, chromosome.getLength());
+                }
+            }
+            int bucketSize = bucketEndPosition - bucketStartPosition;
 
-                        } else {
-                            buffer[col] = ((float) counter.getTotalCounts()) / bucketSize;
-                            col++;
-                        }
+            int col = 0;
 
-                        //Output counts of each base
-                    } else {
-                        if (outputSeparate) {
-                            for (int strandNum : output_strands) {
-                                for (byte base : nucleotides) {
-                                    buffer[col] = ((float) counter.getBaseCount(base, strandNum)) / bucketSize;
-                                    col++;
-                                }
-                            }
-                        } else {
-                            for (byte base : nucleotides) {
-                                buffer[col] = ((float) counter.getBaseCount(base)) / bucketSize;
-                                col++;
-                            }
-                        }
+            //Not outputting base info, just totals
+            if (!outputBases) {
+                if (outputSeparate) {
+                    //Output strand specific information, if applicable
+                    for (int strandNum : output_strands) {
+                        buffer[col] = ((float) page.strandCounts[w * NUM_STRANDS + strandNum]) / bucketSize;
+                        col++;
                     }
 
+                } else {
+                    buffer[col] = ((float) page.totals[w]) / bucketSize;
+                    col++;
+                }
 
-                    consumer.addData(chr, bucketStartPosition, bucketEndPosition, buffer, null);
-
-                    if (wigWriter != null) {
-                        wigWriter.addData(chr, bucketStartPosition, bucketEndPosition, buffer);
+                //Output counts of each base
+            } else {
+                if (outputSeparate) {
+                    for (int strandNum : output_strands) {
+                        for (int b = 0; b < nucleotides.length; b++) {
+                            buffer[col] = ((float) page.baseCounts[(w * NUM_STRANDS + strandNum) * NUM_BASE_SLOTS + b]) / bucketSize;
+                            col++;
+                        }
+                    }
+                } else {
+                    for (int b = 0; b < nucleotides.length; b++) {
+                        int count = 0;
+                        for (int strandNum = 0; strandNum < NUM_STRANDS; strandNum++) {
+                            count += page.baseCounts[(w * NUM_STRANDS + strandNum) * NUM_BASE_SLOTS + b];
+                        }
+                        buffer[col] = ((float) count) / bucketSize;
+                        col++;
                     }
-
-
-                    bucketsToClose.add(entry.getKey());
                 }
             }
 
-            for (Integer key : bucketsToClose) {
-                counts.remove(key);
-            }
 
+            consumer.addData(chr, bucketStartPosition, bucketEndPosition, buffer, null);
 
+            if (wigWriter != null) {
+                wigWriter.addData(chr, bucketStartPosition, bucketEndPosition, buffer);
+            }
         }
 
     }
 
 
     /**
-     * Class for counting nucleotides and strands over an interval.
+     * Counts for {@link #PAGE_WINDOWS} consecutive windows, in primitive arrays indexed by window offset within the
+     * page.  Only windows which have been touched by an alignment are output.
      */
+    class CountPage {
 
-    class Counter {
-        /**
-         * The total number of counts on this Counter. Will
-         * be the sum of baseCount over the second index.
-         */
-        int[] strandCount;
-        int totalCount = 0;
-        //int qualityCount = 0;
-
-        //String chr;
-        //int start;
-        //int end;
-        //byte[] ref;
-        /**
-         * The number of times a particular base has been encountered (ie # of reads of that base)
-         */
-        //int[][] baseCount = new int[NUM_STRANDS][];
-
-        private Map<Byte, Integer>[] baseTypeCounts;
-
-        Counter() {
-            //this.chr = chr;
-            //this.start = start;
-            //this.end = end;
-
-            if (outputBases) {
-                baseTypeCounts = new HashMap[NUM_STRANDS];
-                for (int ii = 0; ii < NUM_STRANDS; ii++) {
-                    baseTypeCounts[ii] = new HashMap<Byte, Integer>();
-                }
-            }
+        final int index;
 
-            if (outputSeparate) {
-                strandCount = new int[NUM_STRANDS];
-            }
-        }
+        final boolean[] touched = new boolean[PAGE_WINDOWS];
 
+        final int[] totals = new int[PAGE_WINDOWS];
 
-        int getCount(int strand) {
-            return strandCount[strand];
-        }
-
-        public int getTotalCounts() {
-            return totalCount;
-        }
-
-        void increment(byte base, int strand) {
+        /**
+         * Counts by strand,  [window * NUM_STRANDS + strand].  Null unless outputting strands separately
+         */
+        final int[] strandCounts;
 
-            if (outputBases) {
-                incrementNucleotide(base, strand);
-            }
+        /**
+         * Counts by strand and nucleotide,  [(window * NUM_STRANDS + strand) * NUM_BASE_SLOTS + slot].  Null unless
+         * outputting bases.
+         */
+        final int[] baseCounts;
 
-            if (outputSeparate) {
-                this.strandCount[strand]++;
-            }
+        /**
+         * Windows before this offset have been output
+         */
+        int closed = 0;
 
-            this.totalCount++;
+        CountPage(int index) {
+            this.index = index;
+            strandCounts = outputSeparate ? new int[PAGE_WINDOWS * NUM_STRANDS] : null;
+            baseCounts = outputBases ? new int[PAGE_WINDOWS * NUM_STRANDS * NUM_BASE_SLOTS] : null;
         }
 
         /**
-         * Increment the nucleotide counts.
+         * Mark a window as having counts
          *
-         * @param base   65, 67, 71, 84, 78, 126, 127
-         *               aka A, C, G, T, N, deletion, insertion.
-         *               Anything else is stored as 0
-         * @param strand index of strand, 0 for positive and 1 for negative
+         * @return offset of the window within this page
          */
-        private void incrementNucleotide(byte base, int strand) {
-            Map<Byte, Integer> btc = baseTypeCounts[strand];
-            if (!nucleotidesKeep.contains(base)) {
-                base = 0;
+        int touch(int window) {
+            int w = window - index * PAGE_WINDOWS;
+            touched[w] = true;
+            if (w < closed) {
+                // Visited again after being output,  output it again on the next close
+                closed = w;
             }
-
-            int orig = 0;
-            if (btc.containsKey(base)) {
-                orig = btc.get(base);
-            }
-            btc.put(base, orig + 1);
+            return w;
         }
 
-        public int getBaseCount(byte base, int strand) {
-            return baseTypeCounts[strand].containsKey(base) ? baseTypeCounts[strand].get(base) : 0;
+        void clear(int w) {
+            touched[w] = false;
+            totals[w] = 0;
+            if (strandCounts != null) {
+                Arrays.fill(strandCounts, w * NUM_STRANDS, (w + 1) * NUM_STRANDS, 0);
+            }
+            if (baseCounts != null) {
+                Arrays.fill(baseCounts, w * NUM_STRANDS * NUM_BASE_SLOTS, (w + 1) * NUM_STRANDS * NUM_BASE_SLOTS, 0);
+            }
         }
 
-        public int getBaseCount(byte base) {
-            int count = 0;
-            for (int strand = 0; strand < NUM_STRANDS; strand++) {
-                count += getBaseCount(base, strand);
+        void add(CountPage other) {
+            for (int w = 0; w < PAGE_WINDOWS; w++) {
+                if (other.touched[w]) {
+                    touch(index * PAGE_WINDOWS + w);
+                    totals[w] += other.totals[w];
+                }
+            }
+            if (strandCounts != null) {
+                for (int i = 0; i < strandCounts.length; i++) {
+                    strandCounts[i] += other.strandCounts[i];
+                }
+            }
+            if (baseCounts != null) {
+                for (int i = 0; i < baseCounts.length; i++) {
+                    baseCounts[i] += other.baseCounts[i];
+                }
             }
-            return count;
         }
     }
 
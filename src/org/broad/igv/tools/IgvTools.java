@@ -94,6 +94,7 @@ public class IgvTools {
     static final String CMD_COUNT = "count";
     static final String CMD_SORT = "sort";
     static final String CMD_INDEX = "index";
+    static final String CMD_PREPARE = "prepare";
     static final String CMD_FORMATEXP = "formatexp";
     static final String CMD_VERSION = "version";
     static final String CMD_GUI = "gui";
@@ -119,6 +120,11 @@ public class IgvTools {
      */
     static final String STDOUT_FILE_STR = "stdout";
 
+    /**
+     * Number of threads for count, sort, toTDF, tile, and prepare.  See the --threads option.
+     */
+    private int threads = 1;
+
     public static String getVersionString() {
         return Globals.applicationString();
     }
@@ -128,6 +134,7 @@ public class IgvTools {
             "version print the version number",
             "sort    sort an alignment file by start position. ",
             "index   index an alignment file",
+            "prepare sort, index, and count a feature file in a single pass",
             "toTDF    convert an input file (cn, gct, wig) to tiled data format (tdf)",
             "count   compute coverage density for an alignment file",
             "formatexp  center, scale, and log2 normalize an expression file",
@@ -150,6 +157,7 @@ public class IgvTools {
     private static CmdLineParser.Option tmpDirOption = null;
     private static CmdLineParser.Option maxZoomOption = null;
     private static CmdLineParser.Option typeOption = null;
+    private static CmdLineParser.Option threadsOpt = null;
 
     // options for sort
     private static CmdLineParser.Option maxRecordsOption = null;
@@ -316,6 +324,9 @@ public class IgvTools {
         if (maxRecordsOption != null) {
             maxRecords = (Integer) parser.getOptionValue(maxRecordsOption, MAX_RECORDS_IN_RAM);
         }
+        if (threadsOpt != null) {
+            threads = (Integer) parser.getOptionValue(threadsOpt, 1);
+        }
         String[] nonOptionArgs = parser.getRemainingArgs();
 
         try {
@@ -391,6 +402,19 @@ public class IgvTools {
                 int binSize = (Integer) parser.getOptionValue(binSizeOption, defaultBinSize);
                 String outputDir = (String) parser.getOptionValue(outputDirOption, null);
                 doIndex(ifile, typeString, outputDir, indexType, binSize);
+            } else if (command.equals(CMD_PREPARE)) {
+                validateArgsLength(nonOptionArgs, 4, basic_syntax);
+                String ofile = nonOptionArgs[2];
+                String genomeId = nonOptionArgs[3];
+                String wfsString = (String) parser.getOptionValue(windowFunctions);
+                Collection<WindowFunction> wfList = parseWFS(wfsString, false);
+                int windowSizeValue = (Integer) parser.getOptionValue(windowSizeOption, WINDOW_SIZE);
+                int extFactorValue = (Integer) parser.getOptionValue(extFactorOption, EXT_FACTOR);
+                int indexType = (Integer) parser.getOptionValue(indexTypeOption, LINEAR_INDEX);
+                int defaultBinSize = indexType == LINEAR_INDEX ? LINEAR_BIN_SIZE : INTERVAL_SIZE;
+                int binSize = (Integer) parser.getOptionValue(binSizeOption, defaultBinSize);
+                doPrepare(ifile, ofile, genomeId, wfList, windowSizeValue, extFactorValue, indexType, binSize,
+                        tmpDirName, maxRecords);
             } else if (command.equals(CMD_FORMATEXP)) {
                 validateArgsLength(nonOptionArgs, 3, basic_syntax);
                 File inputFile = new File(nonOptionArgs[1]);
@@ -557,11 +581,16 @@ public class IgvTools {
     private CmdLineParser initParser(String command) {
         command = command.toLowerCase();
         CmdLineParser parser = new CmdLineParser();
-        if (command.equals(CMD_SORT) || command.equals(CMD_TOTDF) || command.equals(CMD_TILE)) {
+        if (command.equals(CMD_SORT) || command.equals(CMD_TOTDF) || command.equals(CMD_TILE) || command.equals(CMD_PREPARE)) {
             maxRecordsOption = parser.addIntegerOption('m', "maxRecords");
             tmpDirOption = parser.addStringOption('t', "tmpDir");
         }
 
+        if (command.equals(CMD_COUNT) || command.equals(CMD_SORT) || command.equals(CMD_TOTDF) || command.equals(CMD_TILE)
+                || command.equals(CMD_PREPARE)) {
+            threadsOpt = parser.addIntegerOption("threads");
+        }
+
         if (command.equals(CMD_COUNT) || command.equals(CMD_TOTDF) || command.equals(CMD_TILE)) {
 
             // general options
@@ -592,6 +621,14 @@ public class IgvTools {
             }
         }
 
+        if (command.equals(CMD_PREPARE)) {
+            windowFunctions = parser.addStringOption('f', "windowFunctions");
+            windowSizeOption = parser.addIntegerOption('w', "windowSize");
+            extFactorOption = parser.addIntegerOption('e', "extFactor");
+            indexTypeOption = parser.addIntegerOption("indexType");
+            binSizeOption = parser.addIntegerOption("binSize");
+        }
+
         if (command.equals(CMD_INDEX)) {
             indexTypeOption = parser.addIntegerOption("indexType");
             binSizeOption = parser.addIntegerOption("binSize");
@@ -607,6 +644,10 @@ public class IgvTools {
         return parser;
     }
 
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     private int parseCountFlags(CmdLineParser parser) {
 
         int countFlags = 0;
@@ -714,6 +755,7 @@ public class IgvTools {
         File outputFile = new File(ofile);
         try {
             Preprocessor p = new Preprocessor(outputFile, genome, windowFunctions, nLines, null);
+            p.setThreads(threads);
             if (inputFileOrDir.isDirectory() || inputFileOrDir.getName().endsWith(".list")) {
                 p.setSizeEstimate(0);
                 List<File> files = getFilesFromDirOrList(inputFileOrDir);
@@ -865,6 +907,7 @@ public class IgvTools {
         try {
 
             Preprocessor p = new Preprocessor(tdfFile, genome, windowFunctions, -1, null);
+            p.setThreads(threads);
 
             p.setSkipZeroes(true);
 
@@ -873,6 +916,7 @@ public class IgvTools {
             counter.setWriteStdOut(wigStdOut);
             counter.setPreExtFactor(preExtFactorValue);
             counter.setPosExtFactor(postExtFactorValue);
+            counter.setThreads(threads);
 
             String prefix = FilenameUtils.getName(ifile);
             String[] tracknames = counter.getTrackNames(prefix + " ");
@@ -1123,6 +1167,7 @@ public class IgvTools {
         }
 
         sorter.setMaxRecords(maxRecords);
+        sorter.setThreads(threads);
 
         try {
             sorter.run();
@@ -1137,6 +1182,42 @@ public class IgvTools {
     }
 
 
+    /**
+     * Sort, index, and count a feature file in a single pass.  See {@link PreparePipeline}.
+     */
+    public void doPrepare(String ifile, String ofile, String genomeId, Collection<WindowFunction> windowFunctions,
+                          int windowSize, int extFactor, int indexType, int binSize,
+                          String tmpDirName, int maxRecords) throws IOException {
+
+        userMessageWriter.println("Preparing " + ifile + "  -> " + ofile);
+
+        Genome genome = loadGenome(genomeId);
+        if (genome == null) {
+            throw new PreprocessingException("Genome could not be loaded: " + genomeId);
+        }
+
+        PreparePipeline pipeline = new PreparePipeline(new File(ifile), new File(ofile), genome);
+        if (tmpDirName != null && tmpDirName.trim().length() > 0) {
+            File tmpDir = new File(tmpDirName);
+            if (!tmpDir.exists()) {
+                throw new PreprocessingException("Error: tmp directory: " + tmpDir.getAbsolutePath() + " does not exist.");
+            }
+            pipeline.setTmpDir(tmpDir);
+        }
+        pipeline.setMaxRecords(maxRecords);
+        pipeline.setThreads(threads);
+        pipeline.setWindowFunctions(windowFunctions);
+        pipeline.setWindowSize(windowSize);
+        pipeline.setExtFactor(extFactor);
+        pipeline.setIndexType(indexType);
+        pipeline.setBinSize(binSize);
+
+        pipeline.run();
+
+        userMessageWriter.flush();
+    }
+
+
     private void validateArgsLength(String[] nonOptionArgs, int len, String failMessage) throws PreprocessingException {
         if (nonOptionArgs.length < len) {
             throw new PreprocessingException(failMessage + "\n");
@@ -0,0 +1,548 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools;
+
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.TribbleIndexCreator;
+import htsjdk.tribble.index.interval.IntervalIndexCreator;
+import htsjdk.tribble.index.linear.LinearIndexCreator;
+import htsjdk.tribble.readers.LineIterator;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.IGVFeature;
+import org.broad.igv.feature.Mutation;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.tribble.CodecFactory;
+import org.broad.igv.feature.tribble.MUTCodec;
+import org.broad.igv.sam.Alignment;
+import org.broad.igv.sam.FeatureWrappedAlignment;
+import org.broad.igv.tools.sort.AsciiSorter;
+import org.broad.igv.tools.sort.Sorter;
+import org.broad.igv.tools.sort.SorterFactory;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Prepares a feature file for viewing in a single pass: sorts it, and builds the tribble index and a feature
+ * density TDF file from the sorted records as they are written.  This replaces running the sort, index and
+ * count commands in turn, each of which reads the file from disk.
+ * <p/>
+ * The sorted lines are fanned out, through bounded queues, to an index stage which decodes features and
+ * records their file positions, and from there to a count stage which computes coverage and the TDF zoom
+ * levels.  Each stage runs on its own thread.
+ */
+public class PreparePipeline {
+
+    private static Logger log = Logger.getLogger(PreparePipeline.class);
+
+    static final int BATCH_SIZE = 1024;
+
+    /**
+     * Capacity, in batches, of the queues between stages.
+     */
+    static final int QUEUE_CAPACITY = 64;
+
+    private final File inputFile;
+    private final File outputFile;
+    private final Genome genome;
+
+    private int threads = 1;
+    private int maxRecords = IgvTools.MAX_RECORDS_IN_RAM;
+    private File tmpDir;
+    private int indexType = IgvTools.LINEAR_INDEX;
+    private int binSize = IgvTools.LINEAR_BIN_SIZE;
+    private Collection<WindowFunction> windowFunctions = Arrays.asList(WindowFunction.mean);
+    private int windowSize = IgvTools.WINDOW_SIZE;
+    private int extFactor = IgvTools.EXT_FACTOR;
+
+    /**
+     * @param inputFile  the feature file to prepare, sorted or not
+     * @param outputFile the sorted output file.  The index and TDF file names are derived from it.
+     * @param genome     the genome, used to size chromosomes for the TDF file
+     */
+    public PreparePipeline(File inputFile, File outputFile, Genome genome) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.genome = genome;
+    }
+
+    public File getIndexFile() {
+        return new File(outputFile.getAbsolutePath() + ".idx");
+    }
+
+    public File getTDFFile() {
+        return new File(outputFile.getAbsolutePath() + ".tdf");
+    }
+
+    public void run() throws IOException {
+
+        Sorter sorter = SorterFactory.getSorter(inputFile, outputFile);
+        if (!(sorter instanceof AsciiSorter)) {
+            throw new PreprocessingException("Unsupported file type: " + inputFile.getName() +
+                    ".  Only text feature files can be prepared.");
+        }
+        FeatureCodec<?, ?> codec = CodecFactory.getCodec(new ResourceLocator(outputFile.getAbsolutePath()), null);
+        if (!(codec instanceof AsciiFeatureCodec)) {
+            throw new PreprocessingException("Cannot index file type: " + inputFile.getName());
+        }
+
+        AsciiSorter asciiSorter = (AsciiSorter) sorter;
+        asciiSorter.setMaxRecords(maxRecords);
+        asciiSorter.setThreads(threads);
+        if (tmpDir != null) {
+            asciiSorter.setTmpDir(tmpDir);
+        }
+
+        BlockingQueue<LineBatch> lineQueue = new ArrayBlockingQueue<LineBatch>(QUEUE_CAPACITY);
+        BlockingQueue<List<Feature>> featureQueue = new ArrayBlockingQueue<List<Feature>>(QUEUE_CAPACITY);
+
+        log.info("Preparing " + inputFile.getAbsolutePath() + " -> " + outputFile.getAbsolutePath());
+
+        PipelineWriter writer = new PipelineWriter(outputFile, lineQueue);
+        ExecutorService stages = Executors.newFixedThreadPool(2);
+        boolean success = false;
+        try {
+            Future<Index> index = stages.submit(new IndexStage((AsciiFeatureCodec<?>) codec, lineQueue, featureQueue));
+            Future<Void> count = stages.submit(new CountStage(featureQueue));
+
+            try {
+                asciiSorter.run(writer);
+            } finally {
+                // Signals the end of input to the stages
+                writer.close();
+            }
+            if (writer.checkError()) {
+                throw new IOException("Error writing " + outputFile.getAbsolutePath());
+            }
+
+            IgvTools.writeTribbleIndex(getResult(index), getIndexFile().getAbsolutePath());
+            getResult(count);
+            success = true;
+        } finally {
+            stages.shutdownNow();
+            if (!success) {
+                getIndexFile().delete();
+                getTDFFile().delete();
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted preparing file");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Error preparing file", cause);
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            // Keep the interrupt status, so stages draining their input also stop
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted preparing file", e);
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted preparing file", e);
+        }
+    }
+
+    /**
+     * Writes the sorted output, and queues each line along with its file position for the index stage.
+     * Positions are computed from the encoded length of each line, as in {@link htsjdk.tribble.readers.AsciiLineReader}.
+     */
+    static class PipelineWriter extends PrintWriter {
+
+        private static final Charset charset = Charset.defaultCharset();
+        private static final int separatorLength = System.getProperty("line.separator").getBytes(charset).length;
+
+        private final BlockingQueue<LineBatch> queue;
+        private LineBatch batch = new LineBatch();
+        private long position = 0;
+
+        PipelineWriter(File file, BlockingQueue<LineBatch> queue) throws IOException {
+            super(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charset)));
+            this.queue = queue;
+        }
+
+        @Override
+        public void println(String line) {
+            super.println(line);
+            batch.add(line, position);
+            position += line.getBytes(charset).length + separatorLength;
+            if (batch.size == BATCH_SIZE) {
+                put(queue, batch);
+                batch = new LineBatch();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                super.close();
+            } finally {
+                if (batch != null) {
+                    if (batch.size > 0) {
+                        put(queue, batch);
+                    }
+                    LineBatch end = new LineBatch();
+                    end.end = position;
+                    put(queue, end);
+                    batch = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A batch of lines and their file positions.  An empty batch marks the end of the file, and records its length.
+     */
+    static class LineBatch {
+        final String[] lines = new String[BATCH_SIZE];
+        final long[] positions = new long[BATCH_SIZE];
+        int size;
+        long end;
+
+        void add(String line, long position) {
+            lines[size] = line;
+            positions[size] = position;
+            size++;
+        }
+    }
+
+    /**
+     * Iterates over lines from the writer, tracking the file position of the next line.  Lines read after
+     * {@link #mark()} are returned again after {@link #reset()}.
+     */
+    static class QueuedLineIterator implements LineIterator {
+
+        private final BlockingQueue<LineBatch> queue;
+        private LineBatch batch;
+        private int index;
+        private boolean done;
+
+        private List<String> markedLines;
+        private List<Long> markedPositions;
+        private boolean recording;
+        private int replayIndex;
+
+        QueuedLineIterator(BlockingQueue<LineBatch> queue) {
+            this.queue = queue;
+        }
+
+        private boolean advance() {
+            while (!done && (batch == null || index >= batch.size)) {
+                batch = take(queue);
+                index = 0;
+                done = batch.size == 0;
+            }
+            return !done;
+        }
+
+        private boolean replaying() {
+            if (markedLines == null || recording) {
+                return false;
+            } else if (replayIndex < markedLines.size()) {
+                return true;
+            } else {
+                markedLines = null;
+                markedPositions = null;
+                return false;
+            }
+        }
+
+        public boolean hasNext() {
+            return replaying() || advance();
+        }
+
+        public String next() {
+            if (replaying()) {
+                return markedLines.get(replayIndex++);
+            }
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+            if (recording) {
+                markedLines.add(batch.lines[index]);
+                markedPositions.add(batch.positions[index]);
+            }
+            return batch.lines[index++];
+        }
+
+        public String peek() {
+            if (replaying()) {
+                return markedLines.get(replayIndex);
+            }
+            return advance() ? batch.lines[index] : null;
+        }
+
+        long getPosition() {
+            if (replaying()) {
+                return markedPositions.get(replayIndex);
+            }
+            return advance() ? batch.positions[index] : batch.end;
+        }
+
+        void mark() {
+            markedLines = new ArrayList<String>();
+            markedPositions = new ArrayList<Long>();
+            recording = true;
+        }
+
+        void reset() {
+            recording = false;
+            replayIndex = 0;
+        }
+
+        /**
+         * Discard remaining lines, so the writer is never blocked by a stage that stopped early.
+         */
+        void drain() {
+            markedLines = null;
+            recording = false;
+            while (advance()) {
+                index = batch.size;
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Decodes features, adds them to the index, and passes them on to the count stage.  Mirrors the
+     * tribble IndexFactory: a feature's position is that of the first line read when decoding it.
+     */
+    class IndexStage implements Callable<Index> {
+
+        private final AsciiFeatureCodec<?> codec;
+        private final BlockingQueue<LineBatch> lineQueue;
+        private final BlockingQueue<List<Feature>> featureQueue;
+
+        IndexStage(AsciiFeatureCodec<?> codec, BlockingQueue<LineBatch> lineQueue, BlockingQueue<List<Feature>> featureQueue) {
+            this.codec = codec;
+            this.lineQueue = lineQueue;
+            this.featureQueue = featureQueue;
+        }
+
+        public Index call() throws IOException {
+
+            QueuedLineIterator lines = new QueuedLineIterator(lineQueue);
+            List<Feature> batch = new ArrayList<Feature>(BATCH_SIZE);
+            try {
+                TribbleIndexCreator indexCreator = indexType == IgvTools.LINEAR_INDEX ?
+                        new LinearIndexCreator(outputFile, binSize) :
+                        new IntervalIndexCreator(outputFile, binSize);
+
+                // Mutation files are scanned for sample names, as in the index command
+                Set<String> sampleNames = codec instanceof MUTCodec ? new HashSet<String>() : null;
+
+                // The index factory reads the header from a separate stream, and decodes the header lines
+                // again as features.  The position of the first feature includes any header lines.
+                lines.mark();
+                codec.readHeader(lines);
+                lines.reset();
+                while (true) {
+                    long position = lines.getPosition();
+                    Feature feature = null;
+                    while (feature == null && lines.hasNext()) {
+                        feature = codec.decode(lines.next());
+                    }
+                    if (feature == null) {
+                        break;
+                    }
+
+                    indexCreator.addFeature(feature, position);
+                    if (sampleNames != null) {
+                        sampleNames.add(((Mutation) feature).getSampleId());
+                    }
+
+                    batch.add(feature);
+                    if (batch.size() == BATCH_SIZE) {
+                        put(featureQueue, batch);
+                        batch = new ArrayList<Feature>(BATCH_SIZE);
+                    }
+                }
+
+                if (sampleNames != null) {
+                    StringBuffer buf = new StringBuffer();
+                    for (String sn : sampleNames) {
+                        buf.append(sn);
+                        buf.append(",");
+                    }
+                    indexCreator.addProperty("samples", buf.toString());
+                }
+
+                // The writer is closed before the end of input is signalled, so the file is complete
+                return indexCreator.finalizeIndex(lines.getPosition());
+
+            } finally {
+                lines.drain();
+                if (batch.size() > 0) {
+                    put(featureQueue, batch);
+                }
+                put(featureQueue, Collections.<Feature>emptyList());
+            }
+        }
+    }
+
+    /**
+     * Counts feature coverage and writes it to the TDF file.
+     */
+    class CountStage implements Callable<Void> {
+
+        private final BlockingQueue<List<Feature>> featureQueue;
+
+        CountStage(BlockingQueue<List<Feature>> featureQueue) {
+            this.featureQueue = featureQueue;
+        }
+
+        public Void call() throws IOException {
+
+            FeatureAlignmentIterator alignments = new FeatureAlignmentIterator(featureQueue);
+            try {
+                Preprocessor p = new Preprocessor(getTDFFile(), genome, windowFunctions, -1, null);
+                p.setThreads(threads);
+                p.setSkipZeroes(true);
+
+                CoverageCounter counter = new CoverageCounter(outputFile.getAbsolutePath(), p, windowSize, extFactor,
+                        null, genome, null, 0, 0);
+                String[] trackNames = counter.getTrackNames(outputFile.getName() + " ");
+                p.setTrackParameters(TrackType.COVERAGE, null, trackNames);
+                p.setSizeEstimate((int) (genome.getNominalLength() / windowSize));
+
+                counter.parse(alignments);
+                p.finish();
+                return null;
+            } finally {
+                alignments.drain();
+            }
+        }
+    }
+
+    /**
+     * Presents features from the index stage as alignments, for the coverage counter.
+     */
+    static class FeatureAlignmentIterator implements Iterator<Alignment> {
+
+        private final BlockingQueue<List<Feature>> queue;
+        private List<Feature> batch;
+        private int index;
+        private boolean done;
+
+        FeatureAlignmentIterator(BlockingQueue<List<Feature>> queue) {
+            this.queue = queue;
+        }
+
+        private boolean advance() {
+            while (!done && (batch == null || index >= batch.size())) {
+                batch = take(queue);
+                index = 0;
+                done = batch.isEmpty();
+            }
+            return !done;
+        }
+
+        public boolean hasNext() {
+            return advance();
+        }
+
+        public Alignment next() {
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+            // Count the full extent of the feature, as the count command does for feature files
+            Feature feature = batch.get(index++);
+            Strand strand = feature instanceof IGVFeature ? ((IGVFeature) feature).getStrand() : Strand.NONE;
+            return new FeatureWrappedAlignment(new BasicFeature(feature.getContig(), feature.getStart(), feature.getEnd(), strand));
+        }
+
+        void drain() {
+            while (advance()) {
+                index = batch.size();
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setMaxRecords(int maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    public void setTmpDir(File tmpDir) {
+        this.tmpDir = tmpDir;
+    }
+
+    public void setIndexType(int indexType) {
+        this.indexType = indexType;
+    }
+
+    public void setBinSize(int binSize) {
+        this.binSize = binSize;
+    }
+
+    public void setWindowFunctions(Collection<WindowFunction> windowFunctions) {
+        this.windowFunctions = windowFunctions;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public void setExtFactor(int extFactor) {
+        this.extFactor = extFactor;
+    }
+}
@@ -43,6 +43,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * @author jrobinso
@@ -76,6 +77,27 @@ public class Preprocessor implements DataConsumer {
     Set<String> visitedChromosomes = new HashSet();
     Map<String, String> attributes = new HashMap();
 
+    /**
+     * Number of threads for summarizing and encoding tiles.  If 1 all work is done on the thread calling addData.
+     */
+    private int threads = 1;
+    private ForkJoinPool summarizerPool;
+    private ChromosomeSummarizer summarizer;
+    private DataBatch batch;
+    private List<ChromosomeSummarizer> summarizers = new ArrayList<ChromosomeSummarizer>();
+    private Semaphore batchPermits;
+    private volatile Throwable summarizerFailure;
+
+    /**
+     * Guards the order in which tiles are written in parallel mode,  see {@link TileQueue}.  headSummarizer is the
+     * index of the first chromosome whose tiles are not all written.
+     */
+    private final Object tileOrderLock = new Object();
+    private int headSummarizer = 0;
+    private TileQueue genomeTiles;
+
+    static final int BATCH_SIZE = 8192;
+
     List<WindowFunction> allDataFunctions = Arrays.asList(
             WindowFunction.mean,
             WindowFunction.median,
@@ -132,9 +154,12 @@ public class Preprocessor implements DataConsumer {
             // Convert genome coordinates from bp to kbp
             if (computeWholeGenome) {
                 int genomeLength = (int) (genome.getNominalLength() / 1000);
-                genomeZoom = new Zoom(Globals.CHR_ALL, 0, genomeLength);
+                genomeTiles = threads > 1 ? new TileQueue() : null;
+                genomeZoom = new Zoom(Globals.CHR_ALL, 0, genomeLength, genomeTiles);
             }
 
+            writer.setThreads(threads);
+
             TDFGroup rootGroup = writer.getRootGroup();
             rootGroup.setAttribute("genome", genome.getId());
             rootGroup.setAttribute("maxZoom", String.valueOf(nZoom));
@@ -171,6 +196,8 @@ public class Preprocessor implements DataConsumer {
             throw new PreprocessingException("Preprocessing Halted.");
         }
 
+        checkSummarizerFailure();
+
         if (skippedChromosomes.contains(chr)) {
             return;
         }
@@ -202,13 +229,30 @@ public class Preprocessor implements DataConsumer {
         }
 
 
-        // Add to raw data
-        rawData.addData(start, end, data, name);
+        if (summarizerPool == null) {
+            // Add to raw data
+            rawData.addData(start, end, data, name);
 
-        // Zoom levels
-        for (Zoom zl : zoomLevels) {
-            zl.addData(start, end, data);
+            // Zoom levels
+            for (Zoom zl : zoomLevels) {
+                zl.addData(start, end, data);
+            }
+        } else {
+            batch.add(start, end, data, name);
+            if (batch.size == BATCH_SIZE) {
+                submitBatch();
+            }
+        }
+
+        // Update progress -- assume uniform distribution
+        if (statusMonitor != null && sizeEstimate > 0) {
+            int p = (int) ((100.0 * nPtsProcessed) / (1.5 * sizeEstimate));
+            if (p > percentComplete) {
+                percentComplete = p;
+                statusMonitor.setPercentComplete(percentComplete);
+            }
         }
+        nPtsProcessed++;
 
         // Whole genome
         long offset = genome.getCumulativeOffset(chr);
@@ -253,6 +297,54 @@ public class Preprocessor implements DataConsumer {
             chromosomes.add(chr);
 
             log.info("Processing chromosome " + chr);
+            closeChromosome();
+
+            currentChr = chr;
+            currentChrLength = c.getLength();
+            boolean parallel = threads > 1;
+            TileQueue[] zoomTiles = new TileQueue[getNZoom() + 1];
+            zoomLevels = new Zoom[getNZoom() + 1];
+            for (int z = 0; z <= getNZoom(); z++) {
+                zoomTiles[z] = parallel ? new TileQueue() : null;
+                zoomLevels[z] = new Zoom(chr, z, currentChrLength, zoomTiles[z]);
+            }
+
+            TileQueue rawTiles = parallel ? new TileQueue() : null;
+            rawData = new Raw(chr, currentChrLength, 100000, rawTiles);
+
+            if (parallel) {
+                if (summarizerPool == null) {
+                    summarizerPool = new ForkJoinPool(threads);
+                    batchPermits = new Semaphore(4 * threads);
+                }
+                summarizer = new ChromosomeSummarizer(chr, rawData, zoomLevels, rawTiles, zoomTiles);
+                synchronized (tileOrderLock) {
+                    summarizers.add(summarizer);
+                    if (summarizers.size() - 1 == headSummarizer) {
+                        try {
+                            rawTiles.flush();
+                        } catch (IOException e) {
+                            throw new PreprocessingException(e.getMessage());
+                        }
+                    }
+                }
+                batch = new DataBatch();
+            }
+        }
+        lastStartPosition = 0;
+
+    }
+
+
+    /**
+     * Close the raw data and zoom levels of the current chromosome,  if any.  In parallel mode this is asynchronous.
+     */
+    private void closeChromosome() {
+        if (summarizer != null) {
+            submitBatch();
+            summarizer.close();
+            summarizer = null;
+        } else {
             if (zoomLevels != null) {
                 for (Zoom zl : zoomLevels) {
                     zl.close();
@@ -261,20 +353,132 @@ public class Preprocessor implements DataConsumer {
             if (rawData != null) {
                 rawData.close();
             }
+        }
+    }
 
-            currentChr = chr;
-            currentChrLength = c.getLength();
-            zoomLevels = new Zoom[getNZoom() + 1];
-            for (int z = 0; z <= getNZoom(); z++) {
-                zoomLevels[z] = new Zoom(chr, z, currentChrLength);
+    private void submitBatch() {
+        if (batch.size == 0) {
+            return;
+        }
+        try {
+            batchPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new PreprocessingException("Preprocessing Halted.");
+        }
+        checkSummarizerFailure();
+        summarizer.add(batch);
+        batch = new DataBatch();
+    }
+
+    private void checkSummarizerFailure() {
+        Throwable t = summarizerFailure;
+        if (t != null) {
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            throw new PreprocessingException(t.getMessage());
+        }
+    }
+
+    /**
+     * Wait for all chromosomes to be summarized
+     */
+    private void awaitSummarizers() {
+        if (summarizerPool == null) {
+            return;
+        }
+        try {
+            for (ChromosomeSummarizer cs : summarizers) {
+                cs.done.await();
             }
+        } catch (InterruptedException e) {
+            throw new PreprocessingException("Preprocessing Halted.");
+        } finally {
+            summarizerPool.shutdown();
+            summarizerPool = null;
+        }
+        checkSummarizerFailure();
 
-            rawData = new Raw(chr, currentChrLength, 100000);
+        if (genomeTiles != null) {
+            synchronized (tileOrderLock) {
+                try {
+                    genomeTiles.flush();
+                } catch (IOException e) {
+                    throw new PreprocessingException(e.getMessage());
+                }
+            }
         }
-        lastStartPosition = 0;
+    }
 
+    /**
+     * Write the zoom level tiles of chromosomes that are complete,  in chromosome order,  and let the next
+     * chromosome write its raw tiles.
+     */
+    private void writeCompletedChromosomes() throws IOException {
+        synchronized (tileOrderLock) {
+            while (headSummarizer < summarizers.size() && summarizers.get(headSummarizer).completed) {
+                for (TileQueue zoomQueue : summarizers.get(headSummarizer).zoomTiles) {
+                    zoomQueue.flush();
+                }
+                headSummarizer++;
+                if (headSummarizer < summarizers.size()) {
+                    summarizers.get(headSummarizer).rawTiles.flush();
+                }
+            }
+        }
     }
 
+    /**
+     * Completed tiles of one level (raw data or a zoom level) of one chromosome,  in parallel mode.  The levels of
+     * several chromosomes are built at once,  so to keep the file layout independent of thread scheduling tiles are
+     * held here until it is their turn:  chromosomes in order,  for each chromosome its raw tiles and then its zoom
+     * levels,  and the genome-wide zoom level last.  Only the raw tiles of the chromosome being written go to the
+     * writer directly;  zoom level tiles are small.
+     */
+    class TileQueue {
+
+        private List<BufferedTile> tiles = new ArrayList<BufferedTile>();
+        private boolean direct = false;
+
+        void writeTile(String dsName, int tileNumber, TDFTile tile) throws IOException {
+            synchronized (tileOrderLock) {
+                if (direct) {
+                    writer.writeTile(dsName, tileNumber, tile);
+                } else {
+                    tiles.add(new BufferedTile(dsName, tileNumber, tile));
+                }
+            }
+        }
+
+        /**
+         * Write the held tiles,  and from now on write tiles directly.  Called with tileOrderLock held.
+         */
+        void flush() throws IOException {
+            for (BufferedTile t : tiles) {
+                writer.writeTile(t.dsName, t.tileNumber, t.tile);
+            }
+            tiles = null;
+            direct = true;
+        }
+    }
+
+    static class BufferedTile {
+        final String dsName;
+        final int tileNumber;
+        final TDFTile tile;
+
+        BufferedTile(String dsName, int tileNumber, TDFTile tile) {
+            this.dsName = dsName;
+            this.tileNumber = tileNumber;
+            this.tile = tile;
+        }
+    }
+
+    private void writeTile(TileQueue queue, String dsName, int tileNumber, TDFTile tile) throws IOException {
+        if (queue == null) {
+            writer.writeTile(dsName, tileNumber, tile);
+        } else {
+            queue.writeTile(dsName, tileNumber, tile);
+        }
+    }
 
     /**
      * Called at end-of-file
@@ -313,22 +517,19 @@ public class Preprocessor implements DataConsumer {
             writer.getRootGroup().setAttribute(entry.getKey(), entry.getValue());
         }
 
-        if (zoomLevels != null) {
-            for (Zoom zl : zoomLevels) {
-                zl.close();
-            }
-        }
+        boolean hasData = rawData != null;
+        closeChromosome();
 
         if (genomeZoom != null) {
             genomeZoom.close();
         }
 
-        if (rawData == null) {
+        awaitSummarizers();
+
+        if (!hasData) {
             // TODO -- delete .tdf file?
             log.warn("No features were found that matched chromosomes in genome: " + genome.getId());
         } else {
-            rawData.close();
-
             // Record max/min
             allDataStats.finish();
             TDFGroup group = writer.getGroup("/");
@@ -376,11 +577,192 @@ public class Preprocessor implements DataConsumer {
         this.nZoom = nZoom;
     }
 
+    /**
+     * Set the number of threads used to summarize zoom levels and encode tiles.  If greater than 1 each
+     * chromosome's raw data and zoom levels are built on a worker pool,  concurrently with parsing and with other
+     * chromosomes,  and tiles are compressed in parallel.  Must be called before {@link #setTrackParameters}.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+
+    /**
+     * A batch of data points for one chromosome,  handed from the parsing thread to a {@link ChromosomeSummarizer}
+     */
+    class DataBatch {
+        int size = 0;
+        final int[] starts = new int[BATCH_SIZE];
+        final int[] ends = new int[BATCH_SIZE];
+        final float[][] data = new float[BATCH_SIZE][];
+        String[] names;
+
+        void add(int start, int end, float[] values, String name) {
+            starts[size] = start;
+            ends[size] = end;
+            // Callers may reuse the data array
+            data[size] = values.clone();
+            if (name != null) {
+                if (names == null) {
+                    names = new String[BATCH_SIZE];
+                }
+                names[size] = name;
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Builds the raw and zoom level tiles of one chromosome on the worker pool.  Batches are processed in the order
+     * added;  within a batch the raw data and each zoom level are updated in parallel,  as they are independent.
+     * Summarizers for successive chromosomes run concurrently.
+     */
+    class ChromosomeSummarizer {
+
+        final String chr;
+        final Raw raw;
+        final Zoom[] zooms;
+        final TileQueue rawTiles;
+        final TileQueue[] zoomTiles;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean completed = false;
+
+        private final ArrayDeque<DataBatch> queue = new ArrayDeque<DataBatch>();
+        private boolean running = false;
+        private boolean closeRequested = false;
+        private boolean failed = false;
+
+        ChromosomeSummarizer(String chr, Raw raw, Zoom[] zooms, TileQueue rawTiles, TileQueue[] zoomTiles) {
+            this.chr = chr;
+            this.raw = raw;
+            this.zooms = zooms;
+            this.rawTiles = rawTiles;
+            this.zoomTiles = zoomTiles;
+        }
+
+        synchronized void add(DataBatch batch) {
+            if (failed) {
+                batchPermits.release();
+                return;
+            }
+            queue.add(batch);
+            schedule();
+        }
+
+        synchronized void close() {
+            closeRequested = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (!running) {
+                running = true;
+                summarizerPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+            }
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    DataBatch batch;
+                    synchronized (this) {
+                        batch = queue.poll();
+                        if (batch == null) {
+                            if (closeRequested) {
+                                break;
+                            }
+                            running = false;
+                            return;
+                        }
+                    }
+                    process(batch);
+                    batchPermits.release();
+                }
+                closeLevels();
+                completed = true;
+                writeCompletedChromosomes();
+            } catch (Throwable t) {
+                log.error("Error summarizing " + chr, t);
+                summarizerFailure = t;
+                synchronized (this) {
+                    failed = true;
+                    batchPermits.release(queue.size());
+                    queue.clear();
+                }
+            }
+            done.countDown();
+        }
+
+        private void process(final DataBatch batch) throws Exception {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(zooms.length + 1);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < batch.size; i++) {
+                        raw.addData(batch.starts[i], batch.ends[i], batch.data[i], batch.names == null ? null : batch.names[i]);
+                    }
+                    return null;
+                }
+            });
+            for (final Zoom zl : zooms) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < batch.size; i++) {
+                            zl.addData(batch.starts[i], batch.ends[i], batch.data[i]);
+                        }
+                        return null;
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+
+        private void closeLevels() throws Exception {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(zooms.length + 1);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    raw.close();
+                    return null;
+                }
+            });
+            for (final Zoom zl : zooms) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        zl.close();
+                        return null;
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+
+        private void invokeAll(List<Callable<Void>> tasks) throws Exception {
+            for (Future<Void> f : summarizerPool.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) throw (Exception) cause;
+                    throw e;
+                }
+            }
+        }
+    }
+
 
     /**
      * Class representing a tile of raw (as opposed to summarized) data.
      */
     class RawTile {
+        TileQueue queue;
         String dsName;
         int tileNumber;
         int tileStart;
@@ -390,7 +772,8 @@ public class Preprocessor implements DataConsumer {
         ArrayList<String> nameList;
         FloatArrayList[] dataArray;
 
-        RawTile(String dsName, int tileNumber, int start, int end) {
+        RawTile(TileQueue queue, String dsName, int tileNumber, int start, int end) {
+            this.queue = queue;
             this.dsName = dsName;
             this.tileNumber = tileNumber;
             this.tileStart = start;
@@ -446,7 +829,7 @@ public class Preprocessor implements DataConsumer {
 
                     String[] n = nameList == null ? null : nameList.toArray(new String[]{});
                     TDFBedTile tile = new TDFBedTile(tileStart, s, e, d, n);
-                    writer.writeTile(dsName, tileNumber, tile);
+                    writeTile(queue, dsName, tileNumber, tile);
                     startArray.clear();
                     endArray.clear();
                     for (int i = 0; i < dataArray.length; i++) {
@@ -470,11 +853,16 @@ public class Preprocessor implements DataConsumer {
         String dsName;
         TDFDataset dataset;
         int tileWidth;
+        TileQueue tiles;
         Map<Integer, RawTile> activeTiles = new HashMap();
 
-        Raw(String chr, int chrLength, int tileWidth) {
+        /**
+         * @param tiles queue for completed tiles,  null to write them directly
+         */
+        Raw(String chr, int chrLength, int tileWidth, TileQueue tiles) {
 
             this.tileWidth = tileWidth;
+            this.tiles = tiles;
             int nTiles = (int) (chrLength / tileWidth) + 1;
             dsName = "/" + chr + "/raw";
             dataset = writer.createDataset(dsName, TDFDataset.DataType.FLOAT, tileWidth, nTiles);
@@ -508,21 +896,11 @@ public class Preprocessor implements DataConsumer {
             for (int t = startTileNumber; t <= endTileNumber; t++) {
                 RawTile tile = activeTiles.get(t);
                 if (tile == null) {
-                    tile = new RawTile(dsName, t, t * tileWidth, (t + 1) * tileWidth);
+                    tile = new RawTile(tiles, dsName, t, t * tileWidth, (t + 1) * tileWidth);
                     activeTiles.put(t, tile);
                 }
                 tile.addData(start, end, data, name);
             }
-
-            // Update progress -- assume uniform distribution
-            if (statusMonitor != null && sizeEstimate > 0) {
-                int p = (int) ((100.0 * nPtsProcessed) / (1.5 * sizeEstimate));
-                if (p > percentComplete) {
-                    percentComplete = p;
-                    statusMonitor.setPercentComplete(percentComplete);
-                }
-            }
-            nPtsProcessed++;
         }
 
         void close() {
@@ -542,14 +920,19 @@ public class Preprocessor implements DataConsumer {
 
         int level;
         int tileWidth;
+        TileQueue tiles;
         LinkedHashMap<Integer, Tile> activeTiles = new LinkedHashMap();
         Map<WindowFunction, TDFDataset> datasets = new HashMap();
 
 
-        Zoom(String chr, int level, int chrLength) {
+        /**
+         * @param tiles queue for completed tiles,  null to write them directly
+         */
+        Zoom(String chr, int level, int chrLength, TileQueue tiles) {
             int nTiles = (int) Math.pow(2, level);
             tileWidth = chrLength / nTiles + 1;
             this.level = level;
+            this.tiles = tiles;
 
             // Create datasets -- one for each window function
             for (WindowFunction wf : windowFunctions) {
@@ -580,7 +963,7 @@ public class Preprocessor implements DataConsumer {
             for (int i = startTile; i <= endTile; i++) {
                 Tile t = activeTiles.get(i);
                 if (t == null) {
-                    t = new Tile(datasets, level, i, 700, tileWidth);
+                    t = new Tile(tiles, datasets, level, i, 700, tileWidth);
                     activeTiles.put(i, t);
                 }
                 t.addData(start, end, data);
@@ -609,8 +992,10 @@ public class Preprocessor implements DataConsumer {
         int nonEmptyBins;
         ListAccumulator[][] accumulators;
         Map<WindowFunction, TDFDataset> datasets;
+        TileQueue queue;
 
-        Tile(Map<WindowFunction, TDFDataset> datasets, int zoomLevel, int tileNumber, int nBins, int tileWidth) {
+        Tile(TileQueue queue, Map<WindowFunction, TDFDataset> datasets, int zoomLevel, int tileNumber, int nBins, int tileWidth) {
+            this.queue = queue;
             this.totalCount = 0;
             this.datasets = datasets;
             this.zoomLevel = zoomLevel;
@@ -710,7 +1095,7 @@ public class Preprocessor implements DataConsumer {
 
                 String dsName = datasets.get(wf).getName();
                 try {
-                    writer.writeTile(dsName, tileNumber, tile);
+                    writeTile(queue, dsName, tileNumber, tile);
                 } catch (IOException exc) {
                     log.error("Error writing tile: " + dsName + " [" + tileNumber + "]", exc);
                     throw new PreprocessingException(exc.getMessage());
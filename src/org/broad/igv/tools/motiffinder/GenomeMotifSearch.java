@@ -0,0 +1,224 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools.motiffinder;
+
+import htsjdk.tribble.Feature;
+import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.FeatureRangeIndex;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.track.FeatureSource;
+import org.broad.igv.ui.util.ProgressMonitor;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Search every chromosome of a genome for a fixed length motif.  Chromosomes are scanned in parallel, each read
+ * from the genome in chunks and matched with a {@link MotifMatcher}.  This is also the feature source for the
+ * resulting track:  hits for a chromosome become visible as soon as that chromosome is finished, so the track
+ * fills in while the search runs.
+ */
+public class GenomeMotifSearch implements FeatureSource<Feature> {
+
+    private static Logger log = Logger.getLogger(GenomeMotifSearch.class);
+
+    public static final int DEFAULT_MAX_HITS = 1000000;
+
+    static final int CHUNK_SIZE = 10000000;
+
+    public interface Listener {
+        /**
+         * Called, from a worker thread, when all hits on {@code chr} are available.
+         */
+        void chromosomeComplete(String chr);
+    }
+
+    private final Genome genome;
+    private final MotifMatcher matcher;
+    private final int maxHits;
+
+    private final Map<String, FeatureRangeIndex> hits = new ConcurrentHashMap<String, FeatureRangeIndex>();
+    private final AtomicInteger hitCount = new AtomicInteger();
+    private final AtomicLong basesScanned = new AtomicLong();
+    private volatile boolean truncated = false;
+    private volatile boolean cancelled = false;
+
+    public GenomeMotifSearch(Genome genome, MotifMatcher matcher) {
+        this(genome, matcher, DEFAULT_MAX_HITS);
+    }
+
+    public GenomeMotifSearch(Genome genome, MotifMatcher matcher, int maxHits) {
+        this.genome = genome;
+        this.matcher = matcher;
+        this.maxHits = maxHits;
+    }
+
+    /**
+     * Scan all chromosomes, blocking until complete.
+     *
+     * @param monitor  optional, receives percent complete by bases scanned
+     * @param listener optional
+     * @return the number of hits found
+     */
+    public int run(final ProgressMonitor monitor, final Listener listener) throws IOException {
+
+        List<String> chrNames = new ArrayList<String>();
+        long totalLength = 0;
+        for (String chr : genome.getAllChromosomeNames()) {
+            Chromosome chromosome = genome.getChromosome(chr);
+            if (chr.equals(Globals.CHR_ALL) || chromosome == null || chromosome.getLength() == 0) continue;
+            chrNames.add(chr);
+            totalLength += chromosome.getLength();
+        }
+        final long total = Math.max(1, totalLength);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chrNames.size());
+        for (final String chr : chrNames) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int length = genome.getChromosome(chr).getLength();
+                    List<Feature> features = searchChromosome(chr, length);
+                    hits.put(chr, new FeatureRangeIndex(features));
+                    long scanned = basesScanned.addAndGet(length);
+                    if (monitor != null) {
+                        monitor.fireProgress((int) ((100 * scanned) / total));
+                    }
+                    if (listener != null) {
+                        listener.chromosomeComplete(chr);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        List<Future<Void>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted searching for motif", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException("Error searching for motif", cause);
+            }
+        }
+
+        if (truncated) {
+            log.warn("Motif search stopped after " + maxHits + " hits, results are incomplete");
+        }
+        return Math.min(hitCount.get(), maxHits);
+    }
+
+    /**
+     * Scan one chromosome in chunks.  Each read extends {@code length - 1} bases past the chunk so motifs spanning
+     * a chunk boundary are found exactly once.
+     */
+    List<Feature> searchChromosome(final String chr, int chrLength) {
+
+        final List<Feature> features = new ArrayList<Feature>();
+        final int motifLength = matcher.getLength();
+        final Strand strand = matcher.getStrand();
+
+        for (int chunkStart = 0; chunkStart < chrLength && !cancelled && !truncated; chunkStart += CHUNK_SIZE) {
+            final int offset = chunkStart;
+            int chunkEnd = Math.min(chrLength, chunkStart + CHUNK_SIZE);
+            int readEnd = Math.min(chrLength, chunkEnd + motifLength - 1);
+            // Bypass the sequence cache:  it is not thread safe,  and the chunks would evict the current view
+            byte[] seq = genome.getSequence(chr, chunkStart, readEnd, false);
+            if (seq == null) break;
+
+            matcher.scan(seq, 0, chunkEnd - chunkStart, seq.length, new MotifMatcher.MatchHandler() {
+                @Override
+                public boolean match(int start) {
+                    if (hitCount.incrementAndGet() > maxHits) {
+                        truncated = true;
+                        return false;
+                    }
+                    int s = offset + start;
+                    features.add(new BasicFeature(chr, s, s + motifLength, strand));
+                    return !cancelled;
+                }
+            });
+        }
+        return features;
+    }
+
+    /**
+     * Stop the search.  {@link #run} returns soon after,  hits found so far are kept.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the search stopped at the hit limit
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public MotifMatcher getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    public Iterator<Feature> getFeatures(String chr, int start, int end) throws IOException {
+        FeatureRangeIndex index = hits.get(chr);
+        if (index == null) {
+            return Collections.<Feature>emptyList().iterator();
+        }
+        return index.getFeatures(start, end).iterator();
+    }
+
+    @Override
+    public List<LocusScore> getCoverageScores(String chr, int start, int end, int zoom) {
+        return null;
+    }
+
+    /**
+     * All hits are in memory, so there is no visibility window
+     */
+    @Override
+    public int getFeatureWindowSize() {
+        return 0;
+    }
+
+    @Override
+    public void setFeatureWindowSize(int size) {
+        // Ignored
+    }
+}
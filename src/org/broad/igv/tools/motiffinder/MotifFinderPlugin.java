@@ -25,19 +25,28 @@
 
 package org.broad.igv.tools.motiffinder;
 
+import org.apache.log4j.Logger;
 import org.broad.igv.feature.CachingFeatureSource;
 import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.track.FeatureTrack;
 import org.broad.igv.track.Track;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.PanelName;
+import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.ui.util.ProgressBar;
+import org.broad.igv.ui.util.ProgressMonitor;
+import org.broad.igv.util.LongRunningTask;
 import org.broad.igv.util.StringUtils;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -46,6 +55,8 @@ import java.util.List;
  */
 public class MotifFinderPlugin {
 
+    private static Logger log = Logger.getLogger(MotifFinderPlugin.class);
+
     /**
      * Add menu entry for activating SequenceMatchDialog
      */
@@ -65,6 +76,63 @@ public class MotifFinderPlugin {
         return menuItem;
     }
 
+    /**
+     * Add menu entry for searching the whole genome at once
+     */
+    public static JMenuItem getGenomeWideMenuItem() {
+        JMenuItem menuItem = new JMenuItem("Find Motif Genome-Wide...");
+        menuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                MotifFinderDialog dialog = new MotifFinderDialog(IGV.getMainFrame());
+                dialog.setVisible(true);
+
+                String[] patterns = dialog.getInputPattern();
+                if (patterns == null) return;
+                String[] posTrackNames = dialog.getPosTrackName();
+                String[] negTrackNames = dialog.getNegTrackName();
+                for (int pi = 0; pi < patterns.length; pi++) {
+                    final List<GenomeMotifSearch> searches = new ArrayList<GenomeMotifSearch>(2);
+                    final List<Track> tracks = generateGenomeWideTracks(patterns[pi], posTrackNames[pi], negTrackNames[pi], searches);
+                    if (tracks == null) {
+                        MessageUtils.showMessage("Genome-wide search supports fixed length motifs only " +
+                                "(IUPAC codes, character classes, and '.'): " + patterns[pi]);
+                        continue;
+                    }
+                    IGV.getInstance().addTracks(tracks, PanelName.FEATURE_PANEL);
+
+                    final ProgressMonitor monitor = new ProgressMonitor();
+                    final ProgressBar.ProgressDialog progressDialog =
+                            ProgressBar.showProgressDialog(IGV.getMainFrame(), "Searching genome for " + patterns[pi], monitor, false);
+                    progressDialog.addWindowListener(new WindowAdapter() {
+                        @Override
+                        public void windowClosing(WindowEvent e) {
+                            // Closing the progress dialog stops the search, hits found so far are kept
+                            for (GenomeMotifSearch search : searches) {
+                                search.cancel();
+                            }
+                        }
+                    });
+                    LongRunningTask.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                runGenomeWideSearches(searches, tracks, monitor);
+                            } catch (IOException e) {
+                                log.error("Error searching genome", e);
+                                MessageUtils.showMessage("Error searching genome: " + e.getMessage());
+                            } finally {
+                                progressDialog.setVisible(false);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+
+        return menuItem;
+    }
+
     static void handleDialogResult(MotifFinderDialog dialog) {
         String[] pattern = dialog.getInputPattern();
         if (pattern != null) {
@@ -125,6 +193,80 @@ public class MotifFinderPlugin {
         return trackList;
     }
 
+    /**
+     * Generate tracks for a genome-wide search of one pattern, do not add them to anything or start the search.
+     *
+     * @param searches receives the search backing each track, in track order
+     * @return the tracks, or null if the pattern is not a fixed length motif
+     */
+    static List<Track> generateGenomeWideTracks(String pattern, String posTrackName, String negTrackName,
+                                                List<GenomeMotifSearch> searches) {
+
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        String[] trackNames = {posTrackName, negTrackName};
+        Color[] colors = {null, Color.RED};
+        Strand[] strands = {Strand.POSITIVE, Strand.NEGATIVE};
+        List<Track> trackList = new ArrayList<Track>(2);
+
+        for (int ci = 0; ci < trackNames.length; ci++) {
+            String tName = trackNames[ci];
+            if (tName == null) continue;
+
+            MotifMatcher matcher = MotifMatcher.compile(pattern, strands[ci]);
+            if (matcher == null) return null;
+            GenomeMotifSearch search = new GenomeMotifSearch(genome, matcher);
+
+            FeatureTrack track = new FeatureTrack(tName, tName, search);
+            if (colors[ci] != null) track.setColor(colors[ci]);
+            track.setDisplayMode(Track.DisplayMode.SQUISHED);
+            trackList.add(track);
+            searches.add(search);
+        }
+        return trackList;
+    }
+
+    /**
+     * Run the searches one after the other (each is parallel over chromosomes), refreshing the tracks as
+     * chromosomes complete.
+     */
+    static void runGenomeWideSearches(List<GenomeMotifSearch> searches, List<Track> tracks, ProgressMonitor monitor)
+            throws IOException {
+
+        int nSearches = searches.size();
+        for (int i = 0; i < nSearches; i++) {
+            final FeatureTrack track = (FeatureTrack) tracks.get(i);
+            final int base = (100 * i) / nSearches;
+            ProgressMonitor searchMonitor = null;
+            if (monitor != null) {
+                final ProgressMonitor parent = monitor;
+                searchMonitor = new ProgressMonitor() {
+                    @Override
+                    public void fireProgress(int newValue) {
+                        parent.fireProgress(base + newValue / nSearches);
+                    }
+                };
+            }
+
+            GenomeMotifSearch search = searches.get(i);
+            search.run(searchMonitor, new GenomeMotifSearch.Listener() {
+                @Override
+                public void chromosomeComplete(String chr) {
+                    track.clearPackedFeatures();
+                    if (IGV.hasInstance()) {
+                        IGV.getInstance().repaint();
+                    }
+                }
+            });
+            if (search.isTruncated()) {
+                MessageUtils.showMessage("Search for " + track.getName() + " stopped after " +
+                        GenomeMotifSearch.DEFAULT_MAX_HITS + " matches, results are incomplete.");
+            }
+        }
+        if (monitor != null) {
+            monitor.fireProgress(100);
+        }
+    }
+
     public String run(List<String> args) {
         String cmd = args.get(0);
         if (cmd.equalsIgnoreCase("find")) {
@@ -135,6 +277,22 @@ public class MotifFinderPlugin {
             String[] negName = new String[]{shrtPattern + " Negative"};
             addTracksForPatterns(patterns, posName, negName);
             return "OK";
+        } else if (cmd.equalsIgnoreCase("findall")) {
+            String pattern = args.get(1);
+            String regex = MotifFinderDialog.checkIUPACPatternValid(pattern) ? MotifFinderDialog.convertMotifToRegex(pattern) : pattern;
+            String shrtPattern = StringUtils.checkLength(pattern, MotifFinderDialog.MaxTrackNameLength);
+            List<GenomeMotifSearch> searches = new ArrayList<GenomeMotifSearch>(2);
+            List<Track> tracks = generateGenomeWideTracks(regex, shrtPattern + " Positive", shrtPattern + " Negative", searches);
+            if (tracks == null) {
+                return "ERROR: genome-wide search requires a fixed length motif: " + pattern;
+            }
+            IGV.getInstance().addTracks(tracks, PanelName.FEATURE_PANEL);
+            try {
+                runGenomeWideSearches(searches, tracks, null);
+            } catch (IOException e) {
+                return "ERROR: " + e.getMessage();
+            }
+            return "OK";
         } else {
             return "ERROR: Unknown command " + cmd + " for plugin " + getClass().getName();
         }
@@ -134,8 +134,13 @@ public class MotifFinderSource implements FeatureSource<Feature> {
      *                 Always relative to positive strand
      * @param sequence The positive-strand nucleotide sequence. This may be altered during execution!
      * @return
+     * @see MotifMatcher
      */
     public static Iterator<Feature> search(String pattern, Strand strand, String chr, int posStart, byte[] sequence){
+        MotifMatcher motifMatcher = MotifMatcher.compile(pattern, strand);
+        if(motifMatcher != null){
+            return motifMatcher.findFeatures(chr, posStart, sequence).iterator();
+        }
         switch(strand){
             case POSITIVE:
                 return searchSingleStrand(pattern, strand, chr, posStart, sequence);
@@ -155,7 +160,7 @@ public class MotifFinderSource implements FeatureSource<Feature> {
     @Override
     public Iterator<Feature> getFeatures(String chr, int start, int end) throws IOException {
         byte[] seq = genome.getSequence(chr, start, end);
-        if(seq == null) Collections.emptyList().iterator();
+        if(seq == null) return Collections.<Feature>emptyList().iterator();
         return search(this.pattern, this.strand, chr, start, seq);
     }
 
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools.motiffinder;
+
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.tribble.Feature;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Strand;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bit-parallel ("shift-and") automaton for fixed length motifs, matched directly against sequence bytes.
+ * <p/>
+ * Supports the regular expressions produced from IUPAC motifs: a sequence of literal characters, character
+ * classes ({@code [AG]}) and wildcards ({@code .}), at most 64 positions long, matched case-insensitively.
+ * Negative strand motifs are compiled to the reverse complement automaton, so the positive strand sequence is scanned
+ * as is and matches are reported in positive strand coordinates, in ascending order.  All matches are reported,
+ * including overlapping ones.
+ */
+public class MotifMatcher {
+
+    public interface MatchHandler {
+        /**
+         * @param start offset of the match within the scanned array
+         * @return false to stop scanning
+         */
+        boolean match(int start);
+    }
+
+    private static final int MAX_LENGTH = 64;
+
+    private final long[] masks = new long[256];
+    private final int length;
+    private final long accept;
+    private final Strand strand;
+
+    private MotifMatcher(List<boolean[]> classes, Strand strand) {
+        this.strand = strand;
+        length = classes.size();
+        accept = 1L << (length - 1);
+        for (int i = 0; i < length; i++) {
+            boolean[] cls = strand == Strand.NEGATIVE ? classes.get(length - 1 - i) : classes.get(i);
+            long bit = 1L << i;
+            for (int b = 0; b < 256; b++) {
+                int test = strand == Strand.NEGATIVE ? SequenceUtil.complement((byte) b) & 0xff : b;
+                if (cls[test]) {
+                    masks[b] |= bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pattern regular expression
+     * @param strand  POSITIVE or NEGATIVE
+     * @return a matcher, or null if the pattern uses regular expression features other than literals, character
+     * classes and '.', or is longer than 64 positions.
+     */
+    public static MotifMatcher compile(String pattern, Strand strand) {
+
+        List<boolean[]> classes = new ArrayList<boolean[]>();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            boolean[] cls = new boolean[256];
+            if (c == '[') {
+                int close = pattern.indexOf(']', i + 1);
+                if (close < 0 || close == i + 1) return null;
+                for (int j = i + 1; j < close; j++) {
+                    char m = pattern.charAt(j);
+                    if (m == '^' || m == '-' || m == '\\' || m == '[' || m > 127) return null;
+                    addChar(cls, m);
+                }
+                i = close + 1;
+            } else if (c == '.') {
+                for (int b = 0; b < 256; b++) {
+                    cls[b] = b != '\n' && b != '\r';
+                }
+                i++;
+            } else if (Character.isLetterOrDigit(c) && c < 128) {
+                addChar(cls, c);
+                i++;
+            } else {
+                return null;
+            }
+            // A quantifier following this position makes the motif variable length
+            if (i < pattern.length() && "*+?{".indexOf(pattern.charAt(i)) >= 0) {
+                return null;
+            }
+            classes.add(cls);
+        }
+
+        if (classes.isEmpty() || classes.size() > MAX_LENGTH) {
+            return null;
+        }
+        return new MotifMatcher(classes, strand);
+    }
+
+    private static void addChar(boolean[] cls, char c) {
+        cls[Character.toUpperCase(c)] = true;
+        cls[Character.toLowerCase(c)] = true;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public Strand getStrand() {
+        return strand;
+    }
+
+    /**
+     * Report matches starting in [from, to).  Bytes up to {@code limit} are read so that matches extending past
+     * {@code to} are found.
+     *
+     * @return false if the handler stopped the scan
+     */
+    public boolean scan(byte[] sequence, int from, int to, int limit, MatchHandler handler) {
+        final long[] masks = this.masks;
+        final long accept = this.accept;
+        final int end = Math.min(limit, to + length - 1);
+        long state = 0;
+        for (int i = from; i < end; i++) {
+            state = ((state << 1) | 1L) & masks[sequence[i] & 0xff];
+            if ((state & accept) != 0) {
+                if (!handler.match(i - length + 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find all matches in the sequence
+     *
+     * @param chr      chromosome name for the features
+     * @param posStart position of the first base of {@code sequence}
+     */
+    public List<Feature> findFeatures(final String chr, final int posStart, byte[] sequence) {
+        final List<Feature> features = new ArrayList<Feature>();
+        scan(sequence, 0, sequence.length, sequence.length, new MatchHandler() {
+            @Override
+            public boolean match(int start) {
+                features.add(new BasicFeature(chr, posStart + start, posStart + start + length, strand));
+                return true;
+            }
+        });
+        return features;
+    }
+}
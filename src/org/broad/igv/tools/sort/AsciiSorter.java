@@ -53,6 +53,7 @@ public abstract class AsciiSorter implements Sorter {
     private File outputFile;
     private boolean writeStdOut = false;
     private int maxRecords = MAX_RECORDS_IN_RAM;
+    private int threads = 1;
 
     /**
      * Directory used for storing temporary data files
@@ -62,6 +63,12 @@ public abstract class AsciiSorter implements Sorter {
 
     protected Comparator<SortableRecord> comparator = getDefaultComparator();
 
+    /**
+     * True if records are sorted by the default comparator, which {@link ParallelRecordSorter} implements
+     * with primitive keys.
+     */
+    private boolean defaultOrder = true;
+
     /**
      * @param inputFile
      * @param outputFile If null, we write to stdout
@@ -80,11 +87,9 @@ public abstract class AsciiSorter implements Sorter {
 
     public void run() throws IOException {
 
-        FileInputStream fis = null;
         PrintWriter writer = null;
 
         try {
-            fis = new FileInputStream(inputFile);
             Writer rawWriter;
             if (writeStdOut) {
                 rawWriter = new OutputStreamWriter(System.out);
@@ -93,14 +98,40 @@ public abstract class AsciiSorter implements Sorter {
             }
             writer = new PrintWriter(new BufferedWriter(rawWriter));
 
-            SortableRecordCodec codec = new SortableRecordCodec();
+            run(writer);
+        } finally {
+            if (writer != null) writer.close();
+        }
+    }
 
-            SortingCollection cltn = SortingCollection.newInstance(SortableRecord.class, codec, comparator, maxRecords, tmpDir);
+    /**
+     * Sort the input file, writing the header and sorted records to {@code writer}, one line per call
+     * to {@link PrintWriter#println(String)}.  The writer is not closed.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void run(PrintWriter writer) throws IOException {
+
+        FileInputStream fis = null;
+
+        try {
+            fis = new FileInputStream(inputFile);
 
             Parser parser = getParser();
             AsciiLineReader reader = new AsciiLineReader(fis);
 
             String firstDataRow = writeHeader(reader, writer);
+
+            if (threads > 1 && defaultOrder) {
+                new ParallelRecordSorter(parser, threads, maxRecords, tmpDir).sort(firstDataRow, reader, writer);
+                return;
+            }
+
+            SortableRecordCodec codec = new SortableRecordCodec();
+
+            SortingCollection<SortableRecord> cltn = SortingCollection.newInstance(SortableRecord.class, codec, comparator, maxRecords, tmpDir);
+
             if (firstDataRow != null) {
                 cltn.add(parser.createRecord(firstDataRow));
             }
@@ -120,12 +151,12 @@ public abstract class AsciiSorter implements Sorter {
             iter.close();
         } finally {
             if (fis != null) fis.close();
-            if (writer != null) writer.close();
         }
     }
 
     public void setComparator(Comparator<SortableRecord> comparator) {
         this.comparator = comparator;
+        this.defaultOrder = false;
     }
 
     public static Comparator<SortableRecord> getDefaultComparator() {
@@ -166,6 +197,10 @@ public abstract class AsciiSorter implements Sorter {
         this.maxRecords = maxRecords;
     }
 
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void setWriteStdOut(boolean writeStdOut) {
         this.writeStdOut = writeStdOut;
     }
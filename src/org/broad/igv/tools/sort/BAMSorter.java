@@ -43,6 +43,7 @@ public class BAMSorter implements Sorter {
     File outputFile;
     private File tmpDir;
     private int maxRecords = -1;
+    private int threads = 1;
 
     public BAMSorter(File inputFile, File outputFile) {
         this.inputFile = inputFile;
@@ -64,6 +65,10 @@ public class BAMSorter implements Sorter {
         if(this.maxRecords > 0) {
             samFileWriterFactory.setMaxRecordsInRam(this.maxRecords);
         }
+        if(this.threads > 1) {
+            // Sorting is done by htsjdk, extra threads are used to compress the output
+            samFileWriterFactory.setUseAsyncIo(true);
+        }
         final SAMFileWriter writer = samFileWriterFactory.makeSAMOrBAMWriter(reader.getFileHeader(), false, outputFile);
 
         int count = 0;
@@ -96,6 +101,11 @@ public class BAMSorter implements Sorter {
         this.maxRecords = maxRecords;
     }
 
+    @Override
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     @Override
     public void setComparator(Comparator<SortableRecord> comparator) {
         throw new RuntimeException("Not implemented");
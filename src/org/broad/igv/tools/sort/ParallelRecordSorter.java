@@ -0,0 +1,549 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools.sort;
+
+import htsjdk.tribble.readers.AsciiLineReader;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.genome.ChromosomeNameComparator;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * External merge sort of text records by chromosome and start position, using multiple threads.
+ * <p/>
+ * Input lines are read on the calling thread and handed off in runs to a pool of workers, which parse
+ * them, sort them on primitive keys, and spill them to compressed temporary files.  The runs are then
+ * merged with a loser tree, in several passes if there are too many to keep open at once.  The output
+ * is identical to that of {@link AsciiSorter#getDefaultComparator()} with a stable sort.
+ */
+public class ParallelRecordSorter {
+
+    private static Logger log = Logger.getLogger(ParallelRecordSorter.class);
+
+    /**
+     * Maximum number of runs merged at once.  Each open run holds a buffered, compressed stream.
+     */
+    static int MAX_MERGE_WIDTH = 128;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Parser parser;
+    private final int threads;
+    private final int runSize;
+    private final File tmpDir;
+    private final Comparator<String> nameComparator = ChromosomeNameComparator.get();
+
+    /**
+     * @param parser     parser for records, must be safe to call from multiple threads
+     * @param threads    number of worker threads
+     * @param maxRecords maximum number of records held in memory, shared by all workers
+     * @param tmpDir     directory for temporary run files
+     */
+    public ParallelRecordSorter(Parser parser, int threads, int maxRecords, File tmpDir) {
+        this.parser = parser;
+        this.threads = Math.max(1, threads);
+        this.runSize = Math.max(1, maxRecords / this.threads);
+        this.tmpDir = tmpDir;
+    }
+
+    /**
+     * Sort the records remaining in {@code reader} and write them to {@code writer}.
+     *
+     * @param firstDataRow a record already read from {@code reader}, or null.
+     */
+    public void sort(String firstDataRow, AsciiLineReader reader, PrintWriter writer) throws IOException {
+
+        List<String> lines = new ArrayList<String>();
+        if (firstDataRow != null) {
+            lines.add(firstDataRow);
+        }
+
+        List<Run> runs = new ArrayList<Run>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Bound the number of runs in flight, each holds up to runSize records in memory
+            Deque<Future<Run>> pending = new ArrayDeque<Future<Run>>();
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                if (parser.isSkipped(nextLine)) {
+                    continue;
+                }
+                lines.add(nextLine);
+                if (lines.size() >= runSize) {
+                    if (pending.size() >= threads) {
+                        runs.add(getResult(pending.removeFirst()));
+                    }
+                    pending.add(pool.submit(new SpillTask(lines)));
+                    lines = new ArrayList<String>();
+                }
+            }
+
+            if (runs.isEmpty() && pending.isEmpty()) {
+                // Everything fits in one run, no need to touch the disk
+                SortedRun run = sortRun(lines);
+                for (String text : run.texts) {
+                    writer.println(text);
+                }
+                return;
+            }
+
+            if (lines.size() > 0) {
+                pending.add(pool.submit(new SpillTask(lines)));
+                lines = null;
+            }
+            while (!pending.isEmpty()) {
+                runs.add(getResult(pending.removeFirst()));
+            }
+
+            merge(runs, pool, writer);
+
+        } finally {
+            pool.shutdownNow();
+            for (Run run : runs) {
+                run.file.delete();
+            }
+        }
+    }
+
+    /**
+     * Merge the runs, in input order, writing the result to {@code writer}.  If there are more runs
+     * than can be opened at once consecutive groups are first merged, in parallel, to new runs.
+     */
+    private void merge(List<Run> runs, ForkJoinPool pool, PrintWriter writer) throws IOException {
+
+        // Global dictionary.  Chromosome names the comparator considers equal share a rank.
+        final Map<String, Integer> globalRanks = rankNames(allNames(runs));
+        final String[] names = globalRanks.keySet().toArray(new String[globalRanks.size()]);
+        final int[] ranks = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ranks[i] = globalRanks.get(names[i]);
+        }
+
+        while (runs.size() > MAX_MERGE_WIDTH) {
+            log.info("Merging " + runs.size() + " runs");
+            List<Callable<Run>> tasks = new ArrayList<Callable<Run>>();
+            for (int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH) {
+                final List<Run> group = runs.subList(i, Math.min(i + MAX_MERGE_WIDTH, runs.size()));
+                tasks.add(new Callable<Run>() {
+                    public Run call() throws IOException {
+                        RunWriter runWriter = new RunWriter(names, ranks);
+                        try {
+                            mergeRuns(group, globalRanks, runWriter);
+                        } finally {
+                            runWriter.close();
+                        }
+                        return runWriter.run;
+                    }
+                });
+            }
+            List<Run> merged = new ArrayList<Run>();
+            try {
+                for (Future<Run> future : pool.invokeAll(tasks)) {
+                    merged.add(getResult(future));
+                }
+            } finally {
+                for (Run run : runs) {
+                    run.file.delete();
+                }
+                runs.clear();
+                runs.addAll(merged);
+            }
+        }
+
+        mergeRuns(runs, globalRanks, new LineWriter(writer));
+    }
+
+    private void mergeRuns(List<Run> runs, Map<String, Integer> globalRanks, RecordSink sink) throws IOException {
+
+        RunReader[] readers = new RunReader[runs.size()];
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new RunReader(runs.get(i), globalRanks);
+                readers[i].next();
+            }
+
+            LoserTree tree = new LoserTree(readers);
+            RunReader head;
+            while ((head = readers[tree.winner()]).key != RunReader.EXHAUSTED) {
+                sink.add(head.key, head.text);
+                head.next();
+                tree.replay();
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) reader.close();
+            }
+        }
+    }
+
+    private Set<String> allNames(List<Run> runs) {
+        Set<String> names = new HashSet<String>();
+        for (Run run : runs) {
+            names.addAll(Arrays.asList(run.names));
+        }
+        return names;
+    }
+
+    /**
+     * Rank chromosome names in sort order.  The name comparator caches results and is not thread safe,
+     * so access is serialized.  The number of distinct names is small compared to the number of records.
+     */
+    private Map<String, Integer> rankNames(Collection<String> names) {
+        List<String> sorted = new ArrayList<String>(names);
+        Map<String, Integer> ranks = new LinkedHashMap<String, Integer>();
+        synchronized (nameComparator) {
+            Collections.sort(sorted, nameComparator);
+            int rank = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                if (i > 0 && nameComparator.compare(sorted.get(i - 1), sorted.get(i)) != 0) {
+                    rank++;
+                }
+                ranks.put(sorted.get(i), rank);
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Parse and sort a run of lines.
+     */
+    SortedRun sortRun(List<String> lines) {
+
+        int n = lines.size();
+        long[] keys = new long[n];
+        int[] chrIndeces = new int[n];
+        Map<String, Integer> nameIndeces = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < n; i++) {
+            SortableRecord record = parser.createRecord(lines.get(i));
+            Integer idx = nameIndeces.get(record.getChromosome());
+            if (idx == null) {
+                idx = nameIndeces.size();
+                nameIndeces.put(record.getChromosome(), idx);
+            }
+            chrIndeces[i] = idx;
+            keys[i] = record.getStart();
+        }
+
+        String[] names = nameIndeces.keySet().toArray(new String[nameIndeces.size()]);
+        Map<String, Integer> localRanks = rankNames(nameIndeces.keySet());
+        int[] ranks = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ranks[i] = localRanks.get(names[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            keys[i] = getKey(ranks[chrIndeces[i]], (int) keys[i]);
+        }
+
+        int[] order = sortedOrder(keys);
+        SortedRun run = new SortedRun(names, ranks, n);
+        for (int i = 0; i < n; i++) {
+            run.keys[i] = keys[order[i]];
+            run.texts[i] = lines.get(order[i]);
+        }
+        return run;
+    }
+
+    /**
+     * Sort key combining the chromosome rank and start position.  The sign bit of the start is flipped
+     * so negative positions order before positive ones in the unsigned low word.
+     */
+    static long getKey(int rank, int start) {
+        return ((long) rank << 32) | ((start ^ Integer.MIN_VALUE) & 0xffffffffL);
+    }
+
+    /**
+     * Return the indeces of {@code keys} in ascending order.  The sort is stable, records with
+     * equal keys keep their input order.
+     */
+    static int[] sortedOrder(long[] keys) {
+        int n = keys.length;
+        int[] order = new int[n];
+        int[] buffer = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        // Bottom-up merge sort.  Input is often partially sorted, in which case merges are skipped.
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(mid + width, n);
+                if (keys[order[mid - 1]] <= keys[order[mid]]) {
+                    continue;
+                }
+                System.arraycopy(order, lo, buffer, lo, width);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    order[k++] = keys[order[j]] < keys[buffer[i]] ? order[j++] : buffer[i++];
+                }
+                while (i < mid) {
+                    order[k++] = buffer[i++];
+                }
+            }
+        }
+        return order;
+    }
+
+    private static Run getResult(Future<Run> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted sorting");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Error sorting", cause);
+        }
+    }
+
+    private class SpillTask implements Callable<Run> {
+
+        private List<String> lines;
+
+        SpillTask(List<String> lines) {
+            this.lines = lines;
+        }
+
+        public Run call() throws IOException {
+            SortedRun sorted = sortRun(lines);
+            lines = null;
+            RunWriter runWriter = new RunWriter(sorted.names, sorted.ranks);
+            try {
+                for (int i = 0; i < sorted.texts.length; i++) {
+                    runWriter.add(sorted.keys[i], sorted.texts[i]);
+                }
+            } finally {
+                runWriter.close();
+            }
+            return runWriter.run;
+        }
+    }
+
+    /**
+     * Records of a run, sorted.  Keys are relative to the run's own chromosome ranks.
+     */
+    static class SortedRun {
+        final String[] names;
+        final int[] ranks;
+        final long[] keys;
+        final String[] texts;
+
+        SortedRun(String[] names, int[] ranks, int size) {
+            this.names = names;
+            this.ranks = ranks;
+            this.keys = new long[size];
+            this.texts = new String[size];
+        }
+    }
+
+    /**
+     * A sorted run spilled to disk, along with the chromosome names it contains and their ranks
+     * within the run.
+     */
+    static class Run {
+        final File file;
+        final String[] names;
+        final int[] ranks;
+
+        Run(File file, String[] names, int[] ranks) {
+            this.file = file;
+            this.names = names;
+            this.ranks = ranks;
+        }
+    }
+
+    interface RecordSink {
+        void add(long key, String text) throws IOException;
+    }
+
+    static class LineWriter implements RecordSink {
+        private final PrintWriter writer;
+
+        LineWriter(PrintWriter writer) {
+            this.writer = writer;
+        }
+
+        public void add(long key, String text) {
+            writer.println(text);
+        }
+    }
+
+    /**
+     * Writes a run file.  Records are stored as key, length, and UTF-8 bytes, as lines can exceed
+     * the 64k limit of writeUTF.
+     */
+    class RunWriter implements RecordSink {
+
+        final Run run;
+        private final Deflater deflater;
+        private final DataOutputStream out;
+
+        RunWriter(String[] names, int[] ranks) throws IOException {
+            File file = File.createTempFile("sort", ".tmp", tmpDir);
+            file.deleteOnExit();
+            run = new Run(file, names, ranks);
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(new FileOutputStream(file), deflater, BUFFER_SIZE), BUFFER_SIZE));
+        }
+
+        public void add(long key, String text) throws IOException {
+            byte[] bytes = text.getBytes("UTF-8");
+            out.writeLong(key);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a run file, translating keys to the global chromosome ranks.
+     */
+    static class RunReader {
+
+        static final long EXHAUSTED = Long.MAX_VALUE;
+
+        private final Inflater inflater;
+        private final DataInputStream in;
+        private final int[] globalRanks;
+
+        long key;
+        String text;
+
+        RunReader(Run run, Map<String, Integer> ranks) throws IOException {
+            int maxRank = 0;
+            for (int rank : run.ranks) {
+                maxRank = Math.max(maxRank, rank);
+            }
+            globalRanks = new int[maxRank + 1];
+            for (int i = 0; i < run.names.length; i++) {
+                globalRanks[run.ranks[i]] = ranks.get(run.names[i]);
+            }
+            inflater = new Inflater();
+            in = new DataInputStream(new BufferedInputStream(
+                    new InflaterInputStream(new FileInputStream(run.file), inflater, BUFFER_SIZE), BUFFER_SIZE));
+        }
+
+        void next() throws IOException {
+            long localKey;
+            try {
+                localKey = in.readLong();
+            } catch (EOFException e) {
+                key = EXHAUSTED;
+                text = null;
+                return;
+            }
+            key = ((long) globalRanks[(int) (localKey >>> 32)] << 32) | (localKey & 0xffffffffL);
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            text = new String(bytes, "UTF-8");
+        }
+
+        void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Tournament tree of losers for a k-way merge.  Ties are won by the lower run index, which keeps
+     * the merge stable.  Replacing the winner's record costs log(k) comparisons.
+     */
+    static class LoserTree {
+
+        private final RunReader[] readers;
+        private final int[] tree;
+
+        LoserTree(RunReader[] readers) {
+            this.readers = readers;
+            int k = readers.length;
+            tree = new int[Math.max(1, k)];
+
+            // Play the initial tournament bottom up.  Leaves are implicit at nodes k..2k-1.
+            int[] winners = new int[2 * k];
+            for (int i = 0; i < k; i++) {
+                winners[k + i] = i;
+            }
+            for (int node = k - 1; node > 0; node--) {
+                int left = winners[2 * node];
+                int right = winners[2 * node + 1];
+                if (beats(left, right)) {
+                    winners[node] = left;
+                    tree[node] = right;
+                } else {
+                    winners[node] = right;
+                    tree[node] = left;
+                }
+            }
+            tree[0] = k > 1 ? winners[1] : 0;
+        }
+
+        int winner() {
+            return tree[0];
+        }
+
+        /**
+         * Replay the matches on the path of the previous winner, whose record has changed.
+         */
+        void replay() {
+            int winner = tree[0];
+            for (int node = (winner + readers.length) >> 1; node > 0; node >>= 1) {
+                if (beats(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        private boolean beats(int a, int b) {
+            long keyA = readers[a].key;
+            long keyB = readers[b].key;
+            return keyA < keyB || (keyA == keyB && a < b);
+        }
+    }
+}
@@ -43,4 +43,6 @@ public interface Sorter {
 
     void setMaxRecords(int maxRecords);
 
+    void setThreads(int threads);
+
 }
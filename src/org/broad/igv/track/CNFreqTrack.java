@@ -35,7 +35,10 @@ import org.broad.igv.ui.panel.IGVPopupMenu;
 import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.util.ResourceLocator;
 
+import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.Arrays;
 import java.util.List;
 
@@ -126,6 +129,22 @@ public class CNFreqTrack extends AbstractTrack {
         List<Track> selfAsList = Arrays.asList((Track) this);
         TrackMenuUtils.addSharedItems(menu, selfAsList, false, false);
 
+        menu.addSeparator();
+        JMenuItem item = new JMenuItem("Set Amplification/Deletion Thresholds...");
+        item.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                Double ampThreshold = TrackMenuUtils.getDoubleInput("Amplification threshold (log2(cn/2))",
+                        data.getAmpThreshold());
+                if (ampThreshold == null) return;
+                Double delThreshold = TrackMenuUtils.getDoubleInput("Deletion threshold (log2(cn/2))",
+                        data.getDelThreshold());
+                if (delThreshold == null) return;
+                data.setParameters(data.getBinSize(), delThreshold.floatValue(), ampThreshold.floatValue());
+                TrackMenuUtils.refresh();
+            }
+        });
+        menu.add(item);
+
         return menu;
     }
 }
@@ -29,13 +29,13 @@ import org.broad.igv.Globals;
 import org.broad.igv.data.AbstractDataSource;
 import org.broad.igv.data.DataTile;
 import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.FeatureRangeIndex;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.IGVFeature;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.ui.panel.ReferenceFrame;
-import org.broad.igv.util.collections.CollUtils;
 import htsjdk.tribble.Feature;
 
 import java.util.*;
@@ -54,6 +54,11 @@ public class FeatureCollectionSource implements FeatureSource {
 
     private Map<String, List<htsjdk.tribble.Feature>> featureMap;
 
+    /**
+     * Range indexes over the lists in featureMap,  for overlap queries.
+     */
+    private Map<String, FeatureRangeIndex> indexMap;
+
     CoverageDataSource coverageData;
 
     Genome genome;
@@ -88,12 +93,11 @@ public class FeatureCollectionSource implements FeatureSource {
 
     public List<Feature> getFeatureList(String chr, int start, int end) {
 
-        List<Feature> features = featureMap.get(chr);
+        FeatureRangeIndex features = indexMap.get(chr);
         if (features == null) {
             return Collections.<Feature>emptyList();
         }
-        List<Feature> filteredFeatures = CollUtils.filter(features, FeatureUtils.getOverlapPredicate(chr, start, end));
-        return filteredFeatures;
+        return features.getFeatures(start, end);
     }
 
     @Override
@@ -122,6 +126,7 @@ public class FeatureCollectionSource implements FeatureSource {
         // Separate features by chromosome
 
             featureMap = new HashMap();
+            indexMap = new HashMap<String, FeatureRangeIndex>();
             for (Feature f : allFeatures) {
                 List<Feature> fList = featureMap.get(f.getChr());
                 if (fList == null) {
@@ -131,8 +136,9 @@ public class FeatureCollectionSource implements FeatureSource {
                 fList.add(f);
             }
 
-            for (List<Feature> featureList : featureMap.values()) {
-                FeatureUtils.sortFeatureList(featureList);
+            for (Map.Entry<String, List<Feature>> entry : featureMap.entrySet()) {
+                FeatureUtils.sortFeatureList(entry.getValue());
+                indexMap.put(entry.getKey(), new FeatureRangeIndex(entry.getValue(), false));
             }
 
             if (featureMap.size() < 100) {
@@ -144,6 +150,7 @@ public class FeatureCollectionSource implements FeatureSource {
     private void setFeatures(String chr, List<Feature> features) {
         FeatureUtils.sortFeatureList(features);
         featureMap.put(chr, features);
+        indexMap.put(chr, new FeatureRangeIndex(features, false));
     }
 
     public TrackType getType() {
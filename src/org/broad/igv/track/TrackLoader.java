@@ -1176,7 +1176,7 @@ public class TrackLoader {
 	// The "freq" track. TODO - make this optional
 	if ((ds.getType() == TrackType.COPY_NUMBER || ds.getType() == TrackType.CNV)
 		&& ds.getSampleNames().size() > 1) {
-	    FreqData fd = new FreqData(ds, genome);
+	    FreqData fd = new FreqData(ds, genome, locator);
 	    String freqTrackId = path;
 	    String freqTrackName = "CNV Summary";
 	    CNFreqTrack freqTrack = new CNFreqTrack(locator, freqTrackId, freqTrackName, fd);
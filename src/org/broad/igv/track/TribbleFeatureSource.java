@@ -39,7 +39,6 @@ import org.broad.igv.ui.util.IndexCreatorDialog;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.RuntimeUtils;
-import org.broad.igv.util.collections.CollUtils;
 import org.broad.igv.variant.VariantTrack;
 import htsjdk.tribble.*;
 import htsjdk.tribble.index.Index;
@@ -47,6 +46,7 @@ import htsjdk.tribble.index.Index;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * @author jrobinso
@@ -281,9 +281,9 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
     static class NonIndexedFeatureSource extends TribbleFeatureSource {
 
         /**
-         * Map containing all features.  Used only when there is no index.
+         * Map of chromosome -> all features on the chromosome.  Used only when there is no index.
          */
-        Map<String, List<Feature>> featureMap;
+        Map<String, FeatureRangeIndex> featureMap;
 
         CoverageDataSource coverageData;
 
@@ -291,7 +291,47 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
             super(locator, basicReader, codec, genome, false);
 
-            featureMap = new HashMap<String, List<Feature>>(25);
+            Map<String, List<Feature>> featureLists;
+            if (ParallelFeatureLoader.isParallelizable(locator, codec)) {
+                featureLists = (new ParallelFeatureLoader(locator, genome)).load();
+            } else {
+                featureLists = readFeatures(genome);
+            }
+
+            featureMap = new ConcurrentHashMap<String, FeatureRangeIndex>(featureLists.size() * 2);
+            if (featureLists.size() > 1) {
+                // Sort and index chromosomes concurrently
+                List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(featureLists.size());
+                for (final Map.Entry<String, List<Feature>> entry : featureLists.entrySet()) {
+                    tasks.add(Executors.callable(new Runnable() {
+                        public void run() {
+                            featureMap.put(entry.getKey(), new FeatureRangeIndex(entry.getValue()));
+                        }
+                    }));
+                }
+                for (Future<Object> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    try {
+                        result.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new RuntimeException("Error indexing features", e);
+                    }
+                }
+            } else {
+                for (Map.Entry<String, List<Feature>> entry : featureLists.entrySet()) {
+                    featureMap.put(entry.getKey(), new FeatureRangeIndex(entry.getValue()));
+                }
+            }
+
+            if (genome != null) {
+                coverageData = new CoverageDataSource(genome);
+                coverageData.computeGenomeCoverage();
+                sampleGenomeFeatures();
+            }
+        }
+
+        private Map<String, List<Feature>> readFeatures(Genome genome) throws IOException {
+
+            Map<String, List<Feature>> featureLists = new HashMap<String, List<Feature>>(25);
             Iterator<Feature> iter = null;
 
             try {
@@ -303,10 +343,10 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                     String seqName = f.getChr();
                     String igvChr = genome == null ? seqName : genome.getCanonicalChrName(seqName);
 
-                    List<Feature> featureList = featureMap.get(igvChr);
+                    List<Feature> featureList = featureLists.get(igvChr);
                     if (featureList == null) {
                         featureList = new ArrayList();
-                        featureMap.put(igvChr, featureList);
+                        featureLists.put(igvChr, featureList);
                     }
                     featureList.add(f);
                     if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
@@ -316,16 +356,7 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                     ((CloseableTribbleIterator) iter).close();
                 }
             }
-
-            for (List<Feature> featureList : featureMap.values()) {
-                FeatureUtils.sortFeatureList(featureList);
-            }
-
-            if (genome != null) {
-                coverageData = new CoverageDataSource(genome);
-                coverageData.computeGenomeCoverage();
-                sampleGenomeFeatures();
-            }
+            return featureLists;
         }
 
         @Override
@@ -346,12 +377,11 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
         @Override
         public Iterator getFeatures(String chr, int start, int end) throws IOException {
-            List<Feature> features = featureMap.get(chr);
+            FeatureRangeIndex features = featureMap.get(chr);
             if (features == null) {
                 return Collections.<Feature>emptyList().iterator();
             }
-            List<Feature> filteredFeatures = CollUtils.filter(features, FeatureUtils.getOverlapPredicate(chr, start, end));
-            return filteredFeatures.iterator();
+            return features.getFeatures(start, end).iterator();
 
         }
 
@@ -370,10 +400,11 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
             int sampleLength = (int) ((double) genome.getNominalLength() / (1000 * 700));
             int lastFeaturePosition = -1;
             for (String chr : genome.getLongChromosomeNames()) {
-                List<Feature> features = featureMap.get(chr);
+                FeatureRangeIndex features = featureMap.get(chr);
                 if (features != null) {
                     long offset = genome.getCumulativeOffset(chr);
-                    for (Feature feature : features) {
+                    for (int idx = 0; idx < features.size(); idx++) {
+                        Feature feature = features.getFeature(idx);
                         if (feature instanceof IGVFeature) {
                             IGVFeature f = (IGVFeature) feature;
                             int genStart = (int) ((offset + f.getStart()) / 1000);
@@ -395,7 +426,7 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                 }
             }
 
-            featureMap.put(Globals.CHR_ALL, chrAllFeatures);
+            featureMap.put(Globals.CHR_ALL, new FeatureRangeIndex(chrAllFeatures));
         }
 
         class CoverageDataSource extends AbstractDataSource {
@@ -456,11 +487,11 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                     ends[i] = starts[i] + windowSize;
                 }
                 float[] values = new float[nBins];
-                List<Feature> features = featureMap.get(chr);
+                FeatureRangeIndex features = featureMap.get(chr);
                 if (features != null) {
-                    for (Feature f : features) {
-                        int startBin = f.getStart() / windowSize;
-                        int endBin = f.getEnd() / windowSize;
+                    for (int idx = 0; idx < features.size(); idx++) {
+                        int startBin = features.getStart(idx) / windowSize;
+                        int endBin = features.getEnd(idx) / windowSize;
                         for (int i = startBin; i < endBin; i++) {
                             values[i] = values[i] + 1;
                             dataMax = Math.max(dataMax, values[i]);
@@ -487,12 +518,12 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
 
                 for (String chr : genome.getLongChromosomeNames()) {
-                    List<Feature> features = featureMap.get(chr);
+                    FeatureRangeIndex features = featureMap.get(chr);
                     if (features != null) {
                         long offset = genome.getCumulativeOffset(chr);
-                        for (Feature f : features) {
-                            int genStart = (int) ((offset + f.getStart()) / 1000);
-                            int genEnd = (int) ((offset + f.getEnd()) / 1000);
+                        for (int idx = 0; idx < features.size(); idx++) {
+                            int genStart = (int) ((offset + features.getStart(idx)) / 1000);
+                            int genEnd = (int) ((offset + features.getEnd(idx)) / 1000);
                             int binStart = Math.min(values.length - 1, (int) (genStart / step));
                             int binEnd = Math.min(values.length - 1, (int) (genEnd / step));
                             for (int i = binStart; i <= binEnd; i++) {
@@ -63,7 +63,6 @@ import org.broad.igv.track.FeatureTrack;
 import org.broad.igv.track.Track;
 import org.broad.igv.ui.panel.FrameManager;
 import org.broad.igv.ui.panel.ReferenceFrame;
-import org.broad.igv.ui.panel.RegionNavigatorDialog;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.variant.VariantTrack;
 
@@ -375,10 +374,8 @@ public class GlobalKeyDispatcher implements KeyEventDispatcher {
 			.getFocusOwner() == GIEDataDialog.getInstance().getTable()) {
 		    // merge selected rows
 		    selectedRegions = GIEDataDialog.getInstance().getSelectedRegions();
+		    // the session notifies the region tables once this event has been handled
 		    GIEDataDialog.getInstance().mergeRegions(selectedRegions);
-		    if (RegionNavigatorDialog.activeInstance != null)
-			RegionNavigatorDialog.activeInstance.synchRegions();
-		    IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		    IGV.getInstance().revalidateTrackPanels();
 		} else {
 		    IGV.getInstance().getContentPane().getCommandBar().getRoiMergeToggleButton().doClick();
@@ -411,10 +408,6 @@ public class GlobalKeyDispatcher implements KeyEventDispatcher {
 			    selectedRegions.add(r);
 		}
 		GIEDataDialog.getInstance().deleteRegions(selectedRegions);
-
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	};
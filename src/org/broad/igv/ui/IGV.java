@@ -82,7 +82,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -507,15 +506,8 @@ public class IGV implements IGVEventObserver {
     public void addROI(Collection<RegionOfInterest> rois) {
 	if (rois.size() == 0)
 	    return;
-	Iterator<RegionOfInterest> it = rois.iterator();
-	RegionOfInterest first = null;
-	while (it.hasNext()) {
-	    RegionOfInterest here = it.next();
-	    if (first == null)
-		first = here;
-	    session.addROI(here, false, !it.hasNext());
-	}
-	RegionOfInterestPanel.setSelectedRegion(first);
+	session.addROI(rois, true);
+	RegionOfInterestPanel.setSelectedRegion(rois.iterator().next());
 	doRefresh();
     }
 
@@ -1454,6 +1446,17 @@ public class IGV implements IGVEventObserver {
      * @return true if successful
      */
     public boolean restoreSessionSynchronous(String sessionPath, String locus, boolean merge) {
+	return restoreSessionSynchronous(sessionPath, locus, merge, true);
+    }
+
+    /**
+     * Load a session file in the current thread.
+     *
+     * @param restoreRegions
+     *            false to skip the regions of interest of an IGV session, if the caller loads them itself
+     */
+    public boolean restoreSessionSynchronous(String sessionPath, String locus, boolean merge,
+	    boolean restoreRegions) {
 	InputStream inputStream = null;
 	try {
 	    if (!merge) {
@@ -1468,6 +1471,9 @@ public class IGV implements IGVEventObserver {
 	    boolean isIndexAware = sessionPath.endsWith(".idxsession") || sessionPath.endsWith(".idxsession.txt");
 	    final SessionReader sessionReader = isUCSC ? new UCSCSessionReader(this)
 		    : (isIndexAware ? new IndexAwareSessionReader(this) : new IGVSessionReader(this));
+	    if (sessionReader instanceof IGVSessionReader) {
+		((IGVSessionReader) sessionReader).setRestoreRegions(restoreRegions);
+	    }
 
 	    sessionReader.loadSession(inputStream, session, sessionPath);
 
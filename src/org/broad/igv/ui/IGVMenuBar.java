@@ -296,6 +296,7 @@ public class IGVMenuBar extends JMenuBar implements IGVEventObserver {
 
 	// Motif finder
 	menuItems.add(MotifFinderPlugin.getMenuItem());
+	menuItems.add(MotifFinderPlugin.getGenomeWideMenuItem());
 
 	// BLAT
 	menuItems.add(BlatClient.getMenuItem());
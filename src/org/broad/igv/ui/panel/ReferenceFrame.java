@@ -139,11 +139,21 @@ public class ReferenceFrame {
      * @param otherFrame
      */
     public ReferenceFrame(ReferenceFrame otherFrame, IGVEventBus eventBus) {
+        this(otherFrame, otherFrame.name, eventBus);
+    }
+
+    /**
+     * Copy constructor with a new name.  Tracks cache loaded data by frame name,  so a renamed copy can be moved
+     * and loaded independently of the original -- used by batch snapshots.
+     *
+     * @param otherFrame
+     */
+    public ReferenceFrame(ReferenceFrame otherFrame, String name, IGVEventBus eventBus) {
         this.chrName = otherFrame.chrName;
         this.initialLocus = otherFrame.initialLocus;
         this.scale = otherFrame.scale;
         this.minZoom = otherFrame.minZoom;
-        this.name = otherFrame.name;
+        this.name = name;
         this.nTiles = otherFrame.nTiles;
         this.origin = otherFrame.origin;
         this.pixelX = otherFrame.pixelX;
@@ -45,6 +45,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Vector;
 
 import javax.swing.AbstractAction;
 import javax.swing.BoxLayout;
@@ -81,6 +82,7 @@ import org.broad.igv.feature.RegionOfInterest;
 import org.broad.igv.feature.Strand;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.lists.GeneList;
+import org.broad.igv.session.RegionsOfInterestChange;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.util.StringUtils;
 
@@ -164,6 +166,8 @@ public class RegionNavigatorDialog extends JDialog implements Observer, IGVEvent
     }
 
     public void update(Observable observable, Object object) {
+	if (object instanceof RegionsOfInterestChange && ((RegionsOfInterestChange) object).isEmpty())
+	    return;
 	synchRegions();
     }
 
@@ -223,6 +227,7 @@ public class RegionNavigatorDialog extends JDialog implements Observer, IGVEvent
      * Synchronize the regions ArrayList with the passed-in regionsCollection,
      * and update UI
      */
+    @SuppressWarnings("unchecked")
     public void synchRegions() {
 	// Indicate that we're synching regions, so that we don't respond to
 	// tableChanged events
@@ -230,17 +235,16 @@ public class RegionNavigatorDialog extends JDialog implements Observer, IGVEvent
 	int[] selectedRows = regionTable.getSelectedRows();
 	List<RegionOfInterest> regions = retrieveRegionsAsList();
 	regionTableModel = (DefaultTableModel) regionTable.getModel();
-	while (regionTableModel.getRowCount() > 0) {
-	    regionTableModel.removeRow(0);
-	}
-	regionTableModel.setRowCount(regions.size());
-	for (int i = 0; i < regions.size(); i++) {
-	    RegionOfInterest region = regions.get(i);
-
-	    regionTableModel.setValueAt(region.getDescription(), i, TABLE_COLINDEX_DESC);
-	    regionTableModel.setValueAt(region.getDisplayStart(), i, TABLE_COLINDEX_START);
-	    regionTableModel.setValueAt(region.getDisplayEnd(), i, TABLE_COLINDEX_END);
-	    regionTableModel.setValueAt(region.getChr(), i, TABLE_COLINDEX_CHR);
+	// fill the data vector directly; setValueAt would fire an event per cell
+	regionTableModel.getDataVector().clear();
+	for (RegionOfInterest region : regions) {
+	    Vector<Object> row = new Vector<Object>();
+	    row.setSize(regionTableModel.getColumnCount());
+	    row.set(TABLE_COLINDEX_DESC, region.getDescription());
+	    row.set(TABLE_COLINDEX_START, region.getDisplayStart());
+	    row.set(TABLE_COLINDEX_END, region.getDisplayEnd());
+	    row.set(TABLE_COLINDEX_CHR, region.getChr());
+	    regionTableModel.getDataVector().add(row);
 	}
 	// Done synching regions, allow ourselves to respond to tableChanged
 	// events
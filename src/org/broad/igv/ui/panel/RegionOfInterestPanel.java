@@ -40,6 +40,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -277,9 +278,6 @@ public class RegionOfInterestPanel extends JPanel {
 
 		GIEDataDialog.getInstance().mergeRegions(selectedRegions);
 
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	});
@@ -303,9 +301,6 @@ public class RegionOfInterestPanel extends JPanel {
 
 		GIEDataDialog.getInstance().mergeRegions(p, roi);
 
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	});
@@ -331,9 +326,6 @@ public class RegionOfInterestPanel extends JPanel {
 
 		GIEDataDialog.getInstance().mergeRegions(p, roi);
 
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	});
@@ -367,9 +359,6 @@ public class RegionOfInterestPanel extends JPanel {
 		todel.add(roi);
 		IGV.getInstance().getSession().removeROI(todel);
 
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	});
@@ -403,9 +392,6 @@ public class RegionOfInterestPanel extends JPanel {
 		todel.add(roi);
 		IGV.getInstance().getSession().removeROI(todel);
 
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	});
@@ -425,9 +411,6 @@ public class RegionOfInterestPanel extends JPanel {
 		    todel.add(roi);
 		    IGV.getInstance().getSession().removeROI(todel);
 
-		    if (RegionNavigatorDialog.activeInstance != null)
-			RegionNavigatorDialog.activeInstance.synchRegions();
-		    IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		    IGV.getInstance().revalidateTrackPanels();
 		}
 	    }
@@ -446,9 +429,6 @@ public class RegionOfInterestPanel extends JPanel {
 		    todel.add(roi);
 		    IGV.getInstance().getSession().removeROI(todel);
 
-		    if (RegionNavigatorDialog.activeInstance != null)
-			RegionNavigatorDialog.activeInstance.synchRegions();
-		    IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		    IGV.getInstance().revalidateTrackPanels();
 		}
 	    }
@@ -466,9 +446,6 @@ public class RegionOfInterestPanel extends JPanel {
 
 		IGV.getInstance().getSession().removeROI(selectedRegions);
 
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
 		IGV.getInstance().revalidateTrackPanels();
 	    }
 	});
@@ -482,7 +459,9 @@ public class RegionOfInterestPanel extends JPanel {
 	    public void actionPerformed(ActionEvent e) {
 		String desc = JOptionPane.showInputDialog(parent, "Edit region name:", roi.getDescription());
 		roi.setDescription(desc);
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
+		IGV.getInstance().getSession().getRegionsOfInterestObservable()
+			.regionsUpdated(Collections.singletonList(roi));
+		IGV.getInstance().getSession().getRegionsOfInterestObservable().notifyChange();
 
 	    }
 	});
@@ -494,7 +473,9 @@ public class RegionOfInterestPanel extends JPanel {
 	    public void actionPerformed(ActionEvent e) {
 		String desc = JOptionPane.showInputDialog(parent, "Edit region score:", roi.getScore());
 		roi.setScore(desc);
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
+		IGV.getInstance().getSession().getRegionsOfInterestObservable()
+			.regionsUpdated(Collections.singletonList(roi));
+		IGV.getInstance().getSession().getRegionsOfInterestObservable().notifyChange();
 
 	    }
 	});
@@ -511,7 +492,9 @@ public class RegionOfInterestPanel extends JPanel {
 		JOptionPane.showMessageDialog(null, jcb, "Edit region score:", JOptionPane.QUESTION_MESSAGE);
 		String strand = (String) jcb.getSelectedItem();
 		roi.setStrand(strand);
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
+		IGV.getInstance().getSession().getRegionsOfInterestObservable()
+			.regionsUpdated(Collections.singletonList(roi));
+		IGV.getInstance().getSession().getRegionsOfInterestObservable().notifyChange();
 
 	    }
 	});
@@ -557,11 +540,8 @@ public class RegionOfInterestPanel extends JPanel {
 	item = new JMenuItem("Delete");
 	item.addActionListener(new ActionListener() {
 	    public void actionPerformed(ActionEvent e) {
-		IGV.getInstance().getSession().getRegionsOfInterest(frame.getChrName()).remove(roi);
-		IGV.getInstance().getSession().getRegionsOfInterestObservable().setChangedAndNotify();
+		IGV.getInstance().getSession().removeROI(roi);
 		IGV.getInstance().revalidateTrackPanels();
-		if (RegionNavigatorDialog.activeInstance != null)
-		    RegionNavigatorDialog.activeInstance.synchRegions();
 	    }
 	});
 	popupMenu.add(item);
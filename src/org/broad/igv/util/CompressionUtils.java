@@ -29,6 +29,10 @@ import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
@@ -43,11 +47,23 @@ public class CompressionUtils {
 
     private static Logger log = Logger.getLogger(CompressionUtils.class);
 
+    /**
+     * Inflaters are expensive to create (they hold native memory),  so they are pooled and shared by all
+     * instances.  Decompression is thread safe and does not lock.
+     */
+    private static final int INFLATER_POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<Inflater> inflaterPool = new ArrayBlockingQueue<Inflater>(INFLATER_POOL_SIZE);
+
+    /**
+     * Per-thread output buffer,  reused between calls.  Buffers that grow beyond MAX_RETAINED_BUFFER_SIZE are
+     * not retained.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final ThreadLocal<byte[]> outputBuffer = new ThreadLocal<byte[]>();
+
     private Deflater deflater;
-    private Inflater decompressor;
 
     public CompressionUtils() {
-        decompressor = new Inflater();
         deflater = new Deflater();
         deflater.setLevel(Deflater.DEFAULT_COMPRESSION);
     }
@@ -61,46 +77,66 @@ public class CompressionUtils {
      * @param uncompressedChunkSize -- an estimate of the uncompressed chunk size.  This need not be exact.
      * @return
      */
-    public synchronized byte[] decompress(byte[] data, int uncompressedChunkSize) {
-
-        // mpd: new code
-        int rem = data.length;
-
-        // Create an expandable byte array to hold the decompressed data
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(uncompressedChunkSize);
-
-        // Decompress the data
-        byte[] outbuf = new byte[uncompressedChunkSize];
-
-        decompressor.reset();
-        decompressor.setInput(data);
-        while (rem > 0) {
+    public byte[] decompress(byte[] data, int uncompressedChunkSize) {
+        return inflate(data, 0, data.length, uncompressedChunkSize);
+    }
 
-            // If we are finished with the current chunk start a new one
-            if (decompressor.finished()) {
-                decompressor = new Inflater();
-                int offset = data.length - rem;
-                decompressor.setInput(data, offset, rem);
-            }
+    /**
+     * Decompress a block of zlib data,  which may be a concatenation of several compressed chunks.  Thread safe,
+     * uses a pooled Inflater and a per-thread output buffer.
+     *
+     * @param data                  -- buffer containing the compressed data
+     * @param offset                -- offset of the compressed data in the buffer
+     * @param length                -- number of compressed bytes
+     * @param uncompressedChunkSize -- an estimate of the uncompressed size.  This need not be exact.
+     * @return the decompressed data
+     */
+    public static byte[] inflate(byte[] data, int offset, int length, int uncompressedChunkSize) {
 
-            try {
-                int count = decompressor.inflate(outbuf, 0, outbuf.length);
-                rem = decompressor.getRemaining();
-                bos.write(outbuf, 0, count);
+        Inflater inflater = inflaterPool.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        byte[] outbuf = outputBuffer.get();
+        if (outbuf == null || outbuf.length < uncompressedChunkSize) {
+            outbuf = new byte[Math.max(1024, uncompressedChunkSize)];
         }
 
+        int total = 0;
         try {
-            bos.close();
-        } catch (IOException e) {
-            // Ignore -- no resources open
+            inflater.setInput(data, offset, length);
+            while (true) {
+                if (inflater.finished()) {
+                    // If we are finished with the current chunk start the next one,  if any
+                    int rem = inflater.getRemaining();
+                    if (rem <= 0) break;
+                    inflater.reset();
+                    inflater.setInput(data, offset + length - rem, rem);
+                }
+                if (total == outbuf.length) {
+                    outbuf = Arrays.copyOf(outbuf, 2 * outbuf.length);
+                }
+                int count = inflater.inflate(outbuf, total, outbuf.length - total);
+                total += count;
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            log.error("Error decompressing data", e);
+        } finally {
+            inflater.reset();
+            if (!inflaterPool.offer(inflater)) {
+                inflater.end();
+            }
+            if (outbuf.length <= MAX_RETAINED_BUFFER_SIZE) {
+                outputBuffer.set(outbuf);
+            }
         }
 
         // Return the decompressed data
-        return bos.toByteArray();
+        return Arrays.copyOf(outbuf, total);
     }
 
 
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.collections;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A least-recently-used cache bounded by the approximate memory footprint of its values rather than by
+ * entry count.  The caller supplies the size of each value when it is added.  Values larger than the whole
+ * budget are not cached.  Hit and miss counts are kept so callers can report cache effectiveness.
+ */
+public class MemoryBoundedCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+    private long maxBytes;
+    private long currentBytes;
+    private long hits;
+    private long misses;
+
+    public MemoryBoundedCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> e = map.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.value;
+    }
+
+    /**
+     * Test for the presence of a key without counting a hit or miss or changing the eviction order.
+     */
+    public synchronized boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    public synchronized void put(K key, V value, long nBytes) {
+        Entry<V> old = map.remove(key);
+        if (old != null) {
+            currentBytes -= old.nBytes;
+        }
+        if (value == null || nBytes > maxBytes) {
+            return;
+        }
+        map.put(key, new Entry<V>(value, nBytes));
+        currentBytes += nBytes;
+        trim();
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> e = map.remove(key);
+        if (e == null) {
+            return null;
+        }
+        currentBytes -= e.nBytes;
+        return e.value;
+    }
+
+    /**
+     * Remove all entries whose key matches the predicate.
+     */
+    public synchronized void removeIf(Predicate<? super K> predicate) {
+        Iterator<Map.Entry<K, Entry<V>>> iter = map.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<K, Entry<V>> e = iter.next();
+            if (predicate.test(e.getKey())) {
+                currentBytes -= e.getValue().nBytes;
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<K, Entry<V>>> iter = map.entrySet().iterator();
+        while (currentBytes > maxBytes && iter.hasNext()) {
+            currentBytes -= iter.next().getValue().nBytes;
+            iter.remove();
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long nBytes;
+
+        Entry(V value, long nBytes) {
+            this.value = value;
+            this.nBytes = nBytes;
+        }
+    }
+}
@@ -54,6 +54,18 @@ public class IGVSeekableStreamFactory implements ISeekableStreamFactory {
         return getStreamFor(url.toExternalForm());
     }
 
+    /**
+     * Return true if {@link #getStreamFor(String)} opens {@code path} as a plain local file.
+     *
+     * @param path
+     * @return
+     */
+    public static boolean isLocalFile(String path) {
+        String lcPath = path.toLowerCase();
+        return !path.endsWith(".list") &&
+                !(lcPath.startsWith("http:") || lcPath.startsWith("https:") || lcPath.startsWith("ftp:"));
+    }
+
     public SeekableStream getStreamFor(String path) throws IOException {
 
         if (path.endsWith(".list")) {
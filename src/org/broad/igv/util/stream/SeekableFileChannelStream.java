@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A seekable stream over a local file that can be shared between threads.  Reads are positional
+ * ({@link FileChannel#read(ByteBuffer, long)}) and the stream position is kept per thread,  so a
+ * seek followed by a read on one thread is not disturbed by another thread doing the same.  This lets
+ * readers that were written against a single SeekableStream serve concurrent queries without locking.
+ * <p/>
+ * Optionally small reads are served from a per-thread buffer,  for readers that read many small items.
+ */
+public class SeekableFileChannelStream extends SeekableStream {
+
+    private final File file;
+    private final FileChannel channel;
+    private final int bufferSize;
+
+    private final ThreadLocal<ThreadState> state = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    public SeekableFileChannelStream(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * @param bufferSize size of the per-thread read buffer,  0 for unbuffered reads
+     */
+    public SeekableFileChannelStream(File file, int bufferSize) throws IOException {
+        this.file = file;
+        this.bufferSize = bufferSize;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Read nBytes starting at position into a new array,  independent of the stream position.  If the end of
+     * file is reached first the remainder of the array is left as zeros.
+     */
+    public byte[] readBytes(long position, int nBytes) throws IOException {
+        byte[] buffer = new byte[nBytes];
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, position + bb.position()) < 0) break;
+        }
+        return buffer;
+    }
+
+    @Override
+    public long length() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        return state.get().position;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        state.get().position = position;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        ThreadState s = state.get();
+        int n;
+        if (length >= bufferSize) {
+            n = channel.read(ByteBuffer.wrap(buffer, offset, length), s.position);
+        } else {
+            if (s.position < s.bufferStart || s.position >= s.bufferStart + s.bufferLength) {
+                if (s.buffer == null) {
+                    s.buffer = new byte[bufferSize];
+                }
+                s.bufferStart = s.position;
+                s.bufferLength = Math.max(0, channel.read(ByteBuffer.wrap(s.buffer), s.position));
+                if (s.bufferLength == 0) {
+                    return -1;
+                }
+            }
+            int bufferOffset = (int) (s.position - s.bufferStart);
+            n = Math.min(length, s.bufferLength - bufferOffset);
+            System.arraycopy(s.buffer, bufferOffset, buffer, offset, n);
+        }
+        if (n > 0) {
+            s.position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n <= 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ThreadState s = state.get();
+        long skipped = Math.max(0, Math.min(n, length() - s.position));
+        s.position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public boolean eof() throws IOException {
+        return state.get().position >= channel.size();
+    }
+
+    @Override
+    public String getSource() {
+        return file.getAbsolutePath();
+    }
+
+    private static class ThreadState {
+        long position;
+        byte[] buffer;
+        long bufferStart;
+        int bufferLength;
+    }
+}
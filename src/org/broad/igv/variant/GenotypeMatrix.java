@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant;
+
+import htsjdk.variant.variantcontext.GenotypeType;
+import org.broad.igv.variant.vcf.VCFVariant;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Genotype calls of a variant track, one code per (variant, sample) cell.  Each code is the ordinal of the call's
+ * {@link GenotypeType}.  Samples are split into blocks of {@link #BLOCK_SIZE} consecutive display rows and a block is
+ * filled the first time any of its rows is drawn, so scrolling and repainting do not touch the genotype objects again.
+ * Blocks are stored run-length encoded, a strip of identical calls is drawn with a single fill.
+ */
+public class GenotypeMatrix {
+
+    public static final byte NO_CALL = (byte) GenotypeType.NO_CALL.ordinal();
+    public static final byte HOM_REF = (byte) GenotypeType.HOM_REF.ordinal();
+    public static final byte HET = (byte) GenotypeType.HET.ordinal();
+    public static final byte HOM_VAR = (byte) GenotypeType.HOM_VAR.ordinal();
+    public static final byte UNAVAILABLE = (byte) GenotypeType.UNAVAILABLE.ordinal();
+    public static final byte MIXED = (byte) GenotypeType.MIXED.ordinal();
+
+    public static final int BLOCK_SIZE = 256;
+
+    /**
+     * Upper bound on cached strips, the cache is reset when exceeded.
+     */
+    private static final int MAX_STRIPS = 50000;
+
+    private final List<String> samples;
+    private final Map<Variant, GenotypeStrip[]> strips = new IdentityHashMap<Variant, GenotypeStrip[]>();
+    private int stripCount;
+
+    /**
+     * @param samples all samples, in display order
+     */
+    public GenotypeMatrix(List<String> samples) {
+        this.samples = samples;
+    }
+
+    public List<String> getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the calls of the variant for the block of rows starting at block * BLOCK_SIZE
+     */
+    public GenotypeStrip getStrip(Variant variant, int block) {
+        GenotypeStrip[] variantStrips = strips.get(variant);
+        if (variantStrips == null) {
+            if (stripCount >= MAX_STRIPS) {
+                strips.clear();
+                stripCount = 0;
+            }
+            variantStrips = new GenotypeStrip[(samples.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            strips.put(variant, variantStrips);
+        }
+        GenotypeStrip strip = variantStrips[block];
+        if (strip == null) {
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(samples.size(), start + BLOCK_SIZE);
+            byte[] codes = new byte[end - start];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = getGenotypeCode(variant, samples.get(start + i));
+            }
+            strip = new GenotypeStrip(start, codes);
+            variantStrips[block] = strip;
+            stripCount++;
+        }
+        return strip;
+    }
+
+    public byte getGenotypeCode(Variant variant, int row) {
+        return getStrip(variant, row / BLOCK_SIZE).getCode(row);
+    }
+
+    public static byte getGenotypeCode(Variant variant, String sample) {
+        if (variant instanceof VCFVariant) {
+            return ((VCFVariant) variant).getGenotypeCode(sample);
+        }
+        Genotype genotype = variant.getGenotype(sample);
+        return genotype == null ? UNAVAILABLE : (byte) genotype.getType().ordinal();
+    }
+
+    /**
+     * Run-length encoded calls for a block of consecutive rows.  Runs are addressed by index, with row numbers in
+     * display (not block) coordinates.
+     */
+    public static class GenotypeStrip {
+
+        private final int[] runStarts;
+        private final byte[] runCodes;
+        private final int end;
+
+        GenotypeStrip(int start, byte[] codes) {
+            int nRuns = 0;
+            for (int i = 0; i < codes.length; i++) {
+                if (i == 0 || codes[i] != codes[i - 1]) nRuns++;
+            }
+            runStarts = new int[nRuns];
+            runCodes = new byte[nRuns];
+            int r = 0;
+            for (int i = 0; i < codes.length; i++) {
+                if (i == 0 || codes[i] != codes[i - 1]) {
+                    runStarts[r] = start + i;
+                    runCodes[r] = codes[i];
+                    r++;
+                }
+            }
+            end = start + codes.length;
+        }
+
+        public int getRunCount() {
+            return runStarts.length;
+        }
+
+        public int getRunStart(int run) {
+            return runStarts[run];
+        }
+
+        public int getRunEnd(int run) {
+            return run + 1 < runStarts.length ? runStarts[run + 1] : end;
+        }
+
+        public byte getRunCode(int run) {
+            return runCodes[run];
+        }
+
+        /**
+         * @return the index of the run containing the row
+         */
+        public int getRun(int row) {
+            int idx = Arrays.binarySearch(runStarts, row);
+            return idx >= 0 ? idx : -idx - 2;
+        }
+
+        public byte getCode(int row) {
+            return runCodes[getRun(row)];
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant;
+
+import java.util.*;
+
+/**
+ * Vertical layout of the genotype rows of a {@link VariantTrack}: samples in display order, split into groups
+ * separated by a fixed border.  Positions are relative to the top of the first genotype row and are computed
+ * arithmetically, so mapping a sample to its row, or a pixel to a sample, does not depend on the number of samples.
+ */
+class SampleLayout {
+
+    private final List<String> samples;
+    private final List<String> groupNames;
+    private final int[] groupStarts;
+    private final int borderWidth;
+    private final Map<String, Integer> rows;
+
+    /**
+     * @param groups      group name -> samples, in display order
+     * @param borderWidth height in pixels of the border following each group
+     */
+    SampleLayout(Map<String, List<String>> groups, int borderWidth) {
+        this.borderWidth = borderWidth;
+        samples = new ArrayList<String>();
+        groupNames = new ArrayList<String>(groups.keySet());
+        groupStarts = new int[groups.size() + 1];
+        int g = 0;
+        for (List<String> groupSamples : groups.values()) {
+            groupStarts[g++] = samples.size();
+            samples.addAll(groupSamples);
+        }
+        groupStarts[g] = samples.size();
+
+        rows = new HashMap<String, Integer>(samples.size() * 2);
+        for (int i = 0; i < samples.size(); i++) {
+            rows.put(samples.get(i), i);
+        }
+    }
+
+    /**
+     * Layout for a single ungrouped list of samples
+     */
+    SampleLayout(List<String> samples) {
+        this(Collections.singletonMap((String) null, samples), 0);
+    }
+
+    int size() {
+        return samples.size();
+    }
+
+    List<String> getSamples() {
+        return samples;
+    }
+
+    String getSample(int row) {
+        return samples.get(row);
+    }
+
+    /**
+     * @return the display row of the sample, or -1 if not present
+     */
+    int getRow(String sample) {
+        Integer row = rows.get(sample);
+        return row == null ? -1 : row;
+    }
+
+    int getGroupCount() {
+        return groupNames.size();
+    }
+
+    String getGroupName(int group) {
+        return groupNames.get(group);
+    }
+
+    int getGroupStart(int group) {
+        return groupStarts[group];
+    }
+
+    int getGroupEnd(int group) {
+        return groupStarts[group + 1];
+    }
+
+    int getGroupTop(int group, int bandHeight) {
+        return groupStarts[group] * bandHeight + group * borderWidth;
+    }
+
+    int getRowTop(int row, int bandHeight) {
+        return row * bandHeight + getGroup(row) * borderWidth;
+    }
+
+    int getGroup(int row) {
+        int idx = Arrays.binarySearch(groupStarts, 0, groupStarts.length - 1, row);
+        if (idx < 0) {
+            return -idx - 2;
+        }
+        // Skip over empty groups sharing the same start
+        while (idx + 1 < groupStarts.length - 1 && groupStarts[idx + 1] == row) idx++;
+        return idx;
+    }
+
+    /**
+     * @return the row at the pixel offset y, or -1 if y falls on a group border or outside the layout
+     */
+    int getRowAt(int y, int bandHeight) {
+        if (bandHeight <= 0 || y < 0) {
+            return -1;
+        }
+        for (int g = groupNames.size() - 1; g >= 0; g--) {
+            int groupTop = getGroupTop(g, bandHeight);
+            if (y >= groupTop) {
+                int row = groupStarts[g] + (y - groupTop) / bandHeight;
+                return row < groupStarts[g + 1] ? row : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first row of the group whose band ends below pixel offset y, clamped to the group
+     */
+    int getFirstVisibleRow(int group, int y, int bandHeight) {
+        int row = groupStarts[group] + Math.max(0, (y - getGroupTop(group, bandHeight)) / bandHeight);
+        return Math.min(row, groupStarts[group + 1]);
+    }
+
+    /**
+     * @return one past the last row of the group whose band starts above pixel offset y, clamped to the group
+     */
+    int getLastVisibleRow(int group, int y, int bandHeight) {
+        int offset = y - getGroupTop(group, bandHeight);
+        if (offset < 0) {
+            return groupStarts[group];
+        }
+        int row = groupStarts[group] + offset / bandHeight + 1;
+        return Math.min(row, groupStarts[group + 1]);
+    }
+}
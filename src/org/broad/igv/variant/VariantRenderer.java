@@ -295,6 +295,30 @@ public class VariantRenderer { //extends FeatureRenderer {
         }
     }
 
+    /**
+     * Render consecutive genotype bands sharing the same call, colored by genotype.  The call is given as a
+     * {@link GenotypeMatrix} code.
+     *
+     * @param pY         top of the first band
+     * @param nBands     number of bands
+     * @param bandHeight height of a single band
+     */
+    public void renderGenotypeRun(byte genotypeCode, boolean isFiltered, RenderContext context,
+                                  int pX0, int dX, int pY, int nBands, int bandHeight) {
+
+        updateColors();
+
+        Graphics2D g = context.getGraphic2DForColor(getGenotypeColor(genotypeCode, isFiltered));
+        if (track.getDisplayMode() == Track.DisplayMode.EXPANDED) {
+            int h = Math.max(1, bandHeight - 2);
+            for (int i = 0; i < nBands; i++) {
+                g.fillRect(pX0, pY + i * bandHeight + 1, dX, h);
+            }
+        } else {
+            g.fillRect(pX0, pY, dX, nBands * bandHeight);
+        }
+    }
+
     private Color convertMethylationRateToColor(float mr) {
         Color color;
         /*
@@ -331,6 +355,19 @@ public class VariantRenderer { //extends FeatureRenderer {
         return Color.white;
     }
 
+    public Color getGenotypeColor(byte genotypeCode, boolean isFiltered) {
+        if (genotypeCode == GenotypeMatrix.NO_CALL) {
+            return isFiltered ? colorNoCallAlpha : colorNoCall;
+        } else if (genotypeCode == GenotypeMatrix.HOM_REF) {
+            return isFiltered ? colorHomRefAlpha : colorHomRef;
+        } else if (genotypeCode == GenotypeMatrix.HOM_VAR) {
+            return isFiltered ? colorHomVarAlpha : colorHomVar;
+        } else if (genotypeCode == GenotypeMatrix.HET) {
+            return isFiltered ? colorHetAlpha : colorHet;
+        }
+        return Color.white;
+    }
+
     private void drawCenteredText(Graphics2D g, char[] chars, int x, int y,
                                   int w, int h) {
 
@@ -29,7 +29,6 @@
 package org.broad.igv.variant;
 
 import htsjdk.tribble.Feature;
-import htsjdk.variant.variantcontext.GenotypeType;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.IGVFeature;
@@ -161,11 +160,15 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
     private Variant selectedVariant;
 
     /**
-     * Transient list to keep track of the vertical bounds of each sample.  Set when rendering names, used to
-     * select correct sample for popup text.  We use a list and linear lookup for now, some sort of tree structure
-     * would be faster.
+     * Row layout of the samples in display order, used to map samples to pixel positions and back.  Rebuilt lazily
+     * after samples are sorted or regrouped.
      */
-    private List<SampleBounds> sampleBounds = new ArrayList<SampleBounds>();
+    private SampleLayout sampleLayout;
+
+    /**
+     * Genotype codes in the row order of sampleLayout, reused across repaints.
+     */
+    private GenotypeMatrix genotypeMatrix;
 
     /**
      * List of selected samples.
@@ -323,6 +326,7 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
 
 
         samplesByGroups.clear();
+        sampleLayout = null;
 
         groupByAttribute = newGroupByAttribute;
 
@@ -357,6 +361,17 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
         for (List<String> samples : samplesByGroups.values()) {
             Collections.sort(samples, comparator);
         }
+        sampleLayout = null;
+    }
+
+    private SampleLayout getSampleLayout() {
+        SampleLayout layout = sampleLayout;
+        if (layout == null) {
+            layout = grouped ? new SampleLayout(samplesByGroups, GROUP_BORDER_WIDTH) : new SampleLayout(allSamples);
+            genotypeMatrix = new GenotypeMatrix(layout.getSamples());
+            sampleLayout = layout;
+        }
+        return layout;
     }
 
 
@@ -529,7 +544,7 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
                         lastEndX = x + w - 1;
                     }
 
-                    renderSamples(g2D, visibleRectangle, variant, context, overallSampleRect, x, w);
+                    renderSamples(visibleRectangle, variant, context, overallSampleRect, x, w);
                     boolean isSelected = selectedVariant != null && selectedVariant == variant;
                     if (isSelected) {
                         Graphics2D selectionGraphics = context.getGraphic2DForColor(Color.black);
@@ -566,28 +581,47 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
         }
     }
 
-    private void renderSamples(Graphics2D g2D, Rectangle visibleRectangle, Variant variant, RenderContext context, Rectangle overallSampleRect, int x, int w) {
-
-        Rectangle tmpRect = new Rectangle(overallSampleRect);
-        tmpRect.height = getGenotypeBandHeight();
-        if (grouped) {
-            for (Map.Entry<String, List<String>> entry : samplesByGroups.entrySet()) {
-                for (String sample : entry.getValue()) {
-                    if (overallSampleRect.intersects(visibleRectangle)) {
-                        renderer.renderGenotypeBandSNP(variant, context, tmpRect, x, w, sample, coloring, hideFiltered);
-                    }
-                    tmpRect.y += tmpRect.height;
-                }
-                tmpRect.y += GROUP_BORDER_WIDTH;
-            }
-        } else {
+    /**
+     * Render the genotype bands of a variant.  Only rows intersecting the visible rectangle are visited.  When coloring
+     * by genotype, runs of samples with the same call are drawn together from the cached genotype matrix.
+     */
+    private void renderSamples(Rectangle visibleRectangle, Variant variant, RenderContext context,
+                               Rectangle overallSampleRect, int x, int w) {
 
-            for (String sample : allSamples) {
+        final int bandHeight = getGenotypeBandHeight();
+        if (bandHeight <= 0) {
+            return;
+        }
 
-                if (tmpRect.intersects(visibleRectangle)) {
-                    renderer.renderGenotypeBandSNP(variant, context, tmpRect, x, w, sample, coloring, hideFiltered);
+        SampleLayout layout = getSampleLayout();
+        GenotypeMatrix matrix = genotypeMatrix;
+        final int sampleTop = overallSampleRect.y;
+        final int visibleTop = visibleRectangle.y - sampleTop;
+        final int visibleBottom = (int) visibleRectangle.getMaxY() - sampleTop;
+        final boolean isFiltered = variant.isFiltered() && hideFiltered;
+        Rectangle tmpRect = new Rectangle(overallSampleRect.x, sampleTop, overallSampleRect.width, bandHeight);
+
+        for (int g = 0; g < layout.getGroupCount(); g++) {
+            int first = layout.getFirstVisibleRow(g, visibleTop, bandHeight);
+            int last = layout.getLastVisibleRow(g, visibleBottom, bandHeight);
+            int groupStart = layout.getGroupStart(g);
+            int groupTop = sampleTop + layout.getGroupTop(g, bandHeight);
+
+            if (coloring == ColorMode.GENOTYPE) {
+                int row = first;
+                while (row < last) {
+                    GenotypeMatrix.GenotypeStrip strip = matrix.getStrip(variant, row / GenotypeMatrix.BLOCK_SIZE);
+                    int run = strip.getRun(row);
+                    int runEnd = Math.min(strip.getRunEnd(run), last);
+                    renderer.renderGenotypeRun(strip.getRunCode(run), isFiltered, context, x, w,
+                            groupTop + (row - groupStart) * bandHeight, runEnd - row, bandHeight);
+                    row = runEnd;
+                }
+            } else {
+                for (int row = first; row < last; row++) {
+                    tmpRect.y = groupTop + (row - groupStart) * bandHeight;
+                    renderer.renderGenotypeBandSNP(variant, context, tmpRect, x, w, layout.getSample(row), coloring, hideFiltered);
                 }
-                tmpRect.y += tmpRect.height;
             }
         }
     }
@@ -653,8 +687,6 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
         rect.y += rect.height;
         rect.height = getGenotypeBandHeight();
         if (areFeaturesStacked()) {
-            // The sample bounds list will get reset when  the names are drawn.
-            sampleBounds.clear();
             drawBackground(g2D, rect, visibleRectangle, BackgroundType.NAME);
         }
 
@@ -689,46 +721,47 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
 
         rect.y += rect.height;
         rect.height = getGenotypeBandHeight();
-        Rectangle bandRectangle = new Rectangle(rect);  // Make copy for later use
-
 
         drawBackground(g2D, rect, visibleRectangle, BackgroundType.ATTRIBUTE);
-
-        if (grouped) {
-            for (List<String> sampleList : samplesByGroups.values()) {
-                renderAttributeBand(g2D, bandRectangle, visibleRectangle, attributeNames, sampleList, mouseRegions);
-                bandRectangle.y += GROUP_BORDER_WIDTH;
-
-            }
-        } else {
-            renderAttributeBand(g2D, bandRectangle, visibleRectangle, attributeNames, allSamples, mouseRegions);
-
-        }
+        renderAttributeBands(g2D, rect, visibleRectangle, attributeNames, mouseRegions);
 
         renderBoundaryLines(g2D, trackRectangle, visibleRectangle);
 
     }
 
     /**
-     * Render attributes for a sample.   This is mostly a copy of AbstractTrack.renderAttributes().
+     * Render sample attributes for the rows intersecting the visible rectangle.   This is mostly a copy of
+     * AbstractTrack.renderAttributes().
      * TODO -- refactor to eliminate duplicate code from AbstractTrack
      *
      * @param g2D
-     * @param bandRectangle
+     * @param bandRectangle    bounds of the first sample band
      * @param visibleRectangle
      * @param attributeNames
-     * @param sampleList
      * @param mouseRegions
-     * @return
      */
-    private void renderAttributeBand(Graphics2D g2D, Rectangle bandRectangle, Rectangle visibleRectangle,
-                                     List<String> attributeNames, List<String> sampleList, List<MouseableRegion> mouseRegions) {
+    private void renderAttributeBands(Graphics2D g2D, Rectangle bandRectangle, Rectangle visibleRectangle,
+                                      List<String> attributeNames, List<MouseableRegion> mouseRegions) {
 
+        final int bandHeight = bandRectangle.height;
+        if (bandHeight <= 0) {
+            return;
+        }
 
-        for (String sample : sampleList) {
+        SampleLayout layout = getSampleLayout();
+        final int sampleTop = bandRectangle.y;
+        final int visibleTop = visibleRectangle.y - sampleTop;
+        final int visibleBottom = (int) visibleRectangle.getMaxY() - sampleTop;
 
-            if (bandRectangle.intersects(visibleRectangle)) {
+        for (int g = 0; g < layout.getGroupCount(); g++) {
+            int last = layout.getLastVisibleRow(g, visibleBottom, bandHeight);
+            int groupStart = layout.getGroupStart(g);
+            int groupTop = sampleTop + layout.getGroupTop(g, bandHeight);
 
+            for (int row = layout.getFirstVisibleRow(g, visibleTop, bandHeight); row < last; row++) {
+
+                String sample = layout.getSample(row);
+                int y = groupTop + (row - groupStart) * bandHeight;
                 int x = bandRectangle.x;
 
                 for (String name : attributeNames) {
@@ -736,26 +769,23 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
                     String key = name.toUpperCase();
                     String attributeValue = AttributeManager.getInstance().getAttribute(sample, key);
                     if (attributeValue != null) {
-                        Rectangle rect = new Rectangle(x, bandRectangle.y, AttributeHeaderPanel.ATTRIBUTE_COLUMN_WIDTH,
-                                bandRectangle.height);
+                        Rectangle rect = new Rectangle(x, y, AttributeHeaderPanel.ATTRIBUTE_COLUMN_WIDTH, bandHeight);
                         g2D.setColor(AttributeManager.getInstance().getColor(key, attributeValue));
                         g2D.fill(rect);
                         mouseRegions.add(new MouseableRegion(rect, key, attributeValue));
                     }
                     x += AttributeHeaderPanel.ATTRIBUTE_COLUMN_WIDTH + AttributeHeaderPanel.COLUMN_BORDER_WIDTH;
                 }
-
             }
-            bandRectangle.y += bandRectangle.height;
-
         }
     }
 
     /**
-     * Draws the "greenbar" type background.  Also, rather bizarrely, draws the sample names.
+     * Draws the "greenbar" type background.  Also, rather bizarrely, draws the sample names.  Only rows
+     * intersecting the visible rectangle are drawn.
      *
      * @param g2D
-     * @param bandRectangle
+     * @param bandRectangle    bounds of the first sample band
      * @param visibleRectangle
      * @param type
      */
@@ -767,85 +797,60 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
             return;
         }
 
-        boolean coloredLast = true;
-        Rectangle textRectangle = new Rectangle(bandRectangle);
-        textRectangle.height--;
-
-        int bandFontSize = Math.min(fontSize, (int) bandRectangle.getHeight() - 1);
+        final int bandHeight = bandRectangle.height;
+        int bandFontSize = Math.min(fontSize, bandHeight - 1);
         Font font = FontManager.getFont(bandFontSize);
         Font oldFont = g2D.getFont();
         g2D.setFont(font);
 
-        if (grouped) {
-            for (Map.Entry<String, List<String>> sampleGroup : samplesByGroups.entrySet()) {
-                int y0 = bandRectangle.y;
-
-                List<String> sampleList = sampleGroup.getValue();
-                coloredLast = colorBand(g2D, bandRectangle, visibleRectangle, coloredLast, textRectangle, sampleList, type);
-                bandRectangle.y += GROUP_BORDER_WIDTH;
-
-                if (type == BackgroundType.NAME && bandRectangle.height < 3) {
-                    String group = sampleGroup.getKey();
-                    if (group != null) {
-                        g2D.setColor(Color.black);
-                        g2D.setFont(oldFont);
-                        int y2 = bandRectangle.y;
-                        Rectangle textRect = new Rectangle(bandRectangle.x, y0, bandRectangle.width, y2 - y0);
-                        GraphicUtils.drawWrappedText(group, textRect, g2D, true);
-                    }
-                }
+        SampleLayout layout = getSampleLayout();
+        final int sampleTop = bandRectangle.y;
+        final int visibleTop = visibleRectangle.y - sampleTop;
+        final int visibleBottom = (int) visibleRectangle.getMaxY() - sampleTop;
+        Rectangle rect = new Rectangle(bandRectangle);
+
+        for (int g = 0; g < layout.getGroupCount(); g++) {
+            int last = layout.getLastVisibleRow(g, visibleBottom, bandHeight);
+            int groupStart = layout.getGroupStart(g);
+            int groupTop = sampleTop + layout.getGroupTop(g, bandHeight);
 
+            for (int row = layout.getFirstVisibleRow(g, visibleTop, bandHeight); row < last; row++) {
+                rect.y = groupTop + (row - groupStart) * bandHeight;
+                colorBand(g2D, rect, row, layout.getSample(row), type);
             }
 
-        } else {
-            coloredLast = colorBand(g2D, bandRectangle, visibleRectangle, coloredLast, textRectangle, allSamples, type);
+            if (grouped && type == BackgroundType.NAME && bandHeight < 3) {
+                String group = layout.getGroupName(g);
+                int groupHeight = (layout.getGroupEnd(g) - groupStart) * bandHeight + GROUP_BORDER_WIDTH;
+                Rectangle textRect = new Rectangle(bandRectangle.x, groupTop, bandRectangle.width, groupHeight);
+                if (group != null && textRect.intersects(visibleRectangle)) {
+                    g2D.setColor(Color.black);
+                    g2D.setFont(oldFont);
+                    GraphicUtils.drawWrappedText(group, textRect, g2D, true);
+                    g2D.setFont(font);
+                }
+            }
         }
         g2D.setFont(oldFont);
     }
 
 
-    private boolean colorBand(Graphics2D g2D, Rectangle bandRectangle, Rectangle visibleRectangle,
-                              boolean coloredLast, Rectangle textRectangle, List<String> sampleList,
-                              BackgroundType type) {
+    private void colorBand(Graphics2D g2D, Rectangle bandRectangle, int row, String sample, BackgroundType type) {
 
         boolean supressFill = (getDisplayMode() == DisplayMode.SQUISHED && squishedHeight < 4);
 
-        for (String sample : sampleList) {
-
-            if (coloredLast) {
-                g2D.setColor(BAND1_COLOR);
-                coloredLast = false;
-            } else {
-                g2D.setColor(BAND2_COLOR);
-                coloredLast = true;
+        g2D.setColor(row % 2 == 0 ? BAND1_COLOR : BAND2_COLOR);
+        if (!supressFill) {
+            if (selectedSamples.contains(sample) && hasAlignmentFiles()) {
+                g2D.setColor(SELECTED_BAND_COLOR);
             }
+            g2D.fillRect(bandRectangle.x, bandRectangle.y, bandRectangle.width, bandRectangle.height);
+        }
 
-            if (bandRectangle.intersects(visibleRectangle)) {
-                if (!supressFill) {
-                    if (selectedSamples.contains(sample) && hasAlignmentFiles()) {
-                        g2D.setColor(SELECTED_BAND_COLOR);
-                    }
-                    g2D.fillRect(bandRectangle.x, bandRectangle.y, bandRectangle.width, bandRectangle.height);
-                }
-
-                if (type == BackgroundType.NAME) {
-                    sampleBounds.add(new SampleBounds(bandRectangle.y, bandRectangle.y + bandRectangle.height, sample));
-                    if (bandRectangle.height >= 3) {
-                        String printName = sample;
-                        textRectangle.y = bandRectangle.y + 1;
-                        g2D.setColor(Color.black);
-                        GraphicUtils.drawWrappedText(printName, bandRectangle, g2D, false);
-                    }
-
-
-                } else if (type == BackgroundType.ATTRIBUTE) {
-
-                }
-            }
-            bandRectangle.y += bandRectangle.height;
-
+        if (type == BackgroundType.NAME && bandRectangle.height >= 3) {
+            g2D.setColor(Color.black);
+            GraphicUtils.drawWrappedText(sample, bandRectangle, g2D, false);
         }
-        return coloredLast;
     }
 
     public boolean getHideFiltered() {
@@ -903,7 +908,6 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
 
                 return getVariantToolTip(variant);
             } else {
-                if (sampleBounds == null || sampleBounds.isEmpty()) return null;
                 String sample = getSampleAtPosition(mouseY);
                 if (sample == null) return null;
 
@@ -923,39 +927,9 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
      * @return
      */
     private String getSampleAtPosition(int y) {
-
-        if (sampleBounds.isEmpty()) {
-            return null;
-        }
-        String sample = null;
-
-        // Estimate the index of the sample, then do a linear search
-        final int sampleCount = sampleBounds.size();
-
-        int firstSampleY = sampleBounds.get(0).top;
-        int idx = Math.max(0, Math.min((y - firstSampleY) / getGenotypeBandHeight(), sampleCount - 1));
-
-        SampleBounds bounds = sampleBounds.get(idx);
-        if (bounds.contains(y)) {
-            sample = bounds.sample;
-        } else if (bounds.top > y) {
-            while (idx > 0) {
-                idx--;
-                bounds = sampleBounds.get(idx);
-                if (bounds.contains(y)) {
-                    sample = bounds.sample;
-                }
-            }
-        } else {
-            while (idx < sampleCount - 1) {
-                idx++;
-                bounds = sampleBounds.get(idx);
-                if (bounds.contains(y)) {
-                    sample = bounds.sample;
-                }
-            }
-        }
-        return sample;
+        SampleLayout layout = getSampleLayout();
+        int row = layout.getRowAt(y - (top + getVariantsHeight()), getGenotypeBandHeight());
+        return row < 0 ? null : layout.getSample(row);
     }
 
     /**
@@ -1286,9 +1260,9 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
             int lastIDX = getSampleIndex(selectedSamples.get(selectedSamples.size() - 1));
             if (idx >= 0 && lastIDX >= 0) {
                 selectedSamples.clear();
+                SampleLayout layout = getSampleLayout();
                 for (int i = Math.min(idx, lastIDX); i <= (Math.max(idx, lastIDX)); i++) {
-                    String s = sampleBounds.get(i).sample;
-                    selectedSamples.add(s);
+                    selectedSamples.add(layout.getSample(i));
                 }
             }
 
@@ -1310,19 +1284,13 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
 
 
     /**
-     * Return the index for the sample.  This is a very inefficient implementation, but we don't care because
-     * these lists are tiny.
+     * Return the display row of the sample, or -1 if the sample is not in this track.
      *
      * @param sample
      * @return
      */
     private int getSampleIndex(String sample) {
-        for (int i = 0; i < sampleBounds.size(); i++) {
-            if (sample.equals(sampleBounds.get(i).sample)) {
-                return i;
-            }
-        }
-        return -1;
+        return sample == null ? -1 : getSampleLayout().getRow(sample);
     }
 
     /**
@@ -1345,24 +1313,21 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
                 String selectedSample = getSampleAtPosition(te.getMouseEvent().getY());
                 if (selectedSample != null) {
                     // Select clicked sample and all other adjacent with the same genotype
-                    Genotype genotype = f.getGenotype(selectedSample);
-                    GenotypeType type = genotype.getType();
-
+                    SampleLayout layout = getSampleLayout();
+                    GenotypeMatrix matrix = genotypeMatrix;
                     int idx = getSampleIndex(selectedSample);
-                    for (int i = idx; i < sampleBounds.size(); i++) {
-                        String s = sampleBounds.get(i).sample;
-                        Genotype gt = f.getGenotype(s);
-                        if (gt != null && type == gt.getType()) {
-                            selectedSamples.add(s);
+                    byte type = matrix.getGenotypeCode(f, idx);
+
+                    for (int i = idx; i < layout.size(); i++) {
+                        if (type == matrix.getGenotypeCode(f, i)) {
+                            selectedSamples.add(layout.getSample(i));
                         } else {
                             break;
                         }
                     }
                     for (int i = idx - 1; i >= 0; i--) {
-                        String s = sampleBounds.get(i).sample;
-                        Genotype gt = f.getGenotype(s);
-                        if (gt != null && type == gt.getType()) {
-                            selectedSamples.add(s);
+                        if (type == matrix.getGenotypeCode(f, i)) {
+                            selectedSamples.add(layout.getSample(i));
                         } else {
                             break;
                         }
@@ -1460,21 +1425,6 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
         }
     }
 
-    static class SampleBounds {
-        int top;
-        int bottom;
-        String sample;
-
-        SampleBounds(int top, int bottom, String sample) {
-            this.top = top;
-            this.bottom = bottom;
-            this.sample = sample;
-        }
-
-        boolean contains(int y) {
-            return y >= top && y <= bottom;
-        }
-    }
 
     @SubtlyImportant
     private static VariantTrack getNextTrack() {
@@ -0,0 +1,265 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypeType;
+import org.apache.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The FORMAT and sample columns of a single VCF record, kept as raw bytes.  Nothing is parsed until a
+ * sample is requested, and then only that sample's column is decoded.  For cohort files with thousands of samples
+ * this avoids building a genotype object per sample per record when only a few dozen rows are ever on screen.
+ * <p/>
+ * The sample name list and name -> column index map are shared by all records of a file.
+ */
+public class VCFGenotypeColumns {
+
+    private static final Logger log = Logger.getLogger(VCFGenotypeColumns.class);
+
+    /**
+     * Samples for which a malformed genotype has been logged, so a bad column does not flood the log.
+     */
+    private static final Set<String> malformedGTSamples =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final byte TAB = '\t';
+    private static final byte COLON = ':';
+
+    private static final byte UNAVAILABLE = (byte) GenotypeType.UNAVAILABLE.ordinal();
+    private static final byte NO_CALL = (byte) GenotypeType.NO_CALL.ordinal();
+    private static final byte HOM_REF = (byte) GenotypeType.HOM_REF.ordinal();
+    private static final byte HET = (byte) GenotypeType.HET.ordinal();
+    private static final byte HOM_VAR = (byte) GenotypeType.HOM_VAR.ordinal();
+    private static final byte MIXED = (byte) GenotypeType.MIXED.ordinal();
+
+    private final byte[] data;
+    private final List<String> sampleNames;
+    private final Map<String, Integer> sampleIndex;
+
+    /**
+     * Start offset of each column (FORMAT first), followed by data.length + 1 as a sentinel.  Computed on first use.
+     */
+    private int[] offsets;
+
+    public VCFGenotypeColumns(String columns, List<String> sampleNames, Map<String, Integer> sampleIndex) {
+        this.data = columns.getBytes(StandardCharsets.ISO_8859_1);
+        this.sampleNames = sampleNames;
+        this.sampleIndex = sampleIndex;
+    }
+
+    public List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    /**
+     * @return the column index of the sample, or -1 if the sample is not in this file
+     */
+    public int getSampleIndex(String sample) {
+        Integer idx = sampleIndex.get(sample);
+        return idx == null ? -1 : idx;
+    }
+
+    private int[] getOffsets() {
+        if (offsets == null) {
+            int[] tmp = new int[sampleNames.size() + 2];
+            int n = 1;
+            for (int i = 0; i < data.length && n < tmp.length - 1; i++) {
+                if (data[i] == TAB) {
+                    tmp[n++] = i + 1;
+                }
+            }
+            // Records with fewer columns than the header are padded with empty columns
+            Arrays.fill(tmp, n, tmp.length, data.length + 1);
+            offsets = tmp;
+        }
+        return offsets;
+    }
+
+    private boolean hasSample(int sample) {
+        int[] offsets = getOffsets();
+        return sample >= 0 && sample + 2 < offsets.length && offsets[sample + 1] <= data.length;
+    }
+
+    /**
+     * @return the genotype type of the sample, encoded as the {@link GenotypeType} ordinal.  Only the GT subfield
+     * is inspected; no objects are allocated.
+     */
+    public byte getGenotypeCode(int sample) {
+
+        if (!hasSample(sample) || !isGTFirst()) {
+            return UNAVAILABLE;
+        }
+
+        int[] offsets = getOffsets();
+        int end = offsets[sample + 2] - 1;
+        int nAlleles = 0;
+        int nNoCall = 0;
+        int first = -1;
+        boolean multiple = false;
+        int i = offsets[sample + 1];
+        while (i < end && data[i] != COLON) {
+            byte b = data[i];
+            if (b == '.') {
+                nAlleles++;
+                nNoCall++;
+                i++;
+            } else if (b >= '0' && b <= '9') {
+                int allele = 0;
+                while (i < end && data[i] >= '0' && data[i] <= '9') {
+                    allele = 10 * allele + (data[i] - '0');
+                    i++;
+                }
+                nAlleles++;
+                if (first < 0) {
+                    first = allele;
+                } else if (allele != first) {
+                    multiple = true;
+                }
+            } else {
+                i++;   // Allele separator, '/' or '|'
+            }
+        }
+
+        if (nAlleles == 0) {
+            return UNAVAILABLE;
+        } else if (nNoCall == nAlleles) {
+            return NO_CALL;
+        } else if (nNoCall > 0) {
+            return MIXED;
+        } else if (multiple) {
+            return HET;
+        } else {
+            return first == 0 ? HOM_REF : HOM_VAR;
+        }
+    }
+
+    private boolean isGTFirst() {
+        return data.length >= 2 && data[0] == 'G' && data[1] == 'T' && (data.length == 2 || data[2] == COLON || data[2] == TAB);
+    }
+
+    /**
+     * Fully decode a single sample.
+     *
+     * @param sample  column index of the sample
+     * @param alleles the record's alleles, reference first
+     * @return the genotype, or null if the record has no column for the sample
+     */
+    public Genotype decodeGenotype(int sample, List<Allele> alleles) {
+
+        if (!hasSample(sample)) {
+            return null;
+        }
+
+        int[] offsets = getOffsets();
+        String[] keys = getString(0, offsets[1] - 1).split(":");
+        String[] values = getString(offsets[sample + 1], offsets[sample + 2] - 1).split(":");
+
+        GenotypeBuilder gb = new GenotypeBuilder(sampleNames.get(sample));
+        gb.maxAttributes(keys.length);
+        for (int k = 0; k < keys.length && k < values.length; k++) {
+            String key = keys[k];
+            String value = values[k];
+            if (key.equals("GT")) {
+                try {
+                    parseGT(gb, value, alleles);
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    // Genotypes are decoded when drawn, show the sample as not called rather than failing the record
+                    String name = sampleNames.get(sample);
+                    if (malformedGTSamples.add(name)) {
+                        log.warn("Malformed genotype '" + value + "' for sample " + name + ", treating as no call");
+                    }
+                    gb.alleles(Collections.singletonList(Allele.NO_CALL));
+                }
+            } else if (value.equals(".") || value.isEmpty()) {
+                continue;
+            } else if (key.equals("FT")) {
+                if (!value.equals("PASS")) gb.filters(Arrays.asList(value.split(";")));
+            } else {
+                try {
+                    if (key.equals("GQ")) {
+                        gb.GQ((int) Math.round(Double.parseDouble(value)));
+                    } else if (key.equals("DP")) {
+                        gb.DP(Integer.parseInt(value));
+                    } else if (key.equals("AD")) {
+                        gb.AD(parseInts(value));
+                    } else if (key.equals("PL")) {
+                        gb.PL(parseInts(value));
+                    } else {
+                        gb.attribute(key, value);
+                    }
+                } catch (NumberFormatException e) {
+                    // IGV is permissive about malformed numeric fields, keep the raw value for display
+                    gb.attribute(key, value);
+                }
+            }
+        }
+        return gb.make();
+    }
+
+    private static void parseGT(GenotypeBuilder gb, String gt, List<Allele> alleles) {
+        String[] tokens = gt.split("[/|]", -1);
+        List<Allele> gtAlleles = new ArrayList<Allele>(tokens.length);
+        for (String t : tokens) {
+            if (t.equals(".")) {
+                gtAlleles.add(Allele.NO_CALL);
+            } else {
+                int idx = Integer.parseInt(t);
+                if (idx >= alleles.size()) {
+                    throw new NumberFormatException("Allele index " + idx + " out of range in genotype " + gt);
+                }
+                gtAlleles.add(alleles.get(idx));
+            }
+        }
+        gb.alleles(gtAlleles);
+        gb.phased(gt.indexOf('|') >= 0);
+    }
+
+    private static int[] parseInts(String value) {
+        String[] tokens = value.split(",");
+        int[] result = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            result[i] = Integer.parseInt(tokens[i]);
+        }
+        return result;
+    }
+
+    private String getString(int start, int end) {
+        return end <= start ? "" : new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+}
@@ -30,6 +30,7 @@ import org.broad.igv.variant.Allele;
 import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.Variant;
 import org.broad.igv.variant.VariantTrack;
+import htsjdk.variant.variantcontext.GenotypeType;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 
@@ -55,23 +56,41 @@ public class VCFVariant implements Variant {
 
     Map<String, VCFGenotype> genotypeMap;
 
+    /**
+     * Raw sample columns, non-null if genotypes are decoded on demand.  In that case the variant context carries
+     * no genotypes and genotypeMap caches only the samples requested so far.
+     */
+    private VCFGenotypeColumns genotypeColumns;
+
     private int start = -1;
     private int totalAlleleCount = 0;
 
     public VCFVariant(VariantContext variantContext, String chr) {
+        this(variantContext, chr, null);
+    }
+
+    /**
+     * @param variantContext  the record, without genotypes if genotypeColumns is supplied
+     * @param chr
+     * @param genotypeColumns undecoded sample columns, or null if variantContext carries the genotypes
+     */
+    public VCFVariant(VariantContext variantContext, String chr, VCFGenotypeColumns genotypeColumns) {
         this.variantContext = variantContext;
         this.chr = chr;
+        this.genotypeColumns = genotypeColumns;
         init();
     }
 
     private void init() {
 
-        // Copy the genotype map.  Calls to variantContext.getGenotype() are expensive
         genotypeMap = new HashMap<String, VCFGenotype>();
-        for (String sample : getSampleNames()) {
-            htsjdk.variant.variantcontext.Genotype genotype = variantContext.getGenotype(sample);
-            VCFGenotype vcfGenotype = genotype == null ? null : new VCFGenotype(genotype);
-            genotypeMap.put(sample, vcfGenotype);
+        if (genotypeColumns == null) {
+            // Copy the genotype map.  Calls to variantContext.getGenotype() are expensive
+            for (String sample : getSampleNames()) {
+                htsjdk.variant.variantcontext.Genotype genotype = variantContext.getGenotype(sample);
+                VCFGenotype vcfGenotype = genotype == null ? null : new VCFGenotype(genotype);
+                genotypeMap.put(sample, vcfGenotype);
+            }
         }
 
 //        zygosityCount = new ZygosityCount();
@@ -267,7 +286,7 @@ public class VCFVariant implements Variant {
     }
 
     public Collection<String> getSampleNames() {
-        return variantContext.getSampleNames();
+        return genotypeColumns == null ? variantContext.getSampleNames() : genotypeColumns.getSampleNames();
     }
 
     public Map<String, Object> getAttributes() {
@@ -276,7 +295,33 @@ public class VCFVariant implements Variant {
 
     @Override
     public Genotype getGenotype(String sample) {
-        return genotypeMap.get(sample);
+        if (genotypeColumns == null) {
+            return genotypeMap.get(sample);
+        }
+        synchronized (this) {
+            VCFGenotype genotype = genotypeMap.get(sample);
+            if (genotype == null) {
+                htsjdk.variant.variantcontext.Genotype gt =
+                        genotypeColumns.decodeGenotype(genotypeColumns.getSampleIndex(sample), variantContext.getAlleles());
+                if (gt != null) {
+                    genotype = new VCFGenotype(gt);
+                    genotypeMap.put(sample, genotype);
+                }
+            }
+            return genotype;
+        }
+    }
+
+    /**
+     * Return the genotype type of a sample as its {@link GenotypeType} ordinal.  When genotypes are decoded on demand
+     * this reads the GT field directly, without materializing the genotype.
+     */
+    public byte getGenotypeCode(String sample) {
+        if (genotypeColumns != null) {
+            return genotypeColumns.getGenotypeCode(genotypeColumns.getSampleIndex(sample));
+        }
+        Genotype genotype = genotypeMap.get(sample);
+        return (byte) (genotype == null ? GenotypeType.UNAVAILABLE : genotype.getType()).ordinal();
     }
 
     public Collection<String> getFilters() {
@@ -326,8 +371,21 @@ public class VCFVariant implements Variant {
         return variantContext.getSource();
     }
 
+    /**
+     * Return the underlying variant context.  If genotypes are decoded on demand a new context with all genotypes
+     * decoded is built, this is expensive for large cohorts.
+     */
     public VariantContext getVariantContext() {
-        return variantContext;
+        if (genotypeColumns == null) {
+            return variantContext;
+        }
+        List<String> samples = genotypeColumns.getSampleNames();
+        List<htsjdk.variant.variantcontext.Genotype> genotypes = new ArrayList<htsjdk.variant.variantcontext.Genotype>(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            htsjdk.variant.variantcontext.Genotype gt = genotypeColumns.decodeGenotype(i, variantContext.getAlleles());
+            if (gt != null) genotypes.add(gt);
+        }
+        return new VariantContextBuilder(variantContext).genotypes(genotypes).make();
     }
 
     public static VariantContext getVariantContext(Variant variant) {
@@ -0,0 +1,58 @@
+package at.ccri.varan.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.broad.igv.feature.RegionOfInterest;
+import org.junit.Test;
+
+public class IntervalToolsTest {
+
+    private static List<RegionOfInterest> rois(Object... chrStartEnd) {
+	List<RegionOfInterest> ret = new ArrayList<>();
+	for (int i = 0; i < chrStartEnd.length; i += 3)
+	    ret.add(new RegionOfInterest((String) chrStartEnd[i], (Integer) chrStartEnd[i + 1],
+		    (Integer) chrStartEnd[i + 2], "r" + i / 3));
+	return ret;
+    }
+
+    private static String toString(List<RegionOfInterest> reg) {
+	StringBuilder buf = new StringBuilder();
+	for (RegionOfInterest r : reg)
+	    buf.append(r.getChr() + ":" + r.getStart() + "-" + r.getEnd() + "(" + r.getDescription() + ") ");
+	return buf.toString().trim();
+    }
+
+    @Test
+    public void testIntersect() {
+	List<RegionOfInterest> reg = rois("chr1", 100, 200, "chr1", 300, 400, "chr2", 0, 50);
+	// overlapping and adjacent mask intervals are merged before clipping
+	List<RegionOfInterest> mask = rois("chr1", 150, 250, "chr1", 120, 160, "chr1", 350, 360, "chr1", 360, 370,
+		"chr3", 0, 1000);
+	assertEquals("chr1:120-200(r0) chr1:350-370(r1)", toString(IntervalTools.intersect(reg, mask)));
+    }
+
+    @Test
+    public void testSubtract() {
+	List<RegionOfInterest> reg = rois("chr1", 100, 200, "chr1", 300, 400, "chr2", 0, 50);
+	List<RegionOfInterest> mask = rois("chr1", 150, 160, "chr1", 170, 180, "chr1", 250, 300, "chr1", 390, 500);
+	assertEquals("chr1:100-150(r0) chr1:160-170(r0) chr1:180-200(r0) chr1:300-390(r1) chr2:0-50(r2)",
+		toString(IntervalTools.subtract(reg, mask)));
+    }
+
+    @Test
+    public void testCollapse() {
+	List<RegionOfInterest> reg = rois("chr1", 300, 400, "chr1", 100, 200, "chr1", 150, 250);
+	assertEquals(Arrays.asList("chr1:100-250", "chr1:300-400"), coords(IntervalTools.collapse(reg)));
+    }
+
+    private static List<String> coords(List<RegionOfInterest> reg) {
+	List<String> ret = new ArrayList<>();
+	for (RegionOfInterest r : reg)
+	    ret.add(r.getChr() + ":" + r.getStart() + "-" + r.getEnd());
+	return ret;
+    }
+}
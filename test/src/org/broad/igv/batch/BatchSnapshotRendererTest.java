@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.batch;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class BatchSnapshotRendererTest {
+
+    /**
+     * Regions sharing a slot must not overlap,  every region is written once,  and a failing region does not stop
+     * the others.
+     */
+    @Test
+    public void testRun() throws Exception {
+
+        final int n = 200;
+        final int nSlots = 6;
+        final AtomicIntegerArray slotOwner = new AtomicIntegerArray(nSlots);
+        for (int s = 0; s < nSlots; s++) slotOwner.set(s, -1);
+        final AtomicBoolean overlap = new AtomicBoolean(false);
+        final Set<Integer> written = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+        ExecutorService loader = Executors.newFixedThreadPool(3);
+        ExecutorService painter = Executors.newFixedThreadPool(3);
+        ExecutorService encoder = Executors.newFixedThreadPool(3);
+        try {
+            int count = BatchSnapshotRenderer.run(n, nSlots, new BatchSnapshotRenderer.Stages<Integer>() {
+                @Override
+                public void load(int index, int slot) throws Exception {
+                    if (!slotOwner.compareAndSet(slot, -1, index)) overlap.set(true);
+                    Thread.sleep(index % 3);
+                }
+
+                @Override
+                public Integer paint(int index, int slot) {
+                    if (slotOwner.get(slot) != index) overlap.set(true);
+                    if (index == 17) {
+                        slotOwner.set(slot, -1);
+                        throw new RuntimeException("test failure");
+                    }
+                    return index * 2;
+                }
+
+                @Override
+                public void write(int index, Integer snapshot) throws Exception {
+                    assertEquals(index * 2, snapshot.intValue());
+                    Thread.sleep(index % 2);
+                    written.add(index);
+                    slotOwner.set(index % nSlots, -1);
+                }
+            }, loader, painter, encoder);
+
+            assertEquals(n - 1, count);
+        } finally {
+            loader.shutdown();
+            painter.shutdown();
+            encoder.shutdown();
+        }
+
+        assertFalse(overlap.get());
+        assertEquals(n - 1, written.size());
+        assertFalse(written.contains(17));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.batch;
+
+import org.broad.igv.Globals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Read-only commands need no IGV instance, so these tests run headless.
+ */
+public class CommandListenerPipelineTest {
+
+    private static final int port = 60152;
+
+    @Before
+    public void setUp() throws Exception {
+        CommandListener.halt();
+        CommandListener.start(port);
+        // Wait for the server socket
+        for (int i = 0; i < 50 && CommandListener.currentListenerPort != port; i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CommandListener.halt();
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        // An idle client must not block others
+        Socket idle = new Socket("localhost", port);
+        Socket socket = new Socket("localhost", port);
+        try {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            socket.setSoTimeout(5000);
+
+            out.println("echo");
+            assertEquals("echo", in.readLine());
+            out.println("version");
+            assertEquals(Globals.VERSION, in.readLine());
+        } finally {
+            socket.close();
+            idle.close();
+        }
+    }
+
+    @Test
+    public void testPipelinedCommands() throws Exception {
+        Socket socket = new Socket("localhost", port);
+        try {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            socket.setSoTimeout(5000);
+
+            int n = 20;
+            for (int i = 0; i < n; i++) {
+                out.println("#" + i + (i % 2 == 0 ? " echo" : " version"));
+            }
+
+            // Responses may arrive in any order
+            Set<String> responses = new HashSet<String>();
+            for (int i = 0; i < n; i++) {
+                responses.add(in.readLine());
+            }
+            for (int i = 0; i < n; i++) {
+                String expected = "#" + i + " " + (i % 2 == 0 ? "echo" : Globals.VERSION);
+                assertEquals(expected, responses.contains(expected) ? expected : responses.toString());
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * "gie wait" sent through /execute must not block the command queue that runs the job it waits for.
+     */
+    @Test
+    public void testExecuteSubmitAndWait() throws Exception {
+        String submitted = httpGet("/execute?command=gie%20submit%20list");
+        assertTrue(submitted, submitted.matches("OK \\d+"));
+        String id = submitted.substring(3);
+
+        String result = httpGet("/execute?command=gie%20wait%20" + id);
+        assertNotNull(result);
+        assertTrue(result, !result.equals("RUNNING") && !result.startsWith("ERROR: unknown job"));
+
+
+        // Wait for a job which is queued behind the wait request.  Each serialized command takes a while,  so the
+        // second submit is still queued when the wait arrives.
+        final int nextId = Integer.parseInt(id) + 2;
+        Thread first = submitInBackground();
+        Thread.sleep(300);
+        Thread second = submitInBackground();
+        Thread.sleep(300);
+        assertNotNull(httpGet("/execute?command=gie%20wait%20" + nextId));
+        first.join();
+        second.join();
+
+        // The command queue is still alive
+        assertTrue(httpGet("/execute?command=gie%20submit%20list").matches("OK \\d+"));
+    }
+
+    private static Thread submitInBackground() {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    httpGet("/execute?command=gie%20submit%20list");
+                } catch (Exception e) {
+                    // The final submit fails if the queue is blocked
+                }
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static String httpGet(String path) throws Exception {
+        Socket socket = new Socket("localhost", port);
+        try {
+            socket.setSoTimeout(20000);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out.print("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            out.flush();
+            // Skip the response headers
+            String line;
+            while ((line = in.readLine()) != null && line.length() > 0) {
+            }
+            return in.readLine();
+        } finally {
+            socket.close();
+        }
+    }
+}
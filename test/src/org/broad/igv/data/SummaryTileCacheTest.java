@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.data;
+
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SummaryTileCacheTest {
+
+    @Test
+    public void testCacheHitsAcrossWindowFunctions() {
+
+        CountingDataSource ds = new CountingDataSource();
+
+        List<LocusScore> scores = ds.getSummaryScoresForRange("chr1", 0, 50000, 1);
+        assertTrue(scores.size() > 0);
+        int computed = ds.rawDataCount;
+        assertTrue(computed > 0);
+
+        long hits = SummaryTileCache.getHitCount();
+        ds.getSummaryScoresForRange("chr1", 0, 50000, 1);
+        assertEquals(computed, ds.rawDataCount);
+        assertEquals(hits + computed, SummaryTileCache.getHitCount());
+
+        // Switching window functions computes new tiles,  switching back reuses the originals
+        ds.setWindowFunction(WindowFunction.max);
+        ds.getSummaryScoresForRange("chr1", 0, 50000, 1);
+        assertEquals(2 * computed, ds.rawDataCount);
+
+        ds.setWindowFunction(WindowFunction.mean);
+        ds.getSummaryScoresForRange("chr1", 0, 50000, 1);
+        assertEquals(2 * computed, ds.rawDataCount);
+
+        // Tiles are evicted when the source is disposed
+        ds.dispose();
+        ds.getSummaryScoresForRange("chr1", 0, 50000, 1);
+        assertEquals(3 * computed, ds.rawDataCount);
+    }
+
+    static class CountingDataSource extends AbstractDataSource {
+
+        int rawDataCount = 0;
+        int[] starts = new int[10000];
+        int[] ends = new int[10000];
+        float[] values = new float[10000];
+
+        CountingDataSource() {
+            super(null);
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = 10 * i;
+                ends[i] = 10 * i + 5;
+                values[i] = i % 100;
+            }
+        }
+
+        @Override
+        public int getChrLength(String chr) {
+            return 100000;
+        }
+
+        protected DataTile getRawData(String chr, int startLocation, int endLocation) {
+            rawDataCount++;
+            return new DataTile(starts, ends, values, null);
+        }
+
+        protected List<LocusScore> getPrecomputedSummaryScores(String chr, int startLocation, int endLocation, int zoom) {
+            return null;
+        }
+
+        public int getLongestFeature(String chr) {
+            return 5;
+        }
+
+        public double getDataMax() {
+            return 100;
+        }
+
+        public double getDataMin() {
+            return 0;
+        }
+
+        public TrackType getTrackType() {
+            return TrackType.OTHER;
+        }
+    }
+}
@@ -26,12 +26,18 @@
 package org.broad.igv.data.seg;
 
 import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.TestUtils;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
 
 /**
  * @author jrobinso
@@ -51,4 +57,34 @@ public class FreqDataTest extends AbstractHeadlessTest {
 
         FreqData fd = new FreqData(sd, genome);
     }
+
+    @Test
+    public void testCounts() throws Exception {
+
+        Genome genome = new Genome("test", Arrays.asList(new Chromosome(0, "chr1", 1000000)));
+        SegmentedAsciiDataSet ds = new SegmentedAsciiDataSet(genome);
+        ds.addSegment("A", "chr1", 100000, 700000, 0.5f, null);
+        ds.addSegment("B", "chr1", 0, 300000, -0.5f, null);
+        ds.addSegment("B", "chr1", 300000, 700000, 0.05f, null);
+        ds.sortLists();
+
+        FreqData fd = new FreqData(ds, genome);
+
+        // Bins are weighted by overlap:  200 kb bins, [100000, 700000) covers 0.5, 1, 1, 0.5 bins
+        float[] expAmp = {0.5f, 1, 1, 0.5f, 0, 0};
+        float[] expDel = {-1, -0.5f, 0, 0, 0, 0};
+        List<LocusScore> ampBins = fd.getAmpCounts("chr1");
+        List<LocusScore> delBins = fd.getDelCounts("chr1");
+        assertEquals(expAmp.length, ampBins.size());
+        for (int i = 0; i < expAmp.length; i++) {
+            assertEquals(expAmp[i], ampBins.get(i).getScore(), 1.0e-6f);
+            assertEquals(expDel[i], delBins.get(i).getScore(), 1.0e-6f);
+        }
+        assertEquals(0.5f, ((FreqData.Bin) ampBins.get(1)).getAvgCN(), 1.0e-6f);
+
+        // Lower amplification threshold includes the second segment of B
+        fd.setParameters(FreqData.DEFAULT_BIN_SIZE, -0.1f, 0.01f);
+        assertEquals(1.5f, fd.getAmpCounts("chr1").get(1).getScore(), 1.0e-6f);
+        assertEquals(2.0f, fd.getAmpCounts("chr1").get(2).getScore(), 1.0e-6f);
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.broad.igv.data.seg;
+
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class SegmentStoreTest {
+
+    private static Genome createGenome() {
+        return new Genome("test", Arrays.asList(new Chromosome(0, "chr1", 100000000),
+                new Chromosome(1, "chr2", 50000000)));
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        SegmentedAsciiDataSet ds = new SegmentedAsciiDataSet(createGenome());
+        ds.addSegment("B", "chr1", 5000, 6000, 3, null);
+        ds.addSegment("A", "chr1", 3000, 4000, 2, null);
+        ds.addSegment("A", "chr1", 1000, 2000, 1, "first");
+        ds.addSegment("A", "chr1", 5000, 9000, 4, null);
+        ds.addSegment("A", "chr1", 6000, 7000, 5, null);
+        ds.sortLists();
+
+        assertEquals(Arrays.asList("B", "A"), ds.getSampleNames());
+        assertNull(ds.getSegments("A", "chr2"));
+        assertNull(ds.getSegments("C", "chr1"));
+
+        List<LocusScore> segments = ds.getSegments("A", "chr1");
+        assertEquals(4, segments.size());
+        int[] expStarts = {1000, 3000, 5000, 6000};
+        for (int i = 0; i < expStarts.length; i++) {
+            assertEquals(expStarts[i], segments.get(i).getStart());
+        }
+        assertEquals("first", ((Segment) segments.get(0)).getDescription());
+
+        // Overlapping segments, plus one neighbor on each side
+        List<LocusScore> range = ds.getSegments("A", "chr1", 7500, 8000);
+        assertEquals(3, range.size());
+        assertEquals(3000, range.get(0).getStart());
+        assertEquals(6000, range.get(2).getStart());
+
+        range = ds.getSegments("A", "chr1", 2500, 2600);
+        assertEquals(2, range.size());
+        assertEquals(1000, range.get(0).getStart());
+        assertEquals(3000, range.get(1).getStart());
+    }
+
+    @Test
+    public void testWholeGenomeScores() throws Exception {
+        SegmentedAsciiDataSet ds = new SegmentedAsciiDataSet(createGenome());
+        ds.addSegment("A", "chr2", 0, 1000000, 1, "big");
+        ds.addSegment("A", "chr2", 1000000, 1002000, 2, null);
+        ds.addSegment("A", "chr2", 1002000, 1006000, 5, null);
+        ds.addSegment("A", "chr2", 2000000, 2001000, 7, "small");
+        ds.sortLists();
+
+        // Resolution is 150,000 kb / SegmentStore.WHOLE_GENOME_PIXELS = 15 kb
+        List<LocusScore> scores = ds.getWholeGenomeScores("A");
+        assertEquals(3, scores.size());
+
+        assertEquals(100000, scores.get(0).getStart());
+        assertEquals(101000, scores.get(0).getEnd());
+        assertEquals("big", ((Segment) scores.get(0)).getDescription());
+
+        // Small segments in the same bin are merged, weighted by length
+        assertEquals(101000, scores.get(1).getStart());
+        assertEquals(101006, scores.get(1).getEnd());
+        assertEquals(4.0f, scores.get(1).getScore(), 1.0e-6f);
+        assertNull(((Segment) scores.get(1)).getDescription());
+
+        assertEquals(102000, scores.get(2).getStart());
+        assertEquals(7.0f, scores.get(2).getScore());
+        assertEquals("small", ((Segment) scores.get(2)).getDescription());
+
+        assertTrue(ds.getWholeGenomeScores("B").isEmpty());
+    }
+}
@@ -155,6 +155,65 @@ public class FeatureDBTest extends AbstractHeadlessTest {
 
     }
 
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final String prefix = "ZZCONCURRENT";
+        final int nThreads = 4;
+        final int nNames = 2000;
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < nNames; i++) {
+                        // Every thread adds each name once,  with a different length
+                        BasicFeature f = new BasicFeature("chr1", i, i + 10 + offset);
+                        f.setName(prefix + i);
+                        FeatureDB.addFeature(f, null);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        Map<String, List<NamedFeature>> fMap = FeatureDB.getFeaturesMap(prefix);
+        assertEquals(nNames, fMap.size());
+        for (List<NamedFeature> data : fMap.values()) {
+            assertEquals(nThreads, data.size());
+            for (int ii = 0; ii < data.size() - 1; ii++) {
+                assertTrue(data.get(ii).getEnd() - data.get(ii).getStart() >= data.get(ii + 1).getEnd() - data.get(ii + 1).getStart());
+            }
+        }
+        assertEquals(1, FeatureDB.getFeaturesList(prefix + "1999", 10).size());
+    }
+
+    @Test
+    public void testMaxNames() throws Exception {
+        final String prefix = "ZZMAXNAMES";
+        int size = FeatureDB.size();
+        FeatureDB.setMaxNames(size + 10);
+        try {
+            for (int i = 0; i < 20; i++) {
+                BasicFeature f = new BasicFeature("chr1", i, i + 10);
+                f.setName(prefix + i);
+                FeatureDB.addFeature(f, null);
+            }
+            // Adding to an existing name does not count against the limit
+            BasicFeature f = new BasicFeature("chr1", 0, 20);
+            f.setName(prefix + 0);
+            FeatureDB.addFeature(f, null);
+
+            assertEquals(size + 10, FeatureDB.size());
+            assertEquals(10, FeatureDB.getFeaturesMap(prefix).size());
+            assertEquals(2, FeatureDB.getFeaturesMap(prefix + 0).get(prefix + 0).size());
+        } finally {
+            FeatureDB.setMaxNames(5000000);
+        }
+    }
+
     @Test
     public void testMultiRetrieve() throws Exception {
         String checkstr = "EGFLAM";
@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import htsjdk.tribble.Feature;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FeatureRangeIndexTest {
+
+    @Test
+    public void testQueriesMatchLinearScan() {
+
+        Random random = new Random(17);
+        List<Feature> features = new ArrayList<Feature>();
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(1000000);
+            // Mostly short features with an occasional long one
+            int length = random.nextInt(100) == 0 ? random.nextInt(200000) : 1 + random.nextInt(500);
+            BasicFeature f = new BasicFeature("chr1", start, start + length);
+            f.setName("f" + i);
+            features.add(f);
+        }
+
+        FeatureRangeIndex index = new FeatureRangeIndex(features);
+        assertFalse(index.isCompact());
+        assertEquals(features.size(), index.size());
+
+        for (int q = 0; q < 200; q++) {
+            int start = random.nextInt(1100000) - 50000;
+            int end = start + random.nextInt(20000);
+
+            List<Feature> expected = new ArrayList<Feature>();
+            for (Feature f : features) {
+                if (f.getStart() <= end && f.getEnd() > start) {
+                    expected.add(f);
+                }
+            }
+            List<Feature> actual = index.getFeatures(start, end);
+            assertEquals(expected.size(), actual.size());
+            assertTrue(actual.containsAll(expected));
+            for (int i = 1; i < actual.size(); i++) {
+                assertTrue(actual.get(i - 1).getStart() <= actual.get(i).getStart());
+            }
+        }
+    }
+
+    @Test
+    public void testCompactBedFeatures() {
+
+        List<Feature> features = new ArrayList<Feature>();
+        for (int i = 0; i < 100; i++) {
+            BasicFeature f = new BasicFeature("chr2", 1000 - 10 * i, 1000 - 10 * i + 25, i % 2 == 0 ? Strand.POSITIVE : Strand.NONE);
+            if (i % 3 == 0) {
+                f.setScore(i);
+            }
+            features.add(f);
+        }
+
+        FeatureRangeIndex index = new FeatureRangeIndex(features);
+        assertTrue(index.isCompact());
+
+        List<Feature> result = index.getFeatures(500, 520);
+        assertEquals(5, result.size());
+        for (Feature f : result) {
+            int i = (1000 - f.getStart()) / 10;
+            BasicFeature bf = (BasicFeature) f;
+            assertEquals("chr2", bf.getChr());
+            assertEquals(f.getStart() + 25, f.getEnd());
+            assertEquals(i % 2 == 0 ? Strand.POSITIVE : Strand.NONE, bf.getStrand());
+            if (i % 3 == 0) {
+                assertEquals(i, bf.getScore(), 0);
+            } else {
+                assertTrue(Float.isNaN(bf.getScore()));
+            }
+        }
+
+        // A named feature disables compaction
+        BasicFeature named = new BasicFeature("chr2", 0, 10);
+        named.setName("gene");
+        features.add(named);
+        assertFalse(new FeatureRangeIndex(features).isCompact());
+        assertFalse(new FeatureRangeIndex(features.subList(0, 10), false).isCompact());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelFeatureLoaderTest {
+
+    @Test
+    public void testLoadMatchesSerialRead() throws IOException {
+
+        File file = File.createTempFile("parallelLoad", ".bed");
+        file.deleteOnExit();
+
+        Random random = new Random(5);
+        PrintWriter pw = new PrintWriter(file);
+        pw.println("track name=\"test\" gffTags=on");
+        for (int i = 0; i < 20000; i++) {
+            String chr = "chr" + (1 + random.nextInt(3));
+            int start = random.nextInt(1000000);
+            pw.println(chr + "\t" + start + "\t" + (start + 1 + random.nextInt(1000)) + "\tName=f" + i + ";Note=x\t" +
+                    random.nextInt(1000) + "\t" + (i % 2 == 0 ? "+" : "-"));
+            if (i % 5000 == 0) {
+                pw.println("#comment");
+            }
+        }
+        pw.close();
+
+        ResourceLocator locator = new ResourceLocator(file.getAbsolutePath());
+
+        long[] boundaries = ParallelFeatureLoader.computeBoundaries(file, 10000);
+        assertTrue(boundaries.length > 20);
+        assertEquals(file.length(), boundaries[boundaries.length - 1]);
+
+        Map<String, List<Feature>> parallel = (new ParallelFeatureLoader(locator, null)).load(10000);
+
+        FeatureCodec<?, ?> codec = CodecFactory.getCodec(locator, null);
+        AbstractFeatureReader<? extends Feature, ?> reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false);
+        Map<String, List<Feature>> serial = new HashMap<>();
+        Iterator<? extends Feature> iter = reader.iterator();
+        while (iter.hasNext()) {
+            Feature f = iter.next();
+            List<Feature> features = serial.get(f.getContig());
+            if (features == null) {
+                features = new ArrayList<>();
+                serial.put(f.getContig(), features);
+            }
+            features.add(f);
+        }
+        reader.close();
+
+        assertEquals(serial.keySet(), parallel.keySet());
+        for (String chr : serial.keySet()) {
+            List<Feature> expected = serial.get(chr);
+            List<Feature> actual = parallel.get(chr);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                BasicFeature e = (BasicFeature) expected.get(i);
+                BasicFeature a = (BasicFeature) actual.get(i);
+                assertEquals(e.getStart(), a.getStart());
+                assertEquals(e.getEnd(), a.getEnd());
+                assertEquals(e.getName(), a.getName());
+                assertEquals(e.getStrand(), a.getStrand());
+                assertEquals(e.getScore(), a.getScore(), 0);
+            }
+        }
+    }
+}
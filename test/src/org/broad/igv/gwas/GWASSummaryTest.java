@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.broad.igv.gwas;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.Assert.*;
+
+public class GWASSummaryTest {
+
+    @Test
+    public void testLevels() throws Exception {
+        GWASData data = new GWASData();
+        Random random = new Random(7);
+        int location = 0;
+        for (int i = 0; i < 5000; i++) {
+            location += random.nextInt(2000);
+            data.addLocation("chr1", location);
+            data.addValue("chr1", random.nextDouble() * 20);
+        }
+        data.addLocation("chr2", 12345);
+        data.addValue("chr2", 3.0);
+
+        GWASSummary summary = data.getSummary();
+        assertNull(summary.getLevel("chr1", GWASSummary.BASE_BIN_SIZE - 1));
+        assertNull(summary.getLevel("chrX", 1e6));
+
+        GWASSummary.Level base = summary.getLevel("chr1", GWASSummary.BASE_BIN_SIZE);
+        assertEquals(GWASSummary.BASE_BIN_SIZE, base.binSize);
+        GWASSummary.Level level = summary.getLevel("chr1", 5 * GWASSummary.BASE_BIN_SIZE);
+        assertEquals(4 * GWASSummary.BASE_BIN_SIZE, level.binSize);
+
+        // Each bin holds the maximum and the value slices of its points
+        float[] expMax = new float[level.getBinCount()];
+        Arrays.fill(expMax, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < data.getLocations().get("chr1").size(); i++) {
+            int bin = data.getLocations().get("chr1").get(i) / level.binSize;
+            double value = data.getValues().get("chr1").get(i);
+            expMax[bin] = Math.max(expMax[bin], (float) value);
+            int slice = summary.getValueLevel(value);
+            assertEquals(slice, level.nextValueLevel(bin, slice));
+        }
+        for (int bin = 0; bin < expMax.length; bin++) {
+            assertEquals(expMax[bin], level.max[bin]);
+        }
+
+        // The coarsest level is a single bin
+        GWASSummary.Level top = summary.getLevel("chr2", Double.MAX_VALUE);
+        assertEquals(1, top.getBinCount());
+        assertEquals(3.0f, top.max[0]);
+    }
+
+    @Test
+    public void testNearestIndex() throws Exception {
+        GWASData data = new GWASData();
+        int[] locations = {100, 200, 300, 400};
+        double[] values = {1, 5, 2, 5};
+        for (int i = 0; i < locations.length; i++) {
+            data.addLocation("chr1", locations[i]);
+            data.addValue("chr1", values[i]);
+        }
+
+        assertEquals(1, data.getNearestIndexByLocation("chr1", 240, 0, 10, 100));
+        assertEquals(2, data.getNearestIndexByLocation("chr1", 260, 0, 10, 100));
+        assertEquals(3, data.getNearestIndexByLocation("chr1", 320, 4, 10, 200));
+        assertEquals(-1, data.getNearestIndexByLocation("chr1", 320, 4, 10, 50));
+        assertEquals(0, data.getNearestIndexByLocation("chr1", 50, 0, 10, 50));
+        assertEquals(-1, data.getNearestIndexByLocation("chr2", 50, 0, 10, 50));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.maf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MAFIndexTest {
+
+    private int blockSize;
+    private long chunkSize;
+
+    private File mafFile;
+    private Map<String, List<long[]>> blocks;   // chr -> {start, end, offset of "a" line}
+
+    @Before
+    public void setUp() throws IOException {
+        blockSize = MAFIndex.blockSize;
+        chunkSize = MAFIndex.chunkSize;
+        MAFIndex.blockSize = 5;
+
+        mafFile = File.createTempFile("index", ".maf");
+        mafFile.deleteOnExit();
+
+        Random random = new Random(7);
+        blocks = new HashMap<String, List<long[]>>();
+        StringBuilder maf = new StringBuilder("##maf version=1\n\n");
+        for (String chr : new String[]{"chr1", "chr2"}) {
+            List<long[]> chrBlocks = new ArrayList<long[]>();
+            blocks.put(chr, chrBlocks);
+            int position = random.nextInt(1000);
+            for (int i = 0; i < 300; i++) {
+                int size = 1 + random.nextInt(200);
+                chrBlocks.add(new long[]{position, position + size, maf.length()});
+                maf.append("a score=").append(i).append("\n");
+                maf.append("s hg18.").append(chr).append(" ").append(position).append(" ").append(size)
+                        .append(" + 1000000 ").append(bases(random, size)).append("\n");
+                maf.append("s panTro2.chr").append(i).append(" 0 ").append(size).append(" + 1000000 ")
+                        .append(bases(random, size)).append("\n");
+                if (i % 3 == 0) {
+                    maf.append("s rheMac2.chrUn 0 ").append(size).append(" - 1000000 ").append(bases(random, size)).append("\n");
+                }
+                maf.append("\n");
+                position += size + random.nextInt(50);
+            }
+        }
+        PrintWriter pw = new PrintWriter(mafFile);
+        pw.print(maf);
+        pw.close();
+    }
+
+    @After
+    public void tearDown() {
+        MAFIndex.blockSize = blockSize;
+        MAFIndex.chunkSize = chunkSize;
+        new File(mafFile.getPath() + MAFIndex.BINARY_INDEX_EXTENSION).delete();
+    }
+
+    private static String bases(Random random, int size) {
+        char[] c = new char[size];
+        for (int i = 0; i < size; i++) {
+            c[i] = "ACGT-".charAt(random.nextInt(5));
+        }
+        return new String(c);
+    }
+
+    /**
+     * The offset found for every block must be that of a block of the same chromosome at or before it.
+     */
+    private void checkOffsets(MAFIndex index) {
+        for (Map.Entry<String, List<long[]>> e : blocks.entrySet()) {
+            List<long[]> chrBlocks = e.getValue();
+            for (int i = 0; i < chrBlocks.size(); i++) {
+                long[] b = chrBlocks.get(i);
+                long offset = index.getStartOffset(e.getKey(), (int) b[0], (int) b[1]);
+                assertTrue(offset <= b[2]);
+                boolean found = false;
+                for (int j = 0; j <= i; j++) {
+                    found |= chrBlocks.get(j)[2] == offset;
+                }
+                assertTrue(found);
+            }
+            long[] last = chrBlocks.get(chrBlocks.size() - 1);
+            assertEquals(-1, index.getStartOffset(e.getKey(), (int) last[1] + 1, (int) last[1] + 100));
+        }
+        assertEquals(-1, index.getStartOffset("chr3", 0, 1000));
+    }
+
+    @Test
+    public void testParallelCreate() throws Exception {
+
+        MAFIndex.chunkSize = Long.MAX_VALUE;
+        MAFIndex serial = MAFIndex.createIndex(mafFile.getPath());
+        checkOffsets(serial);
+
+        MAFIndex.chunkSize = 997;
+        MAFIndex parallel = MAFIndex.createIndex(mafFile.getPath());
+        checkOffsets(parallel);
+
+        assertEquals(Arrays.asList("hg18", "panTro2", "rheMac2"), serial.getSpecies());
+        assertEquals(serial.getSpecies(), parallel.getSpecies());
+        assertEquals(new ArrayList<String>(serial.getChromosomes()), new ArrayList<String>(parallel.getChromosomes()));
+    }
+
+    @Test
+    public void testBinaryIndex() throws Exception {
+
+        MAFIndex index = MAFIndex.open(mafFile.getPath());
+        File indexFile = new File(mafFile.getPath() + MAFIndex.BINARY_INDEX_EXTENSION);
+        assertTrue(indexFile.exists());
+
+        MAFIndex mapped = MAFIndex.loadBinaryIndex(indexFile, mafFile);
+        assertNotNull(mapped);
+        checkOffsets(mapped);
+        assertEquals(index.getSpecies(), mapped.getSpecies());
+        assertEquals(new ArrayList<String>(index.getChromosomes()), new ArrayList<String>(mapped.getChromosomes()));
+
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            int start = random.nextInt(70000);
+            int end = start + random.nextInt(5000);
+            assertEquals(index.getStartOffset("chr2", start, end), mapped.getStartOffset("chr2", start, end));
+        }
+
+        // A modified MAF file invalidates the index
+        assertTrue(mafFile.setLastModified(indexFile.lastModified() + 10000));
+        assertNull(MAFIndex.loadBinaryIndex(indexFile, mafFile));
+    }
+}
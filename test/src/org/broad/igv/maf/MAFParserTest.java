@@ -30,7 +30,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.PrintWriter;
 import java.util.List;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
 
@@ -84,8 +86,74 @@ public class MAFParserTest {
         Object [] species = parser.getSpecies().toArray();
         Assert.assertArrayEquals(expectedSpeciesOrder, species);
 
-        String indexFile = mafFile + ".index";
-        (new File(indexFile)).delete();
+        (new File(mafFile + MAFIndex.BINARY_INDEX_EXTENSION)).delete();
 
     }
+
+    @Test
+    public void testTiles() throws Exception {
+
+        File file = File.createTempFile("tiles", ".maf");
+        file.deleteOnExit();
+        new File(file.getAbsolutePath() + MAFIndex.BINARY_INDEX_EXTENSION).deleteOnExit();
+
+        // Blocks of random length separated by random gaps,  many spanning tile boundaries and some starting exactly
+        // on one
+        Random random = new Random(3);
+        int nBlocks = 500;
+        int[] starts = new int[nBlocks];
+        int[] sizes = new int[nBlocks];
+        PrintWriter pw = new PrintWriter(file);
+        pw.println("##maf version=1");
+        pw.println();
+        int position = 100;
+        for (int i = 0; i < nBlocks; i++) {
+            if (i % 25 == 0) {
+                position = (position / MAFParser.TILE_SIZE + 1) * MAFParser.TILE_SIZE;
+            }
+            starts[i] = position;
+            sizes[i] = 1 + random.nextInt(300);
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < sizes[i]; j++) {
+                text.append("ACGT".charAt(random.nextInt(4)));
+            }
+            pw.println("a score=" + i);
+            pw.println("s hg18.chr1 " + starts[i] + " " + sizes[i] + " + 247249719 " + text);
+            pw.println("s panTro2.chr1   " + (2 * starts[i]) + " " + sizes[i] + " - 229974691 " + text.toString().toLowerCase());
+            pw.println("i panTro2.chr1 C 0 C 0");
+            pw.println();
+            position += sizes[i] + random.nextInt(100);
+        }
+        pw.close();
+
+        MAFParser parser = new MAFParser(file.getAbsolutePath());
+
+        for (int n = 0; n < 70; n++) {
+            int start, end;
+            if (n < 20) {
+                // Around a block starting on a tile boundary
+                int boundary = starts[25 * (1 + n % (nBlocks / 25 - 1))];
+                start = boundary - 1000 + random.nextInt(900);
+                end = boundary + random.nextInt(1000);
+            } else {
+                start = random.nextInt(position);
+                end = start + random.nextInt(3 * MAFParser.TILE_SIZE);
+            }
+            List<MultipleAlignmentBlock> alignments = parser.loadAlignments("chr1", start, end);
+
+            int idx = 0;
+            for (int i = 0; i < nBlocks; i++) {
+                if (starts[i] + sizes[i] < start || starts[i] > end) continue;
+                MultipleAlignmentBlock ma = alignments.get(idx++);
+                assertEquals(starts[i], ma.getStart());
+                assertEquals(starts[i] + sizes[i], ma.getEnd());
+                assertEquals(2, ma.getSequences().size());
+                MultipleAlignmentBlock.Sequence seq = ma.getSequence("panTro2");
+                assertEquals(2 * starts[i], seq.getStart());
+                assertEquals('-', seq.getStrand());
+                assertEquals(ma.getRefSequence().getText().toLowerCase(), seq.getText());
+            }
+            assertEquals(idx, alignments.size());
+        }
+    }
 }
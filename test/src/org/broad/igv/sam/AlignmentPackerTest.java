@@ -30,6 +30,9 @@
 
 package org.broad.igv.sam;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.CloseableIterator;
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.sam.reader.AlignmentReader;
@@ -118,4 +121,79 @@ public class AlignmentPackerTest extends AbstractHeadlessTest {
     }
 
 
+
+    /**
+     * Pack a large set of synthetic, unpaired alignments and verify rows do not overlap and every alignment is placed.
+     */
+    @Test
+    public void testPackSyntheticAlignments() throws Exception {
+
+        int nAlignments = 200000;
+        List<Alignment> list = createAlignments(nAlignments, 1000000);
+        AlignmentInterval interval = new AlignmentInterval(chr, 0, 1100000, list, null, null, null);
+
+        long t0 = System.currentTimeMillis();
+        PackedAlignments result = (new AlignmentPacker()).packAlignments(interval, new AlignmentTrack.RenderOptions(AlignmentDataManager.ExperimentType.OTHER));
+        long dt = System.currentTimeMillis() - t0;
+        assertTrue("Packing took " + dt + " ms", dt < 5000);
+
+        int count = 0;
+        for (List<Row> alignmentrows : result.values()) {
+            for (Row alignmentrow : alignmentrows) {
+                List<Alignment> alignments = alignmentrow.alignments;
+                count += alignments.size();
+                for (int ii = 1; ii < alignments.size(); ii++) {
+                    assertTrue(alignments.get(ii).getStart() - alignments.get(ii - 1).getEnd() >= AlignmentPacker.MIN_ALIGNMENT_SPACING);
+                }
+            }
+        }
+        assertEquals(nAlignments, count);
+    }
+
+    /**
+     * Each alignment should land in the lowest row it fits in, rows are filled left to right.
+     */
+    @Test
+    public void testRowAllocator() throws Exception {
+        AlignmentPacker.RowAllocator allocator = new AlignmentPacker.RowAllocator();
+        assertEquals(0, allocator.allocate(0, 100));
+        assertEquals(1, allocator.allocate(10, 50));
+        assertEquals(2, allocator.allocate(20, 200));
+        assertEquals(1, allocator.allocate(60, 300));
+        assertEquals(0, allocator.allocate(100, 150));
+        assertEquals(3, allocator.allocate(110, 120));
+        assertEquals(4, allocator.getRowCount());
+
+        // Force growth of the backing tree
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(4 + i, allocator.allocate(115, 10000));
+        }
+        assertEquals(3, allocator.allocate(130, 10000));
+    }
+
+    private List<Alignment> createAlignments(int nAlignments, int range) {
+        SAMFileHeader header = new SAMFileHeader();
+        header.addSequence(new SAMSequenceRecord(chr, range * 2));
+        Random random = new Random(1234);
+        int[] starts = new int[nAlignments];
+        for (int i = 0; i < nAlignments; i++) {
+            starts[i] = random.nextInt(range);
+        }
+        Arrays.sort(starts);
+        List<Alignment> list = new ArrayList<Alignment>(nAlignments);
+        for (int i = 0; i < nAlignments; i++) {
+            int length = 50 + random.nextInt(100);
+            SAMRecord record = new SAMRecord(header);
+            record.setReadName("read" + i);
+            record.setReferenceName(chr);
+            record.setAlignmentStart(starts[i] + 1);
+            record.setCigarString(length + "M");
+            record.setReadBases(SAMRecord.NULL_SEQUENCE);
+            record.setBaseQualities(SAMRecord.NULL_QUALS);
+            list.add(new PicardAlignment(record));
+        }
+        return list;
+    }
+
+
 }
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compare {@link CompactAlignmentCounts} against the reference {@link DenseAlignmentCounts} implementation.
+ */
+public class CompactAlignmentCountsTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T', 'N', 'a', 'c', 'g', 't', 'n', 'R'};
+
+    @Test
+    public void testCountsMatchDense() throws Exception {
+
+        int start = 1000;
+        int end = start + 5 * CompactAlignmentCounts.BLOCK_SIZE + 17;
+        DenseAlignmentCounts dense = new DenseAlignmentCounts(start, end, null);
+        CompactAlignmentCounts compact = new CompactAlignmentCounts(start, end, null);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            // Leave the second block empty
+            int pos = start + random.nextInt(end - start);
+            if (pos - start >= CompactAlignmentCounts.BLOCK_SIZE && pos - start < 2 * CompactAlignmentCounts.BLOCK_SIZE) {
+                continue;
+            }
+            byte base = BASES[random.nextInt(BASES.length)];
+            byte q = (byte) random.nextInt(60);
+            boolean neg = random.nextBoolean();
+            dense.incPositionCount(pos, base, q, neg);
+            compact.incPositionCount(pos, base, q, neg);
+            if (i % 7 == 0) {
+                dense.incrementDeletion(pos, neg);
+                compact.incrementDeletion(pos, neg);
+            }
+        }
+        dense.finish();
+        compact.finish();
+
+        for (int pos = start - 5; pos < end + 5; pos++) {
+            assertEquals(dense.getTotalCount(pos), compact.getTotalCount(pos));
+            assertEquals(dense.getTotalQuality(pos), compact.getTotalQuality(pos));
+            assertEquals(dense.getDelCount(pos), compact.getDelCount(pos));
+            for (byte b : new byte[]{'A', 'C', 'G', 'T', 'N'}) {
+                assertEquals(dense.getCount(pos, b), compact.getCount(pos, b));
+                assertEquals(dense.getPosCount(pos, b), compact.getPosCount(pos, b));
+                assertEquals(dense.getNegCount(pos, b), compact.getNegCount(pos, b));
+            }
+        }
+
+        for (int s = start; s < end; s += 37) {
+            for (int e = s; e < end + 100; e += 251) {
+                assertEquals(dense.getMaxCount(s, e), compact.getMaxCount(s, e));
+            }
+        }
+
+        int emptyBlockStart = start + CompactAlignmentCounts.BLOCK_SIZE;
+        assertEquals(emptyBlockStart - 10, compact.nextCoveredPosition(emptyBlockStart - 10));
+        assertEquals(start + 2 * CompactAlignmentCounts.BLOCK_SIZE, compact.nextCoveredPosition(emptyBlockStart));
+    }
+
+    /**
+     * Counts that overflow an unsigned 16 bit value must promote the block to int storage.
+     */
+    @Test
+    public void testOverflow() throws Exception {
+        int start = 0;
+        int end = 100;
+        CompactAlignmentCounts compact = new CompactAlignmentCounts(start, end, null);
+        int n = 70000;
+        for (int i = 0; i < n; i++) {
+            compact.incPositionCount(50, (byte) 'A', (byte) 40, false);
+        }
+        compact.incPositionCount(51, (byte) 'C', (byte) -1, true);
+        assertEquals(n, compact.getTotalCount(50));
+        assertEquals(n, compact.getCount(50, (byte) 'A'));
+        assertEquals(n * 40, compact.getTotalQuality(50));
+        assertEquals(-1, compact.getQuality(51, (byte) 'C'));
+        assertEquals(n, compact.getMaxCount(0, 100));
+    }
+}
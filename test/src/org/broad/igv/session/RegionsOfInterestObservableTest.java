@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.session;
+
+import org.broad.igv.feature.RegionOfInterest;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import static org.junit.Assert.*;
+
+public class RegionsOfInterestObservableTest {
+
+    private Session session;
+    private List<RegionsOfInterestChange> changes;
+
+    @Before
+    public void setUp() {
+        session = new Session(null);
+        changes = Collections.synchronizedList(new ArrayList<RegionsOfInterestChange>());
+        session.getRegionsOfInterestObservable().addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                changes.add((RegionsOfInterestChange) arg);
+            }
+        });
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final RegionOfInterest a = new RegionOfInterest("chr1", 100, 200, "a");
+        final RegionOfInterest b = new RegionOfInterest("chr1", 300, 400, "b");
+        final RegionOfInterest c = new RegionOfInterest("chr2", 100, 200, "c");
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                session.addROI(a, false, true);
+                session.addROI(Arrays.asList(b, c), true);
+                session.removeROI(a);
+                session.getRegionsOfInterestObservable().notifyChange();
+                assertEquals(0, changes.size());
+            }
+        });
+        flushEventQueue();
+
+        assertEquals(1, changes.size());
+        RegionsOfInterestChange change = changes.get(0);
+        assertFalse(change.isReset());
+        assertEquals(Arrays.asList(b, c), change.getAdded());
+        assertTrue(change.getRemoved().isEmpty());
+        assertTrue(change.getUpdated().isEmpty());
+    }
+
+    @Test
+    public void testDelta() throws Exception {
+        final RegionOfInterest a = new RegionOfInterest("chr1", 100, 200, "a");
+        final RegionOfInterest b = new RegionOfInterest("chr1", 300, 400, "b");
+        // changes that were not notified are carried into the next notification
+        session.addROI(Arrays.asList(a, b), false);
+        session.getRegionsOfInterestObservable().flush();
+        assertEquals(0, changes.size());
+        session.getRegionsOfInterestObservable().notifyChange();
+        session.getRegionsOfInterestObservable().flush();
+        assertEquals(1, changes.size());
+        assertEquals(Arrays.asList(a, b), changes.get(0).getAdded());
+        flushEventQueue();
+        assertEquals(1, changes.size());
+        changes.clear();
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                // split a into [100,120) and [150,200)
+                session.addROI(new RegionOfInterest("chr1", 120, 150, "x"), true, true);
+                // removing and adding b again is an update
+                session.removeROI(b);
+                session.addROI(b, false, true);
+                b.setDescription("b2");
+                session.getRegionsOfInterestObservable().regionsUpdated(Collections.singletonList(b));
+                session.getRegionsOfInterestObservable().notifyChange();
+            }
+        });
+        flushEventQueue();
+
+        assertEquals(1, changes.size());
+        RegionsOfInterestChange change = changes.get(0);
+        assertEquals(Collections.singletonList(a), change.getRemoved());
+        assertEquals(Arrays.asList(new RegionOfInterest("chr1", 150, 200, null),
+                new RegionOfInterest("chr1", 100, 120, null)), change.getAdded());
+        assertEquals(Collections.singletonList(b), change.getUpdated());
+        assertEquals(3, session.getAllRegionsOfInterest().size());
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                session.addROI(new RegionOfInterest("chr1", 100, 200, "a"), false, true);
+                session.getRegionsOfInterest("chr1").clear();
+                session.informListeners();
+            }
+        });
+        flushEventQueue();
+
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).isReset());
+        assertTrue(changes.get(0).getAdded().isEmpty());
+
+        // nothing pending
+        session.getRegionsOfInterestObservable().flush();
+        assertEquals(1, changes.size());
+    }
+
+    private static void flushEventQueue() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.session;
+
+import org.broad.igv.feature.RegionOfInterest;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class SessionDocumentReaderTest {
+
+    private static final String SESSION_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<Session genome=\"hg19\" version=\"8\">\n" +
+            "    <Panel name=\"DataPanel\">\n" +
+            "        <Track xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" id=\"t1\" xsi:type=\"dataSourceTrack\">\n" +
+            "            <DataRange baseline=\"0.0\" type=\"LINEAR\"/>\n" +
+            "        </Track>\n" +
+            "    </Panel>\n" +
+            "    <Regions>\n" +
+            "        <Region chromosome=\"chr1\" start=\"100\" end=\"200\" description=\"first\"/>\n" +
+            "        <Region chromosome=\"chr2\" start=\"300\" end=\"400\"/>\n" +
+            "    </Regions>\n" +
+            "    <GeneList name=\"genes\">EGFR\nKRAS\n</GeneList>\n" +
+            "</Session>\n";
+
+    private Document parse() throws Exception {
+        return SessionDocumentReader.parse(new ByteArrayInputStream(SESSION_XML.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testRegionsAreStreamed() throws Exception {
+        Document document = parse();
+
+        assertEquals(0, document.getElementsByTagName("Region").getLength());
+
+        Element regionsElement = (Element) document.getElementsByTagName("Regions").item(0);
+        List<RegionOfInterest> regions = SessionDocumentReader.getRegions(regionsElement);
+        assertEquals(2, regions.size());
+        assertEquals("chr1", regions.get(0).getChr());
+        assertEquals(100, regions.get(0).getStart());
+        assertEquals(200, regions.get(0).getEnd());
+        assertEquals("first", regions.get(0).getDescription());
+        assertEquals("chr2", regions.get(1).getChr());
+        assertNull(regions.get(1).getDescription());
+    }
+
+    @Test
+    public void testDocumentMatchesDomParser() throws Exception {
+        Document document = parse();
+
+        Element root = document.getDocumentElement();
+        assertEquals("Session", root.getNodeName());
+        assertEquals("hg19", root.getAttribute("genome"));
+
+        Element track = (Element) document.getElementsByTagName("Track").item(0);
+        assertEquals("http://www.w3.org/2001/XMLSchema-instance", track.getAttribute("xmlns:xsi"));
+        assertEquals("dataSourceTrack", track.getAttribute("xsi:type"));
+        NodeList dataRanges = track.getElementsByTagName("DataRange");
+        assertEquals(1, dataRanges.getLength());
+        assertEquals("LINEAR", ((Element) dataRanges.item(0)).getAttribute("type"));
+
+        Element geneList = (Element) document.getElementsByTagName("GeneList").item(0);
+        assertEquals("EGFR\nKRAS\n", geneList.getTextContent());
+    }
+}
@@ -41,6 +41,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * File file, TrackType trackType, String trackLine, String[] trackNames
@@ -183,6 +184,52 @@ public class TDFReadWriteTest {
         reader.close();
     }
 
+    /**
+     * Tiles are served from a cache shared by all readers of the same file.  Uses a bed tile to exercise the
+     * bulk int and float decoding.
+     */
+    @Test
+    public void testSharedTileCache() throws IOException {
+
+        File testFile = new File("test5.tdf");
+        testFile.deleteOnExit();
+
+        String dsName = "/chr1/z0/mean";
+        int nPts = 1000;
+        int[] start = new int[nPts];
+        int[] end = new int[nPts];
+        float[][] data = new float[trackNames.length][nPts];
+        for (int j = 0; j < nPts; j++) {
+            start[j] = 10 * j;
+            end[j] = 10 * j + 5;
+            for (int i = 0; i < trackNames.length; i++) {
+                data[i][j] = i * nPts + j;
+            }
+        }
+
+        TDFWriter writer = new TDFWriter(testFile, "hg18", type, trackLine, trackNames, wfs, false);
+        writer.createDataset(dsName, TDFDataset.DataType.FLOAT, 100000, 1);
+        writer.writeTile(dsName, 0, new TDFBedTile(0, start, end, data));
+        writer.closeFile();
+
+        TDFReader reader1 = TDFReader.getReader(testFile.getAbsolutePath());
+        TDFReader reader2 = TDFReader.getReader(testFile.getAbsolutePath());
+
+        TDFTile tile1 = reader1.getDataset(dsName).getTiles(0, 10000).get(0);
+        TDFTile tile2 = reader2.getDataset(dsName).getTiles(0, 10000).get(0);
+        assertTrue(tile1 == tile2);
+
+        assertEquals(nPts, tile1.getSize());
+        for (int j = 0; j < nPts; j++) {
+            assertEquals(start[j], tile1.getStartPosition(j));
+            assertEquals(end[j], tile1.getEndPosition(j));
+            for (int i = 0; i < trackNames.length; i++) {
+                assertEquals(data[i][j], tile1.getValue(i, j), 1.0e-6);
+            }
+        }
+        reader1.close();
+        reader2.close();
+    }
 
     public static void main(String[] args) {
         org.junit.runner.JUnitCore.runClasses(TDFReadWriteTest.class);
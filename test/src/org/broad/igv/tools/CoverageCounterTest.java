@@ -25,6 +25,10 @@
 
 package org.broad.igv.tools;
 
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.apache.commons.io.FileUtils;
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.prefs.IGVPreferences;
 import org.broad.igv.feature.genome.Genome;
@@ -39,10 +43,12 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 
 public class CoverageCounterTest extends AbstractHeadlessTest {
@@ -249,6 +255,43 @@ public class CoverageCounterTest extends AbstractHeadlessTest {
     }
 
 
+    /**
+     * Counting in parallel must produce exactly the output of a single threaded count
+     */
+    @Test
+    public void testParallelCount() throws Exception {
+        File bamFile = new File(TestUtils.TMP_OUTPUT_DIR, "index_test.bam");
+        FileUtils.copyFile(new File(TestUtils.DATA_DIR + "samtools/index_test.bam"), bamFile);
+        SamReader samReader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bamFile);
+        BAMIndexer.createIndex(samReader, new File(bamFile.getAbsolutePath() + ".bai"));
+        samReader.close();
+
+        int[] options = {0, CoverageCounter.STRANDS_BY_READ | CoverageCounter.BASES};
+        String[] queries = {null, "chr2:4000000-20000000"};
+        for (int countFlags : options) {
+            for (String queryString : queries) {
+                TestDataConsumer sequential = new TestDataConsumer();
+                new CoverageCounter(bamFile.getAbsolutePath(), sequential, 25, 100, null, null, queryString, 0, countFlags).parse();
+
+                TestDataConsumer parallel = new TestDataConsumer();
+                CoverageCounter cc = new CoverageCounter(bamFile.getAbsolutePath(), parallel, 25, 100, null, null, queryString, 0, countFlags);
+                cc.setThreads(4);
+                cc.parse();
+
+                assertEquals(sequential.attributes.get("totalCount"), parallel.attributes.get("totalCount"));
+                assertEquals(sequential.testDatas.size(), parallel.testDatas.size());
+                for (int i = 0; i < sequential.testDatas.size(); i++) {
+                    TestData expected = sequential.testDatas.get(i);
+                    TestData actual = parallel.testDatas.get(i);
+                    assertEquals(expected.chr, actual.chr);
+                    assertEquals(expected.start, actual.start);
+                    assertEquals(expected.end, actual.end);
+                    assertTrue(Arrays.equals(expected.data, actual.data));
+                }
+            }
+        }
+    }
+
     static class TestDataConsumer implements DataConsumer {
 
         Map<String, String> attributes = new HashMap<String, String>();
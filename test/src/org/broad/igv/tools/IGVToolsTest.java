@@ -45,6 +45,7 @@ import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.TestUtils;
 import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.index.AbstractIndex;
 import htsjdk.tribble.index.Block;
 import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.IndexFactory;
@@ -374,6 +375,28 @@ public class IGVToolsTest extends AbstractHeadlessTest {
         assertEquals(71, numlines);
     }
 
+    @Test
+    public void testPrepare() throws Exception {
+        String inputFile = TestUtils.DATA_DIR + "bed/Unigene.unsorted.bed";
+        String outputFile = TestUtils.TMP_OUTPUT_DIR + "Unigene.prepared.bed";
+        TestUtils.clearOutputDir();
+
+        String input = "prepare --threads=2 --maxRecords=20 " + inputFile + " " + outputFile + " " + hg18id;
+        igvTools.run(input.split("\\s+"));
+
+        assertEquals(71, SorterTest.checkFileSorted(new File(outputFile), 0, 1, 0));
+
+        // The index should be the same as one created from the sorted file
+        File indexDir = new File(TestUtils.TMP_OUTPUT_DIR, "index");
+        indexDir.mkdir();
+        String expectedIndexPath = igvTools.doIndex(outputFile, indexDir.getAbsolutePath(), IgvTools.LINEAR_INDEX, IgvTools.LINEAR_BIN_SIZE);
+        Index expected = IndexFactory.loadIndex(expectedIndexPath);
+        Index index = IndexFactory.loadIndex(outputFile + ".idx");
+        assertTrue(((AbstractIndex) expected).equalsIgnoreProperties(index));
+
+        TDFReader reader = TDFReader.getReader(outputFile + ".tdf");
+        assertTrue(reader.getDatasetNames().size() > 0);
+    }
 
     /**
      * This test could stand to be improved, but it's difficult to test math.
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools;
+
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.tdf.TDFDataset;
+import org.broad.igv.tdf.TDFReader;
+import org.broad.igv.tdf.TDFTile;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parallel preprocessing must produce the same datasets as sequential preprocessing,  and the same file every time.
+ */
+public class PreprocessorTest {
+
+    static String[] chromosomes = {"chr1", "chr2", "chr3", "chr4"};
+    static int chrLength = 1000000;
+
+    @Test
+    public void testThreads() throws Exception {
+
+        File sequential = preprocess("sequential", 1);
+        File parallel = preprocess("parallel", 4);
+        File parallel2 = preprocess("parallel2", 4);
+
+        assertTrue("Parallel output is not deterministic",
+                Arrays.equals(Files.readAllBytes(parallel.toPath()), Files.readAllBytes(parallel2.toPath())));
+
+        TDFReader expectedReader = TDFReader.getReader(sequential.getAbsolutePath());
+        TDFReader actualReader = TDFReader.getReader(parallel.getAbsolutePath());
+        try {
+            List<String> expectedNames = new ArrayList<String>(expectedReader.getDatasetNames());
+            List<String> actualNames = new ArrayList<String>(actualReader.getDatasetNames());
+            assertEquals(expectedNames, actualNames);
+
+            for (String name : expectedNames) {
+                assertDatasetEquals(name, expectedReader.getDataset(name), actualReader.getDataset(name));
+            }
+        } finally {
+            expectedReader.close();
+            actualReader.close();
+        }
+    }
+
+    private static void assertDatasetEquals(String name, TDFDataset expected, TDFDataset actual) {
+        List<TDFTile> expectedTiles = expected.getTiles();
+        List<TDFTile> actualTiles = actual.getTiles();
+        assertEquals(name, expectedTiles.size(), actualTiles.size());
+        for (int t = 0; t < expectedTiles.size(); t++) {
+            TDFTile e = expectedTiles.get(t);
+            TDFTile a = actualTiles.get(t);
+            if (e == null || a == null) {
+                assertEquals(name, e, a);
+                continue;
+            }
+            assertEquals(name, e.getSize(), a.getSize());
+            for (int i = 0; i < e.getSize(); i++) {
+                assertEquals(name, e.getStartPosition(i), a.getStartPosition(i));
+                assertEquals(name, e.getEndPosition(i), a.getEndPosition(i));
+                assertEquals(name, e.getName(i), a.getName(i));
+                assertEquals(name, e.getValue(0, i), a.getValue(0, i), 0);
+            }
+        }
+    }
+
+    private static File preprocess(String prefix, int threads) throws Exception {
+
+        List<Chromosome> chrList = new ArrayList<Chromosome>();
+        for (int i = 0; i < chromosomes.length; i++) {
+            chrList.add(new Chromosome(i, chromosomes[i], chrLength));
+        }
+        Genome genome = new Genome("test", chrList);
+
+        File outputFile = File.createTempFile(prefix, ".tdf");
+        outputFile.deleteOnExit();
+
+        List<WindowFunction> wfs = Arrays.asList(WindowFunction.mean, WindowFunction.max);
+        Preprocessor p = new Preprocessor(outputFile, genome, wfs, -1, null);
+        p.setThreads(threads);
+        p.setTrackParameters(TrackType.OTHER, null, new String[]{"sample"});
+
+        Random random = new Random(1234);
+        float[] data = new float[1];
+        for (String chr : chromosomes) {
+            p.newChromosome(chr);
+            for (int start = 0; start + 25 < chrLength; start += 50) {
+                data[0] = random.nextFloat();
+                p.addData(chr, start, start + 25, data, null);
+            }
+        }
+        p.finish();
+        return outputFile;
+    }
+}
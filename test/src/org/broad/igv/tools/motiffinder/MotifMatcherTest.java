@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools.motiffinder;
+
+import htsjdk.tribble.Feature;
+import org.broad.igv.feature.Strand;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.*;
+
+public class MotifMatcherTest {
+
+    @Test
+    public void testUnsupportedPatterns() throws Exception {
+        assertNull(MotifMatcher.compile("AC+T", Strand.POSITIVE));
+        assertNull(MotifMatcher.compile("A(CT)", Strand.POSITIVE));
+        assertNull(MotifMatcher.compile("A[^C]T", Strand.POSITIVE));
+        assertNull(MotifMatcher.compile("ACT|GGA", Strand.POSITIVE));
+        assertNotNull(MotifMatcher.compile("ACTG[M,A,C]ACTG.ACT[S,G,C]G", Strand.POSITIVE));
+    }
+
+    /**
+     * Automaton matches must equal those of the regular expression search, on both strands
+     */
+    @Test
+    public void testMatchesRegexSearch() throws Exception {
+        Random random = new Random(1234);
+        byte[] bases = {'A', 'C', 'G', 'T', 'a', 'N'};
+        byte[] seq = new byte[20000];
+        for (int i = 0; i < seq.length; i++) {
+            seq[i] = bases[random.nextInt(bases.length)];
+        }
+
+        String[] patterns = {"ACG", "TTA[C,G]", "G.A", "CA[G,T]..[A,C]T"};
+        for (String pattern : patterns) {
+            for (Strand strand : new Strand[]{Strand.POSITIVE, Strand.NEGATIVE}) {
+                MotifMatcher matcher = MotifMatcher.compile(pattern, strand);
+                List<Feature> automatonHits = matcher.findFeatures("chr1", 100, seq);
+
+                List<Feature> regexHits = new ArrayList<Feature>();
+                // The regex search reverse complements the sequence in place, and reports negative strand hits
+                // in descending order
+                Iterator<Feature> iter = MotifFinderSource.searchSingleStrand(pattern, strand, "chr1", 100, seq.clone());
+                while (iter.hasNext()) {
+                    regexHits.add(iter.next());
+                }
+                if (strand == Strand.NEGATIVE) {
+                    Collections.reverse(regexHits);
+                }
+
+                assertTrue(regexHits.size() > 0);
+                assertEquals(pattern + " " + strand, regexHits.size(), automatonHits.size());
+                for (int i = 0; i < regexHits.size(); i++) {
+                    assertEquals(regexHits.get(i).getStart(), automatonHits.get(i).getStart());
+                    assertEquals(regexHits.get(i).getEnd(), automatonHits.get(i).getEnd());
+                }
+            }
+        }
+    }
+
+    /**
+     * Scanning in chunks with a read past the chunk end must find each match exactly once
+     */
+    @Test
+    public void testChunkedScan() throws Exception {
+        final byte[] seq = "ACGTACGTACGTACGT".getBytes();
+        MotifMatcher matcher = MotifMatcher.compile("GTAC", Strand.POSITIVE);
+        final List<Integer> starts = new ArrayList<Integer>();
+        for (int from = 0; from < seq.length; from += 5) {
+            matcher.scan(seq, from, Math.min(seq.length, from + 5), seq.length, new MotifMatcher.MatchHandler() {
+                @Override
+                public boolean match(int start) {
+                    starts.add(start);
+                    return true;
+                }
+            });
+        }
+        assertEquals(3, starts.size());
+        assertEquals(2, (int) starts.get(0));
+        assertEquals(6, (int) starts.get(1));
+        assertEquals(10, (int) starts.get(2));
+    }
+}
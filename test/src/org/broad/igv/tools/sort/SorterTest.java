@@ -27,6 +27,7 @@ package org.broad.igv.tools.sort;
 
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
+import org.apache.commons.io.FileUtils;
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.feature.genome.ChromosomeNameComparator;
 import org.broad.igv.util.TestUtils;
@@ -88,6 +89,63 @@ public class SorterTest extends AbstractHeadlessTest {
         testSort(path, 0, 1, 10, 100, 1);
     }
 
+    @Test
+    public void testSortBedParallel() throws Exception {
+        testParallelSort(TestUtils.DATA_DIR + "bed/GSM1004654_10k.bed", 50);
+    }
+
+    @Test
+    public void testSortVCFParallel() throws Exception {
+        testParallelSort(TestUtils.DATA_DIR + "vcf/SRP32_v4.0.vcf", 10);
+    }
+
+    @Test
+    public void testSortCNParallel() throws Exception {
+        testParallelSort(TestUtils.DATA_DIR + "cn/1klines.cn", 10);
+    }
+
+    @Test
+    public void testSortParallelMultiPassMerge() throws Exception {
+        int maxMergeWidth = ParallelRecordSorter.MAX_MERGE_WIDTH;
+        try {
+            ParallelRecordSorter.MAX_MERGE_WIDTH = 3;
+            testParallelSort(TestUtils.DATA_DIR + "bed/Unigene.unsorted.bed", 4);
+        } finally {
+            ParallelRecordSorter.MAX_MERGE_WIDTH = maxMergeWidth;
+        }
+    }
+
+    @Test
+    public void testSortedOrderIsStable() throws Exception {
+        long[] keys = {5, 3, 5, 1, 3, 5, 0};
+        int[] order = ParallelRecordSorter.sortedOrder(keys);
+        assertArrayEquals(new int[]{6, 3, 1, 4, 0, 2, 5}, order);
+    }
+
+    /**
+     * Sort with multiple threads and compare with the output of the single threaded sort, which
+     * should be identical.
+     */
+    public void testParallelSort(String infile, int maxRecords) throws IOException {
+
+        File ifile = new File(infile);
+        File expectedFile = new File(TestUtils.TMP_OUTPUT_DIR, ifile.getName() + ".sorted");
+        File ofile = new File(TestUtils.TMP_OUTPUT_DIR, ifile.getName() + ".parallel.sorted");
+        expectedFile.deleteOnExit();
+        ofile.deleteOnExit();
+
+        Sorter sorter = SorterFactory.getSorter(ifile, expectedFile);
+        sorter.setMaxRecords(maxRecords);
+        sorter.run();
+
+        sorter = SorterFactory.getSorter(ifile, ofile);
+        sorter.setMaxRecords(maxRecords);
+        sorter.setThreads(4);
+        sorter.run();
+
+        assertEquals(FileUtils.readLines(expectedFile), FileUtils.readLines(ofile));
+    }
+
     public void testSort(String infile, int chrCol, int startCol) throws IOException {
         testSort(infile, chrCol, startCol, 10, null, 0);
     }
@@ -28,6 +28,9 @@ package org.broad.igv.util;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
 
@@ -83,6 +86,33 @@ public class CompressionUtilsTest {
         }
     }
 
+    /**
+     * Decompression is lock free and uses pooled inflaters,  verify it is correct when called from many threads.
+     */
+    @Test
+    public void testConcurrentDecompression() throws Exception {
+        int sz = 200000;
+        final byte[] uncompressedBytes = new byte[sz];
+        for (int i = 0; i < sz; i++) {
+            uncompressedBytes[i] = (byte) (Math.sin(i) * 100);
+        }
+        final byte[] compressedBytes = compressionUtils.compress(uncompressedBytes, 32000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(executor.submit(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    return CompressionUtils.inflate(compressedBytes, 0, compressedBytes.length, 1000);
+                }
+            }));
+        }
+        for (Future<byte[]> f : futures) {
+            assertArrayEquals(uncompressedBytes, f.get());
+        }
+        executor.shutdown();
+    }
+
     @Test
     public void testUngzipFile_01() throws Exception {
         String inPath = TestUtils.DATA_DIR + "largegzdata.gz";
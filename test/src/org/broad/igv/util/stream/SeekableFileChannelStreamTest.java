@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SeekableFileChannelStreamTest {
+
+    static byte[] expectedBytes;
+    static File testFile;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        expectedBytes = new byte[20000];
+        new Random(17).nextBytes(expectedBytes);
+        testFile = File.createTempFile("SeekableFileChannelStreamTest", ".bin");
+        testFile.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(testFile);
+        try {
+            out.write(expectedBytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        testFile.delete();
+    }
+
+    @Test
+    public void testBufferedReads() throws Exception {
+        SeekableFileChannelStream stream = new SeekableFileChannelStream(testFile, 100);
+        try {
+            Random random = new Random(3);
+            for (int i = 0; i < 1000; i++) {
+                int position = random.nextInt(expectedBytes.length);
+                // Reads smaller and larger than the buffer
+                int length = Math.min(1 + random.nextInt(250), expectedBytes.length - position);
+                byte[] buffer = new byte[length];
+                stream.seek(position);
+                stream.readFully(buffer);
+                assertArrayEquals(Arrays.copyOfRange(expectedBytes, position, position + length), buffer);
+                assertEquals(position + length, stream.position());
+            }
+
+            stream.seek(expectedBytes.length - 1);
+            assertEquals(expectedBytes[expectedBytes.length - 1] & 0xff, stream.read());
+            assertEquals(-1, stream.read());
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final SeekableFileChannelStream stream = new SeekableFileChannelStream(testFile, 100);
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 2000; i++) {
+                            int position = random.nextInt(expectedBytes.length - 10);
+                            byte[] buffer = new byte[10];
+                            stream.seek(position);
+                            stream.readFully(buffer);
+                            assertArrayEquals(Arrays.copyOfRange(expectedBytes, position, position + 10), buffer);
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        stream.close();
+        if (failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SampleLayoutTest {
+
+    private static SampleLayout groupedLayout() {
+        LinkedHashMap<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+        groups.put("g1", Arrays.asList("a", "b", "c"));
+        groups.put("g2", Arrays.asList("d", "e"));
+        return new SampleLayout(groups, 3);
+    }
+
+    @Test
+    public void testRows() {
+        SampleLayout layout = groupedLayout();
+        assertEquals(5, layout.size());
+        assertEquals(3, layout.getRow("d"));
+        assertEquals(-1, layout.getRow("x"));
+        assertEquals(0, layout.getGroup(2));
+        assertEquals(1, layout.getGroup(3));
+
+        // Band height 10, group 2 starts after a 3 pixel border
+        assertEquals(33, layout.getRowTop(3, 10));
+        assertEquals(2, layout.getRowAt(29, 10));
+        assertEquals(-1, layout.getRowAt(31, 10));
+        assertEquals(3, layout.getRowAt(33, 10));
+        assertEquals(4, layout.getRowAt(52, 10));
+        assertEquals(-1, layout.getRowAt(53, 10));
+        assertEquals(-1, layout.getRowAt(-1, 10));
+    }
+
+    /**
+     * Visible row ranges should match a brute force intersection test for any window
+     */
+    @Test
+    public void testVisibleRows() {
+        SampleLayout layout = groupedLayout();
+        int bandHeight = 10;
+        for (int top = -20; top < 80; top++) {
+            for (int height = 1; height < 40; height++) {
+                Set<Integer> expected = new HashSet<Integer>();
+                for (int row = 0; row < layout.size(); row++) {
+                    int y = layout.getRowTop(row, bandHeight);
+                    if (y < top + height && y + bandHeight > top) expected.add(row);
+                }
+                Set<Integer> visible = new HashSet<Integer>();
+                for (int g = 0; g < layout.getGroupCount(); g++) {
+                    int last = layout.getLastVisibleRow(g, top + height, bandHeight);
+                    for (int row = layout.getFirstVisibleRow(g, top, bandHeight); row < last; row++) {
+                        visible.add(row);
+                    }
+                }
+                // The range may include a row starting exactly at the bottom edge
+                assertTrue(visible.containsAll(expected));
+                for (int row : visible) {
+                    assertTrue(expected.contains(row) || layout.getRowTop(row, bandHeight) == top + height);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGenotypeStrip() {
+        byte[] codes = {GenotypeMatrix.HOM_REF, GenotypeMatrix.HOM_REF, GenotypeMatrix.HET,
+                GenotypeMatrix.HOM_REF, GenotypeMatrix.HOM_REF, GenotypeMatrix.HOM_REF};
+        GenotypeMatrix.GenotypeStrip strip = new GenotypeMatrix.GenotypeStrip(256, codes);
+        assertEquals(3, strip.getRunCount());
+        assertEquals(258, strip.getRunStart(1));
+        assertEquals(259, strip.getRunEnd(1));
+        assertEquals(262, strip.getRunEnd(2));
+        assertEquals(2, strip.getRun(261));
+        for (int i = 0; i < codes.length; i++) {
+            assertEquals(codes[i], strip.getCode(256 + i));
+        }
+    }
+}
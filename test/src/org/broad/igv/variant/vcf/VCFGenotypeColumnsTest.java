@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2015 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.vcf.VCFCodec;
+import org.broad.igv.feature.tribble.VCFWrapperCodec;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.variant.Genotype;
+import org.broad.igv.variant.GenotypeMatrix;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VCFGenotypeColumnsTest {
+
+    /**
+     * Genotypes decoded on demand from the raw sample columns should match those decoded by htsjdk.
+     */
+    @Test
+    public void testLazyMatchesEager() throws Exception {
+
+        for (String file : new String[]{"vcf/ex2.vcf", "vcf/hc_mod.vcf"}) {
+            List<VCFVariant> eager = decodeAll(TestUtils.DATA_DIR + file, 0);
+            List<VCFVariant> lazy = decodeAll(TestUtils.DATA_DIR + file, 1);
+            assertTrue(eager.size() > 0);
+            assertEquals(eager.size(), lazy.size());
+
+            for (int i = 0; i < eager.size(); i++) {
+                VCFVariant e = eager.get(i);
+                VCFVariant l = lazy.get(i);
+                assertEquals(e.getStart(), l.getStart());
+                assertEquals(e.getAttributes(), l.getAttributes());
+                assertEquals(new ArrayList<String>(e.getSampleNames()).size(), l.getSampleNames().size());
+
+                for (String sample : e.getSampleNames()) {
+                    Genotype eg = e.getGenotype(sample);
+                    Genotype lg = l.getGenotype(sample);
+                    assertEquals(eg.getType(), lg.getType());
+                    assertEquals(eg.getGenotypeString(), lg.getGenotypeString());
+                    assertEquals(eg.getAttributes(), lg.getAttributes());
+                    assertEquals(eg.getType().ordinal(), l.getGenotypeCode(sample));
+                    assertEquals(eg.getType().ordinal(), e.getGenotypeCode(sample));
+                }
+                assertEquals(e.getVariantContext().getGenotypes().size(), l.getVariantContext().getGenotypes().size());
+            }
+        }
+    }
+
+    @Test
+    public void testGenotypeCodes() throws Exception {
+        List<String> samples = Arrays.asList("a", "b", "c", "d", "e", "f", "g");
+        VCFGenotypeColumns columns = new VCFGenotypeColumns("GT:DP\t0/0:3\t0|1:4\t2/2\t./.:0\t./1\t10\t.",
+                samples, Collections.<String, Integer>emptyMap());
+
+        assertEquals(GenotypeMatrix.HOM_REF, columns.getGenotypeCode(0));
+        assertEquals(GenotypeMatrix.HET, columns.getGenotypeCode(1));
+        assertEquals(GenotypeMatrix.HOM_VAR, columns.getGenotypeCode(2));
+        assertEquals(GenotypeMatrix.NO_CALL, columns.getGenotypeCode(3));
+        assertEquals(GenotypeMatrix.MIXED, columns.getGenotypeCode(4));
+        assertEquals(GenotypeMatrix.HOM_VAR, columns.getGenotypeCode(5));
+        assertEquals(GenotypeMatrix.NO_CALL, columns.getGenotypeCode(6));
+        assertEquals(GenotypeMatrix.UNAVAILABLE, columns.getGenotypeCode(7));
+    }
+
+    /**
+     * Malformed GT values and allele indices out of range decode as no calls, the other fields are kept.
+     */
+    @Test
+    public void testMalformedGenotypes() throws Exception {
+        List<String> samples = Arrays.asList("a", "b", "c", "d", "e", "f");
+        VCFGenotypeColumns columns = new VCFGenotypeColumns("GT:DP\t0/:3\tA:4\t.|x:5\t0/2:6\t-1/0:7\t0|1:8",
+                samples, Collections.<String, Integer>emptyMap());
+        List<Allele> alleles = Arrays.asList(Allele.create("A", true), Allele.create("T"));
+
+        for (int i = 0; i < 5; i++) {
+            htsjdk.variant.variantcontext.Genotype gt = columns.decodeGenotype(i, alleles);
+            assertTrue(gt.isNoCall());
+            assertEquals(i + 3, gt.getDP());
+        }
+        htsjdk.variant.variantcontext.Genotype gt = columns.decodeGenotype(5, alleles);
+        assertTrue(gt.isHet());
+        assertTrue(gt.isPhased());
+    }
+
+    private static List<VCFVariant> decodeAll(String path, int lazyThreshold) throws Exception {
+        VCFWrapperCodec codec = new VCFWrapperCodec(new VCFCodec(), null);
+        codec.setLazyGenotypeThreshold(lazyThreshold);
+        LineIterator iter = new LineIteratorImpl(new SynchronousLineReader(new FileReader(path)));
+        codec.readActualHeader(iter);
+        List<VCFVariant> variants = new ArrayList<VCFVariant>();
+        while (iter.hasNext()) {
+            VCFVariant v = codec.decode(iter.next());
+            if (v != null) variants.add(v);
+        }
+        return variants;
+    }
+}